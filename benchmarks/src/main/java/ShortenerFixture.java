@@ -0,0 +1,469 @@
+import bench.ShortenerDriver;
+import exceptions.UrlExpiredException;
+import exceptions.UrlNotFoundException;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Набор данных для бенчмарков: сервис, заполненный ссылками, плюс просроченные
+ * и несуществующие коды. Лежит в пакете по умолчанию, чтобы видеть классы сервиса.
+ */
+public class ShortenerFixture implements ShortenerDriver {
+    private final UrlNormalizer urlNormalizer = UrlNormalizer.fromConfig();
+    private UrlShortenerService service;
+    private String[] userIds;
+    private String[] activeCodes;
+    private String[] missingCodes;
+    private ShortUrl[] expiredUrls;
+    private String limitedCode;
+    private String exhaustedCode;
+    private PrintStream originalOut;
+    private Path storageDir;
+    private ClickPipeline clickPipeline;
+    
+    
+    @Override
+    public void setUp(int datasetSize, int userCount, String engine) throws Exception {
+        long bucketMillis = Config.getCleanupBucketMillis();
+        List<String> options = Arrays.asList(engine.split("\\+"));
+        boolean searchIndexed = !options.contains("noindex");
+        LinkStore linkStore = options.get(0).equals("offheap")
+                // Запас под ссылки, которые бенчмарк создания добавит поверх набора данных
+                ? new OffHeapLinkStore(new OffHeapLinkTable(2L * datasetSize + 8_000_000), bucketMillis, searchIndexed)
+                : new MapLinkStore(bucketMillis, searchIndexed);
+        if (options.contains("cache")) {
+            linkStore = new CachingLinkStore(linkStore, 10_000);
+        }
+        if (options.contains("bloom")) {
+            linkStore = new BloomFilteredLinkStore(linkStore, 2L * datasetSize);
+        }
+        startService(options.contains("nometrics")
+                        // Без метрик: повторы и общие строки выключены, как в настройках по умолчанию
+                        ? new UrlShortenerService(ShortCodeGenerator.fromConfig(), linkStore, new InMemoryUserStore(),
+                                MillisClock.fromConfig(), null, null, null)
+                        : new UrlShortenerService(ShortCodeGenerator.fromConfig(), linkStore, new InMemoryUserStore()),
+                userCount);
+        
+        activeCodes = new String[datasetSize];
+        for (int i = 0; i < datasetSize; i++) {
+            activeCodes[i] = service.createShortUrl(
+                    "https://example.com/campaign/" + i + "?utm_source=bench",
+                    userIds[i % userCount]);
+        }
+        limitedCode = service.createShortUrl("https://example.com/limited", userIds[0], Integer.MAX_VALUE);
+        exhaustedCode = service.createShortUrl("https://example.com/exhausted", userIds[0], 1);
+        service.getOriginalUrl(exhaustedCode);
+        
+        int expiredCount = Math.max(100, datasetSize / 100);
+        expiredUrls = new ShortUrl[expiredCount];
+        LocalDateTime createdAt = LocalDateTime.now().minusHours(48);
+        for (int i = 0; i < expiredCount; i++) {
+            // Коды из 10 символов не пересекаются с 6-символьными кодами генератора
+            expiredUrls[i] = new ShortUrl(String.format("X%09d", i), "https://example.com/expired/" + i,
+                    userIds[i % userCount], createdAt, createdAt.plusHours(24), 0, null);
+        }
+        restoreExpired();
+        
+        // Переходы с перекосом в сторону первых ссылок, чтобы рейтинг был заполнен
+        for (int i = 0; i < datasetSize; i++) {
+            service.getOriginalUrl(activeCodes[random(1 + random(datasetSize))]);
+        }
+        
+        missingCodes = new String[1024];
+        for (int i = 0; i < missingCodes.length; i++) {
+            missingCodes[i] = String.format("M%09d", i);
+        }
+        if (options.contains("clicks")) {
+            clickPipeline = ClickPipeline.open(service, Config.getClickBufferSize(), Config.getClickSampleRate(),
+                    Config.getClickRollupMinutes(), null);
+        }
+    }
+    
+    @Override
+    public void setUpCodeSpace(String generator, int codeLength, double fillRatio) throws Exception {
+        ShortCodeGenerator codeGenerator = generator.equals("random")
+                ? new RandomShortCodeGenerator(codeLength)
+                : new SequenceShortCodeGenerator(codeLength, 7368421, 1024);
+        startService(new UrlShortenerService(codeGenerator), 1);
+        
+        long space = (long) Math.pow(ShortCodeGenerator.ALPHABET.length(), codeLength);
+        createBatch((int) (space * fillRatio));
+    }
+    
+    private void startService(UrlShortenerService service, int userCount) {
+        // Сервис печатает в консоль из бизнес-методов, в замерах это только шум
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        
+        this.service = service;
+        service.stopCleanupTask();
+        userIds = new String[userCount];
+        for (int i = 0; i < userCount; i++) {
+            userIds[i] = service.createUser("bench-user-" + i).getId();
+        }
+    }
+    
+    @Override
+    public void tearDown() {
+        if (clickPipeline != null) {
+            try {
+                clickPipeline.close();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            originalOut.println("События переходов: " + clickPipeline);
+            clickPipeline = null;
+        }
+        if (service != null) {
+            service.shutdown();
+        }
+        System.setOut(originalOut);
+    }
+    
+    @Override
+    public Object hit() throws Exception {
+        return service.getOriginalUrl(activeCodes[random(activeCodes.length)]);
+    }
+    
+    @Override
+    public Object hotHit() throws Exception {
+        return service.getOriginalUrl(activeCodes[random(1 + random(Math.min(activeCodes.length, 10_000)))]);
+    }
+    
+    @Override
+    public Object limitedHit() throws Exception {
+        return service.getOriginalUrl(limitedCode);
+    }
+    
+    @Override
+    public Object miss() throws Exception {
+        try {
+            return service.getOriginalUrl(missingCodes[random(missingCodes.length)]);
+        } catch (UrlNotFoundException e) {
+            return e;
+        }
+    }
+    
+    @Override
+    public Object expired() throws Exception {
+        try {
+            return service.getOriginalUrl(expiredUrls[random(expiredUrls.length)].getShortCode());
+        } catch (UrlExpiredException e) {
+            return e;
+        }
+    }
+    
+    @Override
+    public Object limitReached() throws Exception {
+        try {
+            return service.getOriginalUrl(exhaustedCode);
+        } catch (UrlExpiredException e) {
+            return e;
+        }
+    }
+    
+    @Override
+    public Object resolve(String outcome) {
+        switch (outcome) {
+            case "hit":
+                return service.resolve(activeCodes[random(activeCodes.length)]);
+            case "miss":
+                return service.resolve(missingCodes[random(missingCodes.length)]);
+            case "expired":
+                return service.resolve(expiredUrls[random(expiredUrls.length)].getShortCode());
+            case "limitReached":
+                return service.resolve(exhaustedCode);
+            default:
+                throw new IllegalArgumentException(outcome);
+        }
+    }
+    
+    @Override
+    public Object create() throws Exception {
+        return service.createShortUrl("https://example.com/new-campaign?utm_source=bench", randomUserId());
+    }
+    
+    @Override
+    public Object create(String url) throws Exception {
+        return service.createShortUrl(url, randomUserId());
+    }
+    
+    @Override
+    public Object normalizeUrl(String url) throws Exception {
+        return urlNormalizer.normalize(url);
+    }
+    
+    @Override
+    public void createBatch(int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            service.createShortUrl("https://example.com/batch/" + i, randomUserId());
+        }
+    }
+    
+    @Override
+    public Object createEach(int count) throws Exception {
+        String userId = randomUserId();
+        String shortCode = null;
+        for (int i = 0; i < count; i++) {
+            shortCode = service.createShortUrl("https://example.com/batch/" + i + "?utm_source=bench", userId);
+        }
+        return shortCode;
+    }
+    
+    @Override
+    public Object createAll(int count) {
+        String userId = randomUserId();
+        List<CreateRequest> requests = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            requests.add(new CreateRequest("https://example.com/batch/" + i + "?utm_source=bench", userId));
+        }
+        return service.createShortUrls(requests);
+    }
+    
+    @Override
+    public Object resolveEach(int count) {
+        LookupResult result = null;
+        for (int i = 0; i < count; i++) {
+            result = service.resolve(activeCodes[random(activeCodes.length)]);
+        }
+        return result;
+    }
+    
+    @Override
+    public Object resolveAll(int count) {
+        List<String> codes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            codes.add(activeCodes[random(activeCodes.length)]);
+        }
+        return service.resolveAll(codes);
+    }
+    
+    @Override
+    public Object userUrls() {
+        return service.getUserUrls(randomUserId());
+    }
+    
+    @Override
+    public Object userUrlsPage(int offset, int limit) {
+        return service.getUserUrls(randomUserId(), offset, limit);
+    }
+    
+    @Override
+    public Object search() {
+        return service.searchUrls("campaign/42", randomUserId());
+    }
+    
+    @Override
+    public Object search(String query, boolean prefix, int limit) {
+        return service.searchUrls(query, randomUserId(), prefix, 0, limit);
+    }
+    
+    @Override
+    public Object searchScan(String query) {
+        String userId = randomUserId();
+        return service.urls()
+                .filter(url -> url.getUserId().equals(userId) &&
+                        (url.getOriginalUrl().toLowerCase().contains(query.toLowerCase()) ||
+                         url.getShortCode().toLowerCase().contains(query.toLowerCase())))
+                .sorted(Comparator.comparingLong(ShortUrl::getCreatedAtMillis).reversed())
+                .collect(Collectors.toList());
+    }
+    
+    @Override
+    public Object topUrls() {
+        return service.getTopUrls(10);
+    }
+    
+    @Override
+    public void updateLimit() throws Exception {
+        String shortCode = activeCodes[random(activeCodes.length)];
+        ShortUrl shortUrl = service.findShortUrl(shortCode);
+        // Лимит заведомо не достигается, чтобы не менять исход переходов в других замерах
+        service.updateUrlLimit(shortCode, shortUrl.getUserId(), random(2) == 0 ? null : Integer.MAX_VALUE);
+    }
+    
+    @Override
+    public void createAndDelete() throws Exception {
+        String userId = randomUserId();
+        String shortCode = service.createShortUrl("https://example.com/admin/" + random(Integer.MAX_VALUE), userId);
+        service.deleteUrl(shortCode, userId);
+    }
+    
+    @Override
+    public void restoreExpired() {
+        for (ShortUrl expiredUrl : expiredUrls) {
+            service.addShortUrl(expiredUrl);
+        }
+    }
+    
+    @Override
+    public void cleanup() {
+        service.cleanupExpiredUrls();
+    }
+    
+    @Override
+    public void prepareStorage(int links, boolean snapshot) throws Exception {
+        storageDir = Files.createTempDirectory("shortener-storage");
+        startService(new UrlShortenerService(), 1000);
+        StorageManager storage = StorageManager.open(storageDir, service, 10, 0);
+        createBatch(links);
+        if (snapshot) {
+            storage.snapshot();
+        }
+        storage.close();
+        service.shutdown();
+        service = null;
+    }
+    
+    @Override
+    public long recoverStorage() throws Exception {
+        UrlShortenerService recovered = new UrlShortenerService();
+        StorageManager storage = StorageManager.open(storageDir, recovered, 10, 0);
+        long links = storage.getRecoveryStats().getLinks();
+        storage.close();
+        recovered.shutdown();
+        return links;
+    }
+    
+    @Override
+    public void deleteStorage() throws Exception {
+        try (Stream<Path> files = Files.walk(storageDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+        System.setOut(originalOut);
+    }
+    
+    @Override
+    public long[] footprint(String engine, int links) throws Exception {
+        String[] users = new String[1000];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = UUID.randomUUID().toString();
+        }
+        ShortCodeGenerator codes = new SequenceShortCodeGenerator(6, 7368421, 1024);
+        // Хранилище целиком, с индексами истечения, пользователей и поиска, как его собирает
+        // LinkStore.fromConfig по config.properties; емкость таблицы - по числу ссылок
+        long bucketMillis = Config.getCleanupBucketMillis();
+        boolean searchIndexed = Config.isSearchIndexEnabled(engine);
+        long heapBefore = usedHeap();
+        OffHeapLinkTable table = engine.equals("offheap") ? new OffHeapLinkTable(links) : null;
+        LinkStore store = table != null
+                ? new OffHeapLinkStore(table, bucketMillis, searchIndexed)
+                : new MapLinkStore(bucketMillis, searchIndexed);
+        for (int i = 0; i < links; i++) {
+            store.putIfAbsent(new ShortUrl(codes.nextCode(), "https://example.com/campaign/" + i + "?utm_source=bench",
+                    users[i % users.length]));
+        }
+        long heapBytes = usedHeap() - heapBefore;
+        long offHeapBytes = table != null ? table.offHeapBytes() : 0;
+        long gcStart = System.nanoTime();
+        System.gc();
+        long gcMillis = (System.nanoTime() - gcStart) / 1_000_000;
+        Reference.reachabilityFence(store);
+        return new long[] {heapBytes, offHeapBytes, gcMillis, searchIndexed ? 1 : 0};
+    }
+    
+    @Override
+    public long[] dedupFootprint(boolean dedup, boolean intern, int requests) throws Exception {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            long heapBefore = usedHeap();
+            UrlShortenerService service = new UrlShortenerService(new SequenceShortCodeGenerator(6, 7368421, 1024),
+                    new MapLinkStore(Config.getCleanupBucketMillis()), new InMemoryUserStore(), MillisClock.system(),
+                    dedup ? new DedupIndex() : null, intern ? new UrlInterner() : null);
+            service.stopCleanupTask();
+            String[] users = new String[1000];
+            for (int i = 0; i < users.length; i++) {
+                users[i] = service.createUser("user-" + i).getId();
+            }
+            // У каждого клиента 50 своих кампаний из общего набора в 5000 (соседние клиенты
+            // делят часть кампаний), популярные кампании клиента сокращаются чаще;
+            // строка URL каждый раз новая, как из HTTP-запроса
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < requests; i++) {
+                int user = random.nextInt(users.length);
+                double r = random.nextDouble();
+                int campaign = (user * 5 + (int) (50 * r * r)) % 5000;
+                service.createShortUrl("https://shop.example.com/catalog/campaign-" + campaign
+                        + "?utm_source=newsletter&utm_medium=email&utm_campaign=autumn-sale-" + campaign,
+                        users[user]);
+            }
+            long heapBytes = usedHeap() - heapBefore;
+            long links = service.urls().count();
+            Reference.reachabilityFence(service);
+            service.shutdown();
+            return new long[] {heapBytes, links};
+        } finally {
+            System.setOut(out);
+        }
+    }
+    
+    @Override
+    public long[] transfer(String format, int links, int threads) throws Exception {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Path file = Files.createTempFile("shortener-transfer", "." + format);
+        try {
+            UrlShortenerService source = new UrlShortenerService(new SequenceShortCodeGenerator(6, 7368421, 1024),
+                    new MapLinkStore(Config.getCleanupBucketMillis()), new InMemoryUserStore(), MillisClock.system(),
+                    null, null);
+            source.stopCleanupTask();
+            String[] users = new String[1000];
+            for (int i = 0; i < users.length; i++) {
+                users[i] = source.createUser("user-" + i).getId();
+            }
+            for (int i = 0; i < links; i++) {
+                source.createShortUrl("https://example.com/page/" + i + "?ref=transfer",
+                        users[i % users.length], i % 4 == 0 ? 1000 : null);
+            }
+            LinkTransfer.Format transferFormat = LinkTransfer.Format.of(file);
+            
+            long started = System.nanoTime();
+            LinkTransfer.exportTo(source, file, transferFormat);
+            long exportNanos = System.nanoTime() - started;
+            source.shutdown();
+            
+            UrlShortenerService target = new UrlShortenerService(new SequenceShortCodeGenerator(6, 7368421, 1024),
+                    new MapLinkStore(Config.getCleanupBucketMillis()), new InMemoryUserStore(), MillisClock.system(),
+                    null, null);
+            target.stopCleanupTask();
+            started = System.nanoTime();
+            LinkTransfer.ImportResult result = LinkTransfer.importFrom(target, file, transferFormat, threads);
+            long importNanos = System.nanoTime() - started;
+            target.shutdown();
+            return new long[] {exportNanos, Files.size(file), importNanos, result.getLinks()};
+        } finally {
+            Files.deleteIfExists(file);
+            System.setOut(out);
+        }
+    }
+    
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    private String randomUserId() {
+        return userIds[random(userIds.length)];
+    }
+    
+    private static int random(int bound) {
+        return ThreadLocalRandom.current().nextInt(bound);
+    }
+}
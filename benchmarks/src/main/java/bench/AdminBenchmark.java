@@ -0,0 +1,39 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность операций владельца ссылки из нескольких потоков сразу:
+ * смена лимита и создание с удалением. Обе операции пишут в журнал сервиса.
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar AdminBenchmark -p datasetSize=100000 -t 4
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class AdminBenchmark {
+    
+    @Benchmark
+    public void updateUrlLimit(ShortenerState state) throws Exception {
+        state.driver.updateLimit();
+    }
+    
+    @Benchmark
+    public void createAndDeleteUrl(ShortenerState state) throws Exception {
+        state.driver.createAndDelete();
+    }
+}
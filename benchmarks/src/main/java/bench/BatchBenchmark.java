@@ -0,0 +1,82 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пакет из {@value #BATCH} ссылок: вызовы по одной против пакетного API.
+ * Результат — на одну ссылку. Создание наращивает хранилище, поэтому для него
+ * сервис пересоздается перед каждой итерацией.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class BatchBenchmark {
+    static final int BATCH = 1000;
+    
+    /**
+     * Сервис, заново заполняемый перед каждой итерацией: рост хранилища от итерации
+     * к итерации не подменяет замер создания сборкой мусора.
+     */
+    @State(Scope.Benchmark)
+    public static class FreshState {
+        @Param({"100000"})
+        public int datasetSize;
+        
+        @Param({"map"})
+        public String engine;
+        
+        ShortenerDriver driver;
+        
+        @Setup(Level.Iteration)
+        public void setUp() throws Exception {
+            driver = ShortenerDriver.load();
+            driver.setUp(datasetSize, 1000, engine);
+        }
+        
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            driver.tearDown();
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object createEach(FreshState state) throws Exception {
+        return state.driver.createEach(BATCH);
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object createAll(FreshState state) {
+        return state.driver.createAll(BATCH);
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object resolveEach(ShortenerState state) {
+        return state.driver.resolveEach(BATCH);
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object resolveAll(ShortenerState state) {
+        return state.driver.resolveAll(BATCH);
+    }
+}
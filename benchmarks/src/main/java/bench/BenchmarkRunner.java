@@ -0,0 +1,36 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Прогон бенчмарков по матрице "размер данных x число потоков" с профилировщиком
+ * аллокаций. Результаты каждого числа потоков пишутся в jmh-result-t{N}.json.
+ *
+ * <pre>
+ * java -Dbench.sizes=10000,1000000 -Dbench.threads=1,8 -cp benchmarks/target/benchmarks.jar bench.BenchmarkRunner Redirect
+ * </pre>
+ */
+public class BenchmarkRunner {
+    
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "bench\\..*Benchmark.*";
+        String[] sizes = System.getProperty("bench.sizes", "10000,100000,1000000").split(",");
+        String[] threads = System.getProperty("bench.threads", "1,4,8").split(",");
+        
+        for (String threadCount : threads) {
+            int count = Integer.parseInt(threadCount.trim());
+            new Runner(new OptionsBuilder()
+                    .include(include)
+                    .param("datasetSize", sizes)
+                    .threads(count)
+                    .addProfiler(GCProfiler.class)
+                    .result("jmh-result-t" + count + ".json")
+                    .resultFormat(ResultFormatType.JSON)
+                    .build()).run();
+        }
+    }
+}
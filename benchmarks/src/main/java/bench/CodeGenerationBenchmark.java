@@ -0,0 +1,57 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Скорость создания ссылок по мере заполнения пространства кодов. Используются
+ * трехсимвольные коды (238 328 значений): перед каждой итерацией сервис заполняется
+ * на fillRatio, замеряется создание следующего 1% пространства.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, batchSize = 1)
+@Measurement(iterations = 10, batchSize = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodeGenerationBenchmark {
+    private static final int CODE_LENGTH = 3;
+    private static final int BATCH = 2_383;
+    
+    @Param({"random", "sequence"})
+    public String generator;
+    
+    @Param({"0.0", "0.5", "0.9", "0.98"})
+    public double fillRatio;
+    
+    private ShortenerDriver driver;
+    
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        driver = ShortenerDriver.load();
+        driver.setUpCodeSpace(generator, CODE_LENGTH, fillRatio);
+    }
+    
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        driver.tearDown();
+    }
+    
+    @Benchmark
+    public void createNextPercent() throws Exception {
+        driver.createBatch(BATCH);
+    }
+}
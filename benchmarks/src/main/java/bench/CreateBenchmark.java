@@ -0,0 +1,34 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Создание короткой ссылки поверх заполненного хранилища, проверка и нормализация URL
+ * входят в замер. Таблица растет во время замера, поэтому итерации короткие.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class CreateBenchmark {
+    
+    @Benchmark
+    public Object createShortUrl(ShortenerState state) throws Exception {
+        return state.driver.create();
+    }
+    
+    /** URL, который нормализатору приходится переписывать: регистр хоста и порт по умолчанию. */
+    @Benchmark
+    public Object createShortUrlDenormalized(ShortenerState state) throws Exception {
+        return state.driver.create("HTTPS://Example.COM:443/new-campaign?utm_source=bench");
+    }
+}
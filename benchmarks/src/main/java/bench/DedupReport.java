@@ -0,0 +1,24 @@
+package bench;
+
+/**
+ * Память сервиса на наборе повторных сокращений: клиенты раз за разом сокращают одни и те же
+ * ссылки кампаний. Сравниваются режимы без повторов (dedup) и с общими строками URL (intern).
+ *
+ * <pre>
+ * java -Xmx4g -cp benchmarks/target/benchmarks.jar bench.DedupReport 1000000
+ * </pre>
+ */
+public class DedupReport {
+    
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0].trim()) : 1_000_000;
+        System.out.printf("%-14s %12s %12s %10s %14s%n", "mode", "requests", "links", "heap MB", "bytes/request");
+        boolean[][] modes = {{false, false}, {false, true}, {true, false}, {true, true}};
+        for (boolean[] mode : modes) {
+            long[] result = ShortenerDriver.load().dedupFootprint(mode[0], mode[1], requests);
+            String name = mode[0] && mode[1] ? "dedup+intern" : mode[0] ? "dedup" : mode[1] ? "intern" : "off";
+            System.out.printf("%-14s %12d %12d %10.1f %14d%n", name, requests, result[1],
+                    result[0] / 1048576.0, result[0] / requests);
+        }
+    }
+}
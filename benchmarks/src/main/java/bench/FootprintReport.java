@@ -0,0 +1,30 @@
+package bench;
+
+/**
+ * Сравнение памяти, занятой ссылками в хранилище на куче ({@code MapLinkStore}) и вне кучи
+ * ({@code OffHeapLinkStore}) вместе с их индексами, и длительности полной сборки мусора
+ * при живом хранилище. Поисковый индекс ведется по {@code store.search.index}, как в сервисе.
+ * Движки заполняются по очереди в одной JVM: к следующему замеру хранилище предыдущего
+ * уже недостижимо.
+ *
+ * <pre>
+ * java -Xmx8g -cp benchmarks/target/benchmarks.jar bench.FootprintReport 1000000 10000000
+ * </pre>
+ */
+public class FootprintReport {
+    
+    public static void main(String[] args) throws Exception {
+        String[] sizes = args.length > 0 ? args : new String[] {"1000000"};
+        System.out.printf("%-8s %6s %12s %14s %14s %12s %8s%n",
+                "engine", "search", "links", "heap MB", "off-heap MB", "bytes/link", "gc ms");
+        for (String size : sizes) {
+            int links = Integer.parseInt(size.trim());
+            for (String engine : new String[] {"map", "offheap"}) {
+                ShortenerDriver driver = ShortenerDriver.load();
+                long[] result = driver.footprint(engine, links);
+                System.out.printf("%-8s %6s %12d %14.1f %14.1f %12d %8d%n", engine, result[3] != 0 ? "on" : "off", links,
+                        result[0] / 1048576.0, result[1] / 1048576.0, (result[0] + result[1]) / links, result[2]);
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтения, которые затрагивают много ссылок: ссылки пользователя, поиск и рейтинг.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class QueryBenchmark {
+    
+    @Benchmark
+    public Object getUserUrls(ShortenerState state) {
+        return state.driver.userUrls();
+    }
+    
+    @Benchmark
+    public Object getUserUrlsLatest50(ShortenerState state) {
+        return state.driver.userUrlsPage(0, 50);
+    }
+    
+    @Benchmark
+    public Object searchUrls(ShortenerState state) {
+        return state.driver.search();
+    }
+    
+    @Benchmark
+    public Object getTopUrls(ShortenerState state) {
+        return state.driver.topUrls();
+    }
+}
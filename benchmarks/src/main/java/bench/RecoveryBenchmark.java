@@ -0,0 +1,53 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Время восстановления сервиса с диска: из одного журнала или из снимка.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class RecoveryBenchmark {
+    
+    @Param({"1000000", "10000000"})
+    public int links;
+    
+    @Param({"log", "snapshot"})
+    public String source;
+    
+    private ShortenerDriver driver;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        driver = ShortenerDriver.load();
+        driver.prepareStorage(links, source.equals("snapshot"));
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        driver.deleteStorage();
+    }
+    
+    @Benchmark
+    public long recover() throws Exception {
+        return driver.recoverStorage();
+    }
+}
@@ -0,0 +1,73 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Путь перехода по короткой ссылке: попадание, промах, просроченная ссылка
+ * и ссылка с лимитом (атомарный учет перехода).
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class RedirectBenchmark {
+    
+    @Benchmark
+    public Object hit(ShortenerState state) throws Exception {
+        return state.driver.hit();
+    }
+    
+    @Benchmark
+    public Object hotHit(ShortenerState state) throws Exception {
+        return state.driver.hotHit();
+    }
+    
+    @Benchmark
+    public Object limitedHit(ShortenerState state) throws Exception {
+        return state.driver.limitedHit();
+    }
+    
+    @Benchmark
+    public Object miss(ShortenerState state) throws Exception {
+        return state.driver.miss();
+    }
+    
+    @Benchmark
+    public Object expired(ShortenerState state) throws Exception {
+        return state.driver.expired();
+    }
+    
+    @Benchmark
+    public Object limitReached(ShortenerState state) throws Exception {
+        return state.driver.limitReached();
+    }
+    
+    @Benchmark
+    public Object resolveHit(ShortenerState state) {
+        return state.driver.resolve("hit");
+    }
+    
+    @Benchmark
+    public Object resolveMiss(ShortenerState state) {
+        return state.driver.resolve("miss");
+    }
+    
+    @Benchmark
+    public Object resolveExpired(ShortenerState state) {
+        return state.driver.resolve("expired");
+    }
+    
+    @Benchmark
+    public Object resolveLimitReached(ShortenerState state) {
+        return state.driver.resolve("limitReached");
+    }
+}
@@ -0,0 +1,54 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск по ссылкам пользователя: индекс против прежнего обхода всех ссылок.
+ * Ссылки набора вида {@code https://example.com/campaign/<i>?utm_source=bench}; запросы -
+ * узкий из двух слов, номер кампании подстрокой и слово, которое есть в каждой ссылке.
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar SearchBenchmark -p datasetSize=1000000 -p userCount=10
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SearchBenchmark {
+    @Param({"campaign/4242", "4242", "bench"})
+    public String query;
+    
+    @Benchmark
+    public Object searchFirst50(ShortenerState state) {
+        return state.driver.search(query, false, 50);
+    }
+    
+    @Benchmark
+    public Object searchPrefixFirst50(ShortenerState state) {
+        return state.driver.search(query, true, 50);
+    }
+    
+    @Benchmark
+    public Object searchAll(ShortenerState state) {
+        return state.driver.search(query, false, Integer.MAX_VALUE);
+    }
+    
+    @Benchmark
+    public Object searchScanAll(ShortenerState state) {
+        return state.driver.searchScan(query);
+    }
+}
@@ -0,0 +1,136 @@
+package bench;
+
+/**
+ * Мост между бенчмарками и сервисом. JMH не допускает бенчмарки в пакете по умолчанию,
+ * а классы сервиса лежат именно там и не видны из именованных пакетов. Поэтому
+ * бенчмарки работают через этот интерфейс, а реализация ({@code ShortenerFixture})
+ * лежит в пакете по умолчанию рядом с сервисом.
+ */
+public interface ShortenerDriver {
+    
+    static ShortenerDriver load() {
+        try {
+            return (ShortenerDriver) Class.forName("ShortenerFixture").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("ShortenerFixture не найден в classpath", e);
+        }
+    }
+    
+    /**
+     * Заполняет сервис datasetSize ссылками, распределенными по userCount пользователям.
+     * Ссылки лежат в хранилище {@code engine}: "map" или "offheap", к которому через "+"
+     * можно добавить "cache" (кэш горячих ссылок) и "bloom" (фильтр Блума), например "offheap+cache+bloom".
+     */
+    void setUp(int datasetSize, int userCount, String engine) throws Exception;
+    
+    /**
+     * Сервис с генератором {@code generator} ("random" или "sequence") и пространством
+     * кодов длины codeLength, заполненным на долю fillRatio.
+     */
+    void setUpCodeSpace(String generator, int codeLength, double fillRatio) throws Exception;
+    
+    void tearDown();
+    
+    Object hit() throws Exception;
+    
+    /** Переход по ссылке с перекосом: малая доля ссылок получает большую часть переходов. */
+    Object hotHit() throws Exception;
+    
+    Object limitedHit() throws Exception;
+    
+    Object miss() throws Exception;
+    
+    Object expired() throws Exception;
+    
+    /** Переход по ссылке, лимит которой уже исчерпан. */
+    Object limitReached() throws Exception;
+    
+    /**
+     * Переход через API без исключений; {@code outcome} выбирает код: "hit", "miss",
+     * "expired" или "limitReached".
+     */
+    Object resolve(String outcome);
+    
+    Object create() throws Exception;
+    
+    /** Создание ссылки на заданный URL: проверка и нормализация входят в замер. */
+    Object create(String url) throws Exception;
+    
+    /** Только проверка и нормализация URL, без сервиса. */
+    Object normalizeUrl(String url) throws Exception;
+    
+    void createBatch(int count) throws Exception;
+    
+    /** {@code count} ссылок одного пользователя вызовами {@code createShortUrl} по одной. */
+    Object createEach(int count) throws Exception;
+    
+    /** Те же {@code count} ссылок одним вызовом {@code createShortUrls}. */
+    Object createAll(int count);
+    
+    /** {@code count} переходов по существующим кодам вызовами {@code resolve} по одному. */
+    Object resolveEach(int count);
+    
+    /** Те же {@code count} переходов одним вызовом {@code resolveAll}. */
+    Object resolveAll(int count);
+    
+    Object userUrls();
+    
+    Object userUrlsPage(int offset, int limit);
+    
+    Object search();
+    
+    /**
+     * Поиск по ссылкам случайного пользователя: до {@code limit} самых новых совпадений.
+     */
+    Object search(String query, boolean prefix, int limit);
+    
+    /**
+     * Прежний поиск: обход всех ссылок с переводом URL и кода в нижний регистр.
+     */
+    Object searchScan(String query);
+    
+    Object topUrls();
+    
+    /** Смена лимита переходов случайной ссылки набора ее владельцем. */
+    void updateLimit() throws Exception;
+    
+    /** Создание ссылки случайным пользователем и ее удаление. */
+    void createAndDelete() throws Exception;
+    
+    /** Возвращает в хранилище просроченные ссылки, удаленные предыдущей очисткой. */
+    void restoreExpired();
+    
+    void cleanup();
+    
+    /**
+     * Готовит каталог хранилища с {@code links} ссылками: только журнал или снимок.
+     */
+    void prepareStorage(int links, boolean snapshot) throws Exception;
+    
+    /**
+     * Восстанавливает новый сервис из подготовленного каталога, возвращает число ссылок.
+     */
+    long recoverStorage() throws Exception;
+    
+    void deleteStorage() throws Exception;
+    
+    /**
+     * Заполняет хранилище {@code engine} ("map" или "offheap") с индексами по настройкам
+     * ссылками и замеряет занятую память: {байты в куче, байты вне кучи, длительность полной
+     * сборки в мс, 1 - если ведется поисковый индекс}.
+     */
+    long[] footprint(String engine, int links) throws Exception;
+    
+    /**
+     * Прогоняет {@code requests} запросов на создание по набору "кампаний", которые пользователи
+     * сокращают повторно, и замеряет сервис: {байты в куче, число ссылок}.
+     */
+    long[] dedupFootprint(boolean dedup, boolean intern, int requests) throws Exception;
+    
+    /**
+     * Выгружает сервис с {@code links} ссылками в файл формата {@code format} ("csv" или "ndjson")
+     * и загружает его в новый сервис в {@code threads} потоков:
+     * {выгрузка в нс, размер файла в байтах, загрузка в нс, загружено ссылок}.
+     */
+    long[] transfer(String format, int links, int threads) throws Exception;
+}
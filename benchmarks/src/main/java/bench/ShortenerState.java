@@ -0,0 +1,36 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Общий для всех потоков сервис с datasetSize ссылками.
+ */
+@State(Scope.Benchmark)
+public class ShortenerState {
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int datasetSize;
+    
+    @Param({"1000"})
+    public int userCount;
+    
+    @Param({"map"})
+    public String engine;
+    
+    ShortenerDriver driver;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        driver = ShortenerDriver.load();
+        driver.setUp(datasetSize, userCount, engine);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        driver.tearDown();
+    }
+}
@@ -0,0 +1,29 @@
+package bench;
+
+/**
+ * Скорость потоковой выгрузки и загрузки ссылок в CSV и NDJSON в зависимости от числа
+ * потоков разбора.
+ *
+ * <pre>
+ * java -Xmx4g -cp benchmarks/target/benchmarks.jar bench.TransferReport 1000000 1,2,4
+ * </pre>
+ */
+public class TransferReport {
+    
+    public static void main(String[] args) throws Exception {
+        int links = args.length > 0 ? Integer.parseInt(args[0].trim()) : 1_000_000;
+        String[] threadCounts = (args.length > 1 ? args[1] : "1," + Runtime.getRuntime().availableProcessors())
+                .split(",");
+        System.out.printf("%-8s %8s %10s %10s %12s %10s %12s%n",
+                "format", "threads", "file MB", "export ms", "export/s", "import ms", "import/s");
+        for (String format : new String[] {"csv", "ndjson"}) {
+            for (String threadCount : threadCounts) {
+                int threads = Integer.parseInt(threadCount.trim());
+                long[] result = ShortenerDriver.load().transfer(format, links, threads);
+                System.out.printf("%-8s %8d %10.1f %10d %12.0f %10d %12.0f%n", format, threads,
+                        result[1] / 1048576.0, result[0] / 1_000_000, links * 1e9 / result[0],
+                        result[2] / 1_000_000, result[3] * 1e9 / result[2]);
+            }
+        }
+    }
+}
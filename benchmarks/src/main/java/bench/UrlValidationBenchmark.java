@@ -0,0 +1,50 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка URL при создании ссылки: разбор одним проходом против прежней проверки
+ * регулярным выражением, которое компилировалось на каждый вызов.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UrlValidationBenchmark {
+    
+    @Param({"https://example.com/new-campaign?utm_source=bench",
+            "HTTPS://Example.COM:443/new-campaign?utm_source=bench"})
+    public String url;
+    
+    private ShortenerDriver driver;
+    
+    @Setup
+    public void setUp() {
+        driver = ShortenerDriver.load();
+    }
+    
+    @Benchmark
+    public Object normalize() throws Exception {
+        return driver.normalizeUrl(url);
+    }
+    
+    /** Прежняя проверка сервиса, для сравнения. */
+    @Benchmark
+    public boolean regex() {
+        return !url.trim().isEmpty() && url.matches("^https?://.*") && url.length() <= 2048;
+    }
+}
@@ -0,0 +1,349 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Журнал сервиса с записью в фоновом потоке.
+ *
+ * <p>Вызов ниже уровня {@code log.level} - одно сравнение, без выделений: для одного и двух
+ * аргументов есть отдельные перегрузки. Включенный вызов кладет событие с шаблоном и аргументами
+ * в ограниченную очередь ({@code log.queue.size}) и не ждет; подстановка {@code {}}, форматирование
+ * и запись идут в потоке {@code log-appender}, который сбрасывает вывод раз на пачку. Поэтому
+ * аргументы должны быть неизменяемыми или уже строками. В переполненной очереди событие
+ * отбрасывается, а число потерянных сообщений пишется в журнал следом, если включен уровень WARN.
+ * На пустой очереди поток записи спит, пока его не разбудит следующее сообщение.
+ *
+ * <p>Формат {@code log.format}: {@code text} - строка {@code время уровень [поток] класс - сообщение},
+ * {@code json} - JSON-объект на строку. Вывод - файл {@code log.file} или консоль, если он не задан.
+ */
+public final class AsyncLogger {
+    private static final int BATCH_SIZE = 1024;
+    private static final long FLUSH_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+    
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR, OFF;
+        
+        static Level parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return INFO;
+            }
+        }
+    }
+    
+    public enum Format { TEXT, JSON }
+    
+    private static final Queue<Event> queue = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger queued = new AtomicInteger();
+    private static final AtomicLong enqueued = new AtomicLong();
+    private static final LongAdder dropped = new LongAdder();
+    /** Поток записи уснул или засыпает на пустой очереди и ждет, что его разбудят. */
+    private static final AtomicBoolean appenderIdle = new AtomicBoolean();
+    private static volatile int threshold;
+    private static volatile Format format;
+    private static volatile int capacity;
+    /** Вывод или null - тогда текущий {@code System.out}. */
+    private static volatile Writer target;
+    private static volatile long written;
+    private static long reportedDropped;
+    private static final Thread appender;
+    
+    static {
+        threshold = Level.parse(Config.getLogLevel()).ordinal();
+        format = "json".equalsIgnoreCase(Config.getLogFormat().trim()) ? Format.JSON : Format.TEXT;
+        capacity = Math.max(1, Config.getLogQueueSize());
+        String file = Config.getLogFile();
+        if (file != null && !file.isBlank()) {
+            try {
+                target = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.out.println("Ошибка открытия журнала " + file + ", вывод в консоль: " + e.getMessage());
+            }
+        }
+        appender = new Thread(AsyncLogger::append, "log-appender");
+        appender.setDaemon(true);
+        appender.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(AsyncLogger::flush, "log-flush"));
+    }
+    
+    private final String name;
+    
+    private AsyncLogger(String name) {
+        this.name = name;
+    }
+    
+    public static AsyncLogger forClass(Class<?> type) {
+        return new AsyncLogger(type.getSimpleName());
+    }
+    
+    public static void setLevel(Level level) {
+        threshold = level.ordinal();
+    }
+    
+    /**
+     * Меняет уровень, формат, вывод и размер очереди; для тестов.
+     *
+     * @param writer вывод или null для консоли
+     */
+    static void configure(Level level, Format newFormat, Writer writer, int queueSize) {
+        flush();
+        threshold = level.ordinal();
+        format = newFormat;
+        target = writer;
+        capacity = queueSize;
+    }
+    
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() >= threshold;
+    }
+    
+    public boolean isDebugEnabled() {
+        return isEnabled(Level.DEBUG);
+    }
+    
+    public void debug(String message) {
+        if (isEnabled(Level.DEBUG)) {
+            enqueue(Level.DEBUG, message, null);
+        }
+    }
+    
+    public void debug(String template, Object arg) {
+        if (isEnabled(Level.DEBUG)) {
+            enqueue(Level.DEBUG, template, new Object[]{arg});
+        }
+    }
+    
+    public void debug(String template, Object arg1, Object arg2) {
+        if (isEnabled(Level.DEBUG)) {
+            enqueue(Level.DEBUG, template, new Object[]{arg1, arg2});
+        }
+    }
+    
+    public void info(String message) {
+        if (isEnabled(Level.INFO)) {
+            enqueue(Level.INFO, message, null);
+        }
+    }
+    
+    public void info(String template, Object arg) {
+        if (isEnabled(Level.INFO)) {
+            enqueue(Level.INFO, template, new Object[]{arg});
+        }
+    }
+    
+    public void info(String template, Object arg1, Object arg2) {
+        if (isEnabled(Level.INFO)) {
+            enqueue(Level.INFO, template, new Object[]{arg1, arg2});
+        }
+    }
+    
+    public void warn(String template, Object arg) {
+        if (isEnabled(Level.WARN)) {
+            enqueue(Level.WARN, template, new Object[]{arg});
+        }
+    }
+    
+    public void warn(String template, Object arg1, Object arg2) {
+        if (isEnabled(Level.WARN)) {
+            enqueue(Level.WARN, template, new Object[]{arg1, arg2});
+        }
+    }
+    
+    public void error(String template, Object arg) {
+        if (isEnabled(Level.ERROR)) {
+            enqueue(Level.ERROR, template, new Object[]{arg});
+        }
+    }
+    
+    public void error(String template, Object arg1, Object arg2) {
+        if (isEnabled(Level.ERROR)) {
+            enqueue(Level.ERROR, template, new Object[]{arg1, arg2});
+        }
+    }
+    
+    /**
+     * Ждет, пока записано все, что было в очереди на момент вызова (не дольше 5 секунд).
+     */
+    public static void flush() {
+        long goal = enqueued.get();
+        long deadline = System.nanoTime() + FLUSH_TIMEOUT_NANOS;
+        while (written < goal && System.nanoTime() < deadline) {
+            LockSupport.unpark(appender);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+    
+    /** Сообщений, отброшенных из-за полной очереди. */
+    public static long getDropped() {
+        return dropped.sum();
+    }
+    
+    private void enqueue(Level level, String template, Object[] args) {
+        if (queued.incrementAndGet() > capacity) {
+            queued.decrementAndGet();
+            dropped.increment();
+            return;
+        }
+        queue.offer(new Event(System.currentTimeMillis(), level, name, Thread.currentThread().getName(),
+                template, args));
+        enqueued.incrementAndGet();
+        // Будит только первое сообщение после засыпания, остальные видят false одним чтением
+        if (appenderIdle.get() && appenderIdle.compareAndSet(true, false)) {
+            LockSupport.unpark(appender);
+        }
+    }
+    
+    private static void append() {
+        StringBuilder text = new StringBuilder(8192);
+        while (true) {
+            int count = 0;
+            Event event;
+            while (count < BATCH_SIZE && (event = queue.poll()) != null) {
+                queued.decrementAndGet();
+                event.appendTo(text, format);
+                count++;
+            }
+            long lost = dropped.sum();
+            if (lost > reportedDropped) {
+                if (isEnabled(Level.WARN)) {
+                    new Event(System.currentTimeMillis(), Level.WARN, AsyncLogger.class.getSimpleName(),
+                            Thread.currentThread().getName(), "Потеряно {} сообщений журнала: очередь переполнена",
+                            new Object[]{lost - reportedDropped}).appendTo(text, format);
+                }
+                reportedDropped = lost;
+            }
+            if (text.length() > 0) {
+                write(text);
+                text.setLength(0);
+            }
+            if (count > 0) {
+                written += count;
+            } else {
+                appenderIdle.set(true);
+                // Сообщение после offer читает флаг, а здесь после флага читается очередь:
+                // одна из сторон обязательно видит другую, и сообщение не остается без записи
+                if (queue.isEmpty()) {
+                    LockSupport.park(AsyncLogger.class);
+                }
+                appenderIdle.set(false);
+            }
+        }
+    }
+    
+    private static void write(CharSequence text) {
+        Writer writer = target;
+        try {
+            if (writer != null) {
+                writer.append(text);
+                writer.flush();
+            } else {
+                PrintStream out = System.out;
+                out.print(text);
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.out.println("Ошибка записи журнала сервиса: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Подставляет аргументы вместо {@code {}} по порядку; лишние аргументы дописываются в конец.
+     */
+    static String format(String template, Object[] args) {
+        if (args == null || args.length == 0) {
+            return template;
+        }
+        StringBuilder message = new StringBuilder(template.length() + 32);
+        int argIndex = 0;
+        int from = 0;
+        int at;
+        while (argIndex < args.length && (at = template.indexOf("{}", from)) >= 0) {
+            message.append(template, from, at).append(args[argIndex++]);
+            from = at + 2;
+        }
+        message.append(template, from, template.length());
+        while (argIndex < args.length) {
+            message.append(' ').append(args[argIndex++]);
+        }
+        return message.toString();
+    }
+    
+    private static void appendJson(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+    
+    private static final class Event {
+        final long timeMillis;
+        final Level level;
+        final String logger;
+        final String thread;
+        final String template;
+        final Object[] args;
+        
+        Event(long timeMillis, Level level, String logger, String thread, String template, Object[] args) {
+            this.timeMillis = timeMillis;
+            this.level = level;
+            this.logger = logger;
+            this.thread = thread;
+            this.template = template;
+            this.args = args;
+        }
+        
+        void appendTo(StringBuilder text, Format format) {
+            String time = TIME_FORMAT.format(Instant.ofEpochMilli(timeMillis));
+            String message = format(template, args);
+            if (format == Format.JSON) {
+                text.append("{\"time\":\"").append(time).append("\",\"level\":\"").append(level)
+                        .append("\",\"thread\":");
+                appendJson(text, thread);
+                text.append(",\"logger\":\"").append(logger).append("\",\"message\":");
+                appendJson(text, message);
+                text.append("}\n");
+            } else {
+                text.append(time).append(' ').append(level);
+                for (int i = level.name().length(); i < 5; i++) {
+                    text.append(' ');
+                }
+                text.append(" [").append(thread).append("] ").append(logger).append(" - ").append(message)
+                        .append('\n');
+            }
+        }
+    }
+}
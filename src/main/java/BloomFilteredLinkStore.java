@@ -0,0 +1,106 @@
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище с фильтром Блума перед другим хранилищем: запрос несуществующего кода
+ * отсекается фильтром, не доходя до основной таблицы. Фильтр обновляется при создании,
+ * удалении и очистке ссылок.
+ *
+ * <p>Код попадает в фильтр до того, как ссылка станет видна в хранилище, и покидает его
+ * после удаления, поэтому фильтр никогда не отвергает существующую ссылку.
+ */
+public class BloomFilteredLinkStore implements LinkStore {
+    private final LinkStore delegate;
+    private final CountingBloomFilter filter;
+    
+    public BloomFilteredLinkStore(LinkStore delegate, long expectedLinks) {
+        this.delegate = delegate;
+        this.filter = new CountingBloomFilter(expectedLinks, 0.01);
+        delegate.stream().forEach(shortUrl -> filter.add(shortUrl.getShortCode()));
+    }
+    
+    @Override
+    public ShortUrl get(String shortCode) {
+        return filter.mightContain(shortCode) ? delegate.get(shortCode) : null;
+    }
+    
+    @Override
+    public boolean putIfAbsent(ShortUrl shortUrl) {
+        filter.add(shortUrl.getShortCode());
+        if (delegate.putIfAbsent(shortUrl)) {
+            return true;
+        }
+        filter.remove(shortUrl.getShortCode());
+        return false;
+    }
+    
+    @Override
+    public List<ShortUrl> putAllIfAbsent(List<ShortUrl> shortUrls) {
+        for (ShortUrl shortUrl : shortUrls) {
+            filter.add(shortUrl.getShortCode());
+        }
+        List<ShortUrl> rejected = delegate.putAllIfAbsent(shortUrls);
+        for (ShortUrl shortUrl : rejected) {
+            filter.remove(shortUrl.getShortCode());
+        }
+        return rejected;
+    }
+    
+    @Override
+    public ShortUrl put(ShortUrl shortUrl) {
+        filter.add(shortUrl.getShortCode());
+        ShortUrl previous = delegate.put(shortUrl);
+        if (previous != null) {
+            filter.remove(previous.getShortCode());
+        }
+        return previous;
+    }
+    
+    @Override
+    public boolean remove(ShortUrl shortUrl) {
+        if (!delegate.remove(shortUrl)) {
+            return false;
+        }
+        filter.remove(shortUrl.getShortCode());
+        return true;
+    }
+    
+    @Override
+    public List<ShortUrl> findByUser(String userId, int offset, int limit) {
+        return delegate.findByUser(userId, offset, limit);
+    }
+    
+    @Override
+    public int countByUser(String userId) {
+        return delegate.countByUser(userId);
+    }
+    
+    @Override
+    public List<ShortUrl> search(String userId, String query, boolean prefix, int offset, int limit) {
+        return delegate.search(userId, query, prefix, offset, limit);
+    }
+    
+    @Override
+    public List<ShortUrl> pollExpired(long nowMillis) {
+        return delegate.pollExpired(nowMillis);
+    }
+    
+    @Override
+    public List<ShortUrl> topByAccess(int n) {
+        return delegate.topByAccess(n);
+    }
+    
+    @Override
+    public Stream<ShortUrl> stream() {
+        return delegate.stream();
+    }
+    
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+    
+    public CountingBloomFilter getFilter() {
+        return filter;
+    }
+}
@@ -0,0 +1,56 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Грубые часы: время читается из volatile-поля, которое фоновый поток-демон
+ * обновляет раз в tickMillis. Чтение не обращается к системным часам и ничего не выделяет,
+ * погрешность — не больше одного шага.
+ */
+public class CachedMillisClock implements MillisClock {
+    private static CachedMillisClock shared;
+    
+    private final ScheduledExecutorService ticker;
+    private volatile long now;
+    
+    public CachedMillisClock(long tickMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Шаг часов должен быть положительным: " + tickMillis);
+        }
+        this.now = System.currentTimeMillis();
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "millis-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Общие на процесс часы: один поток-тикер на все сервисы. Шаг задается
+     * первым вызовом.
+     */
+    static synchronized CachedMillisClock shared(long tickMillis) {
+        if (shared == null) {
+            shared = new CachedMillisClock(tickMillis);
+        }
+        return shared;
+    }
+    
+    @Override
+    public long millis() {
+        return now;
+    }
+    
+    private void tick() {
+        // Системные часы могут откатиться назад, кэшированное время — нет
+        long current = System.currentTimeMillis();
+        if (current > now) {
+            now = current;
+        }
+    }
+    
+    public void stop() {
+        ticker.shutdownNow();
+    }
+}
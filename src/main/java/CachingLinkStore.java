@@ -0,0 +1,102 @@
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище с кэшем горячих ссылок перед другим хранилищем. Кэш хранит те же живые
+ * ссылки, что отдает основное хранилище, поэтому счетчики и лимиты переходов (в том числе
+ * после смены лимита) остаются общими, а учет лимитов не зависит от кэша.
+ * Удаление и замена ссылки вычищают ее из кэша.
+ */
+public class CachingLinkStore implements LinkStore {
+    private final LinkStore delegate;
+    private final HotLinkCache cache;
+    // Растет при каждом удалении и замене: загрузка, пересекшаяся с ними, не оставит в кэше устаревшую ссылку
+    private final AtomicLong removals = new AtomicLong();
+    
+    public CachingLinkStore(LinkStore delegate, int capacity) {
+        this.delegate = delegate;
+        this.cache = new HotLinkCache(capacity);
+    }
+    
+    @Override
+    public ShortUrl get(String shortCode) {
+        ShortUrl cached = cache.get(shortCode);
+        if (cached != null) {
+            return cached;
+        }
+        long removalsBefore = removals.get();
+        ShortUrl shortUrl = delegate.get(shortCode);
+        if (shortUrl != null && cache.put(shortUrl) && removals.get() != removalsBefore) {
+            cache.invalidate(shortCode);
+        }
+        return shortUrl;
+    }
+    
+    @Override
+    public boolean putIfAbsent(ShortUrl shortUrl) {
+        return delegate.putIfAbsent(shortUrl);
+    }
+    
+    @Override
+    public List<ShortUrl> putAllIfAbsent(List<ShortUrl> shortUrls) {
+        return delegate.putAllIfAbsent(shortUrls);
+    }
+    
+    @Override
+    public ShortUrl put(ShortUrl shortUrl) {
+        ShortUrl previous = delegate.put(shortUrl);
+        removals.incrementAndGet();
+        cache.invalidate(shortUrl.getShortCode());
+        return previous;
+    }
+    
+    @Override
+    public boolean remove(ShortUrl shortUrl) {
+        if (!delegate.remove(shortUrl)) {
+            return false;
+        }
+        removals.incrementAndGet();
+        cache.invalidate(shortUrl.getShortCode());
+        return true;
+    }
+    
+    @Override
+    public List<ShortUrl> findByUser(String userId, int offset, int limit) {
+        return delegate.findByUser(userId, offset, limit);
+    }
+    
+    @Override
+    public int countByUser(String userId) {
+        return delegate.countByUser(userId);
+    }
+    
+    @Override
+    public List<ShortUrl> search(String userId, String query, boolean prefix, int offset, int limit) {
+        return delegate.search(userId, query, prefix, offset, limit);
+    }
+    
+    @Override
+    public List<ShortUrl> pollExpired(long nowMillis) {
+        return delegate.pollExpired(nowMillis);
+    }
+    
+    @Override
+    public List<ShortUrl> topByAccess(int n) {
+        return delegate.topByAccess(n);
+    }
+    
+    @Override
+    public Stream<ShortUrl> stream() {
+        return delegate.stream();
+    }
+    
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+    
+    public HotLinkCache getCache() {
+        return cache;
+    }
+}
@@ -0,0 +1,37 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Метрики очистки просроченных ссылок: длительность и результат последнего прохода
+ * и накопленные итоги.
+ */
+public class CleanupMetrics {
+    private final AtomicLong sweepCount = new AtomicLong();
+    private final AtomicLong totalExpired = new AtomicLong();
+    private final AtomicLong totalSweepNanos = new AtomicLong();
+    private final AtomicLong maxSweepNanos = new AtomicLong();
+    private volatile long lastSweepNanos;
+    private volatile int lastExpiredCount;
+    
+    void recordSweep(long durationNanos, int expiredCount) {
+        sweepCount.incrementAndGet();
+        totalExpired.addAndGet(expiredCount);
+        totalSweepNanos.addAndGet(durationNanos);
+        maxSweepNanos.accumulateAndGet(durationNanos, Math::max);
+        lastSweepNanos = durationNanos;
+        lastExpiredCount = expiredCount;
+    }
+    
+    public long getSweepCount() { return sweepCount.get(); }
+    public long getTotalExpired() { return totalExpired.get(); }
+    public long getTotalSweepNanos() { return totalSweepNanos.get(); }
+    public long getMaxSweepNanos() { return maxSweepNanos.get(); }
+    public long getLastSweepNanos() { return lastSweepNanos; }
+    public int getLastExpiredCount() { return lastExpiredCount; }
+    
+    @Override
+    public String toString() {
+        return "проходов: " + getSweepCount() + ", удалено: " + getTotalExpired() +
+               ", последний проход: " + lastExpiredCount + " ссылок за " + lastSweepNanos / 1000 + " мкс" +
+               ", максимум: " + getMaxSweepNanos() / 1000 + " мкс";
+    }
+}
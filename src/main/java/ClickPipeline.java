@@ -0,0 +1,315 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Асинхронный учет переходов: время, Referer и User-Agent каждого перехода.
+ *
+ * <p>Поток перехода только кладет событие в {@link ClickRingBuffer} и никогда не ждет.
+ * Если очередь заполнена больше чем наполовину, принимается одно событие из
+ * {@code clicks.sample.rate} с весом, равным этому числу; если очередь полна, событие
+ * отбрасывается. Оба случая считаются.
+ *
+ * <p>Фоновый поток забирает события пачками и складывает их в поминутные счетчики
+ * по каждой ссылке за последние {@code clicks.rollup.minutes} минут, а если задан
+ * {@code clicks.log.file} - дописывает строки {@code время, код, вес, Referer, User-Agent}
+ * через табуляцию в файл, сбрасывая его раз на пачку. Пустую очередь поток ждет без
+ * таймаута, а будит его переход, заставший поток спящим.
+ */
+public class ClickPipeline implements LinkChangeListener, Closeable {
+    private static final AsyncLogger LOG = AsyncLogger.forClass(ClickPipeline.class);
+    private static final int BATCH_SIZE = 4096;
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    
+    private final UrlShortenerService service;
+    private final ClickRingBuffer buffer;
+    private final int sampleRate;
+    private final int sampleAbove;
+    private final int rollupMinutes;
+    private final Map<String, LinkClicks> rollups = new ConcurrentHashMap<>();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final Writer log;
+    private final Thread consumer;
+    /** Фоновый поток уснул или засыпает на пустой очереди и ждет, что его разбудят. */
+    private final AtomicBoolean consumerIdle = new AtomicBoolean();
+    private volatile boolean running = true;
+    private volatile long processed;
+    private long latestMinute;
+    private long evictedAtMinute;
+    
+    /**
+     * @param sampleRate    под нагрузкой принимается одно событие из стольких; 1 - без выборки
+     * @param rollupMinutes сколько последних минут хранить в поминутных счетчиках
+     * @param logFile       файл событий или null
+     */
+    ClickPipeline(UrlShortenerService service, int capacity, int sampleRate, int rollupMinutes, Path logFile)
+            throws IOException {
+        if (sampleRate <= 0 || rollupMinutes <= 0) {
+            throw new IllegalArgumentException("Частота выборки и число минут должны быть положительными");
+        }
+        this.service = service;
+        this.buffer = new ClickRingBuffer(capacity);
+        this.sampleRate = sampleRate;
+        this.sampleAbove = buffer.getCapacity() / 2;
+        this.rollupMinutes = rollupMinutes;
+        this.log = logFile == null ? null : Files.newBufferedWriter(logFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        this.consumer = new Thread(this::consume, "click-consumer");
+        consumer.setDaemon(true);
+    }
+    
+    /**
+     * Включает учет переходов из настроек; возвращает null, если {@code clicks.enabled=false}.
+     */
+    public static ClickPipeline openIfConfigured(UrlShortenerService service) throws IOException {
+        if (!Config.isClickTrackingEnabled()) {
+            return null;
+        }
+        String logFile = Config.getClickLogFile();
+        return open(service, Config.getClickBufferSize(), Config.getClickSampleRate(),
+                Config.getClickRollupMinutes(), logFile == null || logFile.isBlank() ? null : Paths.get(logFile));
+    }
+    
+    /**
+     * Подписывается на переходы сервиса и запускает фоновый поток.
+     */
+    public static ClickPipeline open(UrlShortenerService service, int capacity, int sampleRate, int rollupMinutes,
+                                     Path logFile) throws IOException {
+        ClickPipeline pipeline = new ClickPipeline(service, capacity, sampleRate, rollupMinutes, logFile);
+        service.addChangeListener(pipeline);
+        ServiceMetrics metrics = service.getMetrics();
+        if (metrics != null) {
+            metrics.gauge("clicks_queue_depth", pipeline::getQueueDepth);
+            metrics.gauge("clicks_published_total", pipeline::getPublished);
+            metrics.gauge("clicks_processed_total", pipeline::getProcessed);
+            metrics.gauge("clicks_dropped_total", pipeline::getDropped);
+            metrics.gauge("clicks_sampled_out_total", pipeline::getSampledOut);
+        }
+        pipeline.consumer.start();
+        return pipeline;
+    }
+    
+    @Override
+    public void onAccess(ShortUrl shortUrl, long nowMillis, String referrer, String userAgent) {
+        int weight = 1;
+        if (sampleRate > 1 && buffer.size() >= sampleAbove) {
+            if (ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+                sampledOut.increment();
+                return;
+            }
+            weight = sampleRate;
+        }
+        if (!buffer.offer(shortUrl.getShortCode(), nowMillis, referrer, userAgent, weight)) {
+            dropped.increment();
+            return;
+        }
+        // Будит только первый переход после засыпания, остальные видят false одним чтением
+        if (consumerIdle.get() && consumerIdle.compareAndSet(true, false)) {
+            LockSupport.unpark(consumer);
+        }
+    }
+    
+    @Override
+    public void onUrlDeleted(ShortUrl shortUrl) {
+        rollups.remove(shortUrl.getShortCode());
+    }
+    
+    /**
+     * Переходы по ссылке за последние минуты: начало минуты в миллисекундах -> число переходов.
+     * С выборкой под нагрузкой число оценочное.
+     */
+    public NavigableMap<Long, Long> getClicksPerMinute(String shortCode) {
+        LinkClicks clicks = rollups.get(shortCode);
+        return clicks == null ? Collections.emptyNavigableMap() : clicks.snapshot();
+    }
+    
+    /** Событий в очереди. */
+    public int getQueueDepth() { return buffer.size(); }
+    public int getCapacity() { return buffer.getCapacity(); }
+    /** Событий, принятых в очередь. */
+    public long getPublished() { return buffer.getOffered(); }
+    /** Событий, разобранных фоновым потоком. */
+    public long getProcessed() { return processed; }
+    /** Фоновый поток спит на пустой очереди. */
+    boolean isConsumerIdle() { return consumerIdle.get(); }
+    /** Событий, отброшенных из-за полной очереди. */
+    public long getDropped() { return dropped.sum(); }
+    /** Событий, пропущенных выборкой под нагрузкой (учтены весом принятых). */
+    public long getSampledOut() { return sampledOut.sum(); }
+    
+    /**
+     * Останавливает фоновый поток, дописав уже принятые события, и закрывает файл.
+     */
+    @Override
+    public void close() throws IOException {
+        service.removeChangeListener(this);
+        running = false;
+        if (consumer.getState() == Thread.State.NEW) {
+            // Поток не запускался: дописываем принятые события сами
+            drainAll();
+        } else {
+            LockSupport.unpark(consumer);
+            try {
+                consumer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (log != null) {
+            log.close();
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "в очереди: " + getQueueDepth() + " из " + getCapacity() + ", принято: " + getPublished()
+                + ", обработано: " + processed + ", отброшено: " + getDropped()
+                + ", пропущено выборкой: " + getSampledOut();
+    }
+    
+    private void consume() {
+        while (true) {
+            boolean stopping = !running;
+            if (drainAll() > 0) {
+                continue;
+            }
+            if (stopping) {
+                return;
+            }
+            consumerIdle.set(true);
+            // Переход после offer читает флаг, а здесь после флага читается хвост очереди:
+            // одна из сторон обязательно видит другую, и событие не остается без разбора
+            if (buffer.size() == 0 && running) {
+                LockSupport.park(this);
+            }
+            consumerIdle.set(false);
+        }
+    }
+    
+    /**
+     * Разбирает пачки, пока очередь не опустеет; вызывается только из одного потока.
+     *
+     * @return число разобранных событий
+     */
+    long drainAll() {
+        long total = 0;
+        int drained;
+        while ((drained = drainBatch()) > 0) {
+            total += drained;
+        }
+        return total;
+    }
+    
+    /**
+     * Разбирает одну пачку событий; вызывается только из одного потока.
+     *
+     * @return число разобранных событий
+     */
+    int drainBatch() {
+        int drained = buffer.drain(this::record, BATCH_SIZE);
+        if (drained == 0) {
+            return 0;
+        }
+        if (log != null) {
+            try {
+                log.flush();
+            } catch (IOException e) {
+                LOG.error("Ошибка записи событий переходов: {}", e.getMessage());
+            }
+        }
+        processed += drained;
+        if (latestMinute > evictedAtMinute) {
+            // Раз в минуту выбрасываем ссылки без переходов за все хранимые минуты
+            long oldest = latestMinute - rollupMinutes;
+            rollups.values().removeIf(clicks -> clicks.latestMinute() <= oldest);
+            evictedAtMinute = latestMinute;
+        }
+        return drained;
+    }
+    
+    private void record(String shortCode, long timeMillis, String referrer, String userAgent, int weight) {
+        long minute = timeMillis / MINUTE_MILLIS;
+        latestMinute = Math.max(latestMinute, minute);
+        LinkClicks clicks = rollups.get(shortCode);
+        if (clicks == null) {
+            clicks = rollups.computeIfAbsent(shortCode, code -> new LinkClicks(rollupMinutes));
+        }
+        clicks.add(minute, weight);
+        if (log != null) {
+            try {
+                log.write(timeMillis + "\t" + shortCode + "\t" + weight + "\t" + field(referrer) + "\t"
+                        + field(userAgent) + "\n");
+            } catch (IOException e) {
+                LOG.error("Ошибка записи событий переходов: {}", e.getMessage());
+            }
+        }
+    }
+    
+    private static String field(String value) {
+        if (value == null || value.isEmpty()) {
+            return "-";
+        }
+        return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+    
+    /**
+     * Поминутные счетчики одной ссылки в кольце из {@code rollupMinutes} ячеек.
+     */
+    private static final class LinkClicks {
+        private final long[] minutes;
+        private final long[] counts;
+        
+        LinkClicks(int rollupMinutes) {
+            this.minutes = new long[rollupMinutes];
+            this.counts = new long[rollupMinutes];
+            Arrays.fill(minutes, -1);
+        }
+        
+        synchronized void add(long minute, int weight) {
+            int index = (int) (minute % minutes.length);
+            if (minutes[index] == minute) {
+                counts[index] += weight;
+            } else if (minutes[index] < minute) {
+                minutes[index] = minute;
+                counts[index] = weight;
+            }
+            // Иначе событие старше хранимых минут
+        }
+        
+        synchronized long latestMinute() {
+            long latest = -1;
+            for (long minute : minutes) {
+                latest = Math.max(latest, minute);
+            }
+            return latest;
+        }
+        
+        synchronized NavigableMap<Long, Long> snapshot() {
+            NavigableMap<Long, Long> snapshot = new TreeMap<>();
+            long latest = latestMinute();
+            for (int i = 0; i < minutes.length; i++) {
+                if (minutes[i] >= 0 && minutes[i] > latest - minutes.length) {
+                    snapshot.put(minutes[i] * MINUTE_MILLIS, counts[i]);
+                }
+            }
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ограниченная очередь событий перехода без блокировок: много писателей, один читатель.
+ *
+ * <p>Событие лежит в параллельных массивах, поэтому публикация ничего не выделяет.
+ * У каждой ячейки есть номер очереди: писатель занимает позицию CAS-ом на хвосте,
+ * заполняет ячейку и открывает ее читателю записью номера; читатель освобождает ячейку
+ * для следующего круга тем же способом. Полная очередь не ждет: {@link #offer} возвращает false.
+ */
+public class ClickRingBuffer {
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final String[] codes;
+    private final String[] referrers;
+    private final String[] userAgents;
+    private final long[] times;
+    private final int[] weights;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    
+    /**
+     * Обработчик событий, вынутых из очереди.
+     */
+    public interface Handler {
+        void onClick(String shortCode, long timeMillis, String referrer, String userAgent, int weight);
+    }
+    
+    /**
+     * @param capacity емкость, округляется вверх до степени двойки
+     */
+    public ClickRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Емкость очереди должна быть от 1 до 2^30: " + capacity);
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.codes = new String[size];
+        this.referrers = new String[size];
+        this.userAgents = new String[size];
+        this.times = new long[size];
+        this.weights = new int[size];
+    }
+    
+    public int getCapacity() {
+        return mask + 1;
+    }
+    
+    /**
+     * Событий в очереди; под нагрузкой - приблизительно.
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(tail.get() - head, mask + 1));
+    }
+    
+    /**
+     * Событий, принятых в очередь за все время.
+     */
+    public long getOffered() {
+        return tail.get();
+    }
+    
+    /**
+     * Кладет событие в очередь.
+     *
+     * @param weight сколько переходов представляет событие (больше 1 при выборочном учете)
+     * @return false, если очередь полна
+     */
+    public boolean offer(String shortCode, long timeMillis, String referrer, String userAgent, int weight) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long delta = sequences.get(index) - position;
+            if (delta == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (delta < 0) {
+                // Ячейка еще не прочитана с прошлого круга
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+        int index = (int) position & mask;
+        codes[index] = shortCode;
+        referrers[index] = referrer;
+        userAgents[index] = userAgent;
+        times[index] = timeMillis;
+        weights[index] = weight;
+        sequences.lazySet(index, position + 1);
+        return true;
+    }
+    
+    /**
+     * Передает обработчику до {@code max} событий в порядке публикации. Вызывается
+     * только из одного потока.
+     *
+     * @return число обработанных событий
+     */
+    public int drain(Handler handler, int max) {
+        long position = head;
+        int drained = 0;
+        try {
+            while (drained < max) {
+                int index = (int) position & mask;
+                if (sequences.get(index) != position + 1) {
+                    break;
+                }
+                String shortCode = codes[index];
+                String referrer = referrers[index];
+                String userAgent = userAgents[index];
+                long timeMillis = times[index];
+                int weight = weights[index];
+                codes[index] = null;
+                referrers[index] = null;
+                userAgents[index] = null;
+                sequences.lazySet(index, position + mask + 1);
+                position++;
+                drained++;
+                handler.onClick(shortCode, timeMillis, referrer, userAgent, weight);
+            }
+        } finally {
+            // Голова пишется раз на пачку: ее читают писатели, оценивая заполненность
+            head = position;
+        }
+        return drained;
+    }
+}
@@ -0,0 +1,62 @@
+import exceptions.InvalidUrlException;
+import exceptions.UrlNotFoundException;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Узел кластера, которому {@link ShardRouter} передает операции над ссылками его сегментов.
+ * Узел в той же JVM - {@link LocalClusterNode}, на другом порту или хосте - {@link HttpClusterNode}.
+ */
+public interface ClusterNode {
+    
+    String getId();
+    
+    /**
+     * Переход по коду из сегмента узла, засчитывается на узле.
+     *
+     * @param referrer  заголовок Referer перехода или null
+     * @param userAgent заголовок User-Agent перехода или null
+     */
+    LookupResult resolve(String shortCode, String referrer, String userAgent);
+    
+    /**
+     * Состояние ссылки по коду без учета перехода.
+     */
+    LookupResult peek(String shortCode);
+    
+    /**
+     * Создает ссылку в одном из сегментов узла.
+     */
+    String createShortUrl(String originalUrl, String userId, Integer maxAccessCount) throws InvalidUrlException;
+    
+    void deleteUrl(String shortCode, String userId) throws UrlNotFoundException;
+    
+    void updateUrlLimit(String shortCode, String userId, Integer maxAccessCount) throws UrlNotFoundException;
+    
+    /**
+     * Добавляет пользователей с готовыми ID; уже известные пропускаются.
+     */
+    void addUsers(List<User> users);
+    
+    List<User> getUsers();
+    
+    /** Сегменты, в которых узел сейчас создает ссылки. */
+    Set<Integer> getShards();
+    
+    /**
+     * Копия сегментов для переноса. Ссылки остаются на узле до {@link #dropShards}, но
+     * {@link ShardRouter} не шлет по ним переходы с начала копирования.
+     */
+    ShardSnapshot exportShards(Set<Integer> shards);
+    
+    /**
+     * Принимает перенесенные сегменты: ссылки и позиции генераторов кодов.
+     */
+    void importShards(ShardSnapshot snapshot);
+    
+    /**
+     * Отдает сегменты: перестает создавать в них ссылки и удаляет их ссылки.
+     */
+    void dropShards(Set<Integer> shards);
+}
@@ -24,7 +24,47 @@ public class Config {
         properties.setProperty("short.code.length", "6");
         properties.setProperty("default.url.ttl.hours", "24");
         properties.setProperty("max.url.length", "2048");
-        properties.setProperty("cleanup.interval.minutes", "30");
+        properties.setProperty("dedup.enabled", "false");
+        properties.setProperty("url.intern.enabled", "false");
+        properties.setProperty("clock.tick.millis", "10");
+        properties.setProperty("cleanup.tick.millis", "1000");
+        properties.setProperty("cleanup.bucket.millis", "1000");
+        properties.setProperty("short.code.generator", "sequence");
+        properties.setProperty("short.code.seed", "0");
+        properties.setProperty("short.code.block.size", "1024");
+        properties.setProperty("top.urls.capacity", "100");
+        properties.setProperty("top.urls.window.minutes", "0");
+        properties.setProperty("store.engine", "map");
+        properties.setProperty("store.offheap.capacity", "1000000");
+        properties.setProperty("store.offheap.dir", "");
+        properties.setProperty("store.search.index", "");
+        properties.setProperty("cache.capacity", "0");
+        properties.setProperty("bloom.filter.expected.links", "0");
+        properties.setProperty("storage.dir", "");
+        properties.setProperty("storage.flush.millis", "10");
+        properties.setProperty("storage.snapshot.interval.minutes", "10");
+        properties.setProperty("http.port", "8080");
+        properties.setProperty("http.threads", String.valueOf(Runtime.getRuntime().availableProcessors() * 2));
+        properties.setProperty("http.backlog", "1024");
+        properties.setProperty("http.redirect.status", "302");
+        properties.setProperty("http.max.body.bytes", "1048576");
+        properties.setProperty("metrics.enabled", "true");
+        properties.setProperty("metrics.resolve.sample.rate", "16");
+        properties.setProperty("clicks.enabled", "false");
+        properties.setProperty("clicks.buffer.size", "65536");
+        properties.setProperty("clicks.sample.rate", "10");
+        properties.setProperty("clicks.rollup.minutes", "60");
+        properties.setProperty("clicks.log.file", "");
+        properties.setProperty("log.level", "INFO");
+        properties.setProperty("log.format", "text");
+        properties.setProperty("log.file", "");
+        properties.setProperty("log.queue.size", "8192");
+        properties.setProperty("cluster.virtual.nodes", "64");
+        properties.setProperty("replication.log.size", "65536");
+        properties.setProperty("replication.batch.size", "4096");
+        properties.setProperty("replication.poll.millis", "100");
+        properties.setProperty("replication.merge.millis", "1000");
+        properties.setProperty("replication.max.lag.millis", "5000");
     }
     
     public static String getBaseUrl() {
@@ -35,6 +75,18 @@ public class Config {
         return Integer.parseInt(properties.getProperty("short.code.length"));
     }
     
+    public static String getShortCodeGenerator() {
+        return properties.getProperty("short.code.generator", "sequence");
+    }
+    
+    public static long getShortCodeSeed() {
+        return Long.parseLong(properties.getProperty("short.code.seed", "0"));
+    }
+    
+    public static int getShortCodeBlockSize() {
+        return Integer.parseInt(properties.getProperty("short.code.block.size", "1024"));
+    }
+    
     public static int getDefaultUrlTtlHours() {
         return Integer.parseInt(properties.getProperty("default.url.ttl.hours"));
     }
@@ -43,7 +95,168 @@ public class Config {
         return Integer.parseInt(properties.getProperty("max.url.length"));
     }
     
-    public static int getCleanupIntervalMinutes() {
-        return Integer.parseInt(properties.getProperty("cleanup.interval.minutes"));
+    public static boolean isDedupEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("dedup.enabled", "false"));
+    }
+    
+    public static boolean isUrlInternEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("url.intern.enabled", "false"));
+    }
+    
+    public static long getClockTickMillis() {
+        return Long.parseLong(properties.getProperty("clock.tick.millis", "10"));
+    }
+    
+    public static long getCleanupTickMillis() {
+        return Long.parseLong(properties.getProperty("cleanup.tick.millis", "1000"));
+    }
+    
+    public static long getCleanupBucketMillis() {
+        return Long.parseLong(properties.getProperty("cleanup.bucket.millis", "1000"));
+    }
+    
+    public static int getTopUrlsCapacity() {
+        return Integer.parseInt(properties.getProperty("top.urls.capacity", "100"));
+    }
+    
+    public static int getTopUrlsWindowMinutes() {
+        return Integer.parseInt(properties.getProperty("top.urls.window.minutes", "0"));
+    }
+    
+    public static String getStoreEngine() {
+        return properties.getProperty("store.engine", "map");
+    }
+    
+    /**
+     * Пустое значение - по хранилищу: индекс ведется для {@code map} и не ведется для
+     * {@code offheap}, где он держал бы на куче словарь, сравнимый по размеру с самой таблицей.
+     */
+    public static boolean isSearchIndexEnabled() {
+        return isSearchIndexEnabled(getStoreEngine());
+    }
+    
+    /**
+     * Включен ли поисковый индекс для хранилища {@code engine} при текущих настройках.
+     */
+    public static boolean isSearchIndexEnabled(String engine) {
+        String value = properties.getProperty("store.search.index", "").trim();
+        return value.isEmpty() ? !"offheap".equals(engine) : Boolean.parseBoolean(value);
+    }
+    
+    public static long getStoreOffHeapCapacity() {
+        return Long.parseLong(properties.getProperty("store.offheap.capacity", "1000000"));
+    }
+    
+    public static String getStoreOffHeapDir() {
+        return properties.getProperty("store.offheap.dir", "");
+    }
+    
+    public static int getCacheCapacity() {
+        return Integer.parseInt(properties.getProperty("cache.capacity", "0"));
+    }
+    
+    public static long getBloomFilterExpectedLinks() {
+        return Long.parseLong(properties.getProperty("bloom.filter.expected.links", "0"));
+    }
+    
+    public static String getStorageDir() {
+        return properties.getProperty("storage.dir", "");
+    }
+    
+    public static long getStorageFlushMillis() {
+        return Long.parseLong(properties.getProperty("storage.flush.millis", "10"));
+    }
+    
+    public static long getStorageSnapshotIntervalMinutes() {
+        return Long.parseLong(properties.getProperty("storage.snapshot.interval.minutes", "10"));
+    }
+    
+    public static int getHttpPort() {
+        return Integer.parseInt(properties.getProperty("http.port", "8080"));
+    }
+    
+    public static int getHttpThreads() {
+        return Integer.parseInt(properties.getProperty("http.threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors() * 2)));
+    }
+    
+    public static int getHttpBacklog() {
+        return Integer.parseInt(properties.getProperty("http.backlog", "1024"));
+    }
+    
+    public static int getHttpRedirectStatus() {
+        return Integer.parseInt(properties.getProperty("http.redirect.status", "302"));
+    }
+    
+    public static int getHttpMaxBodyBytes() {
+        return Integer.parseInt(properties.getProperty("http.max.body.bytes", "1048576"));
+    }
+    
+    public static boolean isClickTrackingEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("clicks.enabled", "false"));
+    }
+    
+    public static int getClickBufferSize() {
+        return Integer.parseInt(properties.getProperty("clicks.buffer.size", "65536"));
+    }
+    
+    public static int getClickSampleRate() {
+        return Integer.parseInt(properties.getProperty("clicks.sample.rate", "10"));
+    }
+    
+    public static int getClickRollupMinutes() {
+        return Integer.parseInt(properties.getProperty("clicks.rollup.minutes", "60"));
+    }
+    
+    public static String getClickLogFile() {
+        return properties.getProperty("clicks.log.file", "");
+    }
+    
+    public static boolean isMetricsEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("metrics.enabled", "true"));
+    }
+    
+    public static int getMetricsResolveSampleRate() {
+        return Integer.parseInt(properties.getProperty("metrics.resolve.sample.rate", "16"));
+    }
+    
+    public static String getLogLevel() {
+        return properties.getProperty("log.level", "INFO");
+    }
+    
+    public static String getLogFormat() {
+        return properties.getProperty("log.format", "text");
+    }
+    
+    public static String getLogFile() {
+        return properties.getProperty("log.file", "");
+    }
+    
+    public static int getLogQueueSize() {
+        return Integer.parseInt(properties.getProperty("log.queue.size", "8192"));
+    }
+    
+    public static int getClusterVirtualNodes() {
+        return Integer.parseInt(properties.getProperty("cluster.virtual.nodes", "64"));
+    }
+    
+    public static int getReplicationLogSize() {
+        return Integer.parseInt(properties.getProperty("replication.log.size", "65536"));
+    }
+    
+    public static int getReplicationBatchSize() {
+        return Integer.parseInt(properties.getProperty("replication.batch.size", "4096"));
+    }
+    
+    public static long getReplicationPollMillis() {
+        return Long.parseLong(properties.getProperty("replication.poll.millis", "100"));
+    }
+    
+    public static long getReplicationMergeMillis() {
+        return Long.parseLong(properties.getProperty("replication.merge.millis", "1000"));
+    }
+    
+    public static long getReplicationMaxLagMillis() {
+        return Long.parseLong(properties.getProperty("replication.max.lag.millis", "5000"));
     }
 }
\ No newline at end of file
@@ -0,0 +1,116 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Считающий фильтр Блума по коротким кодам: отвечает "кода точно нет" или "код, возможно, есть"
+ * и, в отличие от обычного фильтра, поддерживает удаление.
+ *
+ * <p>Каждая позиция - 4-битный счетчик, по 16 в одном long; изменения идут через CAS.
+ * Счетчик, дошедший до 15, больше не меняется: так переполнение не приводит к ложным
+ * отрицательным ответам, только немного повышает долю ложных положительных.
+ */
+public class CountingBloomFilter {
+    private static final int COUNTERS_PER_WORD = 16;
+    private static final long SATURATED = 0xF;
+    
+    private final AtomicLongArray words;
+    private final long counters;
+    private final int hashCount;
+    
+    /**
+     * @param expectedCodes        сколько кодов ожидается одновременно
+     * @param falsePositiveRate    допустимая доля ложных положительных ответов при этом числе кодов
+     */
+    public CountingBloomFilter(long expectedCodes, double falsePositiveRate) {
+        if (expectedCodes <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Некорректные параметры фильтра");
+        }
+        double optimal = -expectedCodes * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        long wordCount = Math.max(1, (long) Math.ceil(optimal / COUNTERS_PER_WORD));
+        if (wordCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Слишком большой фильтр: " + expectedCodes + " кодов");
+        }
+        this.words = new AtomicLongArray((int) wordCount);
+        this.counters = wordCount * COUNTERS_PER_WORD;
+        this.hashCount = Math.max(1, (int) Math.round(optimal / expectedCodes * Math.log(2)));
+    }
+    
+    public void add(String shortCode) {
+        long hash = hash(shortCode);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            update(position(h1 + i * h2), 1);
+        }
+    }
+    
+    public void remove(String shortCode) {
+        long hash = hash(shortCode);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            update(position(h1 + i * h2), -1);
+        }
+    }
+    
+    /**
+     * @return false, если кода точно нет; true, если он, возможно, есть
+     */
+    public boolean mightContain(String shortCode) {
+        long hash = hash(shortCode);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long position = position(h1 + i * h2);
+            if (counter(words.get((int) (position >>> 4)), position) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public int getHashCount() {
+        return hashCount;
+    }
+    
+    public long getCounterCount() {
+        return counters;
+    }
+    
+    private void update(long position, int delta) {
+        int index = (int) (position >>> 4);
+        int shift = (int) (position & 15) * 4;
+        while (true) {
+            long word = words.get(index);
+            long counter = counter(word, position);
+            if (counter == SATURATED || counter == 0 && delta < 0) {
+                return;
+            }
+            long updated = word + ((long) delta << shift);
+            if (words.compareAndSet(index, word, updated)) {
+                return;
+            }
+        }
+    }
+    
+    private long position(int combinedHash) {
+        return (combinedHash & 0xFFFFFFFFL) % counters;
+    }
+    
+    private static long counter(long word, long position) {
+        return (word >>> ((position & 15) * 4)) & SATURATED;
+    }
+    
+    private static long hash(String shortCode) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < shortCode.length(); i++) {
+            hash = (hash ^ shortCode.charAt(i)) * 0x100000001b3L;
+        }
+        // Финальное перемешивание из MurmurHash3, чтобы обе половины хэша были независимы
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * Элемент пакетного создания ссылок: URL, владелец и необязательный лимит переходов.
+ */
+public final class CreateRequest {
+    private final String originalUrl;
+    private final String userId;
+    private final Integer maxAccessCount;
+    
+    public CreateRequest(String originalUrl, String userId) {
+        this(originalUrl, userId, null);
+    }
+    
+    public CreateRequest(String originalUrl, String userId, Integer maxAccessCount) {
+        this.originalUrl = originalUrl;
+        this.userId = userId;
+        this.maxAccessCount = maxAccessCount;
+    }
+    
+    public String getOriginalUrl() {
+        return originalUrl;
+    }
+    
+    public String getUserId() {
+        return userId;
+    }
+    
+    public Integer getMaxAccessCount() {
+        return maxAccessCount;
+    }
+}
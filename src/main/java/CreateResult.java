@@ -0,0 +1,44 @@
+/**
+ * Результат создания одной ссылки в пакете: код созданной ссылки или причина отказа.
+ * Ошибка одного элемента не прерывает обработку остальных.
+ */
+public final class CreateResult {
+    private final String shortCode;
+    private final String error;
+    
+    private CreateResult(String shortCode, String error) {
+        this.shortCode = shortCode;
+        this.error = error;
+    }
+    
+    static CreateResult created(String shortCode) {
+        return new CreateResult(shortCode, null);
+    }
+    
+    static CreateResult failed(String error) {
+        return new CreateResult(null, error);
+    }
+    
+    public boolean isCreated() {
+        return shortCode != null;
+    }
+    
+    /**
+     * Код ссылки; null, если создать ее не удалось.
+     */
+    public String getShortCode() {
+        return shortCode;
+    }
+    
+    /**
+     * Причина отказа; null для созданной ссылки.
+     */
+    public String getError() {
+        return error;
+    }
+    
+    @Override
+    public String toString() {
+        return isCreated() ? shortCode : "ERROR " + error;
+    }
+}
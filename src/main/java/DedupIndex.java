@@ -0,0 +1,62 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Индекс повторных сокращений: пользователь → нормализованный URL → код ссылки.
+ * Позволяет вернуть уже существующий код вместо новой ссылки на тот же URL.
+ * Индексируются только ссылки без лимита переходов.
+ */
+public class DedupIndex {
+    private final Map<String, Map<String, String>> codesByUser = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    
+    /**
+     * Возвращает код ссылки пользователя на url, если {@code reusable} его принимает,
+     * иначе создает ссылку через {@code factory}. Для одной пары (пользователь, URL)
+     * проверка и создание выполняются атомарно, поэтому параллельные запросы получают один код.
+     */
+    public String getOrCreate(String userId, String url, Predicate<String> reusable, Supplier<String> factory) {
+        Map<String, String> codes = codesByUser.computeIfAbsent(userId, k -> new ConcurrentHashMap<>());
+        boolean[] created = new boolean[1];
+        String code = codes.compute(url, (k, existing) -> {
+            if (existing != null && reusable.test(existing)) {
+                return existing;
+            }
+            created[0] = true;
+            return factory.get();
+        });
+        if (!created[0]) {
+            hits.increment();
+        }
+        return code;
+    }
+    
+    public void register(ShortUrl shortUrl) {
+        if (shortUrl.getMaxAccessCount() == null) {
+            codesByUser.computeIfAbsent(shortUrl.getUserId(), k -> new ConcurrentHashMap<>())
+                    .put(shortUrl.getOriginalUrl(), shortUrl.getShortCode());
+        }
+    }
+    
+    /**
+     * Убирает ссылку из индекса, если индекс указывает именно на нее.
+     */
+    public void unregister(ShortUrl shortUrl) {
+        Map<String, String> codes = codesByUser.get(shortUrl.getUserId());
+        if (codes != null) {
+            codes.remove(shortUrl.getOriginalUrl(), shortUrl.getShortCode());
+        }
+    }
+    
+    /** Сколько запросов на создание получили уже существующий код. */
+    public long getHits() {
+        return hits.sum();
+    }
+    
+    public int size() {
+        return codesByUser.values().stream().mapToInt(Map::size).sum();
+    }
+}
@@ -0,0 +1,112 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Индекс коротких кодов по времени истечения. Коды раскладываются по корзинам
+ * шириной {@code bucketMillis}: ключ корзины — верхняя граница ее интервала, поэтому
+ * все коды в корзине с ключом не больше текущего времени уже истекли.
+ *
+ * <p>Очистка забирает только "созревшие" корзины с начала упорядоченной карты, и ее
+ * стоимость пропорциональна числу истекающих ссылок, а не размеру хранилища.
+ */
+public class ExpiryIndex {
+    private final long bucketMillis;
+    private final ConcurrentSkipListMap<Long, Bucket> buckets = new ConcurrentSkipListMap<>();
+    
+    public ExpiryIndex(long bucketMillis) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("Ширина корзины должна быть положительной");
+        }
+        this.bucketMillis = bucketMillis;
+    }
+    
+    public void add(String shortCode, long expiresAtMillis) {
+        long key = bucketOf(expiresAtMillis);
+        while (true) {
+            Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket());
+            if (bucket.add(shortCode)) {
+                return;
+            }
+            // Корзину как раз забрала очистка: убираем закрытую и кладем код в новую
+            buckets.remove(key, bucket);
+        }
+    }
+    
+    /**
+     * Добавляет коды с одинаковым сроком одной операцией над корзиной.
+     */
+    public void addAll(Collection<String> shortCodes, long expiresAtMillis) {
+        long key = bucketOf(expiresAtMillis);
+        while (true) {
+            Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket());
+            if (bucket.addAll(shortCodes)) {
+                return;
+            }
+            buckets.remove(key, bucket);
+        }
+    }
+    
+    public void remove(String shortCode, long expiresAtMillis) {
+        Bucket bucket = buckets.get(bucketOf(expiresAtMillis));
+        if (bucket != null) {
+            bucket.remove(shortCode);
+        }
+    }
+    
+    /**
+     * Извлекает из индекса коды всех корзин, истекших к моменту {@code nowMillis}.
+     */
+    public List<String> pollExpired(long nowMillis) {
+        List<String> expired = new ArrayList<>();
+        Map.Entry<Long, Bucket> entry;
+        while ((entry = buckets.firstEntry()) != null && entry.getKey() <= nowMillis) {
+            if (buckets.remove(entry.getKey(), entry.getValue())) {
+                expired.addAll(entry.getValue().close());
+            }
+        }
+        return expired;
+    }
+    
+    public int bucketCount() {
+        return buckets.size();
+    }
+    
+    private long bucketOf(long expiresAtMillis) {
+        return Math.floorDiv(expiresAtMillis + bucketMillis - 1, bucketMillis) * bucketMillis;
+    }
+    
+    private static final class Bucket {
+        private final Set<String> codes = new HashSet<>();
+        private boolean closed;
+        
+        synchronized boolean add(String shortCode) {
+            if (closed) {
+                return false;
+            }
+            codes.add(shortCode);
+            return true;
+        }
+        
+        synchronized boolean addAll(Collection<String> shortCodes) {
+            if (closed) {
+                return false;
+            }
+            codes.addAll(shortCodes);
+            return true;
+        }
+        
+        synchronized void remove(String shortCode) {
+            codes.remove(shortCode);
+        }
+        
+        synchronized Set<String> close() {
+            closed = true;
+            return codes;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Кэш горячих ссылок ограниченного размера с вытеснением по алгоритму CLOCK.
+ *
+ * <p>Чтение не блокируется: попадание только поднимает частоту записи (до {@value #MAX_FREQUENCY}).
+ * Новая запись приходит с нулевой частотой и вытесняется первым же проходом стрелки,
+ * если по ней не было повторных обращений, - как испытательный сегмент сегментированного
+ * LRU; стрелка снимает с часто читаемых записей по единице частоты, прежде чем вытеснить.
+ * Разовые обращения к холодным ссылкам поэтому не выталкивают горячие.
+ *
+ * <p>Запись держит ссылку с URL на куче (см. {@link ShortUrl#cacheable()}), так что попадание
+ * по ссылке из внешней памяти не декодирует URL заново.
+ *
+ * <p>Добавление идет под блокировкой, и если она занята, запись просто не кэшируется:
+ * поток промаха не ждет других.
+ */
+public class HotLinkCache {
+    private static final int MAX_FREQUENCY = 3;
+    
+    private final Map<String, Node> nodes;
+    private final Node[] ring;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private int filled;
+    private int hand;
+    
+    public HotLinkCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Размер кэша должен быть положительным");
+        }
+        this.nodes = new ConcurrentHashMap<>(capacity * 2);
+        this.ring = new Node[capacity];
+    }
+    
+    public ShortUrl get(String shortCode) {
+        Node node = nodes.get(shortCode);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        if (node.frequency < MAX_FREQUENCY) {
+            node.frequency++;
+        }
+        return node.value;
+    }
+    
+    /**
+     * Кладет ссылку в кэш, вытесняя при необходимости холодную запись.
+     *
+     * @return false, если запись не добавлена (код уже в кэше или кэш занят другим потоком)
+     */
+    public boolean put(ShortUrl shortUrl) {
+        if (!lock.tryLock()) {
+            return false;
+        }
+        try {
+            String shortCode = shortUrl.getShortCode();
+            if (nodes.containsKey(shortCode)) {
+                return false;
+            }
+            Node node = new Node(shortCode, shortUrl.cacheable(), claimSlot());
+            ring[node.slot] = node;
+            nodes.put(shortCode, node);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public void invalidate(String shortCode) {
+        lock.lock();
+        try {
+            Node node = nodes.remove(shortCode);
+            if (node != null && ring[node.slot] == node) {
+                ring[node.slot] = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public int size() {
+        return nodes.size();
+    }
+    
+    public int getCapacity() {
+        return ring.length;
+    }
+    
+    public long getHitCount() {
+        return hits.sum();
+    }
+    
+    public long getMissCount() {
+        return misses.sum();
+    }
+    
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+    
+    /**
+     * Доля обращений, обслуженных кэшем, от 0 до 1.
+     */
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+    
+    private int claimSlot() {
+        if (filled < ring.length) {
+            return filled++;
+        }
+        while (true) {
+            int slot = hand;
+            hand = (hand + 1) % ring.length;
+            Node victim = ring[slot];
+            if (victim == null) {
+                return slot;
+            }
+            if (victim.frequency > 0) {
+                victim.frequency--;
+            } else {
+                nodes.remove(victim.shortCode, victim);
+                evictions.increment();
+                return slot;
+            }
+        }
+    }
+    
+    private static final class Node {
+        final String shortCode;
+        final ShortUrl value;
+        final int slot;
+        volatile int frequency;
+        
+        Node(String shortCode, ShortUrl value, int slot) {
+            this.shortCode = shortCode;
+            this.value = value;
+            this.slot = slot;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+import com.sun.net.httpserver.HttpExchange;
+import exceptions.InvalidUrlException;
+import exceptions.UrlNotFoundException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Узел кластера на другом порту или хосте: операции уходят HTTP-запросами к его
+ * служебному слушателю ({@link InternalServer}), на котором включен {@link #serve}.
+ * Публичный порт узла ({@link RedirectServer}) эти запросы не принимает.
+ *
+ * <p>Запросы - {@code /cluster/...}: параметры одной ссылки идут в строке запроса, а пользователи
+ * и сегменты - строками CSV в теле ({@link LinkTransfer}, {@link ShardSnapshot}). Ошибки узла приходят статусами:
+ * 400 - {@link InvalidUrlException}, 404 - {@link UrlNotFoundException}; сбой связи -
+ * {@link UncheckedIOException}.
+ */
+public class HttpClusterNode implements ClusterNode {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    
+    private final String id;
+    private final URI baseUri;
+    private final HttpClient client;
+    
+    /**
+     * @param baseUri адрес служебного слушателя узла, например {@code http://localhost:9081}
+     */
+    public HttpClusterNode(String id, URI baseUri) {
+        this.id = id;
+        this.baseUri = baseUri;
+        this.client = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+    }
+    
+    /**
+     * Открывает запросы {@code /cluster/...} для маршрутизатора на служебном слушателе узла.
+     */
+    public static void serve(InternalServer server, LocalClusterNode node) {
+        server.addContext("/cluster/", exchange -> handle(node, exchange));
+    }
+    
+    @Override
+    public String getId() {
+        return id;
+    }
+    
+    @Override
+    public LookupResult resolve(String shortCode, String referrer, String userAgent) {
+        return parseLookup(expectOk(call("GET", "/cluster/resolve?"
+                + query("code", shortCode, "referrer", referrer, "userAgent", userAgent), null)));
+    }
+    
+    @Override
+    public LookupResult peek(String shortCode) {
+        return parseLookup(expectOk(call("GET", "/cluster/peek?" + query("code", shortCode), null)));
+    }
+    
+    @Override
+    public String createShortUrl(String originalUrl, String userId, Integer maxAccessCount)
+            throws InvalidUrlException {
+        HttpResponse<String> response = call("POST", "/cluster/urls?"
+                + query("url", originalUrl, "userId", userId, "maxAccessCount", maxAccessCount), null);
+        if (response.statusCode() == 400) {
+            throw new InvalidUrlException(response.body().trim());
+        }
+        return expectOk(response).trim();
+    }
+    
+    @Override
+    public void deleteUrl(String shortCode, String userId) throws UrlNotFoundException {
+        expectFound(call("POST", "/cluster/urls/delete?" + query("code", shortCode, "userId", userId), null));
+    }
+    
+    @Override
+    public void updateUrlLimit(String shortCode, String userId, Integer maxAccessCount)
+            throws UrlNotFoundException {
+        expectFound(call("POST", "/cluster/urls/limit?"
+                + query("code", shortCode, "userId", userId, "maxAccessCount", maxAccessCount), null));
+    }
+    
+    @Override
+    public void addUsers(List<User> users) {
+        StringBuilder body = new StringBuilder(users.size() * 64);
+        for (User user : users) {
+            LinkTransfer.appendUser(body, user, LinkTransfer.Format.CSV);
+        }
+        expectOk(call("POST", "/cluster/users", body.toString()));
+    }
+    
+    @Override
+    public List<User> getUsers() {
+        List<User> users = new ArrayList<>();
+        for (String line : lines(expectOk(call("GET", "/cluster/users", null)))) {
+            users.add(LinkTransfer.parseUser(LinkTransfer.parseCsv(line)));
+        }
+        return users;
+    }
+    
+    @Override
+    public Set<Integer> getShards() {
+        return parseShards(expectOk(call("GET", "/cluster/shards", null)));
+    }
+    
+    @Override
+    public ShardSnapshot exportShards(Set<Integer> shards) {
+        return ShardSnapshot.parseCsv(lines(expectOk(call("POST", "/cluster/shards/export", joinShards(shards)))));
+    }
+    
+    @Override
+    public void importShards(ShardSnapshot snapshot) {
+        expectOk(call("POST", "/cluster/shards/import", snapshot.toCsv()));
+    }
+    
+    @Override
+    public void dropShards(Set<Integer> shards) {
+        expectOk(call("POST", "/cluster/shards/drop", joinShards(shards)));
+    }
+    
+    @Override
+    public String toString() {
+        return id + " (" + baseUri + ")";
+    }
+    
+    private HttpResponse<String> call(String method, String path, String body) {
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve(path))
+                .timeout(TIMEOUT)
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .build();
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Узел " + id + " недоступен: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Запрос к узлу " + id + " прерван"));
+        }
+    }
+    
+    private String expectOk(HttpResponse<String> response) {
+        if (response.statusCode() != 200 && response.statusCode() != 201) {
+            throw new IllegalStateException("Узел " + id + " ответил " + response.statusCode() + ": "
+                    + response.body().trim());
+        }
+        return response.body();
+    }
+    
+    private void expectFound(HttpResponse<String> response) throws UrlNotFoundException {
+        if (response.statusCode() == 404) {
+            throw new UrlNotFoundException(response.body().trim());
+        }
+        expectOk(response);
+    }
+    
+    private static LookupResult parseLookup(String body) {
+        String line = body.trim();
+        int space = line.indexOf(' ');
+        LookupResult.Status status = LookupResult.Status.valueOf(space < 0 ? line : line.substring(0, space));
+        return LookupResult.of(status, space < 0 ? null : line.substring(space + 1));
+    }
+    
+    private static String query(Object... pairs) {
+        StringBuilder query = new StringBuilder();
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (pairs[i + 1] == null) {
+                continue;
+            }
+            if (query.length() > 0) {
+                query.append('&');
+            }
+            query.append(pairs[i]).append('=')
+                    .append(URLEncoder.encode(String.valueOf(pairs[i + 1]), StandardCharsets.UTF_8));
+        }
+        return query.toString();
+    }
+    
+    private static List<String> lines(String body) {
+        List<String> lines = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+    
+    private static String joinShards(Set<Integer> shards) {
+        return shards.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+    
+    private static Set<Integer> parseShards(String text) {
+        Set<Integer> shards = new TreeSet<>();
+        for (String shard : text.trim().split(",")) {
+            if (!shard.isEmpty()) {
+                shards.add(Integer.parseInt(shard));
+            }
+        }
+        return shards;
+    }
+    
+    // ---- сторона узла ----
+    
+    private static void handle(LocalClusterNode node, HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            switch (method + " " + path) {
+                case "GET /cluster/resolve": {
+                    Map<String, String> query = RedirectServer.parseForm(exchange.getRequestURI().getRawQuery());
+                    sendLookup(exchange, node.resolve(query.get("code"), query.get("referrer"), query.get("userAgent")));
+                    break;
+                }
+                case "GET /cluster/peek":
+                    sendLookup(exchange, node.peek(
+                            RedirectServer.parseForm(exchange.getRequestURI().getRawQuery()).get("code")));
+                    break;
+                case "POST /cluster/urls": {
+                    Map<String, String> query = RedirectServer.parseForm(exchange.getRequestURI().getRawQuery());
+                    try {
+                        RedirectServer.sendText(exchange, 201, node.createShortUrl(query.get("url"),
+                                query.get("userId"), parseLimit(query.get("maxAccessCount"))));
+                    } catch (InvalidUrlException e) {
+                        RedirectServer.sendText(exchange, 400, e.getMessage());
+                    }
+                    break;
+                }
+                case "POST /cluster/urls/delete": {
+                    Map<String, String> query = RedirectServer.parseForm(exchange.getRequestURI().getRawQuery());
+                    try {
+                        node.deleteUrl(query.get("code"), query.get("userId"));
+                        RedirectServer.sendText(exchange, 200, "OK");
+                    } catch (UrlNotFoundException e) {
+                        RedirectServer.sendText(exchange, 404, e.getMessage());
+                    }
+                    break;
+                }
+                case "POST /cluster/urls/limit": {
+                    Map<String, String> query = RedirectServer.parseForm(exchange.getRequestURI().getRawQuery());
+                    try {
+                        node.updateUrlLimit(query.get("code"), query.get("userId"),
+                                parseLimit(query.get("maxAccessCount")));
+                        RedirectServer.sendText(exchange, 200, "OK");
+                    } catch (UrlNotFoundException e) {
+                        RedirectServer.sendText(exchange, 404, e.getMessage());
+                    }
+                    break;
+                }
+                case "POST /cluster/users": {
+                    List<User> users = new ArrayList<>();
+                    for (String line : lines(readBody(exchange))) {
+                        users.add(LinkTransfer.parseUser(LinkTransfer.parseCsv(line)));
+                    }
+                    node.addUsers(users);
+                    RedirectServer.sendText(exchange, 200, "OK");
+                    break;
+                }
+                case "GET /cluster/users": {
+                    StringBuilder body = new StringBuilder();
+                    for (User user : node.getUsers()) {
+                        LinkTransfer.appendUser(body, user, LinkTransfer.Format.CSV);
+                    }
+                    RedirectServer.sendBytes(exchange, 200, body.toString().getBytes(StandardCharsets.UTF_8));
+                    break;
+                }
+                case "GET /cluster/shards":
+                    RedirectServer.sendText(exchange, 200, joinShards(node.getShards()));
+                    break;
+                case "POST /cluster/shards/export": {
+                    ShardSnapshot snapshot = node.exportShards(parseShards(readBody(exchange)));
+                    RedirectServer.sendBytes(exchange, 200, snapshot.toCsv().getBytes(StandardCharsets.UTF_8));
+                    break;
+                }
+                case "POST /cluster/shards/import":
+                    node.importShards(ShardSnapshot.parseCsv(lines(readBody(exchange))));
+                    RedirectServer.sendText(exchange, 200, "OK");
+                    break;
+                case "POST /cluster/shards/drop":
+                    node.dropShards(parseShards(readBody(exchange)));
+                    RedirectServer.sendText(exchange, 200, "OK");
+                    break;
+                default:
+                    RedirectServer.sendText(exchange, 404, "Неизвестный запрос: " + method + " " + path);
+            }
+        } catch (IllegalArgumentException e) {
+            RedirectServer.sendText(exchange, 400, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    private static void sendLookup(HttpExchange exchange, LookupResult result) throws IOException {
+        RedirectServer.sendText(exchange, 200, result.isFound()
+                ? result.getStatus() + " " + result.getOriginalUrl() : result.getStatus().toString());
+    }
+    
+    private static Integer parseLimit(String limit) {
+        return limit == null || limit.isBlank() ? null : Integer.valueOf(limit.trim());
+    }
+    
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream input = exchange.getRequestBody()) {
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
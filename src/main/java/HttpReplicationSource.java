@@ -0,0 +1,155 @@
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ведущий узел на другом порту или хосте: реплика забирает журнал HTTP-запросами
+ * к его служебному слушателю ({@link InternalServer}), на котором включен {@link #serve}.
+ * Публичный порт ведущего ({@link RedirectServer}) эти запросы не принимает.
+ *
+ * <p>{@code GET /replication/log?after=&max=} отдает порцию журнала строками CSV
+ * ({@link ReplicationBatch}), {@code GET /replication/snapshot?cursor=&max=} - следующую
+ * страницу снимка (410, если снимок закрыт), {@code POST /replication/access} принимает строки
+ * {@code <код>,<переходов>}. Сбой связи - {@link UncheckedIOException}.
+ */
+public class HttpReplicationSource implements ReplicationSource {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    
+    private final URI baseUri;
+    private final HttpClient client;
+    
+    /**
+     * @param baseUri адрес служебного слушателя ведущего, например {@code http://localhost:9080}
+     */
+    public HttpReplicationSource(URI baseUri) {
+        this.baseUri = baseUri;
+        this.client = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+    }
+    
+    /**
+     * Открывает запросы {@code /replication/...} для реплик на служебном слушателе ведущего.
+     */
+    public static void serve(InternalServer server, ReplicationLeader leader) {
+        server.addContext("/replication/", exchange -> handle(leader, exchange));
+    }
+    
+    @Override
+    public ReplicationBatch fetch(long afterSeq, int maxRecords) {
+        return fetchBatch("/replication/log?after=" + afterSeq + "&max=" + maxRecords);
+    }
+    
+    @Override
+    public ReplicationBatch fetchSnapshot(long cursor, int maxRecords) {
+        return fetchBatch("/replication/snapshot?cursor=" + cursor + "&max=" + maxRecords);
+    }
+    
+    @Override
+    public void mergeAccessCounts(Map<String, Integer> clicks) {
+        StringBuilder body = new StringBuilder(clicks.size() * 16);
+        for (Map.Entry<String, Integer> entry : clicks.entrySet()) {
+            body.append(entry.getKey()).append(',').append(entry.getValue().intValue()).append('\n');
+        }
+        call("POST", "/replication/access", body.toString());
+    }
+    
+    @Override
+    public String toString() {
+        return "ведущий " + baseUri;
+    }
+    
+    private ReplicationBatch fetchBatch(String path) {
+        String body = call("GET", path, null);
+        List<String> lines = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return ReplicationBatch.parseCsv(lines);
+    }
+    
+    private String call(String method, String path, String body) {
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve(path))
+                .timeout(TIMEOUT)
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .build();
+        HttpResponse<String> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ведущий " + baseUri + " недоступен: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Запрос к ведущему " + baseUri + " прерван"));
+        }
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Ведущий " + baseUri + " ответил " + response.statusCode() + ": "
+                    + response.body().trim());
+        }
+        return response.body();
+    }
+    
+    // ---- сторона ведущего ----
+    
+    private static void handle(ReplicationLeader leader, HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            switch (method + " " + path) {
+                case "GET /replication/log": {
+                    Map<String, String> query = RedirectServer.parseForm(exchange.getRequestURI().getRawQuery());
+                    ReplicationBatch batch = leader.fetch(Long.parseLong(query.getOrDefault("after", "-1")),
+                            Integer.parseInt(query.getOrDefault("max", "4096")));
+                    RedirectServer.sendBytes(exchange, 200, batch.toCsv().getBytes(StandardCharsets.UTF_8));
+                    break;
+                }
+                case "GET /replication/snapshot": {
+                    Map<String, String> query = RedirectServer.parseForm(exchange.getRequestURI().getRawQuery());
+                    ReplicationBatch batch = leader.fetchSnapshot(Long.parseLong(query.getOrDefault("cursor", "0")),
+                            Integer.parseInt(query.getOrDefault("max", "4096")));
+                    RedirectServer.sendBytes(exchange, 200, batch.toCsv().getBytes(StandardCharsets.UTF_8));
+                    break;
+                }
+                case "POST /replication/access": {
+                    Map<String, Integer> clicks = new HashMap<>();
+                    String body;
+                    try (InputStream input = exchange.getRequestBody()) {
+                        body = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+                    }
+                    for (String line : body.split("\n")) {
+                        int comma = line.indexOf(',');
+                        if (comma > 0) {
+                            clicks.merge(line.substring(0, comma), Integer.parseInt(line.substring(comma + 1).trim()),
+                                    Integer::sum);
+                        }
+                    }
+                    leader.mergeAccessCounts(clicks);
+                    RedirectServer.sendText(exchange, 200, "OK");
+                    break;
+                }
+                default:
+                    RedirectServer.sendText(exchange, 404, "Неизвестный запрос: " + method + " " + path);
+            }
+        } catch (IllegalArgumentException e) {
+            RedirectServer.sendText(exchange, 400, e.getMessage());
+        } catch (IllegalStateException e) {
+            RedirectServer.sendText(exchange, 410, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Хранилище пользователей на куче.
+ */
+public class InMemoryUserStore implements UserStore {
+    private final Map<String, User> userMap = new ConcurrentHashMap<>();
+    
+    @Override
+    public User get(String userId) {
+        return userMap.get(userId);
+    }
+    
+    @Override
+    public void put(User user) {
+        userMap.put(user.getId(), user);
+    }
+    
+    @Override
+    public Collection<User> all() {
+        return userMap.values();
+    }
+    
+    @Override
+    public int size() {
+        return userMap.size();
+    }
+}
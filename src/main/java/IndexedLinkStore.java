@@ -0,0 +1,209 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Основа хранилищ ссылок: ведет индекс истечения, индекс ссылок пользователя и поисковый
+ * индекс поверх основной таблицы, которую реализует наследник.
+ */
+public abstract class IndexedLinkStore implements LinkStore {
+    /** Меньше стольких кандидатов индекс используется всегда, даже у пользователя с малым числом ссылок. */
+    private static final int MIN_INDEXED_SCAN = 64;
+    
+    private final ExpiryIndex expiryIndex;
+    private final UserUrlIndex userUrlIndex = new UserUrlIndex(this::get);
+    private final SearchIndex searchIndex;
+    
+    /**
+     * @param searchIndexed вести поисковый индекс; без него поиск обходит все ссылки пользователя
+     */
+    protected IndexedLinkStore(long expiryBucketMillis, boolean searchIndexed) {
+        this.expiryIndex = new ExpiryIndex(expiryBucketMillis);
+        this.searchIndex = searchIndexed ? new SearchIndex(shortCode -> get(shortCode) != null) : null;
+    }
+    
+    /**
+     * Кладет ссылку в основную таблицу, если код свободен.
+     *
+     * @return ссылка в том виде, в каком она теперь лежит в таблице, или null, если код занят
+     */
+    protected abstract ShortUrl insert(ShortUrl shortUrl);
+    
+    /**
+     * Удаляет ссылку из основной таблицы, если под ее кодом лежит все еще она.
+     */
+    protected abstract boolean delete(ShortUrl shortUrl);
+    
+    @Override
+    public boolean putIfAbsent(ShortUrl shortUrl) {
+        ShortUrl stored = insert(shortUrl);
+        if (stored == null) {
+            return false;
+        }
+        index(stored);
+        return true;
+    }
+    
+    /**
+     * Вставляет ссылки по одной, а индекс истечения пополняет одной операцией на корзину:
+     * у ссылок пакета обычно одинаковый срок.
+     */
+    @Override
+    public List<ShortUrl> putAllIfAbsent(List<ShortUrl> shortUrls) {
+        List<ShortUrl> rejected = new ArrayList<>();
+        List<ShortUrl> stored = new ArrayList<>(shortUrls.size());
+        for (ShortUrl shortUrl : shortUrls) {
+            ShortUrl inserted = insert(shortUrl);
+            if (inserted == null) {
+                rejected.add(shortUrl);
+            } else {
+                stored.add(inserted);
+            }
+        }
+        Map<Long, List<String>> codesByExpiry = new HashMap<>();
+        for (ShortUrl shortUrl : stored) {
+            codesByExpiry.computeIfAbsent(shortUrl.getExpiresAtMillis(), k -> new ArrayList<>())
+                    .add(shortUrl.getShortCode());
+            userUrlIndex.add(shortUrl);
+            if (searchIndex != null) {
+                searchIndex.add(shortUrl);
+            }
+        }
+        codesByExpiry.forEach((expiresAt, codes) -> expiryIndex.addAll(codes, expiresAt));
+        for (ShortUrl shortUrl : stored) {
+            if (!contains(shortUrl)) {
+                unindex(shortUrl);
+            }
+        }
+        return rejected;
+    }
+    
+    @Override
+    public ShortUrl put(ShortUrl shortUrl) {
+        ShortUrl previous = null;
+        while (!putIfAbsent(shortUrl)) {
+            ShortUrl current = get(shortUrl.getShortCode());
+            if (current != null && remove(current)) {
+                previous = current;
+            }
+        }
+        return previous;
+    }
+    
+    @Override
+    public boolean remove(ShortUrl shortUrl) {
+        if (!delete(shortUrl)) {
+            return false;
+        }
+        unindex(shortUrl);
+        return true;
+    }
+    
+    @Override
+    public List<ShortUrl> findByUser(String userId, int offset, int limit) {
+        return userUrlIndex.page(userId, offset, limit);
+    }
+    
+    @Override
+    public int countByUser(String userId) {
+        return userUrlIndex.count(userId);
+    }
+    
+    /**
+     * Кандидатов дает поисковый индекс; если он не сужает поиск, ссылки пользователя
+     * обходятся от новых к старым до набора страницы.
+     */
+    @Override
+    public List<ShortUrl> search(String userId, String query, boolean prefix, int offset, int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        Iterable<ShortUrl> scan = userUrlIndex.newestFirst(userId);
+        Set<String> candidates = searchIndex == null ? null : searchIndex.candidates(userId, query, prefix,
+                Math.max(MIN_INDEXED_SCAN, userUrlIndex.count(userId) / 8));
+        if (candidates != null) {
+            // Код из индекса мог уже освободиться или достаться ссылке другого пользователя
+            List<ShortUrl> sorted = new ArrayList<>(candidates.size());
+            for (String shortCode : candidates) {
+                ShortUrl shortUrl = get(shortCode);
+                if (shortUrl != null && userId.equals(shortUrl.getUserId())) {
+                    sorted.add(shortUrl);
+                }
+            }
+            sorted.sort(UserUrlIndex.NEWEST_FIRST);
+            scan = sorted;
+        }
+        List<ShortUrl> page = new ArrayList<>(Math.min(limit, 64));
+        int skipped = 0;
+        for (ShortUrl shortUrl : scan) {
+            if (!SearchIndex.matches(shortUrl, query, prefix)) {
+                continue;
+            }
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                page.add(shortUrl);
+                if (page.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return page;
+    }
+    
+    @Override
+    public List<ShortUrl> pollExpired(long nowMillis) {
+        List<ShortUrl> expired = new ArrayList<>();
+        for (String shortCode : expiryIndex.pollExpired(nowMillis)) {
+            ShortUrl shortUrl = get(shortCode);
+            if (shortUrl == null) {
+                continue;
+            }
+            if (shortUrl.getExpiresAtMillis() > nowMillis) {
+                // Граница корзины совпала с моментом истечения: вернемся к ссылке позже
+                expiryIndex.add(shortCode, shortUrl.getExpiresAtMillis());
+            } else {
+                expired.add(shortUrl);
+            }
+        }
+        return expired;
+    }
+    
+    @Override
+    public List<ShortUrl> topByAccess(int n) {
+        return stream()
+                .filter(url -> url.getAccessCount() > 0)
+                .sorted(Comparator.comparingInt(ShortUrl::getAccessCount).reversed())
+                .limit(n)
+                .collect(Collectors.toList());
+    }
+    
+    private boolean contains(ShortUrl shortUrl) {
+        return shortUrl.equals(get(shortUrl.getShortCode()));
+    }
+    
+    private void index(ShortUrl shortUrl) {
+        expiryIndex.add(shortUrl.getShortCode(), shortUrl.getExpiresAtMillis());
+        userUrlIndex.add(shortUrl);
+        if (searchIndex != null) {
+            searchIndex.add(shortUrl);
+        }
+        // Ссылку могли удалить, пока она попадала в индексы: не оставляем висячих записей
+        if (!contains(shortUrl)) {
+            unindex(shortUrl);
+        }
+    }
+    
+    private void unindex(ShortUrl shortUrl) {
+        expiryIndex.remove(shortUrl.getShortCode(), shortUrl.getExpiresAtMillis());
+        userUrlIndex.remove(shortUrl);
+        if (searchIndex != null) {
+            searchIndex.remove(shortUrl);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Служебный HTTP-слушатель для запросов между узлами: маршрутизатора кластера к узлу
+ * ({@link HttpClusterNode#serve}) и реплик к ведущему ({@link HttpReplicationSource#serve}).
+ *
+ * <p>Эти запросы удаляют и загружают сегменты, отдают журнал и добавляют переходы, а проверки
+ * доступа у них нет. Поэтому они не открываются на публичном порту {@link RedirectServer}:
+ * адрес служебного слушателя задает вызывающий, и он должен быть доступен только узлам
+ * кластера - loopback, внутренняя сеть или порт, закрытый снаружи.
+ */
+public class InternalServer {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    
+    /**
+     * Слушатель на loopback-адресе: для узлов на одной машине.
+     */
+    public InternalServer(int port, int threads) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), threads);
+    }
+    
+    /**
+     * @param address адрес, доступный только узлам кластера
+     */
+    public InternalServer(InetSocketAddress address, int threads) throws IOException {
+        this.server = HttpServer.create(address, Config.getHttpBacklog());
+        this.executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+    }
+    
+    void addContext(String path, HttpHandler handler) {
+        server.createContext(path, handler);
+    }
+    
+    public void start() {
+        server.start();
+    }
+    
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Подписчик на изменения состояния сервиса. Вызывается синхронно в потоке,
+ * выполнившем изменение, поэтому реализации должны быть быстрыми и потокобезопасными.
+ */
+public interface LinkChangeListener {
+    
+    default void onUserCreated(User user) {
+    }
+    
+    default void onUrlCreated(ShortUrl shortUrl) {
+    }
+    
+    /**
+     * Ссылка загружена из файла вместе со счетчиком переходов.
+     */
+    default void onUrlImported(ShortUrl shortUrl) {
+        onUrlCreated(shortUrl);
+    }
+    
+    default void onUrlDeleted(ShortUrl shortUrl) {
+    }
+    
+    default void onLimitUpdated(ShortUrl shortUrl) {
+    }
+    
+    /**
+     * Переход по ссылке засчитан (счетчик ссылки уже увеличен).
+     */
+    default void onAccess(ShortUrl shortUrl) {
+    }
+    
+    /**
+     * Переход засчитан; вызывается вместо {@link #onAccess(ShortUrl)} и по умолчанию делегирует ему.
+     *
+     * @param referrer  заголовок Referer запроса или null
+     * @param userAgent заголовок User-Agent запроса или null
+     */
+    default void onAccess(ShortUrl shortUrl, long nowMillis, String referrer, String userAgent) {
+        onAccess(shortUrl);
+    }
+    
+    /**
+     * Переходы, засчитанные репликой, добавлены к счетчику ссылки одной пачкой.
+     */
+    default void onAccessMerged(ShortUrl shortUrl, int clicks) {
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счетчики ссылок, активных ссылок и переходов по сервису и по каждому пользователю.
+ * Сервис обновляет их при создании, переходе, смене лимита и удалении ссылки, поэтому
+ * чтение статистики не обходит хранилище.
+ *
+ * <p>Активной считается ссылка с неисчерпанным лимитом: истекшая ссылка перестает
+ * учитываться, когда ее удаляет очистка. Счетчики согласованы с хранилищем, если
+ * переходы по ссылке не идут одновременно с ее удалением.
+ */
+public class LinkStatistics {
+    private final Counters total = new Counters();
+    private final Map<String, Counters> byUser = new ConcurrentHashMap<>();
+    
+    private static final class Counters {
+        final LongAdder links = new LongAdder();
+        final LongAdder activeLinks = new LongAdder();
+        final LongAdder clicks = new LongAdder();
+        
+        void add(long links, long activeLinks, long clicks) {
+            if (links != 0) {
+                this.links.add(links);
+            }
+            if (activeLinks != 0) {
+                this.activeLinks.add(activeLinks);
+            }
+            if (clicks != 0) {
+                this.clicks.add(clicks);
+            }
+        }
+        
+        Statistics snapshot(long users) {
+            return new Statistics(users, links.sum(), activeLinks.sum(), clicks.sum());
+        }
+    }
+    
+    /**
+     * Ссылка добавлена в хранилище.
+     *
+     * @param clicks переходы, с которыми она добавлена (0 для новой ссылки)
+     */
+    public void created(ShortUrl shortUrl, int clicks) {
+        update(shortUrl, 1, isActive(shortUrl) ? 1 : 0, clicks);
+    }
+    
+    /**
+     * Ссылка удалена из хранилища.
+     */
+    public void removed(ShortUrl shortUrl) {
+        update(shortUrl, -1, isActive(shortUrl) ? -1 : 0, -shortUrl.getAccessCount());
+    }
+    
+    /**
+     * Засчитан переход.
+     *
+     * @param exhausted переход исчерпал лимит ссылки
+     */
+    public void accessed(ShortUrl shortUrl, boolean exhausted) {
+        update(shortUrl, 0, exhausted ? -1 : 0, 1);
+    }
+    
+    /**
+     * Лимит ссылки изменен.
+     *
+     * @param activeChange изменение активности от {@link ShortUrl#replaceMaxAccessCount}
+     */
+    public void limitChanged(ShortUrl shortUrl, int activeChange) {
+        update(shortUrl, 0, activeChange, 0);
+    }
+    
+    /**
+     * Счетчик ссылки изменен в обход переходов (восстановление, слияние с репликой).
+     */
+    public void changed(ShortUrl shortUrl, boolean wasActive, int clicksBefore) {
+        boolean active = isActive(shortUrl);
+        update(shortUrl, 0, active == wasActive ? 0 : active ? 1 : -1, shortUrl.getAccessCount() - clicksBefore);
+    }
+    
+    public Statistics total(long users) {
+        return total.snapshot(users);
+    }
+    
+    public Statistics forUser(String userId) {
+        Counters counters = byUser.get(userId);
+        return counters == null ? new Statistics(1, 0, 0, 0) : counters.snapshot(1);
+    }
+    
+    static boolean isActive(ShortUrl shortUrl) {
+        return !shortUrl.isAccessLimitReached();
+    }
+    
+    private void update(ShortUrl shortUrl, long links, long activeLinks, long clicks) {
+        total.add(links, activeLinks, clicks);
+        Counters user = byUser.get(shortUrl.getUserId());
+        if (user == null) {
+            user = byUser.computeIfAbsent(shortUrl.getUserId(), id -> new Counters());
+        }
+        user.add(links, activeLinks, clicks);
+    }
+}
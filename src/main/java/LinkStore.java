@@ -0,0 +1,112 @@
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище ссылок: таблица "код -> ссылка" и выборки, которые нужны сервису.
+ * Реализации потокобезопасны. Ссылки, которые возвращает хранилище, - живые:
+ * счетчик и лимит переходов меняются прямо в нем.
+ */
+public interface LinkStore {
+    
+    ShortUrl get(String shortCode);
+    
+    /**
+     * Добавляет ссылку, если ее код свободен.
+     *
+     * @return false, если код уже занят
+     */
+    boolean putIfAbsent(ShortUrl shortUrl);
+    
+    /**
+     * Добавляет пачку ссылок, коды которых свободны.
+     *
+     * @return ссылки, коды которых уже заняты (обычно пустой список)
+     */
+    default List<ShortUrl> putAllIfAbsent(List<ShortUrl> shortUrls) {
+        List<ShortUrl> rejected = new ArrayList<>();
+        for (ShortUrl shortUrl : shortUrls) {
+            if (!putIfAbsent(shortUrl)) {
+                rejected.add(shortUrl);
+            }
+        }
+        return rejected;
+    }
+    
+    /**
+     * Добавляет ссылку, вытесняя ссылку с тем же кодом.
+     *
+     * @return вытесненная ссылка или null
+     */
+    ShortUrl put(ShortUrl shortUrl);
+    
+    /**
+     * Удаляет ссылку, полученную из этого хранилища, если под ее кодом лежит все еще она.
+     */
+    boolean remove(ShortUrl shortUrl);
+    
+    /**
+     * Ссылки пользователя от новых к старым: пропускает {@code offset} и возвращает
+     * не больше {@code limit}.
+     */
+    List<ShortUrl> findByUser(String userId, int offset, int limit);
+    
+    int countByUser(String userId);
+    
+    /**
+     * Ссылки пользователя, URL или код которых содержит {@code query} без учета регистра
+     * (при {@code prefix} - начинается с него с границы слова), от новых к старым:
+     * пропускает {@code offset} совпадений и возвращает не больше {@code limit}.
+     */
+    List<ShortUrl> search(String userId, String query, boolean prefix, int offset, int limit);
+    
+    /**
+     * Забирает ссылки, истекшие к моменту {@code nowMillis}. Повторно метод их не вернет;
+     * из хранилища они удаляются только вызовом {@link #remove}.
+     */
+    List<ShortUrl> pollExpired(long nowMillis);
+    
+    /**
+     * До {@code n} ссылок с наибольшим числом переходов (хотя бы одним), по убыванию.
+     */
+    List<ShortUrl> topByAccess(int n);
+    
+    /**
+     * Все ссылки хранилища, слабо согласованно с параллельными изменениями.
+     */
+    Stream<ShortUrl> stream();
+    
+    int size();
+    
+    /**
+     * Хранилище, выбранное параметром {@code store.engine}: {@code map} или {@code offheap},
+     * с поисковым индексом, если включен {@code store.search.index}, с кэшем горячих ссылок,
+     * если задан {@code cache.capacity}, и фильтром Блума перед ним, если задан
+     * {@code bloom.filter.expected.links}.
+     */
+    static LinkStore fromConfig() {
+        long bucketMillis = Config.getCleanupBucketMillis();
+        boolean searchIndexed = Config.isSearchIndexEnabled();
+        LinkStore store;
+        switch (Config.getStoreEngine()) {
+            case "map":
+                store = new MapLinkStore(bucketMillis, searchIndexed);
+                break;
+            case "offheap":
+                String dir = Config.getStoreOffHeapDir();
+                store = new OffHeapLinkStore(new OffHeapLinkTable(Config.getStoreOffHeapCapacity(),
+                        dir.isEmpty() ? null : Paths.get(dir)), bucketMillis, searchIndexed);
+                break;
+            default:
+                throw new IllegalArgumentException("Неизвестное хранилище ссылок: " + Config.getStoreEngine());
+        }
+        int cacheCapacity = Config.getCacheCapacity();
+        if (cacheCapacity > 0) {
+            store = new CachingLinkStore(store, cacheCapacity);
+        }
+        // Фильтр снаружи кэша: неизвестные коды не портят кэшу долю попаданий
+        long expectedLinks = Config.getBloomFilterExpectedLinks();
+        return expectedLinks > 0 ? new BloomFilteredLinkStore(store, expectedLinks) : store;
+    }
+}
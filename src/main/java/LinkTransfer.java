@@ -0,0 +1,602 @@
+import exceptions.InvalidUrlException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Потоковые выгрузка и загрузка пользователей и ссылок в CSV или NDJSON.
+ *
+ * <p>Выгрузка обходит хранилища слабо согласованно, не останавливая сервис, и пишет
+ * записи через буфер в файловый канал. Загрузка читает файл пачками строк и разбирает
+ * их в пуле потоков; очередь пачек ограничена, поэтому память не зависит от размера файла.
+ * Пачки, в которых могут быть пользователи, загружаются в читающем потоке до отправки
+ * следующих пачек, поэтому ссылки видят владельцев, записанных в файле раньше них.
+ *
+ * <p>URL загружаемых ссылок проходят ту же проверку и нормализацию, что и при создании
+ * ({@link UrlNormalizer}). Строка с неверным URL, счетчиком или лимитом вне диапазона
+ * либо с неизвестным владельцем считается ошибкой.
+ *
+ * <p>Каждая строка файла — одна запись: пользователь или ссылка со счетчиком, лимитом
+ * и сроком. В CSV первая колонка — тип записи:
+ * <pre>
+ * user,&lt;id&gt;,&lt;name&gt;
+ * link,&lt;code&gt;,&lt;url&gt;,&lt;userId&gt;,&lt;createdAtMillis&gt;,&lt;expiresAtMillis&gt;,&lt;accessCount&gt;,&lt;maxAccessCount или пусто&gt;
+ * </pre>
+ * В NDJSON — объект с полем {@code type} и теми же полями по именам.
+ */
+public class LinkTransfer {
+    private static final int WRITE_BUFFER_CHARS = 1 << 16;
+    private static final int READ_BUFFER_CHARS = 1 << 16;
+    private static final int CHUNK_LINES = 4096;
+    private static final int MAX_REPORTED_ERRORS = 10;
+    
+    public enum Format {
+        CSV,
+        NDJSON;
+        
+        /**
+         * Формат по расширению файла: {@code .csv} или {@code .ndjson}/{@code .jsonl}.
+         */
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+            if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+                return NDJSON;
+            }
+            throw new IllegalArgumentException("Неизвестный формат файла (ожидается .csv или .ndjson): " + file);
+        }
+    }
+    
+    /**
+     * Итог загрузки.
+     */
+    public static final class ImportResult {
+        private final long users;
+        private final long links;
+        private final long skipped;
+        private final long errors;
+        private final List<String> errorMessages;
+        
+        ImportResult(long users, long links, long skipped, long errors, List<String> errorMessages) {
+            this.users = users;
+            this.links = links;
+            this.skipped = skipped;
+            this.errors = errors;
+            this.errorMessages = errorMessages;
+        }
+        
+        /** Добавлено новых пользователей. */
+        public long getUsers() { return users; }
+        /** Добавлено ссылок. */
+        public long getLinks() { return links; }
+        /** Пропущено записей: код или пользователь уже есть, ссылка уже истекла. */
+        public long getSkipped() { return skipped; }
+        /** Строк, которые не удалось разобрать или которые не прошли проверку. */
+        public long getErrors() { return errors; }
+        /** Первые сообщения об ошибках с номерами строк. */
+        public List<String> getErrorMessages() { return errorMessages; }
+        
+        @Override
+        public String toString() {
+            return "пользователей: " + users + ", ссылок: " + links + ", пропущено: " + skipped
+                    + ", ошибок: " + errors;
+        }
+    }
+    
+    private LinkTransfer() {
+    }
+    
+    /**
+     * Выгружает всех пользователей, затем все ссылки.
+     *
+     * @return число выгруженных записей
+     */
+    public static long exportTo(UrlShortenerService service, Path file, Format format) throws IOException {
+        long records = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), WRITE_BUFFER_CHARS)) {
+            StringBuilder line = new StringBuilder(256);
+            for (User user : service.users()) {
+                line.setLength(0);
+                appendUser(line, user, format);
+                out.append(line);
+                records++;
+            }
+            Iterator<ShortUrl> urls = service.urls().iterator();
+            while (urls.hasNext()) {
+                line.setLength(0);
+                appendLink(line, urls.next(), format);
+                out.append(line);
+                records++;
+            }
+        }
+        return records;
+    }
+    
+    /**
+     * Загружает файл в сервис, разбирая пачки строк в {@code threads} потоках. Существующие
+     * пользователи и занятые коды не перезаписываются, истекшие ссылки пропускаются.
+     * Подписчики сервиса (журнал) получают все добавленные записи.
+     */
+    public static ImportResult importFrom(UrlShortenerService service, Path file, Format format, int threads)
+            throws IOException {
+        Counters counters = new Counters();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+        long now = service.getClock().millis();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             BufferedReader in = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8),
+                     READ_BUFFER_CHARS)) {
+            List<String> chunk = new ArrayList<>(CHUNK_LINES);
+            boolean chunkHasUsers = false;
+            long chunkStart = 1;
+            long lineNumber = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                chunk.add(line);
+                chunkHasUsers |= mayBeUser(line, format);
+                if (chunk.size() == CHUNK_LINES) {
+                    submit(pool, service, chunk, chunkStart, chunkHasUsers, format, now, counters);
+                    chunk = new ArrayList<>(CHUNK_LINES);
+                    chunkHasUsers = false;
+                    chunkStart = lineNumber + 1;
+                }
+            }
+            if (!chunk.isEmpty()) {
+                submit(pool, service, chunk, chunkStart, chunkHasUsers, format, now, counters);
+            }
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return new ImportResult(counters.users.sum(), counters.links.sum(), counters.skipped.sum(),
+                counters.errors.sum(), counters.errorMessages);
+    }
+    
+    private static void submit(ThreadPoolExecutor pool, UrlShortenerService service, List<String> chunk,
+                               long firstLine, boolean hasUsers, Format format, long now, Counters counters) {
+        Runnable task = () -> {
+            for (int i = 0; i < chunk.size(); i++) {
+                try {
+                    importLine(service, chunk.get(i), format, now, counters);
+                } catch (IllegalArgumentException e) {
+                    counters.error("строка " + (firstLine + i) + ": " + e.getMessage());
+                } catch (RuntimeException e) {
+                    // Сбой на одной строке не должен молча обрывать остаток пачки в пуле
+                    counters.error("строка " + (firstLine + i) + ": " + e);
+                }
+            }
+        };
+        if (hasUsers) {
+            // Ссылки следующих пачек проверяют владельцев, поэтому пользователи загружаются сразу
+            task.run();
+        } else {
+            pool.execute(task);
+        }
+    }
+    
+    /**
+     * Грубая проверка без разбора: false, только если строка точно не запись пользователя.
+     */
+    private static boolean mayBeUser(String line, Format format) {
+        return format == Format.CSV ? line.startsWith("user,") || line.startsWith("\"user\",")
+                : line.contains("\"user\"");
+    }
+    
+    private static void importLine(UrlShortenerService service, String line, Format format, long now,
+                                   Counters counters) {
+        if (line.isBlank()) {
+            return;
+        }
+        List<String> fields = format == Format.CSV ? parseCsv(line) : parseJson(line);
+        switch (fields.get(0)) {
+            case "user":
+                if (service.importUser(parseUser(fields))) {
+                    counters.users.increment();
+                } else {
+                    counters.skipped.increment();
+                }
+                break;
+            case "link":
+                ShortUrl shortUrl = parseLink(fields);
+                String url;
+                try {
+                    url = service.getUrlNormalizer().normalize(shortUrl.getOriginalUrl());
+                } catch (InvalidUrlException e) {
+                    throw new IllegalArgumentException(e.getMessage());
+                }
+                if (service.getUserById(shortUrl.getUserId()) == null) {
+                    throw new IllegalArgumentException("неизвестный владелец: " + shortUrl.getUserId());
+                }
+                if (!url.equals(shortUrl.getOriginalUrl())) {
+                    shortUrl = new ShortUrl(shortUrl.getShortCode(), url, shortUrl.getUserId(),
+                            shortUrl.getCreatedAtMillis(), shortUrl.getExpiresAtMillis(),
+                            shortUrl.getAccessCount(), shortUrl.getMaxAccessCount());
+                }
+                if (!shortUrl.isExpired(now) && service.importShortUrl(shortUrl)) {
+                    counters.links.increment();
+                } else {
+                    counters.skipped.increment();
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("неизвестный тип записи: " + fields.get(0));
+        }
+    }
+    
+    /**
+     * Пользователь из полей записи {@code user}.
+     */
+    static User parseUser(List<String> fields) {
+        require(fields, 3);
+        return new User(fields.get(1), fields.get(2));
+    }
+    
+    /**
+     * Ссылка из полей записи {@code link}.
+     *
+     * @throws IllegalArgumentException если счетчик отрицательный, лимит не положительный
+     *                                  или число не помещается в int
+     */
+    static ShortUrl parseLink(List<String> fields) {
+        require(fields, 8);
+        int accessCount = parseInt(fields.get(6));
+        if (accessCount < 0) {
+            throw new IllegalArgumentException("отрицательный счетчик переходов: " + accessCount);
+        }
+        String limit = fields.get(7);
+        Integer maxAccessCount = limit == null || limit.isEmpty() ? null : parseInt(limit);
+        if (maxAccessCount != null && maxAccessCount <= 0) {
+            throw new IllegalArgumentException("лимит должен быть положительным: " + maxAccessCount);
+        }
+        return new ShortUrl(fields.get(1), fields.get(2), fields.get(3),
+                parseLong(fields.get(4)), parseLong(fields.get(5)), accessCount, maxAccessCount);
+    }
+    
+    private static void require(List<String> fields, int count) {
+        if (fields.size() != count) {
+            throw new IllegalArgumentException("ожидалось полей: " + count + ", получено: " + fields.size());
+        }
+        for (int i = 1; i < count - 1; i++) {
+            if (fields.get(i) == null) {
+                throw new IllegalArgumentException("пустое поле №" + (i + 1));
+            }
+        }
+    }
+    
+    static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("не число: " + value);
+        }
+    }
+    
+    static int parseInt(String value) {
+        try {
+            return Math.toIntExact(parseLong(value));
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("число вне диапазона: " + value);
+        }
+    }
+    
+    // ---- запись ----
+    
+    static void appendUser(StringBuilder line, User user, Format format) {
+        if (format == Format.CSV) {
+            line.append("user,");
+            appendCsv(line, user.getId()).append(',');
+            appendCsv(line, user.getName()).append('\n');
+        } else {
+            line.append("{\"type\":\"user\",\"id\":");
+            appendJson(line, user.getId()).append(",\"name\":");
+            appendJson(line, user.getName()).append("}\n");
+        }
+    }
+    
+    static void appendLink(StringBuilder line, ShortUrl shortUrl, Format format) {
+        Integer limit = shortUrl.getMaxAccessCount();
+        if (format == Format.CSV) {
+            line.append("link,");
+            appendCsv(line, shortUrl.getShortCode()).append(',');
+            appendCsv(line, shortUrl.getOriginalUrl()).append(',');
+            appendCsv(line, shortUrl.getUserId()).append(',')
+                    .append(shortUrl.getCreatedAtMillis()).append(',')
+                    .append(shortUrl.getExpiresAtMillis()).append(',')
+                    .append(shortUrl.getAccessCount()).append(',');
+            if (limit != null) {
+                line.append(limit.intValue());
+            }
+            line.append('\n');
+        } else {
+            line.append("{\"type\":\"link\",\"code\":");
+            appendJson(line, shortUrl.getShortCode()).append(",\"url\":");
+            appendJson(line, shortUrl.getOriginalUrl()).append(",\"userId\":");
+            appendJson(line, shortUrl.getUserId())
+                    .append(",\"createdAt\":").append(shortUrl.getCreatedAtMillis())
+                    .append(",\"expiresAt\":").append(shortUrl.getExpiresAtMillis())
+                    .append(",\"accessCount\":").append(shortUrl.getAccessCount())
+                    .append(",\"maxAccessCount\":");
+            if (limit != null) {
+                line.append(limit.intValue());
+            } else {
+                line.append("null");
+            }
+            line.append("}\n");
+        }
+    }
+    
+    private static StringBuilder appendCsv(StringBuilder line, String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            return line.append(value);
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            // Перевод строки внутри поля сломал бы построчное чтение
+            line.append(c == '\n' || c == '\r' ? ' ' : c);
+        }
+        return line.append('"');
+    }
+    
+    private static StringBuilder appendJson(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        return line.append('"');
+    }
+    
+    // ---- разбор ----
+    
+    /**
+     * Поля строки CSV; кавычки снимаются, удвоенная кавычка внутри поля — одна кавычка.
+     */
+    static List<String> parseCsv(String line) {
+        List<String> fields = new ArrayList<>(8);
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        while (true) {
+            field.setLength(0);
+            if (i < line.length() && line.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= line.length()) {
+                        throw new IllegalArgumentException("незакрытая кавычка");
+                    }
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < line.length() && line.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                }
+                if (i < line.length() && line.charAt(i) != ',') {
+                    throw new IllegalArgumentException("символ после закрывающей кавычки");
+                }
+            } else {
+                int end = line.indexOf(',', i);
+                field.append(line, i, end < 0 ? line.length() : end);
+                i = end < 0 ? line.length() : end;
+            }
+            fields.add(field.toString());
+            if (i >= line.length()) {
+                return fields;
+            }
+            i++;
+        }
+    }
+    
+    private static final String[] LINK_KEYS =
+            {"type", "code", "url", "userId", "createdAt", "expiresAt", "accessCount", "maxAccessCount"};
+    private static final String[] USER_KEYS = {"type", "id", "name"};
+    
+    /**
+     * Поля плоского JSON-объекта в порядке колонок CSV: строки, числа и null.
+     */
+    static List<String> parseJson(String line) {
+        JsonCursor cursor = new JsonCursor(line);
+        List<String> keys = new ArrayList<>(8);
+        List<String> values = new ArrayList<>(8);
+        cursor.expect('{');
+        if (!cursor.tryConsume('}')) {
+            do {
+                keys.add(cursor.readString());
+                cursor.expect(':');
+                values.add(cursor.readValue());
+            } while (cursor.tryConsume(','));
+            cursor.expect('}');
+        }
+        cursor.expectEnd();
+        
+        int typeIndex = keys.indexOf("type");
+        String type = typeIndex < 0 ? null : values.get(typeIndex);
+        String[] order = "link".equals(type) ? LINK_KEYS : "user".equals(type) ? USER_KEYS : null;
+        if (order == null) {
+            throw new IllegalArgumentException("неизвестный тип записи: " + type);
+        }
+        List<String> fields = new ArrayList<>(order.length);
+        for (String key : order) {
+            int index = keys.indexOf(key);
+            if (index < 0 && !key.equals("maxAccessCount")) {
+                throw new IllegalArgumentException("нет поля " + key);
+            }
+            fields.add(index < 0 ? null : values.get(index));
+        }
+        return fields;
+    }
+    
+    private static final class JsonCursor {
+        private final String text;
+        private int pos;
+        
+        JsonCursor(String text) {
+            this.text = text;
+        }
+        
+        void skipSpaces() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+        
+        boolean tryConsume(char c) {
+            skipSpaces();
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+        
+        void expect(char c) {
+            if (!tryConsume(c)) {
+                throw new IllegalArgumentException("ожидался символ '" + c + "' в позиции " + pos);
+            }
+        }
+        
+        void expectEnd() {
+            skipSpaces();
+            if (pos != text.length()) {
+                throw new IllegalArgumentException("лишние символы в позиции " + pos);
+            }
+        }
+        
+        /** Строка, число (как текст) или null. */
+        String readValue() {
+            skipSpaces();
+            if (pos < text.length() && text.charAt(pos) == '"') {
+                return readString();
+            }
+            int start = pos;
+            while (pos < text.length() && ",}] \t".indexOf(text.charAt(pos)) < 0) {
+                pos++;
+            }
+            String token = text.substring(start, pos);
+            if (token.equals("null")) {
+                return null;
+            }
+            if (token.isEmpty()) {
+                throw new IllegalArgumentException("пустое значение в позиции " + start);
+            }
+            return token;
+        }
+        
+        String readString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                if (pos >= text.length()) {
+                    throw new IllegalArgumentException("незакрытая строка");
+                }
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) {
+                    throw new IllegalArgumentException("незакрытая строка");
+                }
+                char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw new IllegalArgumentException("неполная escape-последовательность");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("неверная escape-последовательность");
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                }
+            }
+        }
+    }
+    
+    private static final class Counters {
+        final LongAdder users = new LongAdder();
+        final LongAdder links = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final List<String> errorMessages = Collections.synchronizedList(new ArrayList<>());
+        
+        void error(String message) {
+            errors.increment();
+            if (errorMessages.size() < MAX_REPORTED_ERRORS) {
+                errorMessages.add(message);
+            }
+        }
+    }
+}
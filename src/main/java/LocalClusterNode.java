@@ -0,0 +1,141 @@
+import exceptions.InvalidUrlException;
+import exceptions.UrlNotFoundException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Узел кластера в этой JVM: сервис с генератором кодов по сегментам ({@link ShardedCodeGenerator}).
+ */
+public class LocalClusterNode implements ClusterNode {
+    private final String id;
+    private final UrlShortenerService service;
+    private final ShardedCodeGenerator codeGenerator;
+    
+    /**
+     * Узел с сервисом и хранилищем по настройкам, без сегментов до первого {@link #importShards}.
+     */
+    public LocalClusterNode(String id) {
+        this(id, new UrlShortenerService(ShardedCodeGenerator.fromConfig()));
+    }
+    
+    /**
+     * @param service сервис, созданный с {@link ShardedCodeGenerator}
+     */
+    public LocalClusterNode(String id, UrlShortenerService service) {
+        if (!(service.getCodeGenerator() instanceof ShardedCodeGenerator)) {
+            throw new IllegalArgumentException("Сервис узла кластера должен выдавать коды по сегментам");
+        }
+        this.id = id;
+        this.service = service;
+        this.codeGenerator = (ShardedCodeGenerator) service.getCodeGenerator();
+    }
+    
+    @Override
+    public String getId() {
+        return id;
+    }
+    
+    public UrlShortenerService getService() {
+        return service;
+    }
+    
+    @Override
+    public LookupResult resolve(String shortCode, String referrer, String userAgent) {
+        return service.resolve(shortCode, referrer, userAgent);
+    }
+    
+    @Override
+    public LookupResult peek(String shortCode) {
+        return service.peek(shortCode);
+    }
+    
+    @Override
+    public String createShortUrl(String originalUrl, String userId, Integer maxAccessCount)
+            throws InvalidUrlException {
+        return service.createShortUrl(originalUrl, userId, maxAccessCount);
+    }
+    
+    @Override
+    public void deleteUrl(String shortCode, String userId) throws UrlNotFoundException {
+        service.deleteUrl(shortCode, userId);
+    }
+    
+    @Override
+    public void updateUrlLimit(String shortCode, String userId, Integer maxAccessCount)
+            throws UrlNotFoundException {
+        service.updateUrlLimit(shortCode, userId, maxAccessCount);
+    }
+    
+    @Override
+    public void addUsers(List<User> users) {
+        for (User user : users) {
+            service.importUser(user);
+        }
+    }
+    
+    @Override
+    public List<User> getUsers() {
+        return new ArrayList<>(service.users());
+    }
+    
+    @Override
+    public Set<Integer> getShards() {
+        return codeGenerator.getShards();
+    }
+    
+    @Override
+    public ShardSnapshot exportShards(Set<Integer> shards) {
+        Map<Integer, Long> positions = new HashMap<>();
+        for (int shard : shards) {
+            positions.put(shard, codeGenerator.getPosition(shard));
+        }
+        // Копии: ссылки этого узла живут до dropShards и не должны попасть к новому владельцу
+        List<ShortUrl> links = service.urls()
+                .filter(url -> shards.contains(ShardRing.shardOf(url.getShortCode())))
+                .map(url -> new ShortUrl(url.getShortCode(), url.getOriginalUrl(), url.getUserId(),
+                        url.getCreatedAtMillis(), url.getExpiresAtMillis(), url.getAccessCount(),
+                        url.getMaxAccessCount()))
+                .collect(Collectors.toList());
+        return new ShardSnapshot(positions, links);
+    }
+    
+    @Override
+    public void importShards(ShardSnapshot snapshot) {
+        for (ShortUrl shortUrl : snapshot.getLinks()) {
+            service.importShortUrl(shortUrl);
+        }
+        for (Map.Entry<Integer, Long> position : snapshot.getPositions().entrySet()) {
+            codeGenerator.assign(position.getKey(), position.getValue());
+        }
+    }
+    
+    @Override
+    public void dropShards(Set<Integer> shards) {
+        for (int shard : shards) {
+            if (codeGenerator.owns(shard)) {
+                codeGenerator.release(shard);
+            }
+        }
+        List<String> codes = service.urls()
+                .map(ShortUrl::getShortCode)
+                .filter(code -> shards.contains(ShardRing.shardOf(code)))
+                .collect(Collectors.toList());
+        for (String code : codes) {
+            service.evictShortUrl(code);
+        }
+    }
+    
+    public void shutdown() {
+        service.shutdown();
+    }
+    
+    @Override
+    public String toString() {
+        return id + " (сегментов: " + codeGenerator.getShards().size() + ")";
+    }
+}
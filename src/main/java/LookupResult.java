@@ -0,0 +1,75 @@
+/**
+ * Результат поиска ссылки для перехода: статус и, если ссылка найдена, оригинальный URL.
+ * Неуспешные результаты - общие константы, поэтому промах ничего не выделяет.
+ */
+public final class LookupResult {
+    
+    public enum Status {
+        FOUND("Ссылка найдена"),
+        NOT_FOUND("Короткая ссылка не найдена"),
+        EXPIRED("Срок действия ссылки истек"),
+        LIMIT_REACHED("Лимит переходов по ссылке исчерпан");
+        
+        private final String description;
+        
+        Status(String description) {
+            this.description = description;
+        }
+        
+        public String getDescription() {
+            return description;
+        }
+    }
+    
+    static final LookupResult NOT_FOUND = new LookupResult(Status.NOT_FOUND, null);
+    static final LookupResult EXPIRED = new LookupResult(Status.EXPIRED, null);
+    static final LookupResult LIMIT_REACHED = new LookupResult(Status.LIMIT_REACHED, null);
+    
+    private final Status status;
+    private final String originalUrl;
+    
+    private LookupResult(Status status, String originalUrl) {
+        this.status = status;
+        this.originalUrl = originalUrl;
+    }
+    
+    static LookupResult found(String originalUrl) {
+        return new LookupResult(Status.FOUND, originalUrl);
+    }
+    
+    /**
+     * Результат по статусу и URL, например полученным от другого узла кластера.
+     */
+    static LookupResult of(Status status, String originalUrl) {
+        switch (status) {
+            case FOUND:
+                return found(originalUrl);
+            case NOT_FOUND:
+                return NOT_FOUND;
+            case EXPIRED:
+                return EXPIRED;
+            default:
+                return LIMIT_REACHED;
+        }
+    }
+    
+    public Status getStatus() {
+        return status;
+    }
+    
+    public boolean isFound() {
+        return status == Status.FOUND;
+    }
+    
+    /**
+     * Оригинальный URL; null, если ссылка не найдена или недоступна.
+     */
+    public String getOriginalUrl() {
+        return originalUrl;
+    }
+    
+    @Override
+    public String toString() {
+        return isFound() ? status + " -> " + originalUrl : status.toString();
+    }
+}
@@ -1,18 +1,56 @@
 import exceptions.InvalidUrlException;
-import exceptions.UrlExpiredException;
 import exceptions.UrlNotFoundException;
 
 import java.awt.*;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
+    private static final int SEARCH_PAGE_SIZE = 50;
     private static final UrlShortenerService service = new UrlShortenerService();
     private static final Scanner scanner = new Scanner(System.in);
     private static String currentUserId = null;
     
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        // Узел и маршрутизатор кластера работают со своими сервисами, а не с общим
+        if (args.length > 1 && args[0].equals("--cluster-node")) {
+            service.shutdown();
+            runClusterNode(parseInternalAddress(args[1]));
+            return;
+        }
+        if (args.length > 2 && args[0].equals("--cluster")) {
+            service.shutdown();
+            runClusterRouter(Integer.parseInt(args[1]), Arrays.asList(args).subList(2, args.length));
+            return;
+        }
+        
+        if (service.getMetrics() != null) {
+            service.getMetrics().registerMBean();
+        }
+        StorageManager storage = StorageManager.openIfConfigured(service);
+        if (storage != null) {
+            System.out.println("💾 Восстановлено из " + Config.getStorageDir() + ": " + storage.getRecoveryStats());
+        }
+        
+        if (args.length > 0 && args[0].equals("--http")) {
+            runHttpServer(args.length > 1 ? Integer.parseInt(args[1]) : Config.getHttpPort(), storage,
+                    ClickPipeline.openIfConfigured(service));
+            return;
+        }
+        
+        if (args.length > 1 && (args[0].equals("--export") || args[0].equals("--import"))) {
+            runTransfer(args[0].equals("--export"), Paths.get(args[1]), storage);
+            return;
+        }
+        
+        ClickPipeline clicks = ClickPipeline.openIfConfigured(service);
         boolean running = true;
         
         System.out.println("🐝 Добро пожаловать в Сервис Сокращения Ссылок!");
@@ -43,6 +81,9 @@ public class Main {
                         break;
                     case 6:
                         service.showStatistics();
+                        if (clicks != null) {
+                            System.out.println("События переходов: " + clicks);
+                        }
                         break;
                     case 7:
                         showTopUrls();
@@ -59,6 +100,12 @@ public class Main {
                     case 11:
                         service.showAllUrls();
                         break;
+                    case 12:
+                        createShortUrls();
+                        break;
+                    case 13:
+                        resolveAll();
+                        break;
                     case 0:
                         System.out.println("👋 До свидания!");
                         running = false;
@@ -77,10 +124,154 @@ public class Main {
             }
         }
         
+        if (clicks != null) {
+            clicks.close();
+        }
+        if (storage != null) {
+            storage.close();
+        }
         service.shutdown();
+        AsyncLogger.flush();
         scanner.close();
     }
     
+    private static void runHttpServer(int port, StorageManager storage, ClickPipeline clicks) throws Exception {
+        enableNoDelay();
+        RedirectServer server = new RedirectServer(service, port);
+        server.start();
+        System.out.println("🌐 HTTP-сервер запущен на порту " + server.getPort());
+        System.out.println("   GET  /{код}        — переход по короткой ссылке");
+        System.out.println("   POST /api/users    — создать пользователя (name)");
+        System.out.println("   POST /api/urls     — создать ссылку (url, userId, maxAccessCount)");
+        System.out.println("   POST /api/urls/batch?userId=... — создать ссылки, URL по одному на строку");
+        System.out.println("   POST /api/urls/resolve          — перейти по кодам, по одному на строку");
+        System.out.println("   GET  /metrics      — метрики сервиса (также JMX " + ServiceMetrics.OBJECT_NAME + ")");
+        
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            if (clicks != null) {
+                try {
+                    clicks.close();
+                } catch (IOException e) {
+                    System.out.println("❌ Ошибка закрытия журнала переходов: " + e.getMessage());
+                }
+            }
+            if (storage != null) {
+                try {
+                    storage.close();
+                } catch (IOException e) {
+                    System.out.println("❌ Ошибка закрытия хранилища: " + e.getMessage());
+                }
+            }
+            service.shutdown();
+            AsyncLogger.flush();
+        }));
+        Thread.currentThread().join();
+    }
+    
+    /**
+     * Узел кластера: сервис с кодами по сегментам и только служебный слушатель для маршрутизатора.
+     * Публичного порта у узла нет - пользователи обращаются к маршрутизатору ({@code --cluster}).
+     */
+    private static void runClusterNode(InetSocketAddress address) throws Exception {
+        enableNoDelay();
+        UrlShortenerService nodeService = new UrlShortenerService(ShardedCodeGenerator.fromConfig());
+        if (nodeService.getMetrics() != null) {
+            nodeService.getMetrics().registerMBean();
+        }
+        StorageManager storage = StorageManager.openIfConfigured(nodeService);
+        if (storage != null) {
+            System.out.println("💾 Восстановлено из " + Config.getStorageDir() + ": " + storage.getRecoveryStats());
+        }
+        LocalClusterNode node = new LocalClusterNode(address.getHostString() + ":" + address.getPort(), nodeService);
+        InternalServer internal = new InternalServer(address, Config.getHttpThreads());
+        HttpClusterNode.serve(internal, node);
+        internal.start();
+        System.out.println("🧩 Узел кластера слушает " + address.getHostString() + ":" + internal.getPort()
+                + " (запросы маршрутизатора /cluster/...), сегментов: " + node.getShards().size());
+        
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            internal.stop();
+            if (storage != null) {
+                try {
+                    storage.close();
+                } catch (IOException e) {
+                    System.out.println("❌ Ошибка закрытия хранилища: " + e.getMessage());
+                }
+            }
+            nodeService.shutdown();
+            AsyncLogger.flush();
+        }));
+        Thread.currentThread().join();
+    }
+    
+    /**
+     * Маршрутизатор кластера: публичный HTTP-порт, запросы которого уходят узлам по сегментам.
+     *
+     * @param nodeUris адреса служебных слушателей узлов ({@code --cluster-node}); ID узла - хост:порт
+     */
+    private static void runClusterRouter(int port, List<String> nodeUris) throws Exception {
+        enableNoDelay();
+        ShardRouter router = new ShardRouter();
+        for (String nodeUri : nodeUris) {
+            URI uri = URI.create(nodeUri);
+            long moved = router.addNode(new HttpClusterNode(uri.getAuthority(), uri));
+            System.out.println("🧩 Узел " + uri.getAuthority() + " в кластере, перенесено ссылок: " + moved);
+        }
+        RedirectServer server = new RedirectServer(router, port);
+        server.start();
+        System.out.println("🌐 Маршрутизатор кластера запущен на порту " + server.getPort() + ": " + router);
+        System.out.println("   GET  /{код}, POST /api/users, /api/urls, /api/urls/batch, /api/urls/resolve");
+        
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            AsyncLogger.flush();
+        }));
+        Thread.currentThread().join();
+    }
+    
+    /**
+     * Адрес служебного слушателя узла: {@code порт} (loopback) или {@code хост:порт}.
+     */
+    private static InetSocketAddress parseInternalAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+        }
+        return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+    
+    private static void enableNoDelay() {
+        // Сервер JDK пишет заголовки и тело ответа отдельно; без TCP_NODELAY тело ждет
+        // подтверждения заголовков, а клиент откладывает его до 40 мс. Свойство читается
+        // при создании первого сервера и действует на всю JVM, поэтому задается здесь,
+        // при запуске HTTP-режима; явное -Dsun.net.httpserver.nodelay=false сохраняется
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+    
+    private static void runTransfer(boolean export, Path file, StorageManager storage) throws IOException {
+        LinkTransfer.Format format = LinkTransfer.Format.of(file);
+        long started = System.nanoTime();
+        if (export) {
+            long records = LinkTransfer.exportTo(service, file, format);
+            System.out.println("📤 Выгружено записей: " + records + " в " + file);
+        } else {
+            LinkTransfer.ImportResult result = LinkTransfer.importFrom(service, file, format,
+                    Runtime.getRuntime().availableProcessors());
+            System.out.println("📥 Загружено из " + file + ": " + result);
+            for (String error : result.getErrorMessages()) {
+                System.out.println("   ❌ " + error);
+            }
+        }
+        System.out.println("   за " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " мс");
+        if (storage != null) {
+            storage.close();
+        }
+        service.shutdown();
+    }
+    
     private static void printMenu() {
         System.out.println("\n🎯 ГЛАВНОЕ МЕНЮ");
         System.out.println("══════════════════════════════════════════");
@@ -95,6 +286,8 @@ public class Main {
         System.out.println(" 9.  Изменить лимит переходов");
         System.out.println(" 10. Сменить пользователя");
         System.out.println(" 11. Все ссылки (админ)");
+        System.out.println(" 12. Пакетное создание ссылок");
+        System.out.println(" 13. Пакетная проверка кодов");
         System.out.println(" 0.  Выход");
         System.out.println("══════════════════════════════════════════");
         if (currentUserId != null) {
@@ -115,8 +308,7 @@ public class Main {
         if (choice == 1) {
             System.out.print("Введите имя пользователя: ");
             String name = scanner.nextLine();
-            User user = service.createUser(name);
-            currentUserId = user.getId();
+            currentUserId = createUser(name);
         } else if (choice == 2) {
             System.out.print("Введите ID пользователя: ");
             String userId = scanner.nextLine();
@@ -128,18 +320,22 @@ public class Main {
                 System.out.println("❌ Пользователь не найден. Создаем нового...");
                 System.out.print("Введите имя пользователя: ");
                 String name = scanner.nextLine();
-                user = service.createUser(name);
-                currentUserId = user.getId();
+                currentUserId = createUser(name);
             }
         } else {
             System.out.println("❌ Неверный выбор. Создаем нового пользователя...");
             System.out.print("Введите имя пользователя: ");
             String name = scanner.nextLine();
-            User user = service.createUser(name);
-            currentUserId = user.getId();
+            currentUserId = createUser(name);
         }
     }
     
+    private static String createUser(String name) {
+        User user = service.createUser(name);
+        System.out.println("✅ Создан пользователь: " + user);
+        return user.getId();
+    }
+    
     private static void createShortUrl() throws InvalidUrlException {
         System.out.print("🌐 Введите полный URL: ");
         String originalUrl = scanner.nextLine();
@@ -170,11 +366,56 @@ public class Main {
         }
     }
     
-    private static void getOriginalUrl() throws UrlNotFoundException, UrlExpiredException {
+    private static void createShortUrls() {
+        List<String> urls = readLines("🌐 Введите URL по одному на строку, пустая строка — конец ввода:");
+        List<CreateRequest> requests = new ArrayList<>();
+        for (String url : urls) {
+            requests.add(new CreateRequest(url, currentUserId));
+        }
+        List<CreateResult> results = service.createShortUrls(requests);
+        int created = 0;
+        for (int i = 0; i < results.size(); i++) {
+            CreateResult result = results.get(i);
+            if (result.isCreated()) {
+                created++;
+                System.out.println("✅ " + Config.getBaseUrl() + result.getShortCode() + " ← " + urls.get(i));
+            } else {
+                System.out.println("❌ " + urls.get(i) + ": " + result.getError());
+            }
+        }
+        System.out.println("\nСоздано ссылок: " + created + " из " + results.size());
+    }
+    
+    private static void resolveAll() {
+        List<String> codes = readLines("🔑 Введите коды по одному на строку, пустая строка — конец ввода:");
+        List<LookupResult> results = service.resolveAll(codes);
+        for (int i = 0; i < results.size(); i++) {
+            LookupResult result = results.get(i);
+            System.out.println((result.isFound() ? "✅ " : "❌ ") + codes.get(i) + " → "
+                    + (result.isFound() ? result.getOriginalUrl() : result.getStatus().getDescription()));
+        }
+    }
+    
+    private static List<String> readLines(String prompt) {
+        System.out.println(prompt);
+        List<String> lines = new ArrayList<>();
+        String line;
+        while (!(line = scanner.nextLine().trim()).isEmpty()) {
+            lines.add(line);
+        }
+        return lines;
+    }
+    
+    private static void getOriginalUrl() {
         System.out.print("🔑 Введите короткий код: ");
         String shortCode = scanner.nextLine();
         
-        String originalUrl = service.getOriginalUrl(shortCode);
+        LookupResult result = service.resolve(shortCode);
+        if (!result.isFound()) {
+            System.out.println("❌ " + result.getStatus().getDescription() + ": " + shortCode);
+            return;
+        }
+        String originalUrl = result.getOriginalUrl();
         System.out.println("\n🔗 Короткая ссылка: " + Config.getBaseUrl() + shortCode);
         System.out.println("🌐 Оригинальный URL: " + originalUrl);
         
@@ -196,17 +437,23 @@ public class Main {
         System.out.print("🔑 Введите короткий код для удаления: ");
         String shortCode = scanner.nextLine();
         service.deleteUrl(shortCode, currentUserId);
+        System.out.println("✅ Ссылка удалена: " + shortCode);
     }
     
     private static void searchUrls() {
         System.out.print("🔍 Введите поисковый запрос: ");
         String query = scanner.nextLine();
-        List<ShortUrl> results = service.searchUrls(query, currentUserId);
+        List<ShortUrl> results = service.searchUrls(query, currentUserId, false, 0, SEARCH_PAGE_SIZE + 1);
         
         if (results.isEmpty()) {
             System.out.println("❌ Ничего не найдено");
         } else {
-            System.out.println("\n✅ Найдено ссылок: " + results.size());
+            if (results.size() > SEARCH_PAGE_SIZE) {
+                System.out.println("\n✅ Найдено больше " + SEARCH_PAGE_SIZE + " ссылок, показаны самые новые:");
+                results = results.subList(0, SEARCH_PAGE_SIZE);
+            } else {
+                System.out.println("\n✅ Найдено ссылок: " + results.size());
+            }
             for (ShortUrl result : results) {
                 System.out.println(result);
             }
@@ -245,6 +492,8 @@ public class Main {
         }
         
         service.updateUrlLimit(shortCode, currentUserId, newMaxAccessCount);
+        System.out.println("✅ Лимит переходов для ссылки " + shortCode + " установлен: " +
+                (newMaxAccessCount != null ? newMaxAccessCount : "без лимита"));
     }
     
     private static void switchUser() {
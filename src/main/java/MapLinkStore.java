@@ -0,0 +1,43 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище ссылок на куче: {@link ConcurrentHashMap} плюс индексы.
+ */
+public class MapLinkStore extends IndexedLinkStore {
+    private final Map<String, ShortUrl> urlMap = new ConcurrentHashMap<>();
+    
+    public MapLinkStore(long expiryBucketMillis) {
+        this(expiryBucketMillis, true);
+    }
+    
+    public MapLinkStore(long expiryBucketMillis, boolean searchIndexed) {
+        super(expiryBucketMillis, searchIndexed);
+    }
+    
+    @Override
+    public ShortUrl get(String shortCode) {
+        return urlMap.get(shortCode);
+    }
+    
+    @Override
+    protected ShortUrl insert(ShortUrl shortUrl) {
+        return urlMap.putIfAbsent(shortUrl.getShortCode(), shortUrl) == null ? shortUrl : null;
+    }
+    
+    @Override
+    protected boolean delete(ShortUrl shortUrl) {
+        return urlMap.remove(shortUrl.getShortCode(), shortUrl);
+    }
+    
+    @Override
+    public Stream<ShortUrl> stream() {
+        return urlMap.values().stream();
+    }
+    
+    @Override
+    public int size() {
+        return urlMap.size();
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ * Источник текущего времени в миллисекундах эпохи. Сервис читает время только
+ * через него, поэтому в тестах время можно задавать вручную.
+ */
+@FunctionalInterface
+public interface MillisClock {
+    
+    long millis();
+    
+    static MillisClock system() {
+        return System::currentTimeMillis;
+    }
+    
+    /**
+     * Часы по настройке clock.tick.millis: при шаге больше нуля время берется из общего
+     * кэша, который обновляет фоновый поток, иначе — напрямую из системных часов.
+     */
+    static MillisClock fromConfig() {
+        long tickMillis = Config.getClockTickMillis();
+        return tickMillis > 0 ? CachedMillisClock.shared(tickMillis) : system();
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.stream.Stream;
+
+/**
+ * Хранилище ссылок поверх {@link OffHeapLinkTable}. Основная таблица лежит вне кучи,
+ * индексы истечения и ссылок пользователя - на куче.
+ */
+public class OffHeapLinkStore extends IndexedLinkStore {
+    private final OffHeapLinkTable table;
+    
+    public OffHeapLinkStore(OffHeapLinkTable table, long expiryBucketMillis) {
+        this(table, expiryBucketMillis, true);
+    }
+    
+    public OffHeapLinkStore(OffHeapLinkTable table, long expiryBucketMillis, boolean searchIndexed) {
+        super(expiryBucketMillis, searchIndexed);
+        this.table = table;
+    }
+    
+    @Override
+    public ShortUrl get(String shortCode) {
+        return table.get(shortCode);
+    }
+    
+    @Override
+    protected ShortUrl insert(ShortUrl shortUrl) {
+        return table.putIfAbsent(shortUrl) ? table.get(shortUrl.getShortCode()) : null;
+    }
+    
+    @Override
+    protected boolean delete(ShortUrl shortUrl) {
+        return table.remove(shortUrl);
+    }
+    
+    @Override
+    public Stream<ShortUrl> stream() {
+        return table.stream();
+    }
+    
+    @Override
+    public int size() {
+        return table.size();
+    }
+    
+    public OffHeapLinkTable getTable() {
+        return table;
+    }
+}
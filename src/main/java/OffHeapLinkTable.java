@@ -0,0 +1,778 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Таблица ссылок вне кучи: открытая адресация с линейным пробированием в прямых
+ * или отображенных в память буферах.
+ *
+ * <p>Слот занимает {@value #SLOT_BYTES} байт: код, упакованный в long, время создания
+ * и истечения в миллисекундах, поколение слота вместе со счетчиком переходов, лимит
+ * переходов, номер пользователя и ссылка на строку URL в арене. Строки URL хранятся
+ * в арене вне кучи, идентификаторы пользователей (их немного) - в словаре на куче.
+ * Коды должны состоять из символов {@link ShortCodeGenerator#ALPHABET} и быть не длиннее
+ * {@value #MAX_CODE_LENGTH} символов.
+ *
+ * <p>Чтение не блокируется. Вставка и удаление сериализуются; удаленный слот становится
+ * надгробием и занимается следующей вставкой в ту же цепочку. Слот защищен поколением,
+ * как seqlock: читатель, заставший перезапись, повторяет поиск, а ссылки, выданные
+ * до удаления, не трогают счетчик новой ссылки.
+ *
+ * <p>Когда живые ссылки вместе с надгробиями доходят до предела заполнения, таблица
+ * перестраивается в новые буферы той же емкости: надгробия исчезают, а в новую арену
+ * переписываются только строки живых ссылок. Слоты старой таблицы на время переноса
+ * замораживаются нечетным поколением: читатель ждет публикации новой таблицы, а ссылка,
+ * выданная до перестройки, переадресует счетчик и лимит своей копии в новой таблице.
+ */
+public class OffHeapLinkTable {
+    static final int MAX_CODE_LENGTH = 10;
+    static final int SLOT_BYTES = 48;
+    
+    private static final int KEY = 0;
+    private static final int CREATED_AT = 8;
+    private static final int EXPIRES_AT = 16;
+    private static final int STATE = 24;
+    private static final int MAX_ACCESS_COUNT = 32;
+    private static final int USER_REF = 36;
+    private static final int URL_REF = 40;
+    
+    private static final long EMPTY = 0;
+    private static final long TOMBSTONE = -1;
+    private static final int NO_LIMIT = -1;
+    private static final int MAX_PAGE_SLOTS_SHIFT = 24;
+    private static final double MAX_LOAD = 0.75;
+    
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS =
+            MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    
+    private final long capacity;
+    private final long maxUsedSlots;
+    private final Path mappedDir;
+    private final int chunkBytes;
+    private final Map<String, Integer> userRefs = new ConcurrentHashMap<>();
+    private final List<String> users = new CopyOnWriteArrayList<>();
+    private final Object writeLock = new Object();
+    private volatile Slots slots;
+    /** Занятые слоты: живые ссылки и надгробия. */
+    private long usedSlots;
+    private long tombstones;
+    private long rebuilds;
+    private volatile int size;
+    
+    /**
+     * Таблица в прямых буферах вне кучи.
+     *
+     * @param expectedLinks сколько ссылок таблица должна вмещать одновременно
+     */
+    public OffHeapLinkTable(long expectedLinks) {
+        this(expectedLinks, null);
+    }
+    
+    /**
+     * Таблица в файлах, отображенных в память, в каталоге {@code mappedDir}
+     * (или в прямых буферах, если каталог не задан). Редко читаемые страницы
+     * ОС может вытеснять на диск. Содержимое файлов при открытии не восстанавливается.
+     */
+    public OffHeapLinkTable(long expectedLinks, Path mappedDir) {
+        if (expectedLinks <= 0) {
+            throw new IllegalArgumentException("Емкость таблицы должна быть положительной");
+        }
+        long capacity = Long.highestOneBit((long) Math.ceil(expectedLinks / MAX_LOAD));
+        if (capacity < expectedLinks / MAX_LOAD) {
+            capacity <<= 1;
+        }
+        this.capacity = Math.max(capacity, 16);
+        this.maxUsedSlots = (long) (this.capacity * MAX_LOAD);
+        this.mappedDir = mappedDir;
+        this.chunkBytes = (int) Math.min(UrlArena.MAX_CHUNK_BYTES, Math.max(1 << 16, expectedLinks * 64));
+        try {
+            if (mappedDir != null) {
+                Files.createDirectories(mappedDir);
+            }
+            this.slots = new Slots(0);
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось отобразить таблицу в память: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Добавляет ссылку, если кода еще нет в таблице.
+     *
+     * @return false, если код уже занят
+     * @throws IllegalArgumentException если код нельзя упаковать в long
+     * @throws IllegalStateException если таблица заполнена
+     */
+    public boolean putIfAbsent(ShortUrl shortUrl) {
+        return insert(shortUrl) != null;
+    }
+    
+    /**
+     * Как {@link #putIfAbsent}, но возвращает ссылку, привязанную к занятому слоту, или null.
+     */
+    ShortUrl insert(ShortUrl shortUrl) {
+        long key = pack(shortUrl.getShortCode());
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Код не поддерживается таблицей вне кучи: " + shortUrl.getShortCode());
+        }
+        synchronized (writeLock) {
+            Slots table = slots;
+            long freeSlot = -1;
+            for (long probe = table.indexOf(key); ; probe = (probe + 1) & table.slotMask) {
+                long current = table.keyAt(probe);
+                if (current == key) {
+                    return null;
+                }
+                if (current == TOMBSTONE && freeSlot < 0) {
+                    freeSlot = probe;
+                }
+                if (current == EMPTY) {
+                    break;
+                }
+            }
+            if (freeSlot >= 0) {
+                tombstones--;
+            } else {
+                if (usedSlots >= maxUsedSlots) {
+                    if (tombstones == 0) {
+                        throw new IllegalStateException("Таблица ссылок заполнена: " + size + " ссылок");
+                    }
+                    rebuild();
+                    table = slots;
+                }
+                freeSlot = table.freeSlotFor(key);
+                usedSlots++;
+            }
+            ByteBuffer page = table.pageOf(freeSlot);
+            int offset = table.offsetOf(freeSlot);
+            // Поколение нечетно, пока слот заполняется, и четно, когда поля согласованы:
+            // читатель, заставший запись, повторит поиск
+            int generation = generation((long) LONGS.getVolatile(page, offset + STATE)) + 2;
+            LONGS.setVolatile(page, offset + STATE, state(generation - 1, shortUrl.getAccessCount()));
+            VarHandle.storeStoreFence();
+            int limit = ShortUrl.encodeLimit(shortUrl.getMaxAccessCount());
+            LONGS.set(page, offset + CREATED_AT, shortUrl.getCreatedAtMillis());
+            LONGS.set(page, offset + EXPIRES_AT, shortUrl.getExpiresAtMillis());
+            INTS.setVolatile(page, offset + MAX_ACCESS_COUNT, limit);
+            INTS.set(page, offset + USER_REF, userRef(shortUrl.getUserId()));
+            long urlRef = table.arena.append(shortUrl.getOriginalUrl());
+            LONGS.set(page, offset + URL_REF, urlRef);
+            LONGS.setRelease(page, offset + STATE, state(generation, shortUrl.getAccessCount()));
+            LONGS.setRelease(page, offset + KEY, key);
+            size++;
+            return new SlotShortUrl(shortUrl.getShortCode(), urlRef, shortUrl.getUserId(),
+                    shortUrl.getCreatedAtMillis(), shortUrl.getExpiresAtMillis(), table, page, offset, generation);
+        }
+    }
+    
+    /**
+     * Возвращает ссылку, чьи счетчик и лимит переходов читаются и меняются прямо в таблице.
+     */
+    public ShortUrl get(String shortCode) {
+        long key = pack(shortCode);
+        if (key == EMPTY) {
+            return null;
+        }
+        while (true) {
+            // Таблица перечитывается на каждом круге: замороженный слот оживет уже в новой
+            Slots table = slots;
+            long slot = table.find(key);
+            if (slot < 0) {
+                return null;
+            }
+            ByteBuffer page = table.pageOf(slot);
+            int offset = table.offsetOf(slot);
+            int generation = generation((long) LONGS.getAcquire(page, offset + STATE));
+            if ((generation & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            long urlRef = (long) LONGS.get(page, offset + URL_REF);
+            int userRef = (int) INTS.get(page, offset + USER_REF);
+            long createdAtMillis = (long) LONGS.get(page, offset + CREATED_AT);
+            long expiresAtMillis = (long) LONGS.get(page, offset + EXPIRES_AT);
+            VarHandle.loadLoadFence();
+            if ((long) LONGS.getAcquire(page, offset + KEY) == key
+                    && generation((long) LONGS.getAcquire(page, offset + STATE)) == generation) {
+                return new SlotShortUrl(shortCode, urlRef, users.get(userRef),
+                        createdAtMillis, expiresAtMillis, table, page, offset, generation);
+            }
+            // Слот перезаписали, пока мы его читали: ищем заново
+        }
+    }
+    
+    public boolean containsKey(String shortCode) {
+        long key = pack(shortCode);
+        return key != EMPTY && slots.find(key) >= 0;
+    }
+    
+    public boolean remove(String shortCode) {
+        return remove(shortCode, null);
+    }
+    
+    /**
+     * Удаляет ссылку, полученную из этой таблицы, если ее слот все еще занят ею.
+     */
+    public boolean remove(ShortUrl shortUrl) {
+        if (!(shortUrl instanceof SlotShortUrl)) {
+            return false;
+        }
+        return remove(shortUrl.getShortCode(), (SlotShortUrl) shortUrl);
+    }
+    
+    private boolean remove(String shortCode, SlotShortUrl expected) {
+        long key = pack(shortCode);
+        if (key == EMPTY) {
+            return false;
+        }
+        synchronized (writeLock) {
+            Slots table = slots;
+            long slot = table.find(key);
+            if (slot < 0) {
+                return false;
+            }
+            ByteBuffer page = table.pageOf(slot);
+            int offset = table.offsetOf(slot);
+            if (expected != null && !expected.isCurrent(page, offset) && !expected.isMovedTo(page, offset)) {
+                return false;
+            }
+            LONGS.setRelease(page, offset + KEY, TOMBSTONE);
+            size--;
+            tombstones++;
+            return true;
+        }
+    }
+    
+    /**
+     * Все ссылки таблицы (слабо согласованно с параллельными изменениями).
+     */
+    public Stream<ShortUrl> stream() {
+        Slots table = slots;
+        return LongStream.rangeClosed(0, table.slotMask)
+                .filter(slot -> {
+                    long key = table.keyAt(slot);
+                    return key != EMPTY && key != TOMBSTONE;
+                })
+                .mapToObj(slot -> get(unpack(table.keyAt(slot))))
+                .filter(Objects::nonNull);
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public long capacity() {
+        return capacity;
+    }
+    
+    /**
+     * Сколько раз таблица перестраивалась, чтобы избавиться от надгробий.
+     */
+    public long getRebuildCount() {
+        synchronized (writeLock) {
+            return rebuilds;
+        }
+    }
+    
+    /**
+     * Объем памяти вне кучи: слоты и занятая часть арены строк.
+     */
+    public long offHeapBytes() {
+        return capacity * SLOT_BYTES + slots.arena.usedBytes();
+    }
+    
+    /**
+     * Переносит живые ссылки в новые буферы без надгробий и с арену без строк удаленных ссылок.
+     * Вызывается под блокировкой записи.
+     */
+    private void rebuild() {
+        Slots old = slots;
+        Slots next;
+        try {
+            next = new Slots(old.epoch + 1);
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось перестроить таблицу ссылок: " + e.getMessage(), e);
+        }
+        old.retired = true;
+        for (long slot = 0; slot <= old.slotMask; slot++) {
+            long key = old.keyAt(slot);
+            if (key == EMPTY || key == TOMBSTONE) {
+                continue;
+            }
+            ByteBuffer page = old.pageOf(slot);
+            int offset = old.offsetOf(slot);
+            // Нечетное поколение останавливает переходы по старому слоту; счетчик копируется
+            // уже после этого, поэтому ни один переход не теряется
+            long state;
+            do {
+                state = (long) LONGS.getVolatile(page, offset + STATE);
+            } while (!LONGS.compareAndSet(page, offset + STATE, state, state(generation(state) + 1, (int) state)));
+            long target = next.freeSlotFor(key);
+            ByteBuffer targetPage = next.pageOf(target);
+            int targetOffset = next.offsetOf(target);
+            LONGS.set(targetPage, targetOffset + CREATED_AT, (long) LONGS.get(page, offset + CREATED_AT));
+            LONGS.set(targetPage, targetOffset + EXPIRES_AT, (long) LONGS.get(page, offset + EXPIRES_AT));
+            INTS.set(targetPage, targetOffset + MAX_ACCESS_COUNT, (int) INTS.getVolatile(page, offset + MAX_ACCESS_COUNT));
+            INTS.set(targetPage, targetOffset + USER_REF, (int) INTS.get(page, offset + USER_REF));
+            LONGS.set(targetPage, targetOffset + URL_REF,
+                    next.arena.append(old.arena.bytes((long) LONGS.get(page, offset + URL_REF))));
+            LONGS.set(targetPage, targetOffset + STATE, state(2, (int) state));
+            LONGS.set(targetPage, targetOffset + KEY, key);
+        }
+        VarHandle.releaseFence();
+        slots = next;
+        usedSlots = size;
+        tombstones = 0;
+        rebuilds++;
+        old.release();
+    }
+    
+    private int userRef(String userId) {
+        Integer ref = userRefs.get(userId);
+        if (ref == null) {
+            users.add(userId);
+            ref = users.size() - 1;
+            userRefs.put(userId, ref);
+        }
+        return ref;
+    }
+    
+    private static long state(int generation, int accessCount) {
+        return ((long) generation << 32) | (accessCount & 0xFFFFFFFFL);
+    }
+    
+    private static int generation(long state) {
+        return (int) (state >>> 32);
+    }
+    
+    /**
+     * Упаковывает код в long: цифры по основанию 63 со сдвигом на единицу,
+     * чтобы коды разной длины не совпадали. Возвращает 0, если код не упаковывается.
+     */
+    static long pack(String shortCode) {
+        int length = shortCode.length();
+        if (length == 0 || length > MAX_CODE_LENGTH) {
+            return EMPTY;
+        }
+        long key = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = ShortCodeGenerator.ALPHABET.indexOf(shortCode.charAt(i));
+            if (digit < 0) {
+                return EMPTY;
+            }
+            key = key * 63 + digit + 1;
+        }
+        return key;
+    }
+    
+    static String unpack(long key) {
+        char[] chars = new char[MAX_CODE_LENGTH];
+        int position = chars.length;
+        while (key != 0) {
+            chars[--position] = ShortCodeGenerator.ALPHABET.charAt((int) (key % 63) - 1);
+            key /= 63;
+        }
+        return new String(chars, position, chars.length - position);
+    }
+    
+    private static String fileName(String prefix, int index, int epoch) {
+        return epoch == 0 ? prefix + "-" + index + ".bin" : prefix + "-" + index + "." + epoch + ".bin";
+    }
+    
+    private static ByteBuffer allocate(Path dir, String fileName, int bytes) throws IOException {
+        if (dir == null) {
+            return ByteBuffer.allocateDirect(bytes);
+        }
+        try (FileChannel channel = FileChannel.open(dir.resolve(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        }
+    }
+    
+    /**
+     * Ссылка, счетчик и лимит которой хранятся в слоте таблицы, а URL читается из арены
+     * при обращении, так что объект не держит строку URL на куче. Помнит поколение слота:
+     * после того как слот занят другой ссылкой, счетчик замирает, а переходы не засчитываются.
+     * Если слот заморожен перестройкой таблицы, операции уходят копии ссылки в новой таблице.
+     */
+    private final class SlotShortUrl extends ShortUrl {
+        private final Slots table;
+        private final long urlRef;
+        private final ByteBuffer page;
+        private final int offset;
+        private final int generation;
+        // Декодированный URL; заполняется, только когда ссылку кладут в кэш горячих ссылок
+        private volatile String cachedUrl;
+        
+        SlotShortUrl(String shortCode, long urlRef, String userId, long createdAtMillis,
+                     long expiresAtMillis, Slots table, ByteBuffer page, int offset, int generation) {
+            super(shortCode, null, userId, createdAtMillis, expiresAtMillis, 0, null);
+            this.table = table;
+            this.urlRef = urlRef;
+            this.page = page;
+            this.offset = offset;
+            this.generation = generation;
+        }
+        
+        @Override
+        public String getOriginalUrl() {
+            String url = cachedUrl;
+            // Арена только дописывается, а старая версия живет, пока на нее есть ссылки
+            return url != null ? url : table.arena.read(urlRef);
+        }
+        
+        @Override
+        ShortUrl cacheable() {
+            if (cachedUrl == null) {
+                cachedUrl = table.arena.read(urlRef);
+            }
+            return this;
+        }
+        
+        boolean isCurrent(ByteBuffer page, int offset) {
+            return this.page == page && this.offset == offset
+                    && generation((long) LONGS.getVolatile(page, offset + STATE)) == generation;
+        }
+        
+        /**
+         * Слот новой таблицы занят копией этой ссылки, перенесенной перестройкой.
+         */
+        boolean isMovedTo(ByteBuffer page, int offset) {
+            return table.retired && !isCurrent(this.page, this.offset)
+                    && (long) LONGS.get(page, offset + CREATED_AT) == getCreatedAtMillis();
+        }
+        
+        /**
+         * Состояние слота; пока другой поток меняет лимит ссылки, ждет его.
+         */
+        private long stableState() {
+            while (true) {
+                long state = (long) LONGS.getVolatile(page, offset + STATE);
+                if (generation(state) != generation + 1 || table.retired) {
+                    return state;
+                }
+                Thread.onSpinWait();
+            }
+        }
+        
+        /**
+         * Копия ссылки в перестроенной таблице или null, если таблица не перестраивалась
+         * или ссылку уже удалили.
+         */
+        private ShortUrl moved() {
+            if (!table.retired) {
+                return null;
+            }
+            ShortUrl current = get(getShortCode());
+            return current != null && current.getCreatedAtMillis() == getCreatedAtMillis() ? current : null;
+        }
+        
+        @Override
+        public int getAccessCount() {
+            long state = stableState();
+            if (generation(state) == generation) {
+                return (int) state;
+            }
+            ShortUrl moved = moved();
+            return moved != null ? moved.getAccessCount() : 0;
+        }
+        
+        @Override
+        public Integer getMaxAccessCount() {
+            if (table.retired) {
+                ShortUrl moved = moved();
+                if (moved != null) {
+                    return moved.getMaxAccessCount();
+                }
+            }
+            int limit = (int) INTS.getVolatile(page, offset + MAX_ACCESS_COUNT);
+            return limit == NO_LIMIT ? null : limit;
+        }
+        
+        @Override
+        public void setMaxAccessCount(Integer maxAccessCount) {
+            replaceMaxAccessCount(maxAccessCount);
+        }
+        
+        /**
+         * На время смены лимита слот замораживается нечетным поколением, как при перестройке:
+         * переходы ждут, и активность до и после смены считается по одному значению счетчика.
+         * Лимит лежит отдельно от счетчика, поэтому переход, вытесненный между чтением лимита
+         * и своим CAS на все время смены, засчитывается по старому лимиту.
+         */
+        @Override
+        int replaceMaxAccessCount(Integer maxAccessCount) {
+            int limit = encodeLimit(maxAccessCount);
+            // Под блокировкой записи слот не может сменить владельца или версию таблицы
+            synchronized (writeLock) {
+                long state = (long) LONGS.getVolatile(page, offset + STATE);
+                while (generation(state) == generation) {
+                    if (LONGS.compareAndSet(page, offset + STATE, state, state(generation + 1, (int) state))) {
+                        int oldLimit = (int) INTS.getVolatile(page, offset + MAX_ACCESS_COUNT);
+                        INTS.setVolatile(page, offset + MAX_ACCESS_COUNT, limit);
+                        LONGS.setVolatile(page, offset + STATE, state);
+                        return activityChange((int) state, oldLimit, limit);
+                    }
+                    state = (long) LONGS.getVolatile(page, offset + STATE);
+                }
+            }
+            ShortUrl moved = moved();
+            return moved != null ? moved.replaceMaxAccessCount(maxAccessCount) : 0;
+        }
+        
+        @Override
+        public void incrementAccessCount() {
+            long state;
+            do {
+                state = stableState();
+                if (generation(state) != generation) {
+                    ShortUrl moved = moved();
+                    if (moved != null) {
+                        moved.incrementAccessCount();
+                    }
+                    return;
+                }
+            } while (!LONGS.compareAndSet(page, offset + STATE, state,
+                    state(generation, saturatedAdd((int) state, 1))));
+        }
+        
+        @Override
+        void addAccessCount(int clicks) {
+            long state;
+            do {
+                state = stableState();
+                if (generation(state) != generation) {
+                    ShortUrl moved = moved();
+                    if (moved != null) {
+                        moved.addAccessCount(clicks);
+                    }
+                    return;
+                }
+            } while (!LONGS.compareAndSet(page, offset + STATE, state,
+                    state(generation, saturatedAdd((int) state, clicks))));
+        }
+        
+        @Override
+        void restoreAccessCount(int restoredCount) {
+            long state;
+            do {
+                state = stableState();
+                if (generation(state) != generation) {
+                    ShortUrl moved = moved();
+                    if (moved != null) {
+                        moved.restoreAccessCount(restoredCount);
+                    }
+                    return;
+                }
+            } while ((int) state < restoredCount
+                    && !LONGS.compareAndSet(page, offset + STATE, state, state(generation, restoredCount)));
+        }
+        
+        @Override
+        Access acquireAccess() {
+            while (true) {
+                long state = stableState();
+                if (generation(state) != generation) {
+                    ShortUrl moved = moved();
+                    return moved != null ? moved.acquireAccess() : Access.LIMIT_REACHED;
+                }
+                int limit = (int) INTS.getVolatile(page, offset + MAX_ACCESS_COUNT);
+                if (limit != NO_LIMIT && (int) state >= limit) {
+                    return Access.LIMIT_REACHED;
+                }
+                int next = saturatedAdd((int) state, 1);
+                if (LONGS.compareAndSet(page, offset + STATE, state, state(generation, next))) {
+                    return limit != NO_LIMIT && next >= limit ? Access.EXHAUSTED : Access.GRANTED;
+                }
+            }
+        }
+        
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof SlotShortUrl)) {
+                return false;
+            }
+            SlotShortUrl slot = (SlotShortUrl) other;
+            return slot.page == page && slot.offset == offset && slot.generation == generation;
+        }
+        
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(page) * 31 + offset) * 31 + generation;
+        }
+    }
+    
+    /**
+     * Страницы слотов и арена строк одной версии таблицы. Перестройка создает новую версию,
+     * а старая помечается {@link #retired}.
+     */
+    private final class Slots {
+        final int epoch;
+        final ByteBuffer[] pages;
+        final int pageShift;
+        final int pageMask;
+        final long slotMask;
+        final UrlArena arena;
+        volatile boolean retired;
+        
+        Slots(int epoch) throws IOException {
+            this.epoch = epoch;
+            this.slotMask = capacity - 1;
+            this.pageShift = Math.min(MAX_PAGE_SLOTS_SHIFT, Long.numberOfTrailingZeros(capacity));
+            this.pageMask = (1 << pageShift) - 1;
+            this.pages = new ByteBuffer[(int) (capacity >>> pageShift)];
+            for (int i = 0; i < pages.length; i++) {
+                pages[i] = allocate(mappedDir, fileName("slots", i, epoch), (1 << pageShift) * SLOT_BYTES);
+            }
+            this.arena = new UrlArena(mappedDir, chunkBytes, epoch);
+        }
+        
+        long find(long key) {
+            for (long probe = indexOf(key); ; probe = (probe + 1) & slotMask) {
+                long current = keyAt(probe);
+                if (current == key) {
+                    return probe;
+                }
+                if (current == EMPTY) {
+                    return -1;
+                }
+            }
+        }
+        
+        /**
+         * Первый пустой слот или надгробие в цепочке ключа.
+         */
+        long freeSlotFor(long key) {
+            for (long probe = indexOf(key); ; probe = (probe + 1) & slotMask) {
+                long current = keyAt(probe);
+                if (current == EMPTY || current == TOMBSTONE) {
+                    return probe;
+                }
+            }
+        }
+        
+        long keyAt(long slot) {
+            return (long) LONGS.getAcquire(pageOf(slot), offsetOf(slot) + KEY);
+        }
+        
+        ByteBuffer pageOf(long slot) {
+            return pages[(int) (slot >>> pageShift)];
+        }
+        
+        int offsetOf(long slot) {
+            return (int) (slot & pageMask) * SLOT_BYTES;
+        }
+        
+        long indexOf(long key) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (hash ^ (hash >>> 32)) & slotMask;
+        }
+        
+        /**
+         * Удаляет файлы старой версии. Отображения остаются читаемыми, пока на буферы есть ссылки.
+         */
+        void release() {
+            if (mappedDir == null) {
+                return;
+            }
+            try {
+                for (int i = 0; i < pages.length; i++) {
+                    Files.deleteIfExists(mappedDir.resolve(fileName("slots", i, epoch)));
+                }
+                arena.deleteFiles();
+            } catch (IOException e) {
+                // Файлы старой версии не нужны для работы: удалим при следующем открытии каталога
+            }
+        }
+    }
+    
+    /**
+     * Арена строк URL: блоки до {@value #MAX_CHUNK_BYTES} байт, запись [длина][UTF-8].
+     * Ссылка на строку - номер блока в старших 32 битах и смещение в младших.
+     * Дописывается только под блокировкой записи таблицы.
+     */
+    private static final class UrlArena {
+        static final int MAX_CHUNK_BYTES = 64 << 20;
+        
+        private final Path dir;
+        private final int chunkBytes;
+        private final int epoch;
+        private final List<ByteBuffer> chunks = new CopyOnWriteArrayList<>();
+        private ByteBuffer current;
+        private long fullChunksBytes;
+        
+        UrlArena(Path dir, int chunkBytes, int epoch) throws IOException {
+            this.dir = dir;
+            this.chunkBytes = chunkBytes;
+            this.epoch = epoch;
+            addChunk();
+        }
+        
+        long append(String url) {
+            return append(url.getBytes(StandardCharsets.UTF_8));
+        }
+        
+        long append(byte[] bytes) {
+            if (Integer.BYTES + bytes.length > chunkBytes) {
+                throw new IllegalArgumentException("Слишком длинный URL: " + bytes.length + " байт");
+            }
+            if (current.remaining() < Integer.BYTES + bytes.length) {
+                fullChunksBytes += current.position();
+                try {
+                    addChunk();
+                } catch (IOException e) {
+                    throw new IllegalStateException("Не удалось расширить арену URL: " + e.getMessage(), e);
+                }
+            }
+            long ref = ((long) (chunks.size() - 1) << 32) | current.position();
+            current.putInt(bytes.length);
+            current.put(bytes);
+            return ref;
+        }
+        
+        String read(long ref) {
+            return new String(bytes(ref), StandardCharsets.UTF_8);
+        }
+        
+        byte[] bytes(long ref) {
+            ByteBuffer chunk = chunks.get((int) (ref >>> 32));
+            int offset = (int) ref;
+            int length = chunk.getInt(offset);
+            byte[] bytes = new byte[length];
+            ByteBuffer source = chunk.duplicate();
+            source.position(offset + Integer.BYTES);
+            source.get(bytes);
+            return bytes;
+        }
+        
+        long usedBytes() {
+            return fullChunksBytes + current.position();
+        }
+        
+        void deleteFiles() throws IOException {
+            for (int i = 0; i < chunks.size(); i++) {
+                Files.deleteIfExists(dir.resolve(fileName("urls", i, epoch)));
+            }
+        }
+        
+        private void addChunk() throws IOException {
+            current = allocate(dir, fileName("urls", chunks.size(), epoch), chunkBytes);
+            chunks.add(current);
+        }
+    }
+}
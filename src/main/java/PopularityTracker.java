@@ -0,0 +1,219 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+
+/**
+ * Рейтинг самых популярных ссылок, обновляемый на каждом переходе.
+ *
+ * <p>Хранит не больше {@code capacity} лидеров. Переход по ссылке, которая уже в рейтинге
+ * или набрала не больше переходов, чем самый слабый лидер, стоит одной проверки без
+ * блокировок; под блокировку попадает только претендент на вход в рейтинг. Лидеры
+ * упорядочены по числу переходов, поэтому самый слабый находится за O(log capacity).
+ * Если блокировку держит другой поток, переход претендента не ждет ее: ссылка войдет
+ * в рейтинг на одном из следующих переходов. Чтение сортирует только лидеров, поэтому
+ * его стоимость не зависит от числа ссылок в сервисе.
+ *
+ * <p>Место удаленного лидера при следующем чтении заполняется из источника кандидатов
+ * (обычно {@link LinkStore#topByAccess(int)}), если он задан.
+ *
+ * <p>Опционально ведется рейтинг за скользящее окно ({@link WindowedTopK}).
+ */
+public class PopularityTracker {
+    private static final Comparator<ShortUrl> MOST_ACCESSED =
+            Comparator.comparingInt(ShortUrl::getAccessCount).reversed();
+    
+    private final int capacity;
+    private final Map<String, Rank> leaders = new ConcurrentHashMap<>();
+    // Лидеры по числу переходов на момент последней проверки, самый слабый первый; под lock
+    private final TreeSet<Rank> ranks = new TreeSet<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final IntFunction<List<ShortUrl>> candidates;
+    private final AtomicBoolean vacated = new AtomicBoolean();
+    private final WindowedTopK window;
+    private volatile int admissionThreshold;
+    
+    public PopularityTracker(int capacity, long windowMillis) {
+        this(capacity, windowMillis, null);
+    }
+    
+    /**
+     * @param candidates до n самых популярных ссылок хранилища; заполняет места удаленных
+     *                   лидеров (null - места займут следующие переходы)
+     */
+    public PopularityTracker(int capacity, long windowMillis, IntFunction<List<ShortUrl>> candidates) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Размер рейтинга должен быть положительным");
+        }
+        this.capacity = capacity;
+        this.candidates = candidates;
+        this.window = windowMillis > 0 ? new WindowedTopK(windowMillis, capacity * 4) : null;
+    }
+    
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    public boolean hasWindow() {
+        return window != null;
+    }
+    
+    /**
+     * Учитывает переход по ссылке (счетчик переходов ссылки уже увеличен).
+     */
+    public void recordAccess(ShortUrl shortUrl, long nowMillis) {
+        if (isCandidate(shortUrl) && lock.tryLock()) {
+            try {
+                admit(shortUrl);
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (window != null) {
+            window.record(shortUrl.getShortCode(), nowMillis);
+        }
+    }
+    
+    /**
+     * Предлагает ссылку в рейтинг за все время.
+     */
+    public void offer(ShortUrl shortUrl) {
+        if (!isCandidate(shortUrl)) {
+            return;
+        }
+        lock.lock();
+        try {
+            admit(shortUrl);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public void remove(ShortUrl shortUrl) {
+        lock.lock();
+        try {
+            Rank rank = leaders.get(shortUrl.getShortCode());
+            if (rank != null && rank.shortUrl.equals(shortUrl)) {
+                drop(rank);
+                // Рейтинг больше не полон: место займет кандидат из хранилища или следующий переход
+                admissionThreshold = 0;
+                vacated.set(true);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * До {@code n} самых популярных ссылок за все время, по убыванию числа переходов.
+     */
+    public List<ShortUrl> top(int n) {
+        if (candidates != null && vacated.compareAndSet(true, false)) {
+            // Хранилище читается вне блокировки: переходы тем временем продолжают попадать в рейтинг
+            candidates.apply(capacity).forEach(this::offer);
+        }
+        List<ShortUrl> snapshot = new ArrayList<>(leaders.size());
+        for (Rank rank : leaders.values()) {
+            snapshot.add(rank.shortUrl);
+        }
+        snapshot.sort(MOST_ACCESSED);
+        return snapshot.size() > n ? new ArrayList<>(snapshot.subList(0, n)) : snapshot;
+    }
+    
+    /**
+     * До {@code n} самых популярных кодов за последнее окно; пусто, если окно не настроено.
+     */
+    public List<WindowedTopK.Entry> topInWindow(int n, long nowMillis) {
+        return window == null ? new ArrayList<>() : window.top(n, nowMillis);
+    }
+    
+    private boolean isCandidate(ShortUrl shortUrl) {
+        int accessCount = shortUrl.getAccessCount();
+        if (accessCount == 0) {
+            return false;
+        }
+        Rank rank = leaders.get(shortUrl.getShortCode());
+        if (rank != null && rank.shortUrl.equals(shortUrl)) {
+            return false;
+        }
+        return leaders.size() < capacity || accessCount > admissionThreshold;
+    }
+    
+    private void admit(ShortUrl shortUrl) {
+        Rank current = leaders.get(shortUrl.getShortCode());
+        if (current != null) {
+            if (current.shortUrl.equals(shortUrl)) {
+                return;
+            }
+            // Код освободился и достался новой ссылке: прежняя уходит из рейтинга
+            drop(current);
+        }
+        if (leaders.size() < capacity) {
+            add(shortUrl);
+            if (leaders.size() == capacity) {
+                admissionThreshold = weakest().accessCount;
+            }
+            return;
+        }
+        Rank weakest = weakest();
+        if (shortUrl.getAccessCount() > weakest.accessCount) {
+            drop(weakest);
+            add(shortUrl);
+            weakest = weakest();
+        }
+        admissionThreshold = weakest.accessCount;
+    }
+    
+    private void add(ShortUrl shortUrl) {
+        Rank rank = new Rank(shortUrl);
+        leaders.put(shortUrl.getShortCode(), rank);
+        ranks.add(rank);
+    }
+    
+    private void drop(Rank rank) {
+        ranks.remove(rank);
+        leaders.remove(rank.shortUrl.getShortCode(), rank);
+    }
+    
+    /**
+     * Самый слабый лидер. Счетчики лидеров растут после входа в рейтинг, поэтому первый
+     * по сохраненному числу переходов сверяется с текущим и при расхождении переставляется.
+     */
+    private Rank weakest() {
+        while (true) {
+            Rank first = ranks.first();
+            int accessCount = first.shortUrl.getAccessCount();
+            if (accessCount == first.accessCount) {
+                return first;
+            }
+            ranks.pollFirst();
+            first.accessCount = accessCount;
+            ranks.add(first);
+        }
+    }
+    
+    /**
+     * Лидер рейтинга с числом переходов на момент последней проверки.
+     * Число меняется только под блокировкой и только пока запись вынута из {@code ranks}.
+     */
+    private static final class Rank implements Comparable<Rank> {
+        final ShortUrl shortUrl;
+        int accessCount;
+        
+        Rank(ShortUrl shortUrl) {
+            this.shortUrl = shortUrl;
+            this.accessCount = shortUrl.getAccessCount();
+        }
+        
+        @Override
+        public int compareTo(Rank other) {
+            int byCount = Integer.compare(accessCount, other.accessCount);
+            return byCount != 0 ? byCount : shortUrl.getShortCode().compareTo(other.shortUrl.getShortCode());
+        }
+    }
+}
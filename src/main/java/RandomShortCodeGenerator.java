@@ -0,0 +1,23 @@
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Случайные коды без общего состояния между потоками. Коллизии возможны,
+ * их разрешает сервис повторной вставкой.
+ */
+public class RandomShortCodeGenerator implements ShortCodeGenerator {
+    private final int length;
+    
+    public RandomShortCodeGenerator(int length) {
+        this.length = length;
+    }
+    
+    @Override
+    public String nextCode() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] code = new char[length];
+        for (int i = 0; i < length; i++) {
+            code[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+        return new String(code);
+    }
+}
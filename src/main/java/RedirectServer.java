@@ -0,0 +1,534 @@
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import exceptions.InvalidUrlException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP-фронтенд сервиса на встроенном {@code com.sun.net.httpserver}.
+ *
+ * <ul>
+ *   <li>{@code GET /{code}} — редирект на оригинальный URL (302 или 301),
+ *       404 для неизвестного кода, 410 для просроченной ссылки или исчерпанного лимита;
+ *       {@code HEAD /{code}} отвечает так же, но переход не засчитывается;</li>
+ *   <li>{@code POST /api/users} с полем {@code name} — создание пользователя, в ответе его ID;</li>
+ *   <li>{@code POST /api/urls} с полями {@code url}, {@code userId} и необязательным
+ *       {@code maxAccessCount} — создание короткой ссылки, в ответе короткий URL;</li>
+ *   <li>{@code POST /api/urls/batch?userId=...&maxAccessCount=...} с URL по одному на строку
+ *       в теле — пакетное создание, в ответе по строке на URL: короткий URL или {@code ERROR причина};</li>
+ *   <li>{@code POST /api/urls/resolve} с кодами по одному на строку — пакетный переход, в ответе
+ *       по строке на код: {@code FOUND url} или статус ({@code NOT_FOUND}, {@code EXPIRED},
+ *       {@code LIMIT_REACHED}).</li>
+ *   <li>{@code GET /metrics} — метрики сервиса текстом, строка {@code имя значение} на метрику;
+ *       404, если метрики выключены ({@code metrics.enabled=false}).</li>
+ * </ul>
+ *
+ * Запросы между узлами кластера и реплик сюда не подключаются: они идут на отдельный
+ * служебный порт ({@link InternalServer}). Публичный порт кластера обслуживает сервер
+ * над {@link ShardRouter}: переходы и создание ссылок уходят узлам-владельцам сегментов,
+ * метрики ({@code /metrics}) есть только у узлов. Сервер над сервисом отдельного узла
+ * не создается: он не нашел бы ссылки чужих сегментов, а созданные им ссылки
+ * обходили бы блокировку переноса сегментов.
+ *
+ * Сервер реплики переводится в режим только для чтения ({@link #setReadOnly}): запросы
+ * на создание отклоняются со статусом 403.
+ *
+ * Тело POST-запросов — {@code application/x-www-form-urlencoded}, не больше
+ * {@code http.max.body.bytes} байт: больше тело не читается, ответ — 413. Соединения
+ * keep-alive поддерживаются сервером JDK, ответы редиректа идут без тела.
+ *
+ * <p>Сервер JDK пишет заголовки и тело ответа отдельно, поэтому без
+ * {@code -Dsun.net.httpserver.nodelay=true} тело ждет подтверждения заголовков до 40 мс.
+ * Свойство общее для JVM и задается при запуске ({@code Main --http}), а не здесь.
+ */
+public class RedirectServer {
+    private static final byte[] NOT_FOUND_BODY = "Not Found\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] GONE_BODY = "Gone\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] METHOD_NOT_ALLOWED_BODY = "Method Not Allowed\n".getBytes(StandardCharsets.UTF_8);
+    private static final String READ_ONLY_MESSAGE = "Реплика только для чтения: изменения принимает ведущий узел";
+    
+    private final Backend backend;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final int redirectStatus;
+    private final int maxBodyBytes;
+    private volatile boolean readOnly;
+    
+    public RedirectServer(UrlShortenerService service, int port) throws IOException {
+        this(service, port, Config.getHttpThreads());
+    }
+    
+    public RedirectServer(UrlShortenerService service, int port, int threads) throws IOException {
+        this(serviceBackend(service), port, threads);
+    }
+    
+    /**
+     * Публичный сервер кластера: запросы выполняются через маршрутизатор.
+     */
+    public RedirectServer(ShardRouter router, int port) throws IOException {
+        this(router, port, Config.getHttpThreads());
+    }
+    
+    public RedirectServer(ShardRouter router, int port, int threads) throws IOException {
+        this(routerBackend(router), port, threads);
+    }
+    
+    private RedirectServer(Backend backend, int port, int threads) throws IOException {
+        this.backend = backend;
+        this.redirectStatus = Config.getHttpRedirectStatus();
+        this.maxBodyBytes = Config.getHttpMaxBodyBytes();
+        this.server = HttpServer.create(new InetSocketAddress(port), Config.getHttpBacklog());
+        this.executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/api/users", this::handleCreateUser);
+        server.createContext("/api/urls", this::handleCreateUrl);
+        server.createContext("/api/urls/batch", this::handleCreateBatch);
+        server.createContext("/api/urls/resolve", this::handleResolveBatch);
+        server.createContext("/metrics", this::handleMetrics);
+        server.createContext("/", this::handleRedirect);
+    }
+    
+    public void start() {
+        server.start();
+    }
+    
+    /**
+     * Отклонять создание пользователей и ссылок: сервер отдает переходы реплики.
+     */
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+    
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void handleRedirect(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                sendBytes(exchange, 405, METHOD_NOT_ALLOWED_BODY);
+                return;
+            }
+            String shortCode = exchange.getRequestURI().getRawPath().substring(1);
+            LookupResult result;
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                // Превью и мониторинг проверяют ссылку, но не расходуют ее лимит
+                result = backend.peek(shortCode);
+            } else {
+                Headers request = exchange.getRequestHeaders();
+                result = backend.resolve(shortCode, request.getFirst("Referer"), request.getFirst("User-Agent"));
+            }
+            switch (result.getStatus()) {
+                case FOUND:
+                    exchange.getResponseHeaders().set("Location", result.getOriginalUrl());
+                    exchange.sendResponseHeaders(redirectStatus, -1);
+                    break;
+                case NOT_FOUND:
+                    sendBytes(exchange, 404, NOT_FOUND_BODY);
+                    break;
+                default:
+                    sendBytes(exchange, 410, GONE_BODY);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    private void handleCreateUser(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendBytes(exchange, 405, METHOD_NOT_ALLOWED_BODY);
+                return;
+            }
+            if (readOnly) {
+                sendText(exchange, 403, READ_ONLY_MESSAGE);
+                return;
+            }
+            Map<String, String> form;
+            try {
+                form = readForm(exchange);
+            } catch (BodyTooLargeException e) {
+                sendText(exchange, 413, e.getMessage());
+                return;
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, e.getMessage());
+                return;
+            }
+            String name = form.get("name");
+            if (name == null || name.isBlank()) {
+                sendText(exchange, 400, "Не указано имя пользователя");
+                return;
+            }
+            try {
+                sendText(exchange, 201, backend.createUser(name).getId());
+            } catch (IllegalStateException e) {
+                // Узел кластера недоступен: пользователь не создан
+                sendText(exchange, 503, e.getMessage());
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    private void handleCreateUrl(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendBytes(exchange, 405, METHOD_NOT_ALLOWED_BODY);
+                return;
+            }
+            if (readOnly) {
+                sendText(exchange, 403, READ_ONLY_MESSAGE);
+                return;
+            }
+            Map<String, String> form;
+            try {
+                form = readForm(exchange);
+            } catch (BodyTooLargeException e) {
+                sendText(exchange, 413, e.getMessage());
+                return;
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, e.getMessage());
+                return;
+            }
+            Integer maxAccessCount;
+            try {
+                maxAccessCount = parseLimit(form.get("maxAccessCount"));
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, e.getMessage());
+                return;
+            }
+            try {
+                String shortCode = backend.createShortUrl(form.get("url"), form.get("userId"), maxAccessCount);
+                sendText(exchange, 201, Config.getBaseUrl() + shortCode);
+            } catch (InvalidUrlException e) {
+                sendText(exchange, 400, e.getMessage());
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    private void handleCreateBatch(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendBytes(exchange, 405, METHOD_NOT_ALLOWED_BODY);
+                return;
+            }
+            if (readOnly) {
+                sendText(exchange, 403, READ_ONLY_MESSAGE);
+                return;
+            }
+            Map<String, String> query;
+            try {
+                query = parseForm(exchange.getRequestURI().getRawQuery());
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, e.getMessage());
+                return;
+            }
+            Integer maxAccessCount;
+            try {
+                maxAccessCount = parseLimit(query.get("maxAccessCount"));
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, e.getMessage());
+                return;
+            }
+            String userId = query.get("userId");
+            List<String> urls;
+            try {
+                urls = readLines(exchange);
+            } catch (BodyTooLargeException e) {
+                sendText(exchange, 413, e.getMessage());
+                return;
+            }
+            List<CreateRequest> requests = new ArrayList<>(urls.size());
+            for (String url : urls) {
+                requests.add(new CreateRequest(url, userId, maxAccessCount));
+            }
+            StringBuilder response = new StringBuilder();
+            for (CreateResult result : backend.createShortUrls(requests)) {
+                response.append(result.isCreated() ? Config.getBaseUrl() + result.getShortCode() : result.toString())
+                        .append('\n');
+            }
+            sendBytes(exchange, 200, response.toString().getBytes(StandardCharsets.UTF_8));
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    private void handleResolveBatch(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendBytes(exchange, 405, METHOD_NOT_ALLOWED_BODY);
+                return;
+            }
+            List<String> codes;
+            try {
+                codes = readLines(exchange);
+            } catch (BodyTooLargeException e) {
+                sendText(exchange, 413, e.getMessage());
+                return;
+            }
+            StringBuilder response = new StringBuilder();
+            for (LookupResult result : backend.resolveAll(codes)) {
+                response.append(result.getStatus());
+                if (result.isFound()) {
+                    response.append(' ').append(result.getOriginalUrl());
+                }
+                response.append('\n');
+            }
+            sendBytes(exchange, 200, response.toString().getBytes(StandardCharsets.UTF_8));
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendBytes(exchange, 405, METHOD_NOT_ALLOWED_BODY);
+                return;
+            }
+            ServiceMetrics metrics = backend.getMetrics();
+            if (metrics == null) {
+                sendBytes(exchange, 404, NOT_FOUND_BODY);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            sendBytes(exchange, 200, metrics.render().getBytes(StandardCharsets.UTF_8));
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    /**
+     * Непустые строки тела запроса без пробелов по краям.
+     */
+    private List<String> readLines(HttpExchange exchange) throws IOException {
+        String body = new String(readBody(exchange), StandardCharsets.UTF_8);
+        List<String> lines = new ArrayList<>();
+        for (String line : body.split("\r?\n")) {
+            if (!line.isBlank()) {
+                lines.add(line.trim());
+            }
+        }
+        return lines;
+    }
+    
+    /**
+     * Лимит переходов из поля запроса: null, если поле пустое. Диапазон проверяет сервис.
+     *
+     * @throws IllegalArgumentException если значение не целое число
+     */
+    static Integer parseLimit(String limit) {
+        if (limit == null || limit.isBlank()) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(limit.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Неверный формат лимита: " + limit, e);
+        }
+    }
+    
+    private Map<String, String> readForm(HttpExchange exchange) throws IOException {
+        return parseForm(new String(readBody(exchange), StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Тело запроса целиком, если оно не больше {@code http.max.body.bytes}: читается не больше
+     * предела и одного байта сверх. Заявленную длину сервер не проверяет заранее, чтобы
+     * немного превысивший предел клиент успел дописать тело и получить ответ 413.
+     *
+     * @throws BodyTooLargeException если тело больше предела
+     */
+    private byte[] readBody(HttpExchange exchange) throws IOException {
+        try (InputStream input = exchange.getRequestBody()) {
+            byte[] body = input.readNBytes(maxBodyBytes + 1);
+            if (body.length > maxBodyBytes) {
+                throw new BodyTooLargeException(maxBodyBytes);
+            }
+            return body;
+        }
+    }
+    
+    /**
+     * Поля формы {@code application/x-www-form-urlencoded}.
+     *
+     * @throws IllegalArgumentException если в паре неверная %-кодировка
+     */
+    static Map<String, String> parseForm(String body) {
+        Map<String, String> form = new HashMap<>();
+        if (body == null) {
+            return form;
+        }
+        for (String pair : body.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            try {
+                form.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Неверная кодировка формы: " + pair, e);
+            }
+        }
+        return form;
+    }
+    
+    private static Backend serviceBackend(UrlShortenerService service) {
+        if (service.getCodeGenerator() instanceof ShardedCodeGenerator) {
+            throw new IllegalArgumentException("Сервис узла кластера открывается только через ShardRouter");
+        }
+        return new Backend() {
+            @Override
+            public LookupResult resolve(String shortCode, String referrer, String userAgent) {
+                return service.resolve(shortCode, referrer, userAgent);
+            }
+            
+            @Override
+            public LookupResult peek(String shortCode) {
+                return service.peek(shortCode);
+            }
+            
+            @Override
+            public User createUser(String name) {
+                return service.createUser(name);
+            }
+            
+            @Override
+            public String createShortUrl(String originalUrl, String userId, Integer maxAccessCount)
+                    throws InvalidUrlException {
+                return service.createShortUrl(originalUrl, userId, maxAccessCount);
+            }
+            
+            @Override
+            public List<CreateResult> createShortUrls(List<CreateRequest> requests) {
+                return service.createShortUrls(requests);
+            }
+            
+            @Override
+            public List<LookupResult> resolveAll(List<String> shortCodes) {
+                return service.resolveAll(shortCodes);
+            }
+            
+            @Override
+            public ServiceMetrics getMetrics() {
+                return service.getMetrics();
+            }
+        };
+    }
+    
+    private static Backend routerBackend(ShardRouter router) {
+        return new Backend() {
+            @Override
+            public LookupResult resolve(String shortCode, String referrer, String userAgent) {
+                return router.resolve(shortCode, referrer, userAgent);
+            }
+            
+            @Override
+            public LookupResult peek(String shortCode) {
+                return router.peek(shortCode);
+            }
+            
+            @Override
+            public User createUser(String name) {
+                return router.createUser(name);
+            }
+            
+            @Override
+            public String createShortUrl(String originalUrl, String userId, Integer maxAccessCount)
+                    throws InvalidUrlException {
+                return router.createShortUrl(originalUrl, userId, maxAccessCount);
+            }
+            
+            @Override
+            public List<CreateResult> createShortUrls(List<CreateRequest> requests) {
+                return router.createShortUrls(requests);
+            }
+            
+            @Override
+            public List<LookupResult> resolveAll(List<String> shortCodes) {
+                return router.resolveAll(shortCodes);
+            }
+            
+            @Override
+            public ServiceMetrics getMetrics() {
+                return null;
+            }
+        };
+    }
+    
+    static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        sendBytes(exchange, status, (text + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+    
+    static void sendBytes(HttpExchange exchange, int status, byte[] body) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        if (!headers.containsKey("Content-Type")) {
+            headers.set("Content-Type", "text/plain; charset=utf-8");
+        }
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+    
+    /**
+     * Операции, которые выполняет сервер: у сервиса или через маршрутизатор кластера.
+     */
+    private interface Backend {
+        LookupResult resolve(String shortCode, String referrer, String userAgent);
+        
+        LookupResult peek(String shortCode);
+        
+        User createUser(String name);
+        
+        String createShortUrl(String originalUrl, String userId, Integer maxAccessCount) throws InvalidUrlException;
+        
+        List<CreateResult> createShortUrls(List<CreateRequest> requests);
+        
+        List<LookupResult> resolveAll(List<String> shortCodes);
+        
+        /** Метрики или null, если их нет. */
+        ServiceMetrics getMetrics();
+    }
+    
+    /**
+     * Тело запроса больше {@code http.max.body.bytes}: ответ 413.
+     */
+    private static final class BodyTooLargeException extends IOException {
+        BodyTooLargeException(int maxBodyBytes) {
+            super("Тело запроса больше " + maxBodyBytes + " байт");
+        }
+    }
+}
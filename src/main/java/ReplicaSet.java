@@ -0,0 +1,107 @@
+import exceptions.InvalidUrlException;
+import exceptions.UrlExpiredException;
+import exceptions.UrlNotFoundException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ведущий узел с репликами в одной JVM: изменения идут ведущему, переходы распределяются
+ * по очереди между репликами, которые не отстали больше допустимого.
+ *
+ * <p>Если все реплики отстали или реплика не знает кода (ссылка создана позже ее последней
+ * порции журнала), переход обслуживает ведущий.
+ */
+public class ReplicaSet {
+    private final ReplicationLeader leader;
+    /** Неизменяемый список; при добавлении и удалении реплики заменяется целиком. */
+    private volatile List<ReplicationFollower> followers = List.of();
+    private final AtomicInteger next = new AtomicInteger();
+    
+    public ReplicaSet(ReplicationLeader leader) {
+        this.leader = leader;
+    }
+    
+    public synchronized void addFollower(ReplicationFollower follower) {
+        List<ReplicationFollower> updated = new ArrayList<>(followers);
+        updated.add(follower);
+        followers = List.copyOf(updated);
+    }
+    
+    public synchronized boolean removeFollower(ReplicationFollower follower) {
+        List<ReplicationFollower> updated = new ArrayList<>(followers);
+        boolean removed = updated.remove(follower);
+        followers = List.copyOf(updated);
+        return removed;
+    }
+    
+    public List<ReplicationFollower> getFollowers() {
+        return followers;
+    }
+    
+    public User createUser(String name) {
+        return leader.getService().createUser(name);
+    }
+    
+    public String createShortUrl(String originalUrl, String userId) throws InvalidUrlException {
+        return leader.getService().createShortUrl(originalUrl, userId);
+    }
+    
+    public String createShortUrl(String originalUrl, String userId, Integer maxAccessCount)
+            throws InvalidUrlException {
+        return leader.getService().createShortUrl(originalUrl, userId, maxAccessCount);
+    }
+    
+    public void deleteUrl(String shortCode, String userId) throws UrlNotFoundException {
+        leader.getService().deleteUrl(shortCode, userId);
+    }
+    
+    public void updateUrlLimit(String shortCode, String userId, Integer maxAccessCount) throws UrlNotFoundException {
+        leader.getService().updateUrlLimit(shortCode, userId, maxAccessCount);
+    }
+    
+    public LookupResult resolve(String shortCode) {
+        ReplicationFollower follower = pickFollower();
+        if (follower != null) {
+            LookupResult result = follower.resolve(shortCode);
+            if (result.getStatus() != LookupResult.Status.NOT_FOUND) {
+                return result;
+            }
+        }
+        return leader.getService().resolve(shortCode);
+    }
+    
+    public String getOriginalUrl(String shortCode) throws UrlNotFoundException, UrlExpiredException {
+        LookupResult result = resolve(shortCode);
+        switch (result.getStatus()) {
+            case FOUND:
+                return result.getOriginalUrl();
+            case NOT_FOUND:
+                throw UrlNotFoundException.withoutStackTrace(result.getStatus().getDescription() + ": " + shortCode);
+            default:
+                throw new UrlExpiredException(result.getStatus().getDescription() + ": " + shortCode);
+        }
+    }
+    
+    /**
+     * Следующая по очереди реплика, не отставшая больше допустимого, или null.
+     */
+    private ReplicationFollower pickFollower() {
+        List<ReplicationFollower> current = followers;
+        int size = current.size();
+        int start = next.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            ReplicationFollower follower = current.get((start + i) % size);
+            if (follower.isInSync()) {
+                return follower;
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public String toString() {
+        return "ведущий и реплик: " + followers.size();
+    }
+}
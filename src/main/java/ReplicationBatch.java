@@ -0,0 +1,87 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Порция журнала изменений ведущего узла для реплики.
+ *
+ * <p>Записи - строки CSV: {@code user} и {@code link} в формате {@link LinkTransfer},
+ * {@code delete,<код>}, {@code limit,<код>,<лимит или пусто>} и {@code access,<код>,<счетчик>}.
+ * Все записи идемпотентны: счетчик переходов передается абсолютным значением и только поднимает
+ * счетчик реплики. Снимок ({@link #isSnapshot()}) содержит пользователей и ссылки целиком,
+ * и реплика заменяет им свое состояние. Снимок приходит страницами: пока {@link #getCursor()}
+ * не 0, следующая страница запрашивается по нему ({@link ReplicationSource#fetchSnapshot}).
+ */
+public final class ReplicationBatch {
+    private final boolean snapshot;
+    private final long lastSeq;
+    private final long leaderSeq;
+    private final long cursor;
+    private final List<String> records;
+    
+    /**
+     * @param lastSeq   номер последней записи, которую покрывает порция
+     * @param leaderSeq номер последней записи журнала ведущего на момент ответа
+     */
+    public ReplicationBatch(boolean snapshot, long lastSeq, long leaderSeq, List<String> records) {
+        this(snapshot, lastSeq, leaderSeq, 0, records);
+    }
+    
+    /**
+     * @param cursor курсор следующей страницы снимка; 0 - страница последняя
+     */
+    public ReplicationBatch(boolean snapshot, long lastSeq, long leaderSeq, long cursor, List<String> records) {
+        this.snapshot = snapshot;
+        this.lastSeq = lastSeq;
+        this.leaderSeq = leaderSeq;
+        this.cursor = cursor;
+        this.records = Collections.unmodifiableList(records);
+    }
+    
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+    
+    public long getLastSeq() {
+        return lastSeq;
+    }
+    
+    public long getLeaderSeq() {
+        return leaderSeq;
+    }
+    
+    /** Курсор следующей страницы снимка; 0 - страница последняя или порция не снимок. */
+    public long getCursor() {
+        return cursor;
+    }
+    
+    public List<String> getRecords() {
+        return records;
+    }
+    
+    String toCsv() {
+        StringBuilder text = new StringBuilder(64 + records.size() * 96);
+        text.append("batch,").append(snapshot ? "snapshot" : "log").append(',')
+                .append(lastSeq).append(',').append(leaderSeq).append(',').append(cursor).append('\n');
+        for (String record : records) {
+            text.append(record).append('\n');
+        }
+        return text.toString();
+    }
+    
+    static ReplicationBatch parseCsv(List<String> lines) {
+        List<String> header = lines.isEmpty() ? List.of() : LinkTransfer.parseCsv(lines.get(0));
+        if (header.size() != 5 || !"batch".equals(header.get(0))) {
+            throw new IllegalArgumentException("Нет заголовка порции журнала");
+        }
+        return new ReplicationBatch("snapshot".equals(header.get(1)), LinkTransfer.parseLong(header.get(2)),
+                LinkTransfer.parseLong(header.get(3)), LinkTransfer.parseLong(header.get(4)),
+                new ArrayList<>(lines.subList(1, lines.size())));
+    }
+    
+    @Override
+    public String toString() {
+        return (snapshot ? "снимок" : "журнал") + " до " + lastSeq + " из " + leaderSeq
+                + ", записей: " + records.size() + (cursor != 0 ? ", есть продолжение" : "");
+    }
+}
@@ -0,0 +1,316 @@
+import exceptions.UrlExpiredException;
+import exceptions.UrlNotFoundException;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Реплика ведущего узла только для чтения: применяет его журнал изменений к своему сервису
+ * и обслуживает переходы.
+ *
+ * <p>Журнал забирается асинхронно раз в {@code replication.poll.millis}; первая порция
+ * или порция после долгого отставания приходит снимком. Отставание измеряется временем
+ * с начала последнего запроса, после которого реплика догнала ведущего: данные реплики
+ * не старше этого значения. Если оно больше {@code replication.max.lag.millis}, реплика
+ * считается отставшей ({@link #isInSync()}) и пишет об этом в журнал сервиса. Время
+ * читается по часам сервиса реплики.
+ *
+ * <p>Переходы засчитываются на реплике сразу, а ведущему уходят пачкой раз в
+ * {@code replication.merge.millis}. Лимит переходов реплика проверяет по своему счетчику,
+ * поэтому до слияния несколько реплик вместе могут пропустить немного больше лимита.
+ */
+public class ReplicationFollower implements LinkChangeListener, Closeable {
+    private static final AsyncLogger LOG = AsyncLogger.forClass(ReplicationFollower.class);
+    private static final long NEVER_SYNCED = Long.MIN_VALUE;
+    
+    private final ReplicationSource leader;
+    private final UrlShortenerService service;
+    private final int batchSize;
+    private final long maxLagMillis;
+    private final Map<String, AtomicInteger> pendingClicks = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private volatile long appliedSeq = -1;
+    private volatile long leaderSeq;
+    /** Время начала запроса, после которого реплика догнала ведущего; {@link #NEVER_SYNCED} - еще не догоняла. */
+    private volatile long syncedAtMillis = NEVER_SYNCED;
+    private volatile boolean lagging;
+    private volatile boolean failing;
+    
+    private ReplicationFollower(ReplicationSource leader, UrlShortenerService service, int batchSize,
+                                long maxLagMillis) {
+        this.leader = leader;
+        this.service = service;
+        this.batchSize = batchSize;
+        this.maxLagMillis = maxLagMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replication-follower");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Подключает реплику к ведущему с интервалами из настроек.
+     */
+    public static ReplicationFollower start(ReplicationSource leader, UrlShortenerService service) {
+        return start(leader, service, Config.getReplicationBatchSize(), Config.getReplicationPollMillis(),
+                Config.getReplicationMergeMillis(), Config.getReplicationMaxLagMillis());
+    }
+    
+    /**
+     * @param pollMillis  период запроса журнала; 0 - только по вызову {@link #sync()}
+     * @param mergeMillis период отправки переходов ведущему; 0 - только по вызову {@link #mergeAccessCounts()}
+     */
+    public static ReplicationFollower start(ReplicationSource leader, UrlShortenerService service, int batchSize,
+                                            long pollMillis, long mergeMillis, long maxLagMillis) {
+        ReplicationFollower follower = new ReplicationFollower(leader, service, batchSize, maxLagMillis);
+        service.addChangeListener(follower);
+        ServiceMetrics metrics = service.getMetrics();
+        if (metrics != null) {
+            metrics.gauge("replication_lag_millis", follower::getLagMillis);
+            metrics.gauge("replication_lag_records", follower::getLagRecords);
+        }
+        if (pollMillis > 0) {
+            follower.scheduler.scheduleWithFixedDelay(follower::syncQuietly, 0, pollMillis, TimeUnit.MILLISECONDS);
+        }
+        if (mergeMillis > 0) {
+            follower.scheduler.scheduleWithFixedDelay(follower::mergeQuietly,
+                    mergeMillis, mergeMillis, TimeUnit.MILLISECONDS);
+        }
+        return follower;
+    }
+    
+    public UrlShortenerService getService() {
+        return service;
+    }
+    
+    public LookupResult resolve(String shortCode) {
+        return service.resolve(shortCode);
+    }
+    
+    public String getOriginalUrl(String shortCode) throws UrlNotFoundException, UrlExpiredException {
+        return service.getOriginalUrl(shortCode);
+    }
+    
+    /**
+     * Забирает и применяет журнал, пока не догонит ведущего в том состоянии, в котором
+     * он был на начало вызова.
+     *
+     * @return число примененных записей
+     */
+    public synchronized long sync() {
+        long startedAt = service.getClock().millis();
+        long target = Long.MAX_VALUE;
+        long applied = 0;
+        while (true) {
+            ReplicationBatch batch = leader.fetch(appliedSeq, batchSize);
+            if (batch.isSnapshot()) {
+                applied += applySnapshot(batch);
+            } else {
+                for (String record : batch.getRecords()) {
+                    apply(LinkTransfer.parseCsv(record));
+                }
+                applied += batch.getRecords().size();
+            }
+            appliedSeq = batch.getLastSeq();
+            leaderSeq = batch.getLeaderSeq();
+            target = Math.min(target, leaderSeq);
+            if (appliedSeq >= target) {
+                syncedAtMillis = startedAt;
+                return applied;
+            }
+        }
+    }
+    
+    /**
+     * Отправляет ведущему переходы, засчитанные с прошлой отправки.
+     *
+     * @return число ссылок в пачке
+     */
+    public synchronized int mergeAccessCounts() {
+        Map<String, Integer> clicks = new HashMap<>();
+        for (Map.Entry<String, AtomicInteger> entry : pendingClicks.entrySet()) {
+            int count = entry.getValue().getAndSet(0);
+            if (count > 0) {
+                clicks.put(entry.getKey(), count);
+            }
+        }
+        if (clicks.isEmpty()) {
+            return 0;
+        }
+        try {
+            leader.mergeAccessCounts(clicks);
+        } catch (RuntimeException e) {
+            // Не дошедшие до ведущего переходы уйдут со следующей пачкой
+            for (Map.Entry<String, Integer> entry : clicks.entrySet()) {
+                pendingClicks.computeIfAbsent(entry.getKey(), code -> new AtomicInteger())
+                        .addAndGet(entry.getValue());
+            }
+            throw e;
+        }
+        return clicks.size();
+    }
+    
+    /** Номер последней примененной записи журнала ведущего; -1 - реплика еще пуста. */
+    public long getAppliedSeq() {
+        return appliedSeq;
+    }
+    
+    /** Сколько записей журнала ведущего реплика еще не применила по последнему ответу. */
+    public long getLagRecords() {
+        return Math.max(0, leaderSeq - appliedSeq);
+    }
+    
+    /**
+     * Насколько данные реплики могут отставать от ведущего, мс; {@link Long#MAX_VALUE},
+     * пока реплика ни разу его не догнала.
+     */
+    public long getLagMillis() {
+        long syncedAt = syncedAtMillis;
+        return syncedAt == NEVER_SYNCED ? Long.MAX_VALUE : service.getClock().millis() - syncedAt;
+    }
+    
+    public boolean isInSync() {
+        return getLagMillis() <= maxLagMillis;
+    }
+    
+    @Override
+    public void onAccess(ShortUrl shortUrl) {
+        pendingClicks.computeIfAbsent(shortUrl.getShortCode(), code -> new AtomicInteger()).incrementAndGet();
+    }
+    
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mergeQuietly();
+        service.removeChangeListener(this);
+    }
+    
+    private void apply(List<String> fields) {
+        switch (fields.get(0)) {
+            case "user": {
+                User user = LinkTransfer.parseUser(fields);
+                if (service.getUserById(user.getId()) == null) {
+                    service.restoreUser(user);
+                }
+                break;
+            }
+            case "link":
+                applyLink(LinkTransfer.parseLink(fields));
+                break;
+            case "delete":
+                service.removeShortUrl(fields.get(1));
+                pendingClicks.remove(fields.get(1));
+                break;
+            case "limit": {
+                String limit = fields.get(2);
+                service.restoreLimit(fields.get(1), limit == null || limit.isEmpty() ? null
+                        : LinkTransfer.parseInt(limit));
+                break;
+            }
+            case "access":
+                service.restoreAccessCount(fields.get(1), LinkTransfer.parseInt(fields.get(2)));
+                break;
+            default:
+                throw new IllegalArgumentException("Неизвестный тип записи журнала: " + fields.get(0));
+        }
+    }
+    
+    private void applyLink(ShortUrl shortUrl) {
+        ShortUrl existing = service.findShortUrl(shortUrl.getShortCode());
+        if (existing == null || !existing.getOriginalUrl().equals(shortUrl.getOriginalUrl())) {
+            // Код мог освободиться и достаться другой ссылке, пока реплика отставала
+            service.addShortUrl(shortUrl);
+        } else {
+            service.restoreLimit(shortUrl.getShortCode(), shortUrl.getMaxAccessCount());
+            service.restoreAccessCount(shortUrl.getShortCode(), shortUrl.getAccessCount());
+        }
+    }
+    
+    /**
+     * Применяет снимок, дочитывая его страницы, и удаляет ссылки, которых в нем нет.
+     * Если снимок оборвался, устаревшие ссылки остаются до следующего снимка.
+     *
+     * @return число примененных записей
+     */
+    private long applySnapshot(ReplicationBatch page) {
+        Set<String> codes = new HashSet<>();
+        long applied = 0;
+        while (true) {
+            for (String record : page.getRecords()) {
+                List<String> fields = LinkTransfer.parseCsv(record);
+                apply(fields);
+                if ("link".equals(fields.get(0))) {
+                    codes.add(fields.get(1));
+                }
+            }
+            applied += page.getRecords().size();
+            if (page.getCursor() == 0) {
+                break;
+            }
+            page = leader.fetchSnapshot(page.getCursor(), batchSize);
+        }
+        List<String> stale = service.urls()
+                .map(ShortUrl::getShortCode)
+                .filter(code -> !codes.contains(code))
+                .collect(Collectors.toList());
+        for (String code : stale) {
+            service.removeShortUrl(code);
+            pendingClicks.remove(code);
+        }
+        LOG.info("Реплика загрузила снимок: ссылок {}, удалено устаревших {}", codes.size(), stale.size());
+        return applied;
+    }
+    
+    private void syncQuietly() {
+        try {
+            sync();
+            if (failing) {
+                failing = false;
+                LOG.info("Связь с ведущим восстановлена, отставание записей: {}", getLagRecords());
+            }
+        } catch (RuntimeException e) {
+            if (!failing) {
+                failing = true;
+                LOG.warn("Ошибка получения журнала от ведущего: {}", e.getMessage());
+            }
+        }
+        boolean inSync = isInSync();
+        if (lagging == inSync) {
+            lagging = !inSync;
+            if (lagging) {
+                LOG.warn("Реплика отстает от ведущего больше чем на {} мс", maxLagMillis);
+            } else {
+                LOG.info("Реплика догнала ведущего");
+            }
+        }
+    }
+    
+    private void mergeQuietly() {
+        try {
+            mergeAccessCounts();
+        } catch (RuntimeException e) {
+            LOG.warn("Ошибка отправки переходов ведущему: {}", e.getMessage());
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "реплика: запись " + appliedSeq + " из " + leaderSeq + ", отставание " + getLagMillis() + " мс";
+    }
+}
@@ -0,0 +1,241 @@
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Журнал изменений ведущего узла для реплик ({@link ReplicationFollower}).
+ *
+ * <p>Новые пользователи, создание и удаление ссылок и смена лимита записываются в кольцевой
+ * буфер на {@code replication.log.size} записей с последовательными номерами. Переходы
+ * по одному в журнал не пишутся: ссылка помечается, и перед выдачей очередной порции журнала
+ * в него попадает итоговый счетчик каждой помеченной ссылки. Реплика, отставшая больше
+ * чем на буфер, получает вместо журнала снимок. Снимок выдается страницами по курсору над
+ * пользователями и ссылками сервиса, поэтому ведущий не собирает хранилище целиком в памяти;
+ * курсор, который реплика не читала минуту, закрывается.
+ *
+ * <p>Переходы, засчитанные репликами, приходят пачками ({@link #mergeAccessCounts}), добавляются
+ * к счетчикам ведущего и расходятся по остальным репликам тем же путем.
+ */
+public class ReplicationLeader implements LinkChangeListener, ReplicationSource, Closeable {
+    private static final long CURSOR_IDLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    
+    private final UrlShortenerService service;
+    private final String[] records;
+    private final Set<String> dirtyAccess = ConcurrentHashMap.newKeySet();
+    private final Map<Long, SnapshotCursor> cursors = new ConcurrentHashMap<>();
+    private final AtomicLong cursorIds = new AtomicLong();
+    /** Номер последней записи; записи нумеруются с 1. */
+    private long lastSeq;
+    
+    private ReplicationLeader(UrlShortenerService service, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Размер журнала репликации должен быть положительным");
+        }
+        this.service = service;
+        this.records = new String[capacity];
+    }
+    
+    /**
+     * Начинает журналировать изменения сервиса с размером буфера из настроек.
+     */
+    public static ReplicationLeader open(UrlShortenerService service) {
+        return open(service, Config.getReplicationLogSize());
+    }
+    
+    /**
+     * @param capacity сколько последних записей журнала хранится для отставших реплик
+     */
+    public static ReplicationLeader open(UrlShortenerService service, int capacity) {
+        ReplicationLeader leader = new ReplicationLeader(service, capacity);
+        service.addChangeListener(leader);
+        ServiceMetrics metrics = service.getMetrics();
+        if (metrics != null) {
+            metrics.gauge("replication_log_seq", leader::getLastSeq);
+        }
+        return leader;
+    }
+    
+    public UrlShortenerService getService() {
+        return service;
+    }
+    
+    public synchronized long getLastSeq() {
+        return lastSeq;
+    }
+    
+    @Override
+    public void onUserCreated(User user) {
+        StringBuilder line = new StringBuilder(64);
+        LinkTransfer.appendUser(line, user, LinkTransfer.Format.CSV);
+        append(line);
+    }
+    
+    @Override
+    public void onUrlCreated(ShortUrl shortUrl) {
+        StringBuilder line = new StringBuilder(128);
+        LinkTransfer.appendLink(line, shortUrl, LinkTransfer.Format.CSV);
+        append(line);
+    }
+    
+    @Override
+    public void onUrlDeleted(ShortUrl shortUrl) {
+        dirtyAccess.remove(shortUrl.getShortCode());
+        append(new StringBuilder("delete,").append(shortUrl.getShortCode()));
+    }
+    
+    @Override
+    public void onLimitUpdated(ShortUrl shortUrl) {
+        Integer limit = shortUrl.getMaxAccessCount();
+        append(new StringBuilder("limit,").append(shortUrl.getShortCode()).append(',')
+                .append(limit == null ? "" : limit.toString()));
+    }
+    
+    @Override
+    public void onAccess(ShortUrl shortUrl) {
+        dirtyAccess.add(shortUrl.getShortCode());
+    }
+    
+    @Override
+    public void onAccessMerged(ShortUrl shortUrl, int clicks) {
+        dirtyAccess.add(shortUrl.getShortCode());
+    }
+    
+    @Override
+    public ReplicationBatch fetch(long afterSeq, int maxRecords) {
+        flushAccess();
+        synchronized (this) {
+            long oldest = Math.max(1, lastSeq - records.length + 1);
+            if (afterSeq >= oldest - 1 && afterSeq <= lastSeq) {
+                long last = Math.min(lastSeq, afterSeq + maxRecords);
+                List<String> batch = new ArrayList<>((int) (last - afterSeq));
+                for (long seq = afterSeq + 1; seq <= last; seq++) {
+                    batch.add(records[(int) ((seq - 1) % records.length)]);
+                }
+                return new ReplicationBatch(false, last, lastSeq, batch);
+            }
+        }
+        return snapshot(maxRecords);
+    }
+    
+    /**
+     * Начинает снимок пользователей и ссылок и отдает его первую страницу. Записи журнала
+     * после номера снимка могут уже быть учтены в нем, но повторное применение идемпотентно.
+     */
+    public ReplicationBatch snapshot(int maxRecords) {
+        closeIdleCursors();
+        SnapshotCursor cursor = new SnapshotCursor(cursorIds.incrementAndGet(), getLastSeq(),
+                service.users().iterator(), service.urls().iterator());
+        cursors.put(cursor.id, cursor);
+        return page(cursor, maxRecords);
+    }
+    
+    @Override
+    public ReplicationBatch fetchSnapshot(long cursor, int maxRecords) {
+        closeIdleCursors();
+        SnapshotCursor snapshot = cursors.get(cursor);
+        if (snapshot == null) {
+            throw new IllegalStateException("Снимок " + cursor + " закрыт за давностью, начните его заново");
+        }
+        return page(snapshot, maxRecords);
+    }
+    
+    @Override
+    public void mergeAccessCounts(Map<String, Integer> clicks) {
+        for (Map.Entry<String, Integer> entry : clicks.entrySet()) {
+            service.mergeAccessCount(entry.getKey(), entry.getValue());
+        }
+    }
+    
+    @Override
+    public void close() {
+        service.removeChangeListener(this);
+    }
+    
+    /**
+     * Записывает итоговые счетчики ссылок, по которым были переходы с прошлой порции.
+     */
+    private void flushAccess() {
+        Iterator<String> dirty = dirtyAccess.iterator();
+        while (dirty.hasNext()) {
+            String shortCode = dirty.next();
+            dirty.remove();
+            ShortUrl shortUrl = service.findShortUrl(shortCode);
+            if (shortUrl != null) {
+                append(new StringBuilder("access,").append(shortCode).append(',').append(shortUrl.getAccessCount()));
+            }
+        }
+    }
+    
+    private ReplicationBatch page(SnapshotCursor cursor, int maxRecords) {
+        if (maxRecords <= 0) {
+            throw new IllegalArgumentException("Размер страницы снимка должен быть положительным");
+        }
+        List<String> lines = new ArrayList<>(Math.min(maxRecords, 4096));
+        StringBuilder line = new StringBuilder(128);
+        boolean more;
+        synchronized (cursor) {
+            while (lines.size() < maxRecords && cursor.users.hasNext()) {
+                LinkTransfer.appendUser(line, cursor.users.next(), LinkTransfer.Format.CSV);
+                lines.add(line.substring(0, line.length() - 1));
+                line.setLength(0);
+            }
+            while (lines.size() < maxRecords && cursor.urls.hasNext()) {
+                LinkTransfer.appendLink(line, cursor.urls.next(), LinkTransfer.Format.CSV);
+                lines.add(line.substring(0, line.length() - 1));
+                line.setLength(0);
+            }
+            more = cursor.users.hasNext() || cursor.urls.hasNext();
+            cursor.touchedNanos = System.nanoTime();
+        }
+        if (!more) {
+            cursors.remove(cursor.id);
+        }
+        return new ReplicationBatch(true, cursor.seq, cursor.seq, more ? cursor.id : 0, lines);
+    }
+    
+    private void closeIdleCursors() {
+        long idleSince = System.nanoTime() - CURSOR_IDLE_NANOS;
+        cursors.values().removeIf(cursor -> cursor.touchedNanos - idleSince < 0);
+    }
+    
+    private void append(StringBuilder line) {
+        int end = line.length();
+        if (end > 0 && line.charAt(end - 1) == '\n') {
+            end--;
+        }
+        String record = line.substring(0, end);
+        synchronized (this) {
+            lastSeq++;
+            records[(int) ((lastSeq - 1) % records.length)] = record;
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "журнал репликации: запись " + getLastSeq() + ", буфер " + records.length;
+    }
+    
+    /**
+     * Незаконченный снимок: номер записи журнала на его начало и позиции в пользователях и ссылках.
+     */
+    private static final class SnapshotCursor {
+        final long id;
+        final long seq;
+        final Iterator<User> users;
+        final Iterator<ShortUrl> urls;
+        volatile long touchedNanos = System.nanoTime();
+        
+        SnapshotCursor(long id, long seq, Iterator<User> users, Iterator<ShortUrl> urls) {
+            this.id = id;
+            this.seq = seq;
+            this.users = users;
+            this.urls = urls;
+        }
+    }
+}
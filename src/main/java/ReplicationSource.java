@@ -0,0 +1,30 @@
+import java.util.Map;
+
+/**
+ * Ведущий узел с точки зрения реплики: порции журнала изменений и прием переходов,
+ * засчитанных репликой. Ведущий в той же JVM - {@link ReplicationLeader}, на другом
+ * порту или хосте - {@link HttpReplicationSource}.
+ */
+public interface ReplicationSource {
+    
+    /**
+     * Записи журнала после {@code afterSeq}, не больше {@code maxRecords}. Если таких записей
+     * в журнале уже нет (реплика отстала или только подключилась), возвращает первую страницу снимка.
+     *
+     * @param afterSeq номер последней примененной записи; -1 - реплика пуста
+     */
+    ReplicationBatch fetch(long afterSeq, int maxRecords);
+    
+    /**
+     * Следующая страница снимка, не больше {@code maxRecords} записей.
+     *
+     * @param cursor {@link ReplicationBatch#getCursor()} предыдущей страницы
+     * @throws IllegalStateException снимок уже закрыт за давностью; его нужно начать заново
+     */
+    ReplicationBatch fetchSnapshot(long cursor, int maxRecords);
+    
+    /**
+     * Добавляет к счетчикам ссылок переходы, засчитанные репликой: код -> число переходов.
+     */
+    void mergeAccessCounts(Map<String, Integer> clicks);
+}
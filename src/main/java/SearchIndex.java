@@ -0,0 +1,351 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * Поисковый индекс ссылок пользователя: словарь слов URL и кодов (последовательностей букв
+ * и цифр в нижнем регистре) со списками кодов ссылок, в которых слово встречается.
+ * Индекс хранит только коды: ссылки кандидатов берутся из хранилища.
+ *
+ * <p>Запрос тоже разбивается на слова. Каждое слово запроса, перед которым в запросе стоит
+ * разделитель, обязано быть началом слова ссылки, поэтому кандидатов дает диапазон словаря;
+ * запрос из одного слова без разделителя перед ним ищется подстрокой по словам словаря.
+ * Индекс только сужает поиск: совпадение с запросом проверяет {@link #matches}.
+ *
+ * <p>Удаление сразу убирает код из слов ссылки: слово, в котором был только он, уходит
+ * из словаря, а из короткого списка код вычеркивается. В длинном списке (слово вроде
+ * {@code https}, которое есть почти в каждой ссылке) вычеркивание стоило бы обхода,
+ * поэтому там удаленные только считаются, и когда их набирается четверть, список чистится
+ * проверкой {@code live}. Поэтому кандидаты могут содержать уже удаленные коды.
+ */
+public class SearchIndex {
+    private static final int PENDING_WORDS = 1024;
+    /** Из списков не длиннее этого код вычеркивается сразу. */
+    private static final int EAGER_POSTINGS = 64;
+    
+    private final Map<String, UserTokens> byUser = new ConcurrentHashMap<>();
+    private final Predicate<String> live;
+    
+    /**
+     * @param live проверка, что ссылка с кодом все еще лежит в хранилище
+     */
+    public SearchIndex(Predicate<String> live) {
+        this.live = live;
+    }
+    
+    public void add(ShortUrl shortUrl) {
+        byUser.computeIfAbsent(shortUrl.getUserId(), id -> new UserTokens()).add(shortUrl);
+    }
+    
+    public void remove(ShortUrl shortUrl) {
+        UserTokens tokens = byUser.get(shortUrl.getUserId());
+        if (tokens != null) {
+            tokens.remove(shortUrl);
+        }
+    }
+    
+    /**
+     * Коды ссылок пользователя, подходящих запросу по словам, - надмножество совпадений.
+     *
+     * @return null, если индекс не сужает поиск: в запросе нет слов или кандидатов
+     *         больше {@code maxCandidates}
+     */
+    public Set<String> candidates(String userId, String query, boolean prefix, int maxCandidates) {
+        List<String> words = words(query);
+        if (words.isEmpty()) {
+            return null;
+        }
+        UserTokens tokens = byUser.get(userId);
+        if (tokens == null) {
+            return Collections.emptySet();
+        }
+        // Слова, которые обязаны начинать слово ссылки, пробуются от длинных к коротким:
+        // длинное обычно отсекает больше, а слово из каждой ссылки упирается в предел
+        boolean firstStartsWord = prefix || !Character.isLetterOrDigit(query.charAt(0));
+        List<String> anchors = new ArrayList<>(firstStartsWord ? words : words.subList(1, words.size()));
+        anchors.sort(Comparator.comparingInt(String::length).reversed());
+        for (String anchor : anchors) {
+            Set<String> candidates = tokens.withPrefix(anchor, maxCandidates);
+            if (candidates != null) {
+                return candidates;
+            }
+        }
+        return firstStartsWord ? null : tokens.containing(words.get(0), maxCandidates);
+    }
+    
+    /**
+     * Совпадение без учета регистра: подстрока URL или кода, а при {@code prefix} -
+     * начало кода или слова URL.
+     */
+    public static boolean matches(ShortUrl shortUrl, String query, boolean prefix) {
+        String code = shortUrl.getShortCode();
+        if (prefix) {
+            return code.regionMatches(true, 0, query, 0, query.length())
+                    || startsWordIgnoreCase(shortUrl.getOriginalUrl(), query);
+        }
+        return containsIgnoreCase(code, query) || containsIgnoreCase(shortUrl.getOriginalUrl(), query);
+    }
+    
+    private static boolean containsIgnoreCase(String text, String query) {
+        for (int i = 0, last = text.length() - query.length(); i <= last; i++) {
+            if (text.regionMatches(true, i, query, 0, query.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean startsWordIgnoreCase(String text, String query) {
+        boolean anywhere = query.isEmpty() || !Character.isLetterOrDigit(query.charAt(0));
+        for (int i = 0, last = text.length() - query.length(); i <= last; i++) {
+            if ((anywhere || i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)))
+                    && text.regionMatches(true, i, query, 0, query.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Слова текста в нижнем регистре: последовательности букв и цифр.
+     */
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>(8);
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        return words;
+    }
+    
+    /**
+     * Словарь одного пользователя. Значение слова - код ссылки, если она одна, или {@link Postings}.
+     * Для поиска по началу слова слова лежат в отсортированном массиве; новые слова копятся
+     * в небольшом буфере и вливаются в массив пачкой, чтобы вставка не перестраивала его.
+     */
+    private final class UserTokens {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<String, Object> tokens = new HashMap<>();
+        private String[] sorted = new String[0];
+        private final List<String> pending = new ArrayList<>();
+        /** Слова, ушедшие из словаря, но еще лежащие в {@link #sorted}. */
+        private int deadWords;
+        
+        void add(ShortUrl shortUrl) {
+            List<String> words = words(shortUrl.getOriginalUrl());
+            String shortCode = shortUrl.getShortCode();
+            words.addAll(words(shortCode));
+            lock.writeLock().lock();
+            try {
+                for (String word : words) {
+                    Object current = tokens.putIfAbsent(word, shortCode);
+                    if (current == null) {
+                        pending.add(word);
+                    } else if (current instanceof Postings) {
+                        ((Postings) current).add(shortCode);
+                    } else if (!current.equals(shortCode)) {
+                        Postings postings = new Postings((String) current);
+                        postings.add(shortCode);
+                        tokens.put(word, postings);
+                    }
+                }
+                if (pending.size() >= PENDING_WORDS) {
+                    mergePending();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        
+        void remove(ShortUrl shortUrl) {
+            String shortCode = shortUrl.getShortCode();
+            Set<String> words = new HashSet<>(words(shortUrl.getOriginalUrl()));
+            words.addAll(words(shortCode));
+            lock.writeLock().lock();
+            try {
+                for (String word : words) {
+                    Object current = tokens.get(word);
+                    if (current instanceof Postings) {
+                        if (((Postings) current).remove(shortCode) == 0) {
+                            tokens.remove(word);
+                            deadWords++;
+                        }
+                    } else if (shortCode.equals(current)) {
+                        tokens.remove(word);
+                        deadWords++;
+                    }
+                }
+                if (deadWords >= PENDING_WORDS && deadWords > sorted.length / 2) {
+                    rebuildSorted();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        
+        private void mergePending() {
+            String[] added = pending.toArray(new String[0]);
+            Arrays.sort(added);
+            String[] merged = new String[sorted.length + added.length];
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while (i < sorted.length && j < added.length) {
+                merged[k++] = sorted[i].compareTo(added[j]) <= 0 ? sorted[i++] : added[j++];
+            }
+            while (i < sorted.length) {
+                merged[k++] = sorted[i++];
+            }
+            while (j < added.length) {
+                merged[k++] = added[j++];
+            }
+            sorted = merged;
+            pending.clear();
+        }
+        
+        /**
+         * Собирает отсортированный массив заново из словаря: без ушедших слов и повторов.
+         */
+        private void rebuildSorted() {
+            sorted = tokens.keySet().toArray(new String[0]);
+            Arrays.sort(sorted);
+            pending.clear();
+            deadWords = 0;
+        }
+        
+        Set<String> withPrefix(String word, int maxCandidates) {
+            lock.readLock().lock();
+            try {
+                Set<String> candidates = new HashSet<>();
+                int from = Arrays.binarySearch(sorted, word);
+                for (int i = from < 0 ? -from - 1 : from; i < sorted.length && sorted[i].startsWith(word); i++) {
+                    if (!collect(tokens.get(sorted[i]), candidates, maxCandidates)) {
+                        return null;
+                    }
+                }
+                for (String token : pending) {
+                    if (token.startsWith(word) && !collect(tokens.get(token), candidates, maxCandidates)) {
+                        return null;
+                    }
+                }
+                return candidates;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        
+        Set<String> containing(String word, int maxCandidates) {
+            lock.readLock().lock();
+            try {
+                // Слово, которое есть в большинстве ссылок, отсекаем до обхода словаря
+                Object exact = tokens.get(word);
+                if (exact instanceof Postings && ((Postings) exact).size > maxCandidates) {
+                    return null;
+                }
+                Set<String> candidates = new HashSet<>();
+                for (Map.Entry<String, Object> entry : tokens.entrySet()) {
+                    if (entry.getKey().contains(word) && !collect(entry.getValue(), candidates, maxCandidates)) {
+                        return null;
+                    }
+                }
+                return candidates;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        
+        private boolean collect(Object value, Set<String> candidates, int maxCandidates) {
+            if (value == null) {
+                // Слово ушло из словаря вместе с последней ссылкой
+                return true;
+            }
+            if (!(value instanceof Postings)) {
+                candidates.add((String) value);
+                return candidates.size() <= maxCandidates;
+            }
+            Postings postings = (Postings) value;
+            if (postings.size > maxCandidates) {
+                return false;
+            }
+            for (int i = 0; i < postings.size; i++) {
+                candidates.add(postings.codes[i]);
+            }
+            return candidates.size() <= maxCandidates;
+        }
+    }
+    
+    /**
+     * Растущий массив кодов ссылок одного слова.
+     */
+    private final class Postings {
+        private String[] codes = new String[4];
+        private int size;
+        /** Удаленные коды, еще не вычеркнутые из длинного списка. */
+        private int dead;
+        
+        Postings(String first) {
+            codes[size++] = first;
+        }
+        
+        void add(String shortCode) {
+            if (size > 0 && codes[size - 1].equals(shortCode)) {
+                // Слово встретилось в URL дважды
+                return;
+            }
+            if (size == codes.length) {
+                codes = Arrays.copyOf(codes, size * 2);
+            }
+            codes[size++] = shortCode;
+        }
+        
+        /**
+         * @return сколько кодов осталось в списке
+         */
+        int remove(String shortCode) {
+            if (size > EAGER_POSTINGS) {
+                if (++dead > size / 4) {
+                    retainLive();
+                }
+                return size;
+            }
+            for (int i = size - 1; i >= 0; i--) {
+                if (codes[i].equals(shortCode)) {
+                    System.arraycopy(codes, i + 1, codes, i, size - i - 1);
+                    codes[--size] = null;
+                    break;
+                }
+            }
+            return size;
+        }
+        
+        private void retainLive() {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (live.test(codes[i])) {
+                    codes[kept++] = codes[i];
+                }
+            }
+            Arrays.fill(codes, kept, size, null);
+            size = kept;
+            dead = 0;
+            if (kept < codes.length / 4 && codes.length > 4) {
+                codes = Arrays.copyOf(codes, Math.max(4, kept * 2));
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Коды из глобальной последовательности: номер переводится в base62 фиксированной длины,
+ * поэтому два разных номера никогда не дают один код и проверка занятости не нужна.
+ *
+ * <p>Потоки берут номера блоками по {@code blockSize}, так что общий счетчик трогается
+ * раз в блок. При ненулевом {@code seed} номер перед кодированием проходит через
+ * перестановку {@code [0, 62^length)} - сеть Фейстеля с раундовыми ключами из seed:
+ * соседние номера дают несвязанные коды, а уникальность сохраняется. Это не криптостойкий
+ * шифр: он лишь не дает вычислить соседние коды по выданным простой арифметикой.
+ */
+public class SequenceShortCodeGenerator implements ShortCodeGenerator {
+    private static final int BASE = ALPHABET.length();
+    private static final int MAX_LENGTH = 10;
+    private static final int ROUNDS = 8;
+    
+    private final int length;
+    private final long space;
+    // Номер делится на старшую и младшую части по основаниям 62^(length/2) и 62^(length - length/2)
+    private final long highSpace;
+    private final long lowSpace;
+    private final long[] roundKeys;
+    private final int blockSize;
+    private final AtomicLong sequence = new AtomicLong();
+    private final ThreadLocal<long[]> block = ThreadLocal.withInitial(() -> new long[] {0, 0});
+    
+    public SequenceShortCodeGenerator(int length, long seed, int blockSize) {
+        if (length < 1 || length > MAX_LENGTH) {
+            throw new IllegalArgumentException("Длина кода для последовательного генератора: 1.." + MAX_LENGTH);
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Размер блока должен быть положительным");
+        }
+        this.length = length;
+        this.blockSize = blockSize;
+        this.highSpace = power(length / 2);
+        this.lowSpace = power(length - length / 2);
+        this.space = highSpace * lowSpace;
+        if (seed == 0) {
+            this.roundKeys = null;
+        } else {
+            this.roundKeys = new long[ROUNDS];
+            for (int round = 0; round < ROUNDS; round++) {
+                roundKeys[round] = mix(seed + (round + 1) * 0x9E3779B97F4A7C15L);
+            }
+        }
+    }
+    
+    @Override
+    public String nextCode() {
+        long[] range = block.get();
+        if (range[0] == range[1]) {
+            long start = sequence.getAndAdd(blockSize);
+            if (start >= space) {
+                throw new IllegalStateException("Пространство коротких кодов длины " + length + " исчерпано");
+            }
+            range[0] = start;
+            range[1] = Math.min(start + blockSize, space);
+        }
+        return encode(range[0]++);
+    }
+    
+    /**
+     * Берет из общего счетчика сразу весь диапазон номеров под пакет, минуя блоки потока.
+     */
+    @Override
+    public String[] nextCodes(int count) {
+        long start = sequence.getAndAdd(count);
+        if (start + count > space) {
+            throw new IllegalStateException("Пространство коротких кодов длины " + length + " исчерпано");
+        }
+        String[] codes = new String[count];
+        for (int i = 0; i < count; i++) {
+            codes[i] = encode(start + i);
+        }
+        return codes;
+    }
+    
+    /**
+     * Сколько номеров уже роздано потокам (включая неизрасходованные остатки блоков).
+     */
+    public long getIssuedCount() {
+        return Math.min(sequence.get(), space);
+    }
+    
+    @Override
+    public long getPosition() {
+        return sequence.get();
+    }
+    
+    @Override
+    public void restorePosition(long position) {
+        sequence.accumulateAndGet(position, Math::max);
+    }
+    
+    String encode(long number) {
+        long value = roundKeys == null ? number : permute(number);
+        char[] code = new char[length];
+        for (int i = length - 1; i >= 0; i--) {
+            code[i] = ALPHABET.charAt((int) (value % BASE));
+            value /= BASE;
+        }
+        return new String(code);
+    }
+    
+    /**
+     * Раунд прибавляет к одной части функцию от другой по модулю размера первой, поэтому
+     * каждый раунд обратим и вся сеть - биекция на {@code [0, space)}.
+     */
+    private long permute(long number) {
+        long high = number / lowSpace;
+        long low = number % lowSpace;
+        for (int round = 0; round < ROUNDS; round++) {
+            if ((round & 1) == 0) {
+                high = (high + Math.floorMod(mix(low ^ roundKeys[round]), highSpace)) % highSpace;
+            } else {
+                low = (low + Math.floorMod(mix(high ^ roundKeys[round]), lowSpace)) % lowSpace;
+            }
+        }
+        return high * lowSpace + low;
+    }
+    
+    private static long power(int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= BASE;
+        }
+        return result;
+    }
+    
+    /**
+     * Перемешивание битов из SplitMix64.
+     */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+}
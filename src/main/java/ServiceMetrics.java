@@ -0,0 +1,242 @@
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Метрики сервиса: счетчики операций и исходов переходов, гистограммы задержек
+ * ({@link LatencyHistogram}) и показатели, которые читаются в момент запроса (размеры, кэш, очистка).
+ *
+ * <p>Переход дешевле пары вызовов {@code System.nanoTime()}, поэтому его задержка замеряется
+ * у одного перехода из {@code metrics.resolve.sample.rate} (выбор случайный), а исходы
+ * переходов считаются все. Остальные операции замеряются каждый раз.
+ *
+ * <p>Все значения доступны плоским списком {@link #values()}: как атрибуты JMX-бина
+ * {@value #OBJECT_NAME} и как текст {@code имя значение} по строке на метрику
+ * ({@link #render()}, формат Prometheus), который отдает {@code GET /metrics}.
+ */
+public class ServiceMetrics implements DynamicMBean {
+    public static final String OBJECT_NAME = "UrlShortener:type=ServiceMetrics";
+    private static final String PREFIX = "shortener_";
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    
+    /**
+     * Операции, задержка которых пишется в гистограмму.
+     */
+    public enum Operation {
+        CREATE, CREATE_BATCH, RESOLVE, DELETE, UPDATE_LIMIT, SEARCH, CLEANUP;
+        
+        final String metricName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+    
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final LongAdder[] resolveOutcomes = new LongAdder[LookupResult.Status.values().length];
+    private final LongAdder linksCreated = new LongAdder();
+    private final LongAdder usersCreated = new LongAdder();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private final int resolveSampleRate;
+    
+    public ServiceMetrics() {
+        this(Config.getMetricsResolveSampleRate());
+    }
+    
+    /**
+     * @param resolveSampleRate задержка замеряется у одного перехода из стольких; 1 - у каждого
+     */
+    public ServiceMetrics(int resolveSampleRate) {
+        if (resolveSampleRate <= 0) {
+            throw new IllegalArgumentException("Частота замеров должна быть положительной: " + resolveSampleRate);
+        }
+        this.resolveSampleRate = resolveSampleRate;
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+        }
+        for (int i = 0; i < resolveOutcomes.length; i++) {
+            resolveOutcomes[i] = new LongAdder();
+        }
+    }
+    
+    public void record(Operation operation, long nanos) {
+        latencies.get(operation).record(nanos);
+    }
+    
+    /**
+     * Замерять ли задержку этого перехода.
+     */
+    public boolean sampleResolve() {
+        return resolveSampleRate == 1 || ThreadLocalRandom.current().nextInt(resolveSampleRate) == 0;
+    }
+    
+    /**
+     * Переход без замера задержки: только исход.
+     */
+    public void countResolve(LookupResult.Status status) {
+        resolveOutcomes[status.ordinal()].increment();
+    }
+    
+    /**
+     * Замеренный переход: задержка и исход.
+     */
+    public void recordResolve(LookupResult.Status status, long nanos) {
+        latencies.get(Operation.RESOLVE).record(nanos);
+        resolveOutcomes[status.ordinal()].increment();
+    }
+    
+    public void recordLinkCreated() {
+        linksCreated.increment();
+    }
+    
+    public void recordUserCreated() {
+        usersCreated.increment();
+    }
+    
+    /**
+     * Показатель, который читается при каждом запросе метрик; заменяет одноименный.
+     *
+     * @param name имя без префикса, например {@code links}
+     */
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+    
+    public void removeGauge(String name) {
+        gauges.remove(name);
+    }
+    
+    public LatencyHistogram getLatency(Operation operation) {
+        return latencies.get(operation);
+    }
+    
+    public long getResolveCount(LookupResult.Status status) {
+        return resolveOutcomes[status.ordinal()].sum();
+    }
+    
+    public long getLinksCreated() {
+        return linksCreated.sum();
+    }
+    
+    /**
+     * Все метрики по именам с префиксом {@code shortener_}: счетчики, показатели и для каждой
+     * операции число вызовов, среднее, перцентили и максимум задержки в наносекундах.
+     */
+    public Map<String, Number> values() {
+        Map<String, Number> values = new LinkedHashMap<>();
+        values.put(PREFIX + "links_created_total", linksCreated.sum());
+        values.put(PREFIX + "users_created_total", usersCreated.sum());
+        for (LookupResult.Status status : LookupResult.Status.values()) {
+            values.put(PREFIX + "resolve_" + status.name().toLowerCase(Locale.ROOT) + "_total",
+                    getResolveCount(status));
+        }
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            values.put(PREFIX + gauge.getKey(), gauge.getValue().getAsLong());
+        }
+        for (Map.Entry<Operation, LatencyHistogram> entry : latencies.entrySet()) {
+            String name = PREFIX + entry.getKey().metricName() + "_latency";
+            LatencyHistogram histogram = entry.getValue();
+            values.put(name + "_count", histogram.getCount());
+            values.put(name + "_mean_ns", Math.round(histogram.getMeanNanos()));
+            for (double percentile : PERCENTILES) {
+                values.put(name + "_p" + String.valueOf(percentile).replace(".0", "").replace(".", "")
+                        + "_ns", histogram.getValueAtPercentile(percentile));
+            }
+            values.put(name + "_max_ns", histogram.getMaxNanos());
+        }
+        return values;
+    }
+    
+    /**
+     * Метрики текстом: строка {@code имя значение} на метрику.
+     */
+    public String render() {
+        StringBuilder text = new StringBuilder(4096);
+        for (Map.Entry<String, Number> entry : values().entrySet()) {
+            text.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        return text.toString();
+    }
+    
+    /**
+     * Регистрирует метрики в платформенном MBean-сервере под {@value #OBJECT_NAME},
+     * заменяя ранее зарегистрированный бин.
+     */
+    public void registerMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(this, name);
+    }
+    
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = values().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException("Нет метрики " + attribute);
+        }
+        return value;
+    }
+    
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Number> values = values();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Number value = values.get(attribute);
+            if (value != null) {
+                list.add(new Attribute(attribute, value));
+            }
+        }
+        return list;
+    }
+    
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Метрики только для чтения: " + attribute.getName());
+    }
+    
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+    
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        // Операций нет: JMX-клиент получает штатную ошибку, а не RuntimeMBeanException
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+    
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Number> values = values();
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+        int i = 0;
+        for (String name : values.keySet()) {
+            attributes[i++] = new MBeanAttributeInfo(name, "java.lang.Long", name, true, false, false);
+        }
+        return new MBeanInfo(getClass().getName(), "Метрики сервиса сокращения ссылок",
+                attributes, null, null, null);
+    }
+    
+    @Override
+    public String toString() {
+        return "переходов: " + latencies.get(Operation.RESOLVE) + "; создание: " + latencies.get(Operation.CREATE);
+    }
+}
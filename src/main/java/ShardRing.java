@@ -0,0 +1,157 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Кольцо согласованного хеширования: сегменты коротких кодов -> узлы кластера.
+ *
+ * <p>Сегмент - первый символ кода, всего {@link #SHARDS} сегментов по алфавиту кодов, поэтому
+ * владелец ссылки находится по самому коду без поиска. Каждый узел стоит на кольце
+ * {@code virtualNodes} точками, сегмент принадлежит первой точке по часовой стрелке
+ * от своего хеша. Новый узел забирает только сегменты, попавшие на его точки, остальные
+ * остаются на месте; ушедший узел отдает свои сегменты соседям.
+ *
+ * <p>Кольцо неизменяемо: {@link #withNode} и {@link #withoutNode} возвращают новое.
+ */
+public final class ShardRing {
+    public static final int SHARDS = ShortCodeGenerator.ALPHABET.length();
+    private static final byte[] SHARD_OF_CHAR = new byte[128];
+    
+    static {
+        Arrays.fill(SHARD_OF_CHAR, (byte) -1);
+        for (int i = 0; i < SHARDS; i++) {
+            SHARD_OF_CHAR[ShortCodeGenerator.ALPHABET.charAt(i)] = (byte) i;
+        }
+    }
+    
+    private final int virtualNodes;
+    private final NavigableMap<Integer, String> points;
+    private final Set<String> nodes;
+    private final String[] owners = new String[SHARDS];
+    
+    public ShardRing(int virtualNodes) {
+        this(virtualNodes, new TreeMap<>(), new LinkedHashSet<>());
+    }
+    
+    private ShardRing(int virtualNodes, NavigableMap<Integer, String> points, Set<String> nodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("Число точек узла на кольце должно быть положительным");
+        }
+        this.virtualNodes = virtualNodes;
+        this.points = points;
+        this.nodes = nodes;
+        if (!points.isEmpty()) {
+            for (int shard = 0; shard < SHARDS; shard++) {
+                Map.Entry<Integer, String> point = points.ceilingEntry(hash("shard-" + shard));
+                owners[shard] = (point != null ? point : points.firstEntry()).getValue();
+            }
+        }
+    }
+    
+    public ShardRing withNode(String nodeId) {
+        if (nodes.contains(nodeId)) {
+            throw new IllegalArgumentException("Узел уже в кольце: " + nodeId);
+        }
+        NavigableMap<Integer, String> newPoints = new TreeMap<>(points);
+        for (int v = 0; v < virtualNodes; v++) {
+            // Совпадение хешей точек разных узлов почти невероятно, первая точка остается
+            newPoints.putIfAbsent(hash(nodeId + "#" + v), nodeId);
+        }
+        Set<String> newNodes = new LinkedHashSet<>(nodes);
+        newNodes.add(nodeId);
+        return new ShardRing(virtualNodes, newPoints, newNodes);
+    }
+    
+    public ShardRing withoutNode(String nodeId) {
+        if (!nodes.contains(nodeId)) {
+            throw new IllegalArgumentException("Узла нет в кольце: " + nodeId);
+        }
+        NavigableMap<Integer, String> newPoints = new TreeMap<>(points);
+        newPoints.values().removeIf(nodeId::equals);
+        Set<String> newNodes = new LinkedHashSet<>(nodes);
+        newNodes.remove(nodeId);
+        return new ShardRing(virtualNodes, newPoints, newNodes);
+    }
+    
+    public Set<String> getNodes() {
+        return Collections.unmodifiableSet(nodes);
+    }
+    
+    /**
+     * Узел-владелец сегмента; null, если кольцо пустое.
+     */
+    public String ownerOf(int shard) {
+        return owners[shard];
+    }
+    
+    /**
+     * Узел-владелец ссылки с кодом {@code shortCode}; null, если кольцо пустое
+     * или код начинается не с символа алфавита.
+     */
+    public String ownerOfCode(String shortCode) {
+        int shard = shardOf(shortCode);
+        return shard < 0 ? null : owners[shard];
+    }
+    
+    public Set<Integer> shardsOf(String nodeId) {
+        Set<Integer> shards = new TreeSet<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            if (nodeId.equals(owners[shard])) {
+                shards.add(shard);
+            }
+        }
+        return shards;
+    }
+    
+    /**
+     * Сегмент по первому символу кода; -1, если код пустой или символ не из алфавита.
+     */
+    public static int shardOf(String shortCode) {
+        if (shortCode == null || shortCode.isEmpty()) {
+            return -1;
+        }
+        char first = shortCode.charAt(0);
+        return first < SHARD_OF_CHAR.length ? SHARD_OF_CHAR[first] : -1;
+    }
+    
+    /**
+     * Сегмент для произвольного ключа, например ID пользователя, по его хешу.
+     */
+    public static int shardOfKey(String key) {
+        return Math.floorMod(hash(key), SHARDS);
+    }
+    
+    /**
+     * FNV-1a по символам с финальным перемешиванием из MurmurHash3: у {@code String.hashCode}
+     * строки, различающиеся последним символом, ложатся на кольцо рядом.
+     */
+    static int hash(String value) {
+        int h = 0x811C9DC5;
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (String node : nodes) {
+            if (text.length() > 0) {
+                text.append(", ");
+            }
+            text.append(node).append(": ").append(shardsOf(node).size());
+        }
+        return "сегментов по узлам: " + (text.length() > 0 ? text : "нет узлов");
+    }
+}
@@ -0,0 +1,453 @@
+import exceptions.InvalidUrlException;
+import exceptions.UrlExpiredException;
+import exceptions.UrlNotFoundException;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Маршрутизатор кластера: ссылки разложены по узлам сегментами ({@link ShardRing}), и операция
+ * с кодом уходит узлу, которому принадлежит первый символ кода.
+ *
+ * <p>Пользователи есть на всех узлах. Ссылки пользователя создает узел, которому принадлежит
+ * сегмент хеша его ID, поэтому, пока состав узлов не менялся, повторное сокращение того же URL
+ * находит прежний код.
+ *
+ * <p>Новый узел получает пользователей и сегменты, которые перешли к нему на кольце: ссылки
+ * со счетчиками и позиции генераторов кодов. Перенос идет под блокировкой записи, и изменения
+ * ссылок ждут его окончания. Переходы по сегментам, которые не переезжают, не блокируются:
+ * кольцо неизменяемо, а переход, который не нашел ссылку на старом владельце после смены
+ * кольца, повторяется у нового. Переходы по переезжающим сегментам ждут конца переноса,
+ * а перенос начинается, когда закончились уже начатые переходы. Поэтому после копирования
+ * старый владелец ничего не засчитывает, и ссылка с лимитом N пропускает ровно N переходов.
+ */
+public class ShardRouter {
+    private static final AsyncLogger LOG = AsyncLogger.forClass(ShardRouter.class);
+    private static final int ADD_USER_ATTEMPTS = 3;
+    private static final long ADD_USER_RETRY_MILLIS = 100;
+    
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, ClusterNode> nodes = new LinkedHashMap<>();
+    /** Кольцо и узлы по ID читаются вместе одной volatile-ссылкой. */
+    private volatile Routing routing;
+    
+    public ShardRouter() {
+        this(Config.getClusterVirtualNodes());
+    }
+    
+    /**
+     * @param virtualNodes число точек каждого узла на кольце
+     */
+    public ShardRouter(int virtualNodes) {
+        this.routing = new Routing(new ShardRing(virtualNodes), Collections.emptyMap());
+    }
+    
+    /**
+     * Добавляет узел и переносит к нему его сегменты.
+     *
+     * @return число перенесенных ссылок
+     */
+    public long addNode(ClusterNode node) {
+        lock.writeLock().lock();
+        try {
+            if (nodes.containsKey(node.getId())) {
+                throw new IllegalArgumentException("Узел уже в кластере: " + node.getId());
+            }
+            ShardRing next = routing.ring.withNode(node.getId());
+            long moved;
+            if (nodes.isEmpty()) {
+                // Первый узел получает все сегменты с начальными позициями генераторов
+                Map<Integer, Long> positions = new HashMap<>();
+                for (int shard = 0; shard < ShardRing.SHARDS; shard++) {
+                    positions.put(shard, 0L);
+                }
+                node.importShards(new ShardSnapshot(positions, List.of()));
+                moved = 0;
+                nodes.put(node.getId(), node);
+                switchTo(next);
+            } else {
+                node.addUsers(nodes.values().iterator().next().getUsers());
+                nodes.put(node.getId(), node);
+                moved = rebalance(next);
+            }
+            LOG.info("Узел {} добавлен, перенесено ссылок: {}", node.getId(), moved);
+            return moved;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Выводит узел из кластера, раздав его сегменты оставшимся узлам.
+     *
+     * @return число перенесенных ссылок
+     */
+    public long removeNode(String nodeId) {
+        lock.writeLock().lock();
+        try {
+            if (!nodes.containsKey(nodeId)) {
+                throw new IllegalArgumentException("Узла нет в кластере: " + nodeId);
+            }
+            if (nodes.size() == 1) {
+                throw new IllegalStateException("Нельзя вывести последний узел кластера");
+            }
+            long moved = rebalance(routing.ring.withoutNode(nodeId));
+            nodes.remove(nodeId);
+            LOG.info("Узел {} выведен, перенесено ссылок: {}", nodeId, moved);
+            return moved;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Переносит сегменты, у которых на новом кольце другой владелец, и переключает маршруты.
+     */
+    private long rebalance(ShardRing next) {
+        // Старый владелец -> новый владелец -> сегменты
+        ShardRing ring = routing.ring;
+        Map<String, Map<String, Set<Integer>>> moves = new LinkedHashMap<>();
+        for (int shard = 0; shard < ShardRing.SHARDS; shard++) {
+            String from = ring.ownerOf(shard);
+            String to = next.ownerOf(shard);
+            if (!from.equals(to)) {
+                moves.computeIfAbsent(from, id -> new LinkedHashMap<>())
+                        .computeIfAbsent(to, id -> new TreeSet<>()).add(shard);
+            }
+        }
+        boolean[] moving = new boolean[ShardRing.SHARDS];
+        for (Map<String, Set<Integer>> targets : moves.values()) {
+            targets.values().forEach(shards -> shards.forEach(shard -> moving[shard] = true));
+        }
+        // Новые переходы по переезжающим сегментам ждут, а начатые досчитываются до копирования
+        Routing previous = routing;
+        Routing handoff = new Routing(ring, previous.nodes, moving);
+        routing = handoff;
+        previous.awaitIdle();
+        long moved = 0;
+        try {
+            for (Map.Entry<String, Map<String, Set<Integer>>> source : moves.entrySet()) {
+                for (Map.Entry<String, Set<Integer>> target : source.getValue().entrySet()) {
+                    ShardSnapshot snapshot = nodes.get(source.getKey()).exportShards(target.getValue());
+                    nodes.get(target.getKey()).importShards(snapshot);
+                    moved += snapshot.getLinks().size();
+                }
+            }
+            switchTo(next);
+        } finally {
+            if (routing == handoff) {
+                // Перенос сорвался: сегменты остаются у старых владельцев
+                routing = previous;
+            }
+            handoff.finishHandoff();
+        }
+        // Старые владельцы отдают сегменты, когда маршруты уже ведут к новым
+        for (Map.Entry<String, Map<String, Set<Integer>>> source : moves.entrySet()) {
+            Set<Integer> shards = new TreeSet<>();
+            source.getValue().values().forEach(shards::addAll);
+            nodes.get(source.getKey()).dropShards(shards);
+        }
+        return moved;
+    }
+    
+    private void switchTo(ShardRing next) {
+        Map<String, ClusterNode> routes = new HashMap<>();
+        for (String nodeId : next.getNodes()) {
+            routes.put(nodeId, nodes.get(nodeId));
+        }
+        routing = new Routing(next, routes);
+    }
+    
+    /**
+     * Создает пользователя на всех узлах с одним ID. Добавление пользователя на узел
+     * идемпотентно, поэтому узлу, не ответившему из-за сбоя связи, запрос повторяется.
+     *
+     * @throws IllegalStateException если узел так и не ответил; ID пользователя не выдается,
+     *                               и на успевших узлах он остается недоступным для API
+     */
+    public User createUser(String name) {
+        lock.readLock().lock();
+        try {
+            User user = new User(name);
+            List<User> users = List.of(user);
+            for (ClusterNode node : nodes.values()) {
+                addUsers(node, users);
+            }
+            return user;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private static void addUsers(ClusterNode node, List<User> users) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                node.addUsers(users);
+                return;
+            } catch (UncheckedIOException e) {
+                if (attempt == ADD_USER_ATTEMPTS) {
+                    throw new IllegalStateException("Пользователь не создан: узел " + node.getId()
+                            + " недоступен (" + e.getMessage() + ")", e);
+                }
+                LOG.warn("Узел {} не принял пользователя, повтор: {}", node.getId(), e.getMessage());
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(ADD_USER_RETRY_MILLIS * attempt));
+            }
+        }
+    }
+    
+    public String createShortUrl(String originalUrl, String userId) throws InvalidUrlException {
+        return createShortUrl(originalUrl, userId, null);
+    }
+    
+    public String createShortUrl(String originalUrl, String userId, Integer maxAccessCount)
+            throws InvalidUrlException {
+        if (userId == null) {
+            throw new InvalidUrlException("Пользователь не найден: " + userId);
+        }
+        lock.readLock().lock();
+        try {
+            Routing current = routing;
+            return current.nodeFor(current.ring.ownerOf(ShardRing.shardOfKey(userId)))
+                    .createShortUrl(originalUrl, userId, maxAccessCount);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Создает ссылки по одной у узлов-владельцев; ошибка одной ссылки не прерывает пакет.
+     */
+    public List<CreateResult> createShortUrls(List<CreateRequest> requests) {
+        List<CreateResult> results = new ArrayList<>(requests.size());
+        for (CreateRequest request : requests) {
+            try {
+                results.add(CreateResult.created(createShortUrl(request.getOriginalUrl(), request.getUserId(),
+                        request.getMaxAccessCount())));
+            } catch (InvalidUrlException e) {
+                results.add(CreateResult.failed(e.getMessage()));
+            }
+        }
+        return results;
+    }
+    
+    public LookupResult resolve(String shortCode) {
+        return resolve(shortCode, null, null);
+    }
+    
+    /**
+     * Переход по коду у узла-владельца, без блокировок, пока сегмент кода не переезжает.
+     */
+    public LookupResult resolve(String shortCode, String referrer, String userAgent) {
+        while (true) {
+            Routing current = routing;
+            String owner = current.ring.ownerOfCode(shortCode);
+            if (owner == null) {
+                return LookupResult.NOT_FOUND;
+            }
+            if (current.isMoving(ShardRing.shardOf(shortCode))) {
+                current.awaitHandoff();
+                continue;
+            }
+            int stripe = current.enter();
+            LookupResult result;
+            try {
+                if (current != routing) {
+                    // Перенос мог начаться до входа: он не ждет этот переход, поэтому повторяем
+                    continue;
+                }
+                result = current.nodes.get(owner).resolve(shortCode, referrer, userAgent);
+            } finally {
+                current.exit(stripe);
+            }
+            // Сегмент мог переехать, пока шел запрос: повторяем по новому кольцу
+            if (result.isFound() || current == routing) {
+                return result;
+            }
+        }
+    }
+    
+    public List<LookupResult> resolveAll(List<String> shortCodes) {
+        List<LookupResult> results = new ArrayList<>(shortCodes.size());
+        for (String shortCode : shortCodes) {
+            results.add(resolve(shortCode));
+        }
+        return results;
+    }
+    
+    /**
+     * Состояние ссылки у узла-владельца без учета перехода. Переезд сегмента не ждет:
+     * до конца переноса ссылка остается у старого владельца.
+     */
+    public LookupResult peek(String shortCode) {
+        while (true) {
+            Routing current = routing;
+            String owner = current.ring.ownerOfCode(shortCode);
+            if (owner == null) {
+                return LookupResult.NOT_FOUND;
+            }
+            LookupResult result = current.nodes.get(owner).peek(shortCode);
+            if (result.isFound() || current == routing) {
+                return result;
+            }
+        }
+    }
+    
+    /**
+     * То же, что {@link #resolve}, но неуспешный результат сообщается исключением.
+     */
+    public String getOriginalUrl(String shortCode) throws UrlNotFoundException, UrlExpiredException {
+        LookupResult result = resolve(shortCode);
+        switch (result.getStatus()) {
+            case FOUND:
+                return result.getOriginalUrl();
+            case NOT_FOUND:
+                throw UrlNotFoundException.withoutStackTrace(result.getStatus().getDescription() + ": " + shortCode);
+            default:
+                throw new UrlExpiredException(result.getStatus().getDescription() + ": " + shortCode);
+        }
+    }
+    
+    public void deleteUrl(String shortCode, String userId) throws UrlNotFoundException {
+        lock.readLock().lock();
+        try {
+            ownerOf(shortCode).deleteUrl(shortCode, userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public void updateUrlLimit(String shortCode, String userId, Integer maxAccessCount)
+            throws UrlNotFoundException {
+        lock.readLock().lock();
+        try {
+            ownerOf(shortCode).updateUrlLimit(shortCode, userId, maxAccessCount);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private ClusterNode ownerOf(String shortCode) throws UrlNotFoundException {
+        Routing current = routing;
+        String owner = current.ring.ownerOfCode(shortCode);
+        if (owner == null) {
+            throw new UrlNotFoundException("Короткая ссылка не найдена: " + shortCode);
+        }
+        return current.nodeFor(owner);
+    }
+    
+    public ShardRing getRing() {
+        return routing.ring;
+    }
+    
+    public Collection<ClusterNode> getNodes() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(nodes.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    @Override
+    public String toString() {
+        Routing current = routing;
+        return "узлов: " + current.nodes.size() + ", " + current.ring;
+    }
+    
+    private static final class Routing {
+        /** Полос счетчика переходов: потоки расходятся по разным строкам кэша. */
+        private static final int STRIPES = 64;
+        private static final int STRIPE_INTS = 16;
+        
+        final ShardRing ring;
+        final Map<String, ClusterNode> nodes;
+        /** Сегменты, переходы по которым ждут конца переноса, или null. */
+        private final boolean[] moving;
+        private final CountDownLatch handoff;
+        /** Начатые по этим маршрутам переходы, по полосам потоков. */
+        private final AtomicIntegerArray inFlight = new AtomicIntegerArray(STRIPES * STRIPE_INTS);
+        
+        Routing(ShardRing ring, Map<String, ClusterNode> nodes) {
+            this(ring, nodes, null);
+        }
+        
+        Routing(ShardRing ring, Map<String, ClusterNode> nodes, boolean[] moving) {
+            this.ring = ring;
+            this.nodes = nodes;
+            this.moving = moving;
+            this.handoff = moving == null ? null : new CountDownLatch(1);
+        }
+        
+        boolean isMoving(int shard) {
+            return moving != null && moving[shard];
+        }
+        
+        /**
+         * Ждет конца переноса без реакции на прерывание: переход нельзя оставить без ответа.
+         */
+        void awaitHandoff() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    handoff.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        void finishHandoff() {
+            handoff.countDown();
+        }
+        
+        /**
+         * Отмечает начало перехода; полоса возвращается в {@link #exit}.
+         */
+        int enter() {
+            int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1)) * STRIPE_INTS;
+            inFlight.incrementAndGet(stripe);
+            return stripe;
+        }
+        
+        void exit(int stripe) {
+            inFlight.decrementAndGet(stripe);
+        }
+        
+        /**
+         * Ждет окончания переходов, начатых по этим маршрутам. Вызывается, когда маршруты
+         * уже заменены: новый переход, вошедший сюда, увидит замену и уйдет.
+         */
+        void awaitIdle() {
+            for (int stripe = 0; stripe < STRIPES * STRIPE_INTS; stripe += STRIPE_INTS) {
+                while (inFlight.get(stripe) != 0) {
+                    Thread.yield();
+                }
+            }
+        }
+        
+        ClusterNode nodeFor(String nodeId) {
+            if (nodeId == null) {
+                throw new IllegalStateException("В кластере нет узлов");
+            }
+            return nodes.get(nodeId);
+        }
+    }
+}
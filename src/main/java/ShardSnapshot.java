@@ -0,0 +1,69 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Сегменты, переезжающие на другой узел кластера: позиции генераторов кодов и ссылки
+ * со счетчиками, лимитами и сроками.
+ *
+ * <p>По сети передается строками CSV: {@code shard,<сегмент>,<позиция>} и записи
+ * {@code link} в формате {@link LinkTransfer}.
+ */
+public final class ShardSnapshot {
+    private final Map<Integer, Long> positions;
+    private final List<ShortUrl> links;
+    
+    public ShardSnapshot(Map<Integer, Long> positions, List<ShortUrl> links) {
+        this.positions = Collections.unmodifiableMap(new TreeMap<>(positions));
+        this.links = Collections.unmodifiableList(links);
+    }
+    
+    /** Сегмент -> позиция его генератора кодов. */
+    public Map<Integer, Long> getPositions() {
+        return positions;
+    }
+    
+    public List<ShortUrl> getLinks() {
+        return links;
+    }
+    
+    String toCsv() {
+        StringBuilder text = new StringBuilder(64 + links.size() * 128);
+        for (Map.Entry<Integer, Long> position : positions.entrySet()) {
+            text.append("shard,").append(position.getKey()).append(',').append(position.getValue()).append('\n');
+        }
+        for (ShortUrl shortUrl : links) {
+            LinkTransfer.appendLink(text, shortUrl, LinkTransfer.Format.CSV);
+        }
+        return text.toString();
+    }
+    
+    static ShardSnapshot parseCsv(List<String> lines) {
+        Map<Integer, Long> positions = new TreeMap<>();
+        List<ShortUrl> links = new ArrayList<>();
+        for (String line : lines) {
+            List<String> fields = LinkTransfer.parseCsv(line);
+            switch (fields.get(0)) {
+                case "shard":
+                    if (fields.size() != 3) {
+                        throw new IllegalArgumentException("Неверная запись сегмента: " + line);
+                    }
+                    positions.put((int) LinkTransfer.parseLong(fields.get(1)), LinkTransfer.parseLong(fields.get(2)));
+                    break;
+                case "link":
+                    links.add(LinkTransfer.parseLink(fields));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Неизвестный тип записи: " + fields.get(0));
+            }
+        }
+        return new ShardSnapshot(positions, links);
+    }
+    
+    @Override
+    public String toString() {
+        return "сегментов: " + positions.size() + ", ссылок: " + links.size();
+    }
+}
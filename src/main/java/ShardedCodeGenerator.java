@@ -0,0 +1,115 @@
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Генератор кодов узла кластера: первый символ кода - сегмент ({@link ShardRing}),
+ * остальные выдает генератор этого сегмента. Коды выдаются по очереди во всех сегментах узла.
+ *
+ * <p>У каждого сегмента свой генератор, и его позиция переезжает вместе с сегментом
+ * ({@link #release} на старом узле, {@link #assign} на новом), поэтому новый владелец
+ * не выдает коды, уже занятые в сегменте. Узел помнит позиции и отданных сегментов
+ * ({@link #restorePosition(int, long)} при восстановлении из журнала): если сегмент вернется,
+ * генератор продолжит не ниже известной позиции.
+ */
+public class ShardedCodeGenerator implements ShortCodeGenerator {
+    private final Supplier<ShortCodeGenerator> suffixGenerators;
+    private final ShortCodeGenerator[] generators = new ShortCodeGenerator[ShardRing.SHARDS];
+    /** Известные позиции сегментов, которых у узла нет или еще не было. */
+    private final long[] floors = new long[ShardRing.SHARDS];
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile int[] shards = new int[0];
+    
+    /**
+     * @param suffixGenerators создает генератор кодов без первого символа для очередного сегмента
+     */
+    public ShardedCodeGenerator(Supplier<ShortCodeGenerator> suffixGenerators) {
+        this.suffixGenerators = suffixGenerators;
+    }
+    
+    /**
+     * Генераторы сегментов по настройкам {@code short.code.*}; длина кода вместе с сегментом
+     * остается {@code short.code.length}.
+     */
+    public static ShardedCodeGenerator fromConfig() {
+        int length = Config.getShortCodeLength();
+        if (length < 2) {
+            throw new IllegalArgumentException("В кластере код должен быть длиннее одного символа");
+        }
+        return new ShardedCodeGenerator(() -> ShortCodeGenerator.fromConfig(length - 1));
+    }
+    
+    @Override
+    public String nextCode() {
+        int[] owned = shards;
+        if (owned.length == 0) {
+            throw new IllegalStateException("Узлу не назначено ни одного сегмента");
+        }
+        int shard = owned[Math.floorMod(next.getAndIncrement(), owned.length)];
+        return ALPHABET.charAt(shard) + generators[shard].nextCode();
+    }
+    
+    /**
+     * Начинает выдавать коды сегмента с сохраненной позиции его генератора, но не ниже
+     * позиции, которую узел уже знает для этого сегмента.
+     */
+    public synchronized void assign(int shard, long position) {
+        ShortCodeGenerator generator = suffixGenerators.get();
+        generator.restorePosition(Math.max(position, getPosition(shard)));
+        generators[shard] = generator;
+        int[] owned = shards;
+        if (Arrays.binarySearch(owned, shard) < 0) {
+            owned = Arrays.copyOf(owned, owned.length + 1);
+            owned[owned.length - 1] = shard;
+            Arrays.sort(owned);
+        }
+        // Запись volatile-поля публикует новый генератор потокам nextCode
+        shards = owned;
+    }
+    
+    /**
+     * Перестает выдавать коды сегмента.
+     *
+     * @return позиция генератора сегмента для нового владельца
+     */
+    public synchronized long release(int shard) {
+        if (Arrays.binarySearch(shards, shard) < 0) {
+            throw new IllegalArgumentException("Сегмент не назначен узлу: " + shard);
+        }
+        shards = Arrays.stream(shards).filter(owned -> owned != shard).toArray();
+        // Генератор остается на месте: поток мог уже выбрать этот сегмент
+        return generators[shard].getPosition();
+    }
+    
+    /**
+     * Позиция генератора сегмента: известная узлу, даже если сегмент отдан; 0, если сегмента не было.
+     */
+    public synchronized long getPosition(int shard) {
+        ShortCodeGenerator generator = generators[shard];
+        return generator == null ? floors[shard] : Math.max(floors[shard], generator.getPosition());
+    }
+    
+    /**
+     * Поднимает известную позицию сегмента, не назначая его узлу.
+     */
+    public synchronized void restorePosition(int shard, long position) {
+        floors[shard] = Math.max(floors[shard], position);
+        if (generators[shard] != null) {
+            generators[shard].restorePosition(position);
+        }
+    }
+    
+    public boolean owns(int shard) {
+        return Arrays.binarySearch(shards, shard) >= 0;
+    }
+    
+    public Set<Integer> getShards() {
+        Set<Integer> owned = new TreeSet<>();
+        for (int shard : shards) {
+            owned.add(shard);
+        }
+        return owned;
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Стратегия выдачи коротких кодов. Реализации должны быть потокобезопасными.
+ */
+public interface ShortCodeGenerator {
+    String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    
+    /**
+     * Возвращает очередной код длины {@link Config#getShortCodeLength()} (или заданной в конструкторе).
+     * Случайные генераторы могут вернуть уже занятый код, последовательные — нет.
+     */
+    String nextCode();
+    
+    /**
+     * Возвращает {@code count} кодов подряд для пакетного создания ссылок.
+     */
+    default String[] nextCodes(int count) {
+        String[] codes = new String[count];
+        for (int i = 0; i < count; i++) {
+            codes[i] = nextCode();
+        }
+        return codes;
+    }
+    
+    /**
+     * Состояние генератора, которое нужно сохранить между перезапусками, чтобы не выдавать
+     * уже занятые коды. У генераторов без состояния — 0.
+     */
+    default long getPosition() {
+        return 0;
+    }
+    
+    /**
+     * Продвигает генератор не ниже сохраненной позиции.
+     */
+    default void restorePosition(long position) {
+    }
+    
+    /**
+     * Создает генератор по настройке {@code short.code.generator}: {@code sequence} или {@code random}.
+     */
+    static ShortCodeGenerator fromConfig() {
+        return fromConfig(Config.getShortCodeLength());
+    }
+    
+    /**
+     * То же, что {@link #fromConfig()}, но с кодами длины {@code length}.
+     */
+    static ShortCodeGenerator fromConfig(int length) {
+        switch (Config.getShortCodeGenerator()) {
+            case "random":
+                return new RandomShortCodeGenerator(length);
+            case "sequence":
+                return new SequenceShortCodeGenerator(length, Config.getShortCodeSeed(),
+                        Config.getShortCodeBlockSize());
+            default:
+                throw new IllegalArgumentException("Неизвестный генератор кодов: " + Config.getShortCodeGenerator());
+        }
+    }
+}
@@ -1,71 +1,244 @@
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 public class ShortUrl {
+    private static final AtomicLongFieldUpdater<ShortUrl> STATE =
+            AtomicLongFieldUpdater.newUpdater(ShortUrl.class, "state");
+    private static final int NO_LIMIT = -1;
+    
+    /**
+     * Исход попытки перехода ({@link #acquireAccess}).
+     */
+    enum Access {
+        /** Переход засчитан. */
+        GRANTED,
+        /** Переход засчитан и исчерпал лимит, который проверял он же. */
+        EXHAUSTED,
+        /** Лимит уже исчерпан, переход не засчитан. */
+        LIMIT_REACHED
+    }
+    
     private final String shortCode;
     private final String originalUrl;
-    private final LocalDateTime createdAt;
-    private final LocalDateTime expiresAt;
+    private final long createdAtMillis;
+    private final long expiresAtMillis;
     private final String userId;
-    private int accessCount;
-    private Integer maxAccessCount;
+    /**
+     * Лимит переходов в старших 32 битах ({@link #NO_LIMIT} - без лимита) и счетчик в младших:
+     * переход и смена лимита меняют их одной операцией и видят друг друга целиком.
+     */
+    private volatile long state;
     
     public ShortUrl(String shortCode, String originalUrl, String userId) {
-        this.shortCode = shortCode;
-        this.originalUrl = originalUrl;
-        this.userId = userId;
-        this.createdAt = LocalDateTime.now();
-        this.expiresAt = createdAt.plusHours(Config.getDefaultUrlTtlHours());
-        this.accessCount = 0;
-        this.maxAccessCount = null;
+        this(shortCode, originalUrl, userId, System.currentTimeMillis());
+    }
+    
+    /**
+     * Ссылка, созданная в момент nowMillis, со сроком жизни по умолчанию.
+     */
+    ShortUrl(String shortCode, String originalUrl, String userId, long nowMillis) {
+        this(shortCode, originalUrl, userId, nowMillis,
+                nowMillis + TimeUnit.HOURS.toMillis(Config.getDefaultUrlTtlHours()), 0, null);
     }
     
     public ShortUrl(String shortCode, String originalUrl, String userId, 
                    LocalDateTime createdAt, LocalDateTime expiresAt, 
                    int accessCount, Integer maxAccessCount) {
+        this(shortCode, originalUrl, userId, toEpochMillis(createdAt), toEpochMillis(expiresAt),
+                accessCount, maxAccessCount);
+    }
+    
+    /**
+     * Создает ссылку по меткам времени в миллисекундах.
+     */
+    ShortUrl(String shortCode, String originalUrl, String userId,
+             long createdAtMillis, long expiresAtMillis,
+             int accessCount, Integer maxAccessCount) {
         this.shortCode = shortCode;
         this.originalUrl = originalUrl;
         this.userId = userId;
-        this.createdAt = createdAt;
-        this.expiresAt = expiresAt;
-        this.accessCount = accessCount;
-        this.maxAccessCount = maxAccessCount;
+        this.createdAtMillis = createdAtMillis;
+        this.expiresAtMillis = expiresAtMillis;
+        this.state = state(encodeLimit(maxAccessCount), accessCount);
     }
     
     public boolean isExpired() {
-        return LocalDateTime.now().isAfter(expiresAt);
+        return isExpired(System.currentTimeMillis());
+    }
+    
+    public boolean isExpired(long nowMillis) {
+        return nowMillis > expiresAtMillis;
     }
     
     public boolean isAccessLimitReached() {
-        return maxAccessCount != null && accessCount >= maxAccessCount;
+        Integer limit = getMaxAccessCount();
+        return limit != null && getAccessCount() >= limit;
     }
     
     public boolean isActive() {
-        return !isExpired() && !isAccessLimitReached();
+        return isActive(System.currentTimeMillis());
+    }
+    
+    public boolean isActive(long nowMillis) {
+        return !isExpired(nowMillis) && !isAccessLimitReached();
     }
     
     public void incrementAccessCount() {
-        accessCount++;
+        addAccessCount(1);
+    }
+    
+    /**
+     * Поднимает счетчик переходов до восстановленного значения (не уменьшает его).
+     */
+    void restoreAccessCount(int restoredCount) {
+        long current;
+        do {
+            current = state;
+        } while ((int) current < restoredCount
+                && !STATE.compareAndSet(this, current, state(limit(current), restoredCount)));
+    }
+    
+    /**
+     * Добавляет переходы, уже засчитанные в другом месте (репликой), без проверки лимита.
+     */
+    void addAccessCount(int clicks) {
+        long current;
+        do {
+            current = state;
+        } while (!STATE.compareAndSet(this, current, state(limit(current), saturatedAdd((int) current, clicks))));
+    }
+    
+    /**
+     * Атомарно проверяет лимит переходов и засчитывает переход.
+     * Ссылка с лимитом N пропускает ровно N переходов при любом числе потоков.
+     *
+     * @return true, если переход засчитан; false, если лимит уже исчерпан
+     */
+    public boolean tryAcquireAccess() {
+        return acquireAccess() != Access.LIMIT_REACHED;
+    }
+    
+    /**
+     * То же, что {@link #tryAcquireAccess}, но отличает переход, исчерпавший лимит:
+     * {@link Access#EXHAUSTED} получает ровно один вызов.
+     */
+    Access acquireAccess() {
+        while (true) {
+            long current = state;
+            int limit = limit(current);
+            if (limit != NO_LIMIT && (int) current >= limit) {
+                return Access.LIMIT_REACHED;
+            }
+            int next = saturatedAdd((int) current, 1);
+            if (STATE.compareAndSet(this, current, state(limit, next))) {
+                return limit != NO_LIMIT && next >= limit ? Access.EXHAUSTED : Access.GRANTED;
+            }
+        }
+    }
+    
+    /**
+     * Меняет лимит переходов и сообщает, как от этого изменилась активность ссылки:
+     * 1 - лимит перестал быть исчерпан, -1 - стал исчерпан, 0 - не изменилась. Активность
+     * до и после смены определяется по одному и тому же значению счетчика, поэтому вместе
+     * с {@link Access#EXHAUSTED} от параллельных переходов каждый переход между состояниями
+     * учитывается ровно один раз.
+     */
+    int replaceMaxAccessCount(Integer maxAccessCount) {
+        int limit = encodeLimit(maxAccessCount);
+        long current;
+        do {
+            current = state;
+        } while (!STATE.compareAndSet(this, current, state(limit, (int) current)));
+        return activityChange((int) current, limit(current), limit);
+    }
+    
+    /**
+     * Лимит в том виде, в каком он хранится рядом со счетчиком: null - {@link #NO_LIMIT}.
+     * Отрицательный лимит отклоняется, иначе -1 совпал бы с "без лимита", а остальные
+     * отрицательные значения сделали бы ссылку навсегда исчерпанной.
+     *
+     * @throws IllegalArgumentException если лимит отрицательный
+     */
+    static int encodeLimit(Integer maxAccessCount) {
+        if (maxAccessCount == null) {
+            return NO_LIMIT;
+        }
+        if (maxAccessCount < 0) {
+            throw new IllegalArgumentException("Лимит переходов не может быть отрицательным: " + maxAccessCount);
+        }
+        return maxAccessCount;
+    }
+    
+    /**
+     * Изменение активности ссылки со счетчиком {@code accessCount} при смене лимита.
+     */
+    static int activityChange(int accessCount, int oldLimit, int newLimit) {
+        boolean wasActive = oldLimit == NO_LIMIT || accessCount < oldLimit;
+        boolean active = newLimit == NO_LIMIT || accessCount < newLimit;
+        return wasActive == active ? 0 : active ? 1 : -1;
+    }
+    
+    /**
+     * Сумма счетчика и переходов, не больше {@link Integer#MAX_VALUE}: счетчик ссылки без лимита
+     * замирает на максимуме, а не переполняется в отрицательные значения.
+     */
+    static int saturatedAdd(int accessCount, int clicks) {
+        long sum = (long) accessCount + clicks;
+        return sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+    }
+    
+    /**
+     * Ссылка, которую можно держать в кэше горячих ссылок: URL уже лежит на куче.
+     * Ссылки, читающие URL из внешней памяти, один раз декодируют его здесь.
+     */
+    ShortUrl cacheable() {
+        return this;
     }
     
     public String getShortCode() { return shortCode; }
     public String getOriginalUrl() { return originalUrl; }
-    public LocalDateTime getCreatedAt() { return createdAt; }
-    public LocalDateTime getExpiresAt() { return expiresAt; }
+    public LocalDateTime getCreatedAt() { return toDateTime(createdAtMillis); }
+    public LocalDateTime getExpiresAt() { return toDateTime(expiresAtMillis); }
+    public long getExpiresAtMillis() { return expiresAtMillis; }
+    public long getCreatedAtMillis() { return createdAtMillis; }
     public String getUserId() { return userId; }
-    public int getAccessCount() { return accessCount; }
-    public Integer getMaxAccessCount() { return maxAccessCount; }
+    public int getAccessCount() { return (int) state; }
+    public Integer getMaxAccessCount() {
+        int limit = limit(state);
+        return limit == NO_LIMIT ? null : limit;
+    }
     
     public void setMaxAccessCount(Integer maxAccessCount) {
-        this.maxAccessCount = maxAccessCount;
+        replaceMaxAccessCount(maxAccessCount);
+    }
+    
+    private static long state(int limit, int accessCount) {
+        return ((long) limit << 32) | (accessCount & 0xFFFFFFFFL);
+    }
+    
+    private static int limit(long state) {
+        return (int) (state >> 32);
+    }
+    
+    private static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+    
+    private static LocalDateTime toDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
     }
     
     @Override
     public String toString() {
         String status = isActive() ? "АКТИВНА" : "НЕАКТИВНА";
-        String limitInfo = maxAccessCount != null ? 
-            " (лимит: " + maxAccessCount + ")" : " (без лимита)";
-        return shortCode + " -> " + originalUrl + 
-               " [переходов: " + accessCount + limitInfo + ", создана: " + createdAt + 
-               ", истекает: " + expiresAt + "] - " + status;
+        Integer limit = getMaxAccessCount();
+        String limitInfo = limit != null ? 
+            " (лимит: " + limit + ")" : " (без лимита)";
+        return shortCode + " -> " + getOriginalUrl() + 
+               " [переходов: " + getAccessCount() + limitInfo + ", создана: " + getCreatedAt() + 
+               ", истекает: " + getExpiresAt() + "] - " + status;
     }
 }
\ No newline at end of file
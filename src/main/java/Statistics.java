@@ -0,0 +1,49 @@
+/**
+ * Снимок статистики по ссылкам: всего сервиса или одного пользователя.
+ */
+public class Statistics {
+    private final long users;
+    private final long links;
+    private final long activeLinks;
+    private final long clicks;
+    
+    public Statistics(long users, long links, long activeLinks, long clicks) {
+        this.users = users;
+        this.links = links;
+        this.activeLinks = activeLinks;
+        this.clicks = clicks;
+    }
+    
+    /** Пользователей: всего в сервисе или 1 для статистики пользователя. */
+    public long getUsers() { return users; }
+    /** Ссылок в хранилище, включая истекшие, но еще не удаленные очисткой. */
+    public long getLinks() { return links; }
+    /** Ссылок с неисчерпанным лимитом переходов. */
+    public long getActiveLinks() { return activeLinks; }
+    /** Переходов по ссылкам, которые сейчас в хранилище. */
+    public long getClicks() { return clicks; }
+    
+    public double getAverageClicks() {
+        return links == 0 ? 0.0 : (double) clicks / links;
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        Statistics other = (Statistics) obj;
+        return users == other.users && links == other.links
+                && activeLinks == other.activeLinks && clicks == other.clicks;
+    }
+    
+    @Override
+    public int hashCode() {
+        return Long.hashCode(links) * 31 + Long.hashCode(clicks);
+    }
+    
+    @Override
+    public String toString() {
+        return "пользователей: " + users + ", ссылок: " + links + ", активных: " + activeLinks
+                + ", переходов: " + clicks + String.format(", в среднем: %.2f", getAverageClicks());
+    }
+}
@@ -0,0 +1,450 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Долговременное хранение состояния сервиса: журнал изменений ({@link WriteAheadLog})
+ * плюс периодические снимки {@code snapshot-<сегмент>.bin}.
+ *
+ * <p>Создание и удаление ссылок, смена лимита и новые пользователи пишутся в журнал
+ * по мере изменения. Переходы в журнал по одному не пишутся: ссылка лишь помечается
+ * "грязной", а фоновый сброс раз в {@code storage.flush.millis} записывает итоговые
+ * счетчики помеченных ссылок и делает один fsync на всю пачку. После сбоя теряется
+ * не больше одного интервала сброса.
+ *
+ * <p>Снимок пишется после переключения журнала на новый сегмент; при восстановлении
+ * загружается последний снимок и проигрываются сегменты начиная с его номера.
+ * Все записи журнала идемпотентны (счетчик переходов пишется абсолютным значением),
+ * поэтому пересечение снимка и журнала безопасно.
+ *
+ * <p>У узла кластера ({@link ShardedCodeGenerator}) в журнал и снимок попадают позиция
+ * генератора каждого сегмента и то, принадлежит ли сегмент узлу: перезапущенный узел
+ * продолжает выдавать коды своих сегментов, не повторяя уже выданные.
+ */
+public class StorageManager implements LinkChangeListener, Closeable {
+    private static final AsyncLogger LOG = AsyncLogger.forClass(StorageManager.class);
+    private static final int SNAPSHOT_MAGIC = 0x55524C53;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final byte END = 0;
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d+)\\.bin");
+    
+    private final Path dir;
+    private final UrlShortenerService service;
+    private final WriteAheadLog log;
+    private final RecoveryStats recoveryStats;
+    private final Set<String> dirtyAccess = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler;
+    private volatile long loggedGeneratorPosition;
+    private final ShardedCodeGenerator shardedGenerator;
+    private final long[] loggedShardPositions = new long[ShardRing.SHARDS];
+    private final boolean[] loggedShardOwners = new boolean[ShardRing.SHARDS];
+    
+    private StorageManager(Path dir, UrlShortenerService service, WriteAheadLog log, RecoveryStats recoveryStats) {
+        this.dir = dir;
+        this.service = service;
+        this.log = log;
+        this.recoveryStats = recoveryStats;
+        this.loggedGeneratorPosition = service.getCodeGenerator().getPosition();
+        this.shardedGenerator = service.getCodeGenerator() instanceof ShardedCodeGenerator
+                ? (ShardedCodeGenerator) service.getCodeGenerator() : null;
+        if (shardedGenerator != null) {
+            for (int shard = 0; shard < ShardRing.SHARDS; shard++) {
+                loggedShardPositions[shard] = shardedGenerator.getPosition(shard);
+                loggedShardOwners[shard] = shardedGenerator.owns(shard);
+            }
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "storage-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Открывает хранилище из {@code storage.dir}; возвращает null, если каталог не задан.
+     */
+    public static StorageManager openIfConfigured(UrlShortenerService service) throws IOException {
+        String dir = Config.getStorageDir();
+        if (dir == null || dir.isBlank()) {
+            return null;
+        }
+        return open(Paths.get(dir), service, Config.getStorageFlushMillis(),
+                TimeUnit.MINUTES.toMillis(Config.getStorageSnapshotIntervalMinutes()));
+    }
+    
+    /**
+     * Восстанавливает состояние сервиса из каталога и начинает журналировать изменения.
+     *
+     * @param snapshotMillis период снимков; 0 — только по вызову {@link #snapshot()}
+     */
+    public static StorageManager open(Path dir, UrlShortenerService service, long flushMillis, long snapshotMillis)
+            throws IOException {
+        Files.createDirectories(dir);
+        RecoveryStats stats = recover(dir, service, service.getClock());
+        StorageManager storage = new StorageManager(dir, service,
+                new WriteAheadLog(dir, stats.nextSegment), stats);
+        service.addChangeListener(storage);
+        storage.scheduler.scheduleWithFixedDelay(storage::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        if (snapshotMillis > 0) {
+            storage.scheduler.scheduleWithFixedDelay(storage::snapshotQuietly,
+                    snapshotMillis, snapshotMillis, TimeUnit.MILLISECONDS);
+        }
+        return storage;
+    }
+    
+    public RecoveryStats getRecoveryStats() {
+        return recoveryStats;
+    }
+    
+    @Override
+    public void onUserCreated(User user) {
+        log.append(WriteAheadLog.record(WriteAheadLog.USER, user.getId(), user.getName()));
+    }
+    
+    @Override
+    public void onUrlCreated(ShortUrl shortUrl) {
+        log.append(WriteAheadLog.record(WriteAheadLog.CREATE, shortUrl.getShortCode(), shortUrl.getOriginalUrl(),
+                shortUrl.getUserId(), shortUrl.getCreatedAtMillis(), shortUrl.getExpiresAtMillis(),
+                limitOf(shortUrl)));
+    }
+    
+    @Override
+    public void onUrlImported(ShortUrl shortUrl) {
+        onUrlCreated(shortUrl);
+        if (shortUrl.getAccessCount() > 0) {
+            // CREATE не хранит счетчик: он попадет в журнал при следующем flush
+            dirtyAccess.add(shortUrl.getShortCode());
+        }
+    }
+    
+    @Override
+    public void onUrlDeleted(ShortUrl shortUrl) {
+        log.append(WriteAheadLog.record(WriteAheadLog.DELETE, shortUrl.getShortCode()));
+    }
+    
+    @Override
+    public void onLimitUpdated(ShortUrl shortUrl) {
+        log.append(WriteAheadLog.record(WriteAheadLog.LIMIT, shortUrl.getShortCode(), limitOf(shortUrl)));
+    }
+    
+    @Override
+    public void onAccess(ShortUrl shortUrl) {
+        dirtyAccess.add(shortUrl.getShortCode());
+    }
+    
+    @Override
+    public void onAccessMerged(ShortUrl shortUrl, int clicks) {
+        dirtyAccess.add(shortUrl.getShortCode());
+    }
+    
+    /**
+     * Записывает накопленные счетчики переходов и сбрасывает журнал на диск.
+     */
+    public void flush() throws IOException {
+        Iterator<String> dirty = dirtyAccess.iterator();
+        while (dirty.hasNext()) {
+            String shortCode = dirty.next();
+            dirty.remove();
+            ShortUrl shortUrl = service.findShortUrl(shortCode);
+            if (shortUrl != null) {
+                log.append(WriteAheadLog.record(WriteAheadLog.ACCESS, shortCode, shortUrl.getAccessCount()));
+            }
+        }
+        long position = service.getCodeGenerator().getPosition();
+        if (position != loggedGeneratorPosition) {
+            log.append(WriteAheadLog.record(WriteAheadLog.SEQUENCE, position));
+            loggedGeneratorPosition = position;
+        }
+        if (shardedGenerator != null) {
+            logShards();
+        }
+        log.flush();
+    }
+    
+    /**
+     * Пишет в журнал сегменты, у которых с прошлого сброса сменились позиция или владелец.
+     */
+    private void logShards() {
+        for (int shard = 0; shard < ShardRing.SHARDS; shard++) {
+            long position = shardedGenerator.getPosition(shard);
+            boolean owned = shardedGenerator.owns(shard);
+            if (position != loggedShardPositions[shard] || owned != loggedShardOwners[shard]) {
+                log.append(WriteAheadLog.record(WriteAheadLog.SHARD, shard, position, owned ? 1 : 0));
+                loggedShardPositions[shard] = position;
+                loggedShardOwners[shard] = owned;
+            }
+        }
+    }
+    
+    /**
+     * Пишет снимок текущего состояния и удаляет покрытые им сегменты журнала.
+     */
+    public synchronized void snapshot() throws IOException {
+        flush();
+        long coveredSegment = log.rotate();
+        Path tmp = dir.resolve("snapshot-" + coveredSegment + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(coveredSegment);
+            out.writeLong(service.getCodeGenerator().getPosition());
+            if (shardedGenerator != null) {
+                for (int shard = 0; shard < ShardRing.SHARDS; shard++) {
+                    long position = shardedGenerator.getPosition(shard);
+                    boolean owned = shardedGenerator.owns(shard);
+                    if (position != 0 || owned) {
+                        out.writeByte(WriteAheadLog.SHARD);
+                        out.writeInt(shard);
+                        out.writeLong(position);
+                        out.writeInt(owned ? 1 : 0);
+                    }
+                }
+            }
+            for (User user : service.users()) {
+                out.writeByte(WriteAheadLog.USER);
+                out.writeUTF(user.getId());
+                out.writeUTF(user.getName());
+            }
+            for (Iterator<ShortUrl> urls = service.urls().iterator(); urls.hasNext(); ) {
+                ShortUrl shortUrl = urls.next();
+                out.writeByte(WriteAheadLog.CREATE);
+                out.writeUTF(shortUrl.getShortCode());
+                out.writeUTF(shortUrl.getOriginalUrl());
+                out.writeUTF(shortUrl.getUserId());
+                out.writeLong(shortUrl.getCreatedAtMillis());
+                out.writeLong(shortUrl.getExpiresAtMillis());
+                out.writeInt(limitOf(shortUrl));
+                out.writeInt(shortUrl.getAccessCount());
+            }
+            out.writeByte(END);
+        }
+        Files.move(tmp, snapshotPath(dir, coveredSegment),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        for (long older : listSnapshots(dir)) {
+            if (older < coveredSegment) {
+                Files.deleteIfExists(snapshotPath(dir, older));
+            }
+        }
+        log.deleteSegmentsBefore(coveredSegment);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        service.removeChangeListener(this);
+        flush();
+        log.close();
+    }
+    
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            LOG.error("Ошибка записи журнала: {}", e.getMessage());
+        }
+    }
+    
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException e) {
+            LOG.error("Ошибка записи снимка: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * @param clock часы сервиса: по ним отбрасываются ссылки, истекшие до восстановления
+     */
+    static RecoveryStats recover(Path dir, UrlShortenerService service, MillisClock clock) throws IOException {
+        long startNanos = System.nanoTime();
+        RecoveryStats stats = new RecoveryStats();
+        List<Long> snapshots = listSnapshots(dir);
+        long firstSegment = 0;
+        if (!snapshots.isEmpty()) {
+            firstSegment = snapshots.get(snapshots.size() - 1);
+            loadSnapshot(snapshotPath(dir, firstSegment), service, clock, stats);
+        }
+        long lastSegment = firstSegment - 1;
+        for (long segment : WriteAheadLog.listSegments(dir)) {
+            if (segment >= firstSegment) {
+                stats.logRecords += WriteAheadLog.readSegment(dir, segment,
+                        (type, fields) -> replay(type, fields, service, clock, stats));
+                lastSegment = segment;
+            }
+        }
+        // Дописывать в старый сегмент нельзя: его хвост мог оборваться при сбое
+        stats.nextSegment = Math.max(firstSegment, lastSegment + 1);
+        stats.durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        return stats;
+    }
+    
+    private static void loadSnapshot(Path path, UrlShortenerService service, MillisClock clock, RecoveryStats stats)
+            throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Неизвестный формат снимка: " + path);
+            }
+            in.readLong();
+            service.getCodeGenerator().restorePosition(in.readLong());
+            long now = clock.millis();
+            byte type;
+            while ((type = in.readByte()) != END) {
+                if (type == WriteAheadLog.USER) {
+                    service.restoreUser(new User(in.readUTF(), in.readUTF()));
+                    stats.users++;
+                } else if (type == WriteAheadLog.CREATE) {
+                    ShortUrl shortUrl = readShortUrl(in, true);
+                    if (shortUrl.getExpiresAtMillis() > now && service.restoreShortUrl(shortUrl)) {
+                        stats.links++;
+                    }
+                } else if (type == WriteAheadLog.SHARD) {
+                    restoreShard(in, service);
+                } else {
+                    throw new IOException("Поврежденный снимок " + path + ": тип записи " + type);
+                }
+            }
+        }
+    }
+    
+    private static void replay(byte type, DataInput fields, UrlShortenerService service, MillisClock clock,
+                               RecoveryStats stats) throws IOException {
+        switch (type) {
+            case WriteAheadLog.USER:
+                service.restoreUser(new User(fields.readUTF(), fields.readUTF()));
+                stats.users++;
+                break;
+            case WriteAheadLog.CREATE: {
+                ShortUrl shortUrl = readShortUrl(fields, false);
+                // Снимок мог уже содержать ссылку с ее переходами: запись о создании их не сбрасывает
+                if (shortUrl.getExpiresAtMillis() > clock.millis() && service.restoreShortUrl(shortUrl)) {
+                    stats.links++;
+                }
+                break;
+            }
+            case WriteAheadLog.DELETE:
+                service.removeShortUrl(fields.readUTF());
+                break;
+            case WriteAheadLog.LIMIT: {
+                String shortCode = fields.readUTF();
+                int limit = fields.readInt();
+                service.restoreLimit(shortCode, limit < 0 ? null : limit);
+                break;
+            }
+            case WriteAheadLog.ACCESS: {
+                String shortCode = fields.readUTF();
+                service.restoreAccessCount(shortCode, fields.readInt());
+                break;
+            }
+            case WriteAheadLog.SEQUENCE:
+                service.getCodeGenerator().restorePosition(fields.readLong());
+                break;
+            case WriteAheadLog.SHARD:
+                restoreShard(fields, service);
+                break;
+            default:
+                throw new IOException("Неизвестный тип записи журнала: " + type);
+        }
+    }
+    
+    /**
+     * Восстанавливает позицию генератора сегмента и принадлежность сегмента узлу.
+     */
+    private static void restoreShard(DataInput fields, UrlShortenerService service) throws IOException {
+        int shard = fields.readInt();
+        long position = fields.readLong();
+        boolean owned = fields.readInt() != 0;
+        if (!(service.getCodeGenerator() instanceof ShardedCodeGenerator)) {
+            throw new IOException("Журнал узла кластера, а генератор кодов сервиса не по сегментам");
+        }
+        ShardedCodeGenerator generator = (ShardedCodeGenerator) service.getCodeGenerator();
+        if (owned) {
+            generator.assign(shard, position);
+        } else {
+            generator.restorePosition(shard, position);
+            if (generator.owns(shard)) {
+                generator.release(shard);
+            }
+        }
+    }
+    
+    /**
+     * Читает поля ссылки в порядке записи CREATE; в снимке после лимита идет счетчик переходов.
+     */
+    private static ShortUrl readShortUrl(DataInput in, boolean withAccessCount) throws IOException {
+        String shortCode = in.readUTF();
+        String originalUrl = in.readUTF();
+        String userId = in.readUTF();
+        long createdAtMillis = in.readLong();
+        long expiresAtMillis = in.readLong();
+        int limit = in.readInt();
+        int accessCount = withAccessCount ? in.readInt() : 0;
+        return new ShortUrl(shortCode, originalUrl, userId, createdAtMillis, expiresAtMillis,
+                accessCount, limit < 0 ? null : limit);
+    }
+    
+    private static int limitOf(ShortUrl shortUrl) {
+        Integer limit = shortUrl.getMaxAccessCount();
+        return limit == null ? -1 : limit;
+    }
+    
+    private static List<Long> listSnapshots(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(path -> SNAPSHOT_NAME.matcher(path.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Long.parseLong(matcher.group(1)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+    
+    private static Path snapshotPath(Path dir, long segment) {
+        return dir.resolve("snapshot-" + segment + ".bin");
+    }
+    
+    /**
+     * Итоги восстановления: сколько загружено и сколько это заняло.
+     */
+    public static final class RecoveryStats {
+        private long users;
+        private long links;
+        private long logRecords;
+        private long durationMillis;
+        private long nextSegment;
+        
+        public long getUsers() { return users; }
+        public long getLinks() { return links; }
+        public long getLogRecords() { return logRecords; }
+        public long getDurationMillis() { return durationMillis; }
+        
+        @Override
+        public String toString() {
+            return "пользователей: " + users + ", ссылок: " + links + ", записей журнала: " + logRecords +
+                   ", время: " + durationMillis + " мс";
+        }
+    }
+}
@@ -0,0 +1,40 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Общие на все ссылки экземпляры строк оригинальных URL: одна кампания, сокращенная
+ * тысячи раз разными пользователями, хранит одну строку вместо тысячи копий.
+ * Строка живет, пока на нее ссылается хотя бы одна ссылка: каждому {@link #intern}
+ * соответствует один {@link #release}.
+ */
+public class UrlInterner {
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    
+    public String intern(String url) {
+        return entries.compute(url, (k, entry) -> {
+            if (entry == null) {
+                entry = new Entry(k);
+            }
+            entry.references++;
+            return entry;
+        }).value;
+    }
+    
+    public void release(String url) {
+        entries.computeIfPresent(url, (k, entry) -> --entry.references == 0 ? null : entry);
+    }
+    
+    /** Число различных URL в таблице. */
+    public int size() {
+        return entries.size();
+    }
+    
+    private static final class Entry {
+        final String value;
+        int references;
+        
+        Entry(String value) {
+            this.value = value;
+        }
+    }
+}
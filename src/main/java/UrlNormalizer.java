@@ -0,0 +1,177 @@
+import exceptions.InvalidUrlException;
+
+/**
+ * Проверка и приведение URL к каноническому виду одним проходом по строке, без регулярных
+ * выражений. Схема и хост приводятся к нижнему регистру, порт по умолчанию (80 для http,
+ * 443 для https) отбрасывается. Путь, запрос и фрагмент не меняются.
+ *
+ * <p>Если URL уже канонический, возвращается та же строка без выделения памяти.
+ * Используется при создании ссылок и при массовом импорте.
+ */
+public class UrlNormalizer {
+    private static final String HTTP = "http://";
+    private static final String HTTPS = "https://";
+    
+    private final int maxLength;
+    
+    public UrlNormalizer(int maxLength) {
+        this.maxLength = maxLength;
+    }
+    
+    public static UrlNormalizer fromConfig() {
+        return new UrlNormalizer(Config.getMaxUrlLength());
+    }
+    
+    /**
+     * Проверяет URL и возвращает его канонический вид.
+     *
+     * @throws InvalidUrlException если URL пустой, слишком длинный, не http(s),
+     *                             с некорректным хостом или портом, с пробелами или управляющими символами
+     */
+    public String normalize(String url) throws InvalidUrlException {
+        if (url == null || url.isBlank()) {
+            throw new InvalidUrlException("URL не может быть пустым");
+        }
+        
+        int schemeLength;
+        int defaultPort;
+        if (url.regionMatches(true, 0, HTTPS, 0, HTTPS.length())) {
+            schemeLength = HTTPS.length();
+            defaultPort = 443;
+        } else if (url.regionMatches(true, 0, HTTP, 0, HTTP.length())) {
+            schemeLength = HTTP.length();
+            defaultPort = 80;
+        } else {
+            throw new InvalidUrlException("URL должен начинаться с http:// или https://");
+        }
+        
+        if (url.length() > maxLength) {
+            throw new InvalidUrlException("URL слишком длинный (максимум " + maxLength + " символов)");
+        }
+        
+        // Граница authority: первый '/', '?' или '#' после схемы
+        int length = url.length();
+        int authorityEnd = schemeLength;
+        while (authorityEnd < length) {
+            char c = url.charAt(authorityEnd);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            authorityEnd++;
+        }
+        
+        int hostStart = url.lastIndexOf('@', authorityEnd - 1) + 1;
+        if (hostStart < schemeLength) {
+            hostStart = schemeLength;
+        }
+        int hostEnd = scanHost(url, hostStart, authorityEnd);
+        int port = scanPort(url, hostEnd, authorityEnd);
+        checkCharacters(url, schemeLength);
+        
+        boolean lowerScheme = isLowerAscii(url, 0, schemeLength);
+        boolean lowerHost = isLowerHost(url, hostStart, hostEnd);
+        boolean keepPort = port != defaultPort;
+        if (lowerScheme && lowerHost && keepPort) {
+            return url;
+        }
+        
+        StringBuilder canonical = new StringBuilder(length);
+        canonical.append(defaultPort == 443 ? HTTPS : HTTP);
+        canonical.append(url, schemeLength, hostStart);
+        for (int i = hostStart; i < hostEnd; i++) {
+            canonical.append(Character.toLowerCase(url.charAt(i)));
+        }
+        if (keepPort) {
+            canonical.append(url, hostEnd, authorityEnd);
+        }
+        canonical.append(url, authorityEnd, length);
+        return canonical.toString();
+    }
+    
+    /**
+     * Проверяет хост (буквы, цифры, '-', '.', либо IPv6 в квадратных скобках)
+     * и возвращает позицию сразу за ним.
+     */
+    private static int scanHost(String url, int start, int end) throws InvalidUrlException {
+        if (start < end && url.charAt(start) == '[') {
+            int close = url.indexOf(']', start);
+            if (close < 0 || close >= end || close == start + 1) {
+                throw new InvalidUrlException("Некорректный хост в URL: " + url);
+            }
+            for (int i = start + 1; i < close; i++) {
+                char c = url.charAt(i);
+                if (c != ':' && c != '.' && Character.digit(c, 16) < 0) {
+                    throw new InvalidUrlException("Некорректный хост в URL: " + url);
+                }
+            }
+            return close + 1;
+        }
+        
+        int i = start;
+        while (i < end && url.charAt(i) != ':') {
+            char c = url.charAt(i);
+            if (c == '.' ? i == start || url.charAt(i - 1) == '.'
+                    : c != '-' && !Character.isLetterOrDigit(c)) {
+                throw new InvalidUrlException("Некорректный хост в URL: " + url);
+            }
+            i++;
+        }
+        if (i == start) {
+            throw new InvalidUrlException("В URL не указан хост: " + url);
+        }
+        return i;
+    }
+    
+    /**
+     * Разбирает порт после хоста. Возвращает -1, если порт не указан.
+     */
+    private static int scanPort(String url, int hostEnd, int end) throws InvalidUrlException {
+        if (hostEnd == end) {
+            return -1;
+        }
+        if (url.charAt(hostEnd) != ':' || hostEnd + 1 == end || end - hostEnd > 6) {
+            throw new InvalidUrlException("Некорректный порт в URL: " + url);
+        }
+        int port = 0;
+        for (int i = hostEnd + 1; i < end; i++) {
+            int digit = url.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new InvalidUrlException("Некорректный порт в URL: " + url);
+            }
+            port = port * 10 + digit;
+        }
+        if (port == 0 || port > 65535) {
+            throw new InvalidUrlException("Некорректный порт в URL: " + url);
+        }
+        return port;
+    }
+    
+    private static void checkCharacters(String url, int from) throws InvalidUrlException {
+        for (int i = from; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c <= ' ' || c == 0x7f) {
+                throw new InvalidUrlException("URL содержит пробелы или управляющие символы");
+            }
+        }
+    }
+    
+    private static boolean isLowerAscii(String url, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = url.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static boolean isLowerHost(String url, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = url.charAt(i);
+            if (c < 0x80 ? c >= 'A' && c <= 'Z' : Character.toLowerCase(c) != c) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -3,37 +3,136 @@ import exceptions.UrlExpiredException;
 import exceptions.UrlNotFoundException;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 public class UrlShortenerService {
-    private final Map<String, ShortUrl> urlMap;
-    private final Map<String, User> userMap;
-    private final Random random;
-    private final ScheduledExecutorService cleanupScheduler;
+    private static final AsyncLogger LOG = AsyncLogger.forClass(UrlShortenerService.class);
+    private static final int PARALLEL_BATCH_THRESHOLD = 512;
+    private static final String INVALID_LIMIT_MESSAGE = "Лимит должен быть положительным числом: ";
     
-    private static final String CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    private final LinkStore linkStore;
+    private final UserStore userStore;
+    private final ShortCodeGenerator codeGenerator;
+    private final MillisClock clock;
+    private final UrlNormalizer urlNormalizer;
+    private final DedupIndex dedupIndex;
+    private final UrlInterner urlInterner;
+    private final long urlTtlMillis;
+    private final PopularityTracker popularityTracker;
+    private final LinkStatistics statistics = new LinkStatistics();
+    private final List<LinkChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final CleanupMetrics cleanupMetrics;
+    private final ServiceMetrics metrics;
+    private final ScheduledExecutorService cleanupScheduler;
     
     public UrlShortenerService() {
-        this.urlMap = new ConcurrentHashMap<>();
-        this.userMap = new ConcurrentHashMap<>();
-        this.random = new Random();
+        this(ShortCodeGenerator.fromConfig());
+    }
+    
+    public UrlShortenerService(ShortCodeGenerator codeGenerator) {
+        this(codeGenerator, LinkStore.fromConfig(), new InMemoryUserStore());
+    }
+    
+    public UrlShortenerService(ShortCodeGenerator codeGenerator, LinkStore linkStore, UserStore userStore) {
+        this(codeGenerator, linkStore, userStore, MillisClock.fromConfig());
+    }
+    
+    public UrlShortenerService(ShortCodeGenerator codeGenerator, LinkStore linkStore, UserStore userStore,
+                               MillisClock clock) {
+        this(codeGenerator, linkStore, userStore, clock,
+                Config.isDedupEnabled() ? new DedupIndex() : null,
+                Config.isUrlInternEnabled() ? new UrlInterner() : null);
+    }
+    
+    /**
+     * @param dedupIndex  индекс повторных сокращений или null, если каждый запрос создает новую ссылку
+     * @param urlInterner таблица общих строк URL или null
+     */
+    public UrlShortenerService(ShortCodeGenerator codeGenerator, LinkStore linkStore, UserStore userStore,
+                               MillisClock clock, DedupIndex dedupIndex, UrlInterner urlInterner) {
+        this(codeGenerator, linkStore, userStore, clock, dedupIndex, urlInterner,
+                Config.isMetricsEnabled() ? new ServiceMetrics() : null);
+    }
+    
+    /**
+     * @param metrics метрики операций или null, если замеры не нужны
+     */
+    public UrlShortenerService(ShortCodeGenerator codeGenerator, LinkStore linkStore, UserStore userStore,
+                               MillisClock clock, DedupIndex dedupIndex, UrlInterner urlInterner,
+                               ServiceMetrics metrics) {
+        this.linkStore = linkStore;
+        this.userStore = userStore;
+        this.codeGenerator = codeGenerator;
+        this.clock = clock;
+        this.dedupIndex = dedupIndex;
+        this.urlInterner = urlInterner;
+        this.urlNormalizer = UrlNormalizer.fromConfig();
+        this.urlTtlMillis = TimeUnit.HOURS.toMillis(Config.getDefaultUrlTtlHours());
+        this.popularityTracker = new PopularityTracker(Config.getTopUrlsCapacity(),
+                TimeUnit.MINUTES.toMillis(Config.getTopUrlsWindowMinutes()), linkStore::topByAccess);
+        this.cleanupMetrics = new CleanupMetrics();
+        this.metrics = metrics;
+        if (metrics != null) {
+            registerGauges(metrics);
+        }
         this.cleanupScheduler = Executors.newSingleThreadScheduledExecutor();
         startCleanupTask();
     }
     
+    private void registerGauges(ServiceMetrics metrics) {
+        metrics.gauge("links", () -> statistics.total(0).getLinks());
+        metrics.gauge("active_links", () -> statistics.total(0).getActiveLinks());
+        metrics.gauge("clicks", () -> statistics.total(0).getClicks());
+        metrics.gauge("users", userStore::size);
+        metrics.gauge("cleanup_sweeps_total", cleanupMetrics::getSweepCount);
+        metrics.gauge("cleanup_expired_total", cleanupMetrics::getTotalExpired);
+        metrics.gauge("cleanup_last_expired", cleanupMetrics::getLastExpiredCount);
+        HotLinkCache cache = getLinkCache();
+        if (cache != null) {
+            metrics.gauge("cache_size", cache::size);
+            metrics.gauge("cache_hits_total", cache::getHitCount);
+            metrics.gauge("cache_misses_total", cache::getMissCount);
+            metrics.gauge("cache_evictions_total", cache::getEvictionCount);
+        }
+        if (dedupIndex != null) {
+            metrics.gauge("dedup_hits_total", dedupIndex::getHits);
+            metrics.gauge("dedup_index_size", dedupIndex::size);
+        }
+        if (urlInterner != null) {
+            metrics.gauge("interned_urls", urlInterner::size);
+        }
+    }
+    
     public User createUser(String name) {
         User user = new User(name);
-        userMap.put(user.getId(), user);
-        System.out.println("Создан пользователь: " + user);
+        userStore.put(user);
+        if (metrics != null) {
+            metrics.recordUserCreated();
+        }
+        for (LinkChangeListener listener : listeners) {
+            listener.onUserCreated(user);
+        }
+        LOG.debug("Создан пользователь: {}", user.getId());
         return user;
     }
     
+    public void addChangeListener(LinkChangeListener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeChangeListener(LinkChangeListener listener) {
+        listeners.remove(listener);
+    }
+    
     public User getUserById(String userId) {
-        return userMap.get(userId);
+        return userStore.get(userId);
     }
     
     public String createShortUrl(String originalUrl, String userId) throws InvalidUrlException {
@@ -42,44 +141,487 @@ public class UrlShortenerService {
     
     public String createShortUrl(String originalUrl, String userId, Integer maxAccessCount) 
             throws InvalidUrlException {
+        long startNanos = metrics != null ? System.nanoTime() : 0;
+        String url = urlNormalizer.normalize(originalUrl);
         
-        validateUrl(originalUrl);
-        
-        if (!userMap.containsKey(userId)) {
+        if (userId == null || userId.isBlank()) {
+            throw new InvalidUrlException("Не указан пользователь");
+        }
+        if (userStore.get(userId) == null) {
             throw new InvalidUrlException("Пользователь не найден: " + userId);
         }
-        
-        String shortCode = generateShortCode();
-        ShortUrl shortUrl = new ShortUrl(shortCode, originalUrl, userId);
-        
-        if (maxAccessCount != null) {
-            shortUrl.setMaxAccessCount(maxAccessCount);
+        if (!isValidLimit(maxAccessCount)) {
+            throw new InvalidUrlException(INVALID_LIMIT_MESSAGE + maxAccessCount);
+        }
+        String shortCode = createNormalized(url, userId, maxAccessCount);
+        if (metrics != null) {
+            metrics.record(ServiceMetrics.Operation.CREATE, System.nanoTime() - startNanos);
         }
-        
-        urlMap.put(shortCode, shortUrl);
         return shortCode;
     }
     
-    public String getOriginalUrl(String shortCode) throws UrlNotFoundException, UrlExpiredException {
-        ShortUrl shortUrl = urlMap.get(shortCode);
+    /**
+     * Пакетное создание ссылок. URL проверяются параллельно, каждый владелец ищется один раз
+     * на пакет, коды берутся у генератора одним диапазоном, а ссылки вставляются
+     * в хранилище одной пачкой. Ошибка элемента попадает в его результат и не прерывает пакет.
+     *
+     * @return результаты в порядке запросов
+     */
+    public List<CreateResult> createShortUrls(List<CreateRequest> requests) {
+        long startNanos = metrics != null ? System.nanoTime() : 0;
+        int count = requests.size();
+        CreateResult[] results = new CreateResult[count];
+        String[] urls = new String[count];
+        IntStream indexes = IntStream.range(0, count);
+        // На одном ядре параллельный поток только добавляет накладные расходы
+        boolean parallel = count >= PARALLEL_BATCH_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1;
+        (parallel ? indexes.parallel() : indexes).forEach(i -> {
+            try {
+                urls[i] = urlNormalizer.normalize(requests.get(i).getOriginalUrl());
+            } catch (InvalidUrlException e) {
+                results[i] = CreateResult.failed(e.getMessage());
+            }
+        });
+        
+        Map<String, Boolean> knownUsers = new HashMap<>();
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (results[i] != null) {
+                continue;
+            }
+            CreateRequest request = requests.get(i);
+            String userId = request.getUserId();
+            if (!knownUsers.computeIfAbsent(userId, id -> id != null && userStore.get(id) != null)) {
+                results[i] = CreateResult.failed("Пользователь не найден: " + userId);
+            } else if (!isValidLimit(request.getMaxAccessCount())) {
+                results[i] = CreateResult.failed(INVALID_LIMIT_MESSAGE + request.getMaxAccessCount());
+            } else if (dedupIndex != null && request.getMaxAccessCount() == null) {
+                // Повторы проверяются по одному: код может уже существовать
+                results[i] = CreateResult.created(createNormalized(urls[i], userId, null));
+            } else {
+                pending.add(i);
+            }
+        }
+        if (!pending.isEmpty()) {
+            storeBatch(requests, urls, pending, results);
+        }
+        if (metrics != null) {
+            metrics.record(ServiceMetrics.Operation.CREATE_BATCH, System.nanoTime() - startNanos);
+        }
+        return Arrays.asList(results);
+    }
+    
+    private void storeBatch(List<CreateRequest> requests, String[] urls, List<Integer> pending,
+                            CreateResult[] results) {
+        String[] codes = codeGenerator.nextCodes(pending.size());
+        long now = clock.millis();
+        List<ShortUrl> batch = new ArrayList<>(pending.size());
+        for (int k = 0; k < pending.size(); k++) {
+            CreateRequest request = requests.get(pending.get(k));
+            String url = urlInterner != null ? urlInterner.intern(urls[pending.get(k)]) : urls[pending.get(k)];
+            batch.add(new ShortUrl(codes[k], url, request.getUserId(),
+                    now, now + urlTtlMillis, 0, request.getMaxAccessCount()));
+        }
+        Set<ShortUrl> rejected = Collections.newSetFromMap(new IdentityHashMap<>());
+        rejected.addAll(linkStore.putAllIfAbsent(batch));
+        for (int k = 0; k < batch.size(); k++) {
+            ShortUrl shortUrl = batch.get(k);
+            int i = pending.get(k);
+            if (rejected.contains(shortUrl)) {
+                // Код занят (случайный генератор): создаем ссылку заново по одной
+                if (urlInterner != null) {
+                    urlInterner.release(shortUrl.getOriginalUrl());
+                }
+                results[i] = CreateResult.created(
+                        createNormalized(urls[i], shortUrl.getUserId(), shortUrl.getMaxAccessCount()));
+            } else {
+                notifyUrlCreated(shortUrl);
+                results[i] = CreateResult.created(shortUrl.getShortCode());
+            }
+        }
+    }
+    
+    private String createNormalized(String url, String userId, Integer maxAccessCount) {
+        String storedUrl = urlInterner != null ? urlInterner.intern(url) : url;
+        ShortUrl[] created = new ShortUrl[1];
+        try {
+            if (dedupIndex != null && maxAccessCount == null) {
+                // Повторное сокращение того же URL тем же пользователем возвращает прежний код
+                String shortCode = dedupIndex.getOrCreate(userId, storedUrl,
+                        code -> isReusable(code, userId, storedUrl),
+                        () -> {
+                            created[0] = storeNewUrl(storedUrl, userId, null);
+                            return created[0].getShortCode();
+                        });
+                if (created[0] != null) {
+                    notifyUrlCreated(created[0]);
+                }
+                return shortCode;
+            }
+            created[0] = storeNewUrl(storedUrl, userId, maxAccessCount);
+            notifyUrlCreated(created[0]);
+            return created[0].getShortCode();
+        } finally {
+            // Строка остается в таблице, только если на нее сослалась новая ссылка
+            if (created[0] == null && urlInterner != null) {
+                urlInterner.release(storedUrl);
+            }
+        }
+    }
+    
+    private ShortUrl storeNewUrl(String url, String userId, Integer maxAccessCount) {
+        ShortUrl shortUrl;
+        do {
+            // Последовательный генератор не повторяется, повтор нужен только случайному
+            // или если код уже занят ссылкой, добавленной в обход генератора
+            long now = clock.millis();
+            shortUrl = new ShortUrl(codeGenerator.nextCode(), url, userId,
+                    now, now + urlTtlMillis, 0, maxAccessCount);
+        } while (!linkStore.putIfAbsent(shortUrl));
+        return shortUrl;
+    }
+    
+    /**
+     * Лимит из запроса: null - без лимита, иначе положительное число.
+     */
+    private static boolean isValidLimit(Integer maxAccessCount) {
+        return maxAccessCount == null || maxAccessCount > 0;
+    }
+    
+    private boolean isReusable(String shortCode, String userId, String url) {
+        ShortUrl existing = linkStore.get(shortCode);
+        return existing != null
+                && existing.getMaxAccessCount() == null
+                && existing.isActive(clock.millis())
+                && existing.getUserId().equals(userId)
+                && existing.getOriginalUrl().equals(url);
+    }
+    
+    private void notifyUrlCreated(ShortUrl shortUrl) {
+        statistics.created(shortUrl, 0);
+        if (metrics != null) {
+            metrics.recordLinkCreated();
+        }
+        for (LinkChangeListener listener : listeners) {
+            listener.onUrlCreated(shortUrl);
+        }
+    }
+    
+    /**
+     * Убирает удаленную из хранилища ссылку из статистики, рейтинга, индекса повторов и таблицы строк.
+     */
+    private void forget(ShortUrl shortUrl) {
+        statistics.removed(shortUrl);
+        popularityTracker.remove(shortUrl);
+        if (dedupIndex != null) {
+            dedupIndex.unregister(shortUrl);
+        }
+        if (urlInterner != null) {
+            urlInterner.release(shortUrl.getOriginalUrl());
+        }
+    }
+    
+    /**
+     * Добавляет готовую ссылку в хранилище как есть (тесты и бенчмарки).
+     */
+    void addShortUrl(ShortUrl shortUrl) {
+        if (urlInterner != null) {
+            shortUrl = new ShortUrl(shortUrl.getShortCode(), urlInterner.intern(shortUrl.getOriginalUrl()),
+                    shortUrl.getUserId(), shortUrl.getCreatedAtMillis(), shortUrl.getExpiresAtMillis(),
+                    shortUrl.getAccessCount(), shortUrl.getMaxAccessCount());
+        }
+        int clicks = shortUrl.getAccessCount();
+        ShortUrl previous = linkStore.put(shortUrl);
+        if (previous != null) {
+            forget(previous);
+        }
+        ShortUrl stored = linkStore.get(shortUrl.getShortCode());
+        if (stored != null) {
+            statistics.created(stored, clicks);
+            popularityTracker.offer(stored);
+            if (dedupIndex != null) {
+                dedupIndex.register(stored);
+            }
+        }
+    }
+    
+    /**
+     * Добавляет пользователя, восстановленного из хранилища, без уведомления подписчиков.
+     */
+    void restoreUser(User user) {
+        userStore.put(user);
+    }
+    
+    /**
+     * Добавляет загруженного из файла пользователя, если его еще нет, и уведомляет подписчиков.
+     */
+    boolean importUser(User user) {
+        if (userStore.get(user.getId()) != null) {
+            return false;
+        }
+        userStore.put(user);
+        for (LinkChangeListener listener : listeners) {
+            listener.onUserCreated(user);
+        }
+        return true;
+    }
+    
+    /**
+     * Добавляет загруженную из файла ссылку со счетчиком и сроком, если код свободен,
+     * и уведомляет подписчиков.
+     */
+    boolean importShortUrl(ShortUrl shortUrl) {
+        if (urlInterner != null) {
+            shortUrl = new ShortUrl(shortUrl.getShortCode(), urlInterner.intern(shortUrl.getOriginalUrl()),
+                    shortUrl.getUserId(), shortUrl.getCreatedAtMillis(), shortUrl.getExpiresAtMillis(),
+                    shortUrl.getAccessCount(), shortUrl.getMaxAccessCount());
+        }
+        int clicks = shortUrl.getAccessCount();
+        if (!linkStore.putIfAbsent(shortUrl)) {
+            if (urlInterner != null) {
+                urlInterner.release(shortUrl.getOriginalUrl());
+            }
+            return false;
+        }
+        ShortUrl stored = linkStore.get(shortUrl.getShortCode());
+        if (stored != null) {
+            statistics.created(stored, clicks);
+            popularityTracker.offer(stored);
+            if (dedupIndex != null) {
+                dedupIndex.register(stored);
+            }
+        }
+        for (LinkChangeListener listener : listeners) {
+            listener.onUrlImported(shortUrl);
+        }
+        return true;
+    }
+    
+    /**
+     * Восстанавливает ссылку из журнала или снимка без уведомления подписчиков. Если та же
+     * ссылка (код, URL и время создания) уже восстановлена, например из более нового снимка,
+     * ее лимит не трогается, а счетчик только поднимается до записанного, но не опускается.
+     *
+     * @return true, если ссылка добавлена в хранилище
+     */
+    boolean restoreShortUrl(ShortUrl shortUrl) {
+        ShortUrl existing = linkStore.get(shortUrl.getShortCode());
+        if (existing != null && existing.getCreatedAtMillis() == shortUrl.getCreatedAtMillis()
+                && existing.getOriginalUrl().equals(shortUrl.getOriginalUrl())) {
+            restoreAccessCount(shortUrl.getShortCode(), shortUrl.getAccessCount());
+            return false;
+        }
+        addShortUrl(shortUrl);
+        return true;
+    }
+    
+    /**
+     * Восстанавливает лимит ссылки из журнала без уведомления подписчиков.
+     */
+    void restoreLimit(String shortCode, Integer maxAccessCount) {
+        ShortUrl shortUrl = linkStore.get(shortCode);
+        if (shortUrl != null) {
+            statistics.limitChanged(shortUrl, shortUrl.replaceMaxAccessCount(maxAccessCount));
+        }
+    }
+    
+    /**
+     * Поднимает счетчик переходов ссылки до значения из журнала без уведомления подписчиков.
+     */
+    void restoreAccessCount(String shortCode, int accessCount) {
+        ShortUrl shortUrl = linkStore.get(shortCode);
+        if (shortUrl != null) {
+            boolean wasActive = LinkStatistics.isActive(shortUrl);
+            int clicksBefore = shortUrl.getAccessCount();
+            shortUrl.restoreAccessCount(accessCount);
+            statistics.changed(shortUrl, wasActive, clicksBefore);
+            popularityTracker.offer(shortUrl);
+        }
+    }
+    
+    /**
+     * Добавляет к счетчику ссылки переходы, засчитанные репликой, и уведомляет подписчиков.
+     *
+     * @return false, если ссылки уже нет
+     */
+    boolean mergeAccessCount(String shortCode, int clicks) {
+        ShortUrl shortUrl = linkStore.get(shortCode);
+        if (shortUrl == null || clicks <= 0) {
+            return false;
+        }
+        boolean wasActive = LinkStatistics.isActive(shortUrl);
+        shortUrl.addAccessCount(clicks);
+        statistics.changed(shortUrl, wasActive, shortUrl.getAccessCount() - clicks);
+        // Слитые переходы не проходят через recordAccess: без этого ссылка, популярная
+        // только на репликах, не попала бы в рейтинг ведущего
+        popularityTracker.offer(shortUrl);
+        for (LinkChangeListener listener : listeners) {
+            listener.onAccessMerged(shortUrl, clicks);
+        }
+        return true;
+    }
+    
+    ShortUrl findShortUrl(String shortCode) {
+        return linkStore.get(shortCode);
+    }
+    
+    /**
+     * Удаляет ссылку без проверки владельца и без уведомления подписчиков.
+     */
+    boolean removeShortUrl(String shortCode) {
+        ShortUrl shortUrl = linkStore.get(shortCode);
+        if (shortUrl == null || !linkStore.remove(shortUrl)) {
+            return false;
+        }
+        forget(shortUrl);
+        return true;
+    }
+    
+    /**
+     * Удаляет ссылку без проверки владельца и уведомляет подписчиков, как при удалении:
+     * ссылка переехала на другой узел кластера.
+     */
+    boolean evictShortUrl(String shortCode) {
+        ShortUrl shortUrl = linkStore.get(shortCode);
+        if (shortUrl == null || !linkStore.remove(shortUrl)) {
+            return false;
+        }
+        forget(shortUrl);
+        for (LinkChangeListener listener : listeners) {
+            listener.onUrlDeleted(shortUrl);
+        }
+        return true;
+    }
+    
+    Collection<User> users() {
+        return userStore.all();
+    }
+    
+    Stream<ShortUrl> urls() {
+        return linkStore.stream();
+    }
+    
+    LinkStore getLinkStore() {
+        return linkStore;
+    }
+    
+    /**
+     * Кэш горячих ссылок или null, если кэш не настроен.
+     */
+    public HotLinkCache getLinkCache() {
+        return linkStore instanceof CachingLinkStore ? ((CachingLinkStore) linkStore).getCache() : null;
+    }
+    
+    ShortCodeGenerator getCodeGenerator() {
+        return codeGenerator;
+    }
+    
+    MillisClock getClock() {
+        return clock;
+    }
+    
+    /**
+     * Переход по короткому коду без исключений: статус и URL. Засчитывает переход,
+     * если ссылка найдена и доступна.
+     */
+    public LookupResult resolve(String shortCode) {
+        return resolve(shortCode, null, null);
+    }
+    
+    /**
+     * Переход по короткому коду с заголовками запроса, которые получат подписчики на переходы.
+     *
+     * @param referrer  заголовок Referer или null
+     * @param userAgent заголовок User-Agent или null
+     */
+    public LookupResult resolve(String shortCode, String referrer, String userAgent) {
+        return resolve(shortCode, clock.millis(), referrer, userAgent);
+    }
+    
+    /**
+     * Статус и URL ссылки без перехода: счетчик, рейтинг и подписчики на переходы не трогаются
+     * (HEAD-запросы превью и мониторинга).
+     */
+    public LookupResult peek(String shortCode) {
+        ShortUrl shortUrl = linkStore.get(shortCode);
         if (shortUrl == null) {
-            throw new UrlNotFoundException("Короткая ссылка не найдена: " + shortCode);
+            return LookupResult.NOT_FOUND;
         }
-        
-        if (shortUrl.isExpired()) {
-            throw new UrlExpiredException("Срок действия ссылки истек: " + shortCode);
+        if (shortUrl.isExpired(clock.millis())) {
+            return LookupResult.EXPIRED;
         }
-        
         if (shortUrl.isAccessLimitReached()) {
-            throw new UrlExpiredException("Лимит переходов по ссылке исчерпан: " + shortCode);
+            return LookupResult.LIMIT_REACHED;
+        }
+        return LookupResult.found(shortUrl.getOriginalUrl());
+    }
+    
+    /**
+     * Пакетный переход: результаты в порядке кодов, время читается один раз на пакет.
+     */
+    public List<LookupResult> resolveAll(List<String> shortCodes) {
+        long now = clock.millis();
+        List<LookupResult> results = new ArrayList<>(shortCodes.size());
+        for (String shortCode : shortCodes) {
+            results.add(resolve(shortCode, now, null, null));
+        }
+        return results;
+    }
+    
+    private LookupResult resolve(String shortCode, long now, String referrer, String userAgent) {
+        if (metrics == null) {
+            return access(shortCode, now, referrer, userAgent);
+        }
+        if (!metrics.sampleResolve()) {
+            LookupResult result = access(shortCode, now, referrer, userAgent);
+            metrics.countResolve(result.getStatus());
+            return result;
+        }
+        long startNanos = System.nanoTime();
+        LookupResult result = access(shortCode, now, referrer, userAgent);
+        metrics.recordResolve(result.getStatus(), System.nanoTime() - startNanos);
+        return result;
+    }
+    
+    private LookupResult access(String shortCode, long now, String referrer, String userAgent) {
+        ShortUrl shortUrl = linkStore.get(shortCode);
+        if (shortUrl == null) {
+            return LookupResult.NOT_FOUND;
+        }
+        if (shortUrl.isExpired(now)) {
+            return LookupResult.EXPIRED;
+        }
+        ShortUrl.Access access = shortUrl.acquireAccess();
+        if (access == ShortUrl.Access.LIMIT_REACHED) {
+            return LookupResult.LIMIT_REACHED;
         }
         
-        shortUrl.incrementAccessCount();
-        return shortUrl.getOriginalUrl();
+        statistics.accessed(shortUrl, access == ShortUrl.Access.EXHAUSTED);
+        popularityTracker.recordAccess(shortUrl, now);
+        for (LinkChangeListener listener : listeners) {
+            listener.onAccess(shortUrl, now, referrer, userAgent);
+        }
+        return LookupResult.found(shortUrl.getOriginalUrl());
+    }
+    
+    /**
+     * То же, что {@link #resolve}, но неуспешный результат сообщается исключением.
+     */
+    public String getOriginalUrl(String shortCode) throws UrlNotFoundException, UrlExpiredException {
+        LookupResult result = resolve(shortCode);
+        switch (result.getStatus()) {
+            case FOUND:
+                return result.getOriginalUrl();
+            case NOT_FOUND:
+                throw UrlNotFoundException.withoutStackTrace(result.getStatus().getDescription() + ": " + shortCode);
+            default:
+                throw new UrlExpiredException(result.getStatus().getDescription() + ": " + shortCode);
+        }
     }
     
     public void deleteUrl(String shortCode, String userId) throws UrlNotFoundException {
-        ShortUrl shortUrl = urlMap.get(shortCode);
+        long startNanos = metrics != null ? System.nanoTime() : 0;
+        ShortUrl shortUrl = linkStore.get(shortCode);
         if (shortUrl == null) {
             throw new UrlNotFoundException("Короткая ссылка не найдена: " + shortCode);
         }
@@ -88,13 +630,25 @@ public class UrlShortenerService {
             throw new UrlNotFoundException("У вас нет прав для удаления этой ссылки");
         }
         
-        urlMap.remove(shortCode);
-        System.out.println("Удалена ссылка: " + shortCode);
+        if (linkStore.remove(shortUrl)) {
+            forget(shortUrl);
+            for (LinkChangeListener listener : listeners) {
+                listener.onUrlDeleted(shortUrl);
+            }
+        }
+        if (metrics != null) {
+            metrics.record(ServiceMetrics.Operation.DELETE, System.nanoTime() - startNanos);
+        }
+        LOG.debug("Удалена ссылка: {}", shortCode);
     }
     
+    /**
+     * @throws IllegalArgumentException если новый лимит не положительный
+     */
     public void updateUrlLimit(String shortCode, String userId, Integer newMaxAccessCount) 
             throws UrlNotFoundException {
-        ShortUrl shortUrl = urlMap.get(shortCode);
+        long startNanos = metrics != null ? System.nanoTime() : 0;
+        ShortUrl shortUrl = linkStore.get(shortCode);
         if (shortUrl == null) {
             throw new UrlNotFoundException("Короткая ссылка не найдена: " + shortCode);
         }
@@ -102,28 +656,45 @@ public class UrlShortenerService {
         if (!shortUrl.getUserId().equals(userId)) {
             throw new UrlNotFoundException("У вас нет прав для редактирования этой ссылки");
         }
+        if (!isValidLimit(newMaxAccessCount)) {
+            throw new IllegalArgumentException(INVALID_LIMIT_MESSAGE + newMaxAccessCount);
+        }
         
-        shortUrl.setMaxAccessCount(newMaxAccessCount);
-        System.out.println("Лимит переходов для ссылки " + shortCode + " установлен: " + 
-                          (newMaxAccessCount != null ? newMaxAccessCount : "без лимита"));
+        statistics.limitChanged(shortUrl, shortUrl.replaceMaxAccessCount(newMaxAccessCount));
+        for (LinkChangeListener listener : listeners) {
+            listener.onLimitUpdated(shortUrl);
+        }
+        if (metrics != null) {
+            metrics.record(ServiceMetrics.Operation.UPDATE_LIMIT, System.nanoTime() - startNanos);
+        }
+        LOG.debug("Лимит переходов для ссылки {} установлен: {}", shortCode,
+                newMaxAccessCount != null ? newMaxAccessCount : "без лимита");
     }
     
     public List<ShortUrl> getUserUrls(String userId) {
-        return urlMap.values().stream()
-                .filter(url -> url.getUserId().equals(userId))
-                .sorted(Comparator.comparing(ShortUrl::getCreatedAt).reversed())
-                .collect(Collectors.toList());
+        return linkStore.findByUser(userId, 0, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Страница ссылок пользователя, от новых к старым.
+     */
+    public List<ShortUrl> getUserUrls(String userId, int offset, int limit) {
+        return linkStore.findByUser(userId, offset, limit);
+    }
+    
+    public int countUserUrls(String userId) {
+        return linkStore.countByUser(userId);
     }
     
     public void showAllUrls() {
-        if (urlMap.isEmpty()) {
+        if (linkStore.size() == 0) {
             System.out.println("Нет сохраненных ссылок");
             return;
         }
         
         System.out.println("\n=== Все сокращенные ссылки ===");
-        urlMap.values().stream()
-                .sorted(Comparator.comparing(ShortUrl::getCreatedAt).reversed())
+        linkStore.stream()
+                .sorted(Comparator.comparingLong(ShortUrl::getCreatedAtMillis).reversed())
                 .forEach(System.out::println);
     }
     
@@ -138,102 +709,168 @@ public class UrlShortenerService {
         userUrls.forEach(System.out::println);
     }
     
+    /**
+     * Статистика всего сервиса из счетчиков, без обхода хранилища.
+     */
+    public Statistics getStatistics() {
+        return statistics.total(userStore.size());
+    }
+    
+    /**
+     * Статистика ссылок пользователя из счетчиков, без обхода его ссылок.
+     */
+    public Statistics getUserStatistics(String userId) {
+        return statistics.forUser(userId);
+    }
+    
     public void showStatistics() {
-        if (urlMap.isEmpty()) {
+        Statistics total = getStatistics();
+        if (total.getLinks() == 0) {
             System.out.println("Нет данных для статистики");
             return;
         }
         
         System.out.println("\n=== Статистика ===");
-        System.out.println("Всего ссылок: " + urlMap.size());
-        System.out.println("Всего пользователей: " + userMap.size());
-        
-        int activeUrls = (int) urlMap.values().stream().filter(ShortUrl::isActive).count();
-        System.out.println("Активных ссылок: " + activeUrls);
+        System.out.println("Всего ссылок: " + total.getLinks());
+        System.out.println("Всего пользователей: " + total.getUsers());
+        System.out.println("Активных ссылок: " + total.getActiveLinks());
+        System.out.println("Всего переходов: " + total.getClicks());
+        System.out.println("Средних переходов на ссылку: " + String.format("%.2f", total.getAverageClicks()));
         
-        int totalClicks = urlMap.values().stream().mapToInt(ShortUrl::getAccessCount).sum();
-        System.out.println("Всего переходов: " + totalClicks);
-        
-        double avgClicks = urlMap.values().stream()
-                .mapToInt(ShortUrl::getAccessCount)
-                .average()
-                .orElse(0.0);
-        System.out.println("Средних переходов на ссылку: " + String.format("%.2f", avgClicks));
-        
-        Optional<ShortUrl> mostPopular = urlMap.values().stream()
-                .max(Comparator.comparingInt(ShortUrl::getAccessCount));
+        HotLinkCache cache = getLinkCache();
+        if (cache != null) {
+            System.out.println("Попаданий в кэш ссылок: " + String.format("%.1f%%", cache.getHitRatio() * 100)
+                    + " (в кэше " + cache.size() + " из " + cache.getCapacity() + ")");
+        }
+        if (dedupIndex != null) {
+            System.out.println("Повторных сокращений (возвращен прежний код): " + dedupIndex.getHits());
+        }
+        if (metrics != null) {
+            System.out.println("Задержка переходов: " + metrics.getLatency(ServiceMetrics.Operation.RESOLVE));
+            System.out.println("Задержка создания: " + metrics.getLatency(ServiceMetrics.Operation.CREATE));
+        }
         
-        if (mostPopular.isPresent() && mostPopular.get().getAccessCount() > 0) {
+        List<ShortUrl> mostPopular = popularityTracker.top(1);
+        if (!mostPopular.isEmpty()) {
             System.out.println("\nСамая популярная ссылка:");
-            System.out.println(mostPopular.get());
+            System.out.println(mostPopular.get(0));
+        }
+    }
+    
+    /**
+     * До {@code n} самых популярных ссылок по числу переходов. Если {@code n} не больше
+     * размера рейтинга ({@code top.urls.capacity}), читается готовый рейтинг, иначе
+     * ссылки сортируются целиком.
+     */
+    public List<ShortUrl> getTopUrls(int n) {
+        if (n <= popularityTracker.getCapacity()) {
+            return popularityTracker.top(n);
         }
+        return linkStore.topByAccess(n);
+    }
+    
+    /**
+     * До {@code n} самых популярных кодов за окно {@code top.urls.window.minutes}.
+     */
+    public List<WindowedTopK.Entry> getTrendingUrls(int n) {
+        return popularityTracker.topInWindow(n, clock.millis());
     }
     
     public void showTopUrls(int n) {
         System.out.println("\n=== Топ-" + n + " самых популярных ссылок ===");
-        urlMap.values().stream()
-                .sorted(Comparator.comparingInt(ShortUrl::getAccessCount).reversed())
-                .limit(n)
-                .forEach(url -> System.out.println(url.getShortCode() + " -> " + 
+        getTopUrls(n).forEach(url -> System.out.println(url.getShortCode() + " -> " + 
                         url.getOriginalUrl() + " (" + url.getAccessCount() + " переходов)"));
+        
+        if (popularityTracker.hasWindow()) {
+            System.out.println("\n=== Топ-" + n + " за последние " + Config.getTopUrlsWindowMinutes() + " мин ===");
+            getTrendingUrls(n).forEach(System.out::println);
+        }
     }
     
     public List<ShortUrl> searchUrls(String query, String userId) {
-        return urlMap.values().stream()
-                .filter(url -> url.getUserId().equals(userId) &&
-                        (url.getOriginalUrl().toLowerCase().contains(query.toLowerCase()) ||
-                         url.getShortCode().toLowerCase().contains(query.toLowerCase())))
-                .sorted(Comparator.comparing(ShortUrl::getCreatedAt).reversed())
-                .collect(Collectors.toList());
+        return searchUrls(query, userId, false, 0, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Страница результатов поиска по ссылкам пользователя, от новых к старым.
+     *
+     * @param prefix искать начало кода или слова URL вместо подстроки
+     */
+    public List<ShortUrl> searchUrls(String query, String userId, boolean prefix, int offset, int limit) {
+        if (metrics == null) {
+            return linkStore.search(userId, query, prefix, offset, limit);
+        }
+        long startNanos = System.nanoTime();
+        List<ShortUrl> found = linkStore.search(userId, query, prefix, offset, limit);
+        metrics.record(ServiceMetrics.Operation.SEARCH, System.nanoTime() - startNanos);
+        return found;
     }
     
     public void showRecentUrls(int n) {
         System.out.println("\n=== Последние " + n + " созданных ссылок ===");
-        urlMap.values().stream()
-                .sorted(Comparator.comparing(ShortUrl::getCreatedAt).reversed())
+        linkStore.stream()
+                .sorted(Comparator.comparingLong(ShortUrl::getCreatedAtMillis).reversed())
                 .limit(n)
                 .forEach(System.out::println);
     }
     
+    /**
+     * Удаляет ссылки, срок которых истек. Хранилище отдает только истекшие ссылки
+     * из своего индекса истечения, а не все хранилище.
+     */
     public void cleanupExpiredUrls() {
-        int initialSize = urlMap.size();
-        urlMap.entrySet().removeIf(entry -> entry.getValue().isExpired());
-        int removedCount = initialSize - urlMap.size();
+        long startNanos = System.nanoTime();
+        int removedCount = 0;
+        for (ShortUrl shortUrl : linkStore.pollExpired(clock.millis())) {
+            if (linkStore.remove(shortUrl)) {
+                forget(shortUrl);
+                removedCount++;
+            }
+        }
+        long durationNanos = System.nanoTime() - startNanos;
+        cleanupMetrics.recordSweep(durationNanos, removedCount);
+        if (metrics != null) {
+            metrics.record(ServiceMetrics.Operation.CLEANUP, durationNanos);
+        }
         if (removedCount > 0) {
-            System.out.println("Очистка: удалено " + removedCount + " просроченных ссылок");
+            LOG.info("Очистка: удалено {} просроченных ссылок", removedCount);
+        } else {
+            // Проход идет каждые cleanup.tick.millis: пустые проходы не засоряют журнал на INFO
+            LOG.debug("Очистка: просроченных ссылок нет");
         }
     }
     
-    private String generateShortCode() {
-        String shortCode;
-        do {
-            StringBuilder sb = new StringBuilder(Config.getShortCodeLength());
-            for (int i = 0; i < Config.getShortCodeLength(); i++) {
-                sb.append(CHARS.charAt(random.nextInt(CHARS.length())));
-            }
-            shortCode = sb.toString();
-        } while (urlMap.containsKey(shortCode));
-        return shortCode;
+    /** Индекс повторных сокращений или null, если режим выключен. */
+    public DedupIndex getDedupIndex() {
+        return dedupIndex;
     }
     
-    private void validateUrl(String url) throws InvalidUrlException {
-        if (url == null || url.trim().isEmpty()) {
-            throw new InvalidUrlException("URL не может быть пустым");
-        }
-        if (!url.matches("^https?://.*")) {
-            throw new InvalidUrlException("URL должен начинаться с http:// или https://");
-        }
-        if (url.length() > Config.getMaxUrlLength()) {
-            throw new InvalidUrlException("URL слишком длинный (максимум " + 
-                    Config.getMaxUrlLength() + " символов)");
-        }
+    public UrlNormalizer getUrlNormalizer() {
+        return urlNormalizer;
+    }
+    
+    public CleanupMetrics getCleanupMetrics() {
+        return cleanupMetrics;
+    }
+    
+    /** Метрики операций или null, если {@code metrics.enabled=false}. */
+    public ServiceMetrics getMetrics() {
+        return metrics;
     }
     
     private void startCleanupTask() {
         cleanupScheduler.scheduleAtFixedRate(this::cleanupExpiredUrls, 
-                Config.getCleanupIntervalMinutes(), 
-                Config.getCleanupIntervalMinutes(), 
-                TimeUnit.MINUTES);
+                Config.getCleanupTickMillis(), 
+                Config.getCleanupTickMillis(), 
+                TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Останавливает фоновую очистку: бенчмарки вызывают {@link #cleanupExpiredUrls()} сами
+     * и держат в наборе данных просроченные ссылки.
+     */
+    void stopCleanupTask() {
+        cleanupScheduler.shutdown();
     }
     
     public void shutdown() {
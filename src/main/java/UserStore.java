@@ -0,0 +1,18 @@
+import java.util.Collection;
+
+/**
+ * Хранилище пользователей. Реализации потокобезопасны.
+ */
+public interface UserStore {
+    
+    User get(String userId);
+    
+    /**
+     * Добавляет пользователя или заменяет пользователя с тем же идентификатором.
+     */
+    void put(User user);
+    
+    Collection<User> all();
+    
+    int size();
+}
@@ -0,0 +1,130 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Вторичный индекс "пользователь -> его ссылки", упорядоченные от новых к старым.
+ * Позволяет получить ссылки пользователя и их страницу без обхода всего хранилища.
+ *
+ * <p>Индекс хранит только код и время создания ссылки, а саму ссылку берет из хранилища
+ * при выдаче: иначе индекс держал бы на куче объект ссылки с URL, даже когда таблица
+ * ссылок лежит вне кучи. Запись, код которой уже удален или отдан другой ссылке, пропускается.
+ *
+ * <p>Число ссылок пользователя ведется отдельным счетчиком: размер {@link ConcurrentSkipListSet}
+ * считается обходом всего множества.
+ */
+public class UserUrlIndex {
+    static final Comparator<ShortUrl> NEWEST_FIRST = (a, b) -> {
+        int byTime = Long.compare(b.getCreatedAtMillis(), a.getCreatedAtMillis());
+        return byTime != 0 ? byTime : a.getShortCode().compareTo(b.getShortCode());
+    };
+    
+    private static final Comparator<Entry> ENTRY_NEWEST_FIRST = (a, b) -> {
+        int byTime = Long.compare(b.createdAtMillis, a.createdAtMillis);
+        return byTime != 0 ? byTime : a.shortCode.compareTo(b.shortCode);
+    };
+    
+    private final Map<String, UserEntries> byUser = new ConcurrentHashMap<>();
+    private final Function<String, ShortUrl> lookup;
+    
+    /**
+     * @param lookup ссылка по коду из хранилища или null
+     */
+    public UserUrlIndex(Function<String, ShortUrl> lookup) {
+        this.lookup = lookup;
+    }
+    
+    public void add(ShortUrl shortUrl) {
+        UserEntries user = byUser.computeIfAbsent(shortUrl.getUserId(), id -> new UserEntries());
+        if (user.entries.add(new Entry(shortUrl))) {
+            user.size.incrementAndGet();
+        }
+    }
+    
+    public void remove(ShortUrl shortUrl) {
+        UserEntries user = byUser.get(shortUrl.getUserId());
+        if (user != null && user.entries.remove(new Entry(shortUrl))) {
+            user.size.decrementAndGet();
+        }
+    }
+    
+    /**
+     * Страница ссылок пользователя: пропускает {@code offset} самых новых и возвращает
+     * не больше {@code limit} следующих.
+     */
+    public List<ShortUrl> page(String userId, int offset, int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        List<ShortUrl> page = new ArrayList<>(Math.min(limit, 64));
+        Iterator<ShortUrl> iterator = newestFirst(userId).iterator();
+        for (int skipped = 0; skipped < offset && iterator.hasNext(); skipped++) {
+            iterator.next();
+        }
+        while (page.size() < limit && iterator.hasNext()) {
+            page.add(iterator.next());
+        }
+        return page;
+    }
+    
+    /**
+     * Ссылки пользователя от новых к старым, без копирования.
+     */
+    public Iterable<ShortUrl> newestFirst(String userId) {
+        UserEntries user = byUser.get(userId);
+        if (user == null) {
+            return Collections.emptyList();
+        }
+        return () -> user.entries.stream()
+                .map(entry -> resolve(userId, entry))
+                .filter(Objects::nonNull)
+                .iterator();
+    }
+    
+    public List<ShortUrl> all(String userId) {
+        List<ShortUrl> urls = new ArrayList<>();
+        newestFirst(userId).forEach(urls::add);
+        return urls;
+    }
+    
+    public int count(String userId) {
+        UserEntries user = byUser.get(userId);
+        return user == null ? 0 : user.size.get();
+    }
+    
+    private ShortUrl resolve(String userId, Entry entry) {
+        ShortUrl shortUrl = lookup.apply(entry.shortCode);
+        return shortUrl != null && shortUrl.getCreatedAtMillis() == entry.createdAtMillis
+                && userId.equals(shortUrl.getUserId()) ? shortUrl : null;
+    }
+    
+    /**
+     * Записи одного пользователя и их число.
+     */
+    private static final class UserEntries {
+        final NavigableSet<Entry> entries = new ConcurrentSkipListSet<>(ENTRY_NEWEST_FIRST);
+        final AtomicInteger size = new AtomicInteger();
+    }
+    
+    /**
+     * Запись индекса: код ссылки и время ее создания для порядка.
+     */
+    private static final class Entry {
+        final long createdAtMillis;
+        final String shortCode;
+        
+        Entry(ShortUrl shortUrl) {
+            this.createdAtMillis = shortUrl.getCreatedAtMillis();
+            this.shortCode = shortUrl.getShortCode();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+
+/**
+ * Приближенный рейтинг самых частых кодов за скользящее окно.
+ *
+ * <p>Окно разбито на {@value #SLOTS} слотов; в каждом слоте работает алгоритм Space-Saving
+ * с ограниченным числом счетчиков, так что память не зависит от числа разных кодов.
+ * Запрос суммирует слоты, попадающие в окно.
+ */
+public class WindowedTopK {
+    static final int SLOTS = 12;
+    
+    private final long windowMillis;
+    private final long slotMillis;
+    private final int counters;
+    private final Slot[] slots = new Slot[SLOTS];
+    
+    public WindowedTopK(long windowMillis, int counters) {
+        this.windowMillis = windowMillis;
+        this.slotMillis = Math.max(1, windowMillis / SLOTS);
+        this.counters = counters;
+        for (int i = 0; i < SLOTS; i++) {
+            slots[i] = new Slot();
+        }
+    }
+    
+    public void record(String shortCode, long nowMillis) {
+        long slotStart = nowMillis - Math.floorMod(nowMillis, slotMillis);
+        Slot slot = slots[(int) Math.floorMod(slotStart / slotMillis, (long) SLOTS)];
+        synchronized (slot) {
+            if (slot.start != slotStart) {
+                slot.start = slotStart;
+                slot.sketch = new SpaceSaving(counters);
+            }
+            slot.sketch.add(shortCode);
+        }
+    }
+    
+    public List<Entry> top(int n, long nowMillis) {
+        Map<String, Long> merged = new HashMap<>();
+        long oldest = nowMillis - windowMillis;
+        for (Slot slot : slots) {
+            synchronized (slot) {
+                if (slot.sketch != null && slot.start + slotMillis > oldest && slot.start <= nowMillis) {
+                    slot.sketch.forEach((code, count) -> merged.merge(code, count, Long::sum));
+                }
+            }
+        }
+        List<Entry> entries = new ArrayList<>(merged.size());
+        merged.forEach((code, count) -> entries.add(new Entry(code, count)));
+        entries.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+        return entries.size() > n ? new ArrayList<>(entries.subList(0, n)) : entries;
+    }
+    
+    /**
+     * Код и оценка числа переходов по нему за окно (оценка сверху, как в Space-Saving).
+     */
+    public static final class Entry {
+        private final String shortCode;
+        private final long count;
+        
+        Entry(String shortCode, long count) {
+            this.shortCode = shortCode;
+            this.count = count;
+        }
+        
+        public String getShortCode() { return shortCode; }
+        public long getCount() { return count; }
+        
+        @Override
+        public String toString() {
+            return shortCode + " (" + count + " переходов)";
+        }
+    }
+    
+    private static final class Slot {
+        private long start = Long.MIN_VALUE;
+        private SpaceSaving sketch;
+    }
+    
+    /**
+     * Space-Saving: при переполнении новый код вытесняет счетчик с минимумом и наследует его значение.
+     */
+    private static final class SpaceSaving {
+        private final int capacity;
+        private final Map<String, Counter> byCode = new HashMap<>();
+        private final TreeSet<Counter> byCount = new TreeSet<>((a, b) -> a.count != b.count
+                ? Long.compare(a.count, b.count)
+                : Long.compare(a.order, b.order));
+        private long nextOrder;
+        
+        SpaceSaving(int capacity) {
+            this.capacity = capacity;
+        }
+        
+        void add(String shortCode) {
+            Counter counter = byCode.get(shortCode);
+            if (counter == null) {
+                if (byCode.size() < capacity) {
+                    counter = new Counter(shortCode, 0, nextOrder++);
+                } else {
+                    Counter evicted = byCount.pollFirst();
+                    byCode.remove(evicted.shortCode);
+                    counter = new Counter(shortCode, evicted.count, nextOrder++);
+                }
+                byCode.put(shortCode, counter);
+            } else {
+                byCount.remove(counter);
+            }
+            counter.count++;
+            byCount.add(counter);
+        }
+        
+        void forEach(BiConsumer<String, Long> action) {
+            for (Counter counter : byCode.values()) {
+                action.accept(counter.shortCode, counter.count);
+            }
+        }
+    }
+    
+    private static final class Counter {
+        private final String shortCode;
+        private final long order;
+        private long count;
+        
+        Counter(String shortCode, long count, long order) {
+            this.shortCode = shortCode;
+            this.count = count;
+            this.order = order;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал изменений, разбитый на сегменты {@code wal-<номер>.log}.
+ *
+ * <p>Запись в журнал только копирует байты в буфер под короткой блокировкой;
+ * на диск буфер уходит пачкой из {@link #flush()} с одним {@code fsync} на пачку
+ * (group commit). Каждая запись обрамлена длиной и CRC32, поэтому недописанный
+ * хвост сегмента после сбоя распознается и отбрасывается при чтении.
+ *
+ * <p>Если запись пачки на диск не удалась, недописанный хвост обрезается, а пачка
+ * возвращается в начало буфера и уйдет на диск следующим {@link #flush()}. Если
+ * обрезать хвост не удалось, журнал больше не принимает сброс: следующая пачка
+ * легла бы за поврежденной записью, где чтение уже остановится.
+ */
+public class WriteAheadLog implements Closeable {
+    static final byte USER = 1;
+    static final byte CREATE = 2;
+    static final byte DELETE = 3;
+    static final byte LIMIT = 4;
+    static final byte ACCESS = 5;
+    static final byte SEQUENCE = 6;
+    static final byte SHARD = 7;
+    
+    private static final Pattern SEGMENT_NAME = Pattern.compile("wal-(\\d+)\\.log");
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+    
+    private final Path dir;
+    private final Object appendLock = new Object();
+    private final Object flushLock = new Object();
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream(64 * 1024);
+    private ByteArrayOutputStream spare = new ByteArrayOutputStream(64 * 1024);
+    private final ChannelOpener opener;
+    private FileChannel channel;
+    private long segment;
+    private IOException failure;
+    
+    public WriteAheadLog(Path dir, long segment) throws IOException {
+        this(dir, segment, path -> FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+    }
+    
+    /**
+     * @param opener открывает файл сегмента на дозапись (тесты подменяют канал)
+     */
+    WriteAheadLog(Path dir, long segment, ChannelOpener opener) throws IOException {
+        this.dir = dir;
+        this.opener = opener;
+        Files.createDirectories(dir);
+        openSegment(segment);
+    }
+    
+    public long getSegment() {
+        synchronized (flushLock) {
+            return segment;
+        }
+    }
+    
+    /**
+     * Добавляет запись в буфер; на диске она окажется после ближайшего {@link #flush()}.
+     */
+    public void append(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        synchronized (appendLock) {
+            writeInt(pending, payload.length);
+            writeInt(pending, (int) crc.getValue());
+            pending.write(payload, 0, payload.length);
+        }
+    }
+    
+    /**
+     * Сбрасывает накопленные записи в текущий сегмент и вызывает fsync.
+     *
+     * @throws IOException если запись не удалась; записи пачки остаются в буфере
+     */
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            if (failure != null) {
+                throw new IOException("Журнал поврежден после ошибки записи", failure);
+            }
+            ByteArrayOutputStream batch;
+            synchronized (appendLock) {
+                if (pending.size() == 0) {
+                    return;
+                }
+                batch = pending;
+                pending = spare;
+            }
+            long start = channel.size();
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                requeue(batch);
+                discardTail(start, e);
+                throw e;
+            }
+            batch.reset();
+            spare = batch;
+        }
+    }
+    
+    /**
+     * Возвращает неудачную пачку в начало буфера перед записями, добавленными во время сброса.
+     */
+    private void requeue(ByteArrayOutputStream batch) {
+        synchronized (appendLock) {
+            batch.writeBytes(pending.toByteArray());
+            pending.reset();
+            spare = pending;
+            pending = batch;
+        }
+    }
+    
+    /**
+     * Обрезает сегмент до начала неудачной пачки, чтобы в нем не осталось недописанной записи.
+     */
+    private void discardTail(long start, IOException cause) {
+        try {
+            if (channel.size() > start) {
+                channel.truncate(start);
+            }
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+            failure = cause;
+        }
+    }
+    
+    /**
+     * Сбрасывает буфер и начинает новый сегмент. Возвращает номер нового сегмента:
+     * все записи до него лежат в сегментах с меньшими номерами.
+     */
+    public long rotate() throws IOException {
+        synchronized (flushLock) {
+            flush();
+            channel.close();
+            openSegment(segment + 1);
+            return segment;
+        }
+    }
+    
+    /**
+     * Удаляет сегменты с номерами меньше {@code segment} (они покрыты снимком).
+     */
+    public void deleteSegmentsBefore(long segment) throws IOException {
+        for (long number : listSegments(dir)) {
+            if (number < segment) {
+                Files.deleteIfExists(segmentPath(dir, number));
+            }
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        synchronized (flushLock) {
+            flush();
+            channel.close();
+        }
+    }
+    
+    /**
+     * Номера сегментов в каталоге по возрастанию.
+     */
+    static List<Long> listSegments(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(path -> SEGMENT_NAME.matcher(path.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Long.parseLong(matcher.group(1)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+    
+    /**
+     * Читает записи сегмента по порядку. Чтение останавливается на первой
+     * недописанной или поврежденной записи.
+     *
+     * @return число прочитанных записей
+     */
+    static int readSegment(Path dir, long segment, RecordHandler handler) throws IOException {
+        Path path = segmentPath(dir, segment);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        int records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                int checksum;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if (length < 0 || length > MAX_RECORD_BYTES) {
+                        break;
+                    }
+                    payload = in.readNBytes(length);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (payload.length < length) {
+                    break;
+                }
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                handler.handle(record.readByte(), record);
+                records++;
+            }
+        }
+        return records;
+    }
+    
+    /**
+     * Открывает канал файла сегмента.
+     */
+    interface ChannelOpener {
+        FileChannel open(Path path) throws IOException;
+    }
+    
+    /**
+     * Обработчик записи журнала: тип записи и поток ее полей.
+     */
+    interface RecordHandler {
+        void handle(byte type, DataInput fields) throws IOException;
+    }
+    
+    static Path segmentPath(Path dir, long segment) {
+        return dir.resolve(String.format("wal-%012d.log", segment));
+    }
+    
+    /**
+     * Кодирует запись журнала: тип и поля по порядку.
+     */
+    static byte[] record(byte type, Object... fields) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            for (Object field : fields) {
+                if (field instanceof String) {
+                    out.writeUTF((String) field);
+                } else if (field instanceof Long) {
+                    out.writeLong((Long) field);
+                } else if (field instanceof Integer) {
+                    out.writeInt((Integer) field);
+                } else {
+                    throw new IllegalArgumentException("Неподдерживаемое поле записи: " + field);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+    
+    private void openSegment(long number) throws IOException {
+        this.segment = number;
+        this.channel = opener.open(segmentPath(dir, number));
+    }
+    
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+}
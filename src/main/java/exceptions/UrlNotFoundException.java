@@ -4,4 +4,16 @@ public class UrlNotFoundException extends Exception {
     public UrlNotFoundException(String message) {
         super(message);
     }
-}
\ No newline at end of file
+    
+    private UrlNotFoundException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
+    
+    /**
+     * Исключение без стека вызовов для частого случая "кода нет": перебор случайных кодов
+     * не должен стоить обхода стека на каждый запрос.
+     */
+    public static UrlNotFoundException withoutStackTrace(String message) {
+        return new UrlNotFoundException(message, false);
+    }
+}
@@ -0,0 +1,122 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncLoggerTest {
+    private static final AsyncLogger LOG = AsyncLogger.forClass(AsyncLoggerTest.class);
+
+    private final StringWriter out = new StringWriter();
+
+    @AfterEach
+    void restore() {
+        AsyncLogger.configure(AsyncLogger.Level.parse(Config.getLogLevel()), AsyncLogger.Format.TEXT, null,
+                Config.getLogQueueSize());
+    }
+
+    @Test
+    @DisplayName("Сообщения ниже уровня не пишутся, а их аргументы не форматируются")
+    void testLevelsAndLazyFormatting() {
+        AsyncLogger.configure(AsyncLogger.Level.INFO, AsyncLogger.Format.TEXT, out, 1024);
+        List<String> formatted = new ArrayList<>();
+        Object argument = new Object() {
+            @Override
+            public String toString() {
+                formatted.add(Thread.currentThread().getName());
+                return "аргумент";
+            }
+        };
+
+        LOG.debug("Скрыто: {}", argument);
+        assertFalse(LOG.isDebugEnabled());
+        LOG.info("Видно: {} и {}", argument, 42);
+        LOG.error("Ошибка: {}", "диск");
+        AsyncLogger.flush();
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].matches("\\d{4}-\\d\\d-\\d\\dT\\d\\d:\\d\\d:\\d\\d\\.\\d{3} INFO  \\[.+] "
+                + "AsyncLoggerTest - Видно: аргумент и 42"), lines[0]);
+        assertTrue(lines[1].endsWith("ERROR [" + Thread.currentThread().getName() + "] AsyncLoggerTest - Ошибка: диск"));
+        // Аргумент отформатирован один раз и не в вызывающем потоке
+        assertEquals(List.of("log-appender"), formatted);
+    }
+
+    @Test
+    @DisplayName("В формате JSON строка - объект с экранированными полями")
+    void testJsonFormat() {
+        AsyncLogger.configure(AsyncLogger.Level.DEBUG, AsyncLogger.Format.JSON, out, 1024);
+        LOG.debug("Ссылка \"{}\"\tудалена", "a\\b");
+        AsyncLogger.flush();
+
+        String line = out.toString();
+        assertTrue(line.startsWith("{\"time\":\""), line);
+        assertTrue(line.endsWith("\",\"level\":\"DEBUG\",\"thread\":\"" + Thread.currentThread().getName()
+                + "\",\"logger\":\"AsyncLoggerTest\",\"message\":\"Ссылка \\\"a\\\\b\\\"\\tудалена\"}\n"), line);
+    }
+
+    @Test
+    @DisplayName("В полной очереди сообщения отбрасываются, их число пишется в журнал")
+    void testDropsWhenQueueIsFull() {
+        AsyncLogger.configure(AsyncLogger.Level.INFO, AsyncLogger.Format.TEXT, out, 0);
+        long droppedBefore = AsyncLogger.getDropped();
+        for (int i = 0; i < 5; i++) {
+            LOG.info("Потеряется {}", i);
+        }
+        assertEquals(5, AsyncLogger.getDropped() - droppedBefore);
+
+        AsyncLogger.configure(AsyncLogger.Level.INFO, AsyncLogger.Format.TEXT, out, 16);
+        LOG.info("После переполнения");
+        AsyncLogger.flush();
+        String text = out.toString();
+        assertFalse(text.contains("Потеряется"));
+        assertTrue(text.contains("После переполнения"));
+        assertTrue(text.contains("WARN  [log-appender] AsyncLogger - Потеряно 5 сообщений журнала"), text);
+    }
+
+    @Test
+    @DisplayName("Число потерянных сообщений не пишется, если уровень WARN выключен")
+    void testDropReportRespectsLevel() {
+        AsyncLogger.configure(AsyncLogger.Level.INFO, AsyncLogger.Format.TEXT, out, 0);
+        LOG.info("Потеряется");
+
+        AsyncLogger.configure(AsyncLogger.Level.ERROR, AsyncLogger.Format.TEXT, out, 16);
+        LOG.error("После переполнения {}", 1);
+        AsyncLogger.flush();
+        String text = out.toString();
+        assertTrue(text.contains("После переполнения"));
+        assertFalse(text.contains("Потеряно"), text);
+    }
+
+    @Test
+    @DisplayName("Уснувший поток записи просыпается от нового сообщения")
+    void testAppenderWakesAfterIdle() throws InterruptedException {
+        AsyncLogger.configure(AsyncLogger.Level.INFO, AsyncLogger.Format.TEXT, out, 1024);
+        LOG.info("Первое");
+        AsyncLogger.flush();
+        Thread.sleep(50);
+
+        LOG.info("После простоя");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!out.toString().contains("После простоя") && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(out.toString().contains("После простоя"));
+    }
+
+    @Test
+    @DisplayName("Аргументы подставляются по порядку, лишние дописываются в конец")
+    void testFormat() {
+        assertEquals("a 1 b 2", AsyncLogger.format("a {} b {}", new Object[]{1, 2}));
+        assertEquals("a 1 b {}", AsyncLogger.format("a {} b {}", new Object[]{1}));
+        assertEquals("a 1 2", AsyncLogger.format("a {}", new Object[]{1, 2}));
+        assertEquals("без аргументов {}", AsyncLogger.format("без аргументов {}", null));
+        assertEquals("null", AsyncLogger.format("{}", new Object[]{null}));
+    }
+}
@@ -0,0 +1,34 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BloomFilteredLinkStoreTest extends LinkStoreContract {
+    
+    @Override
+    protected LinkStore createStore() {
+        return new BloomFilteredLinkStore(new MapLinkStore(BUCKET_MILLIS), 1000);
+    }
+    
+    @Test
+    @DisplayName("Фильтр строится по ссылкам, уже лежащим в хранилище")
+    void testFilterBuiltFromExistingLinks() {
+        MapLinkStore inner = new MapLinkStore(BUCKET_MILLIS);
+        inner.putIfAbsent(new ShortUrl("old", "https://example.com/old", "u1"));
+        BloomFilteredLinkStore filtered = new BloomFilteredLinkStore(inner, 1000);
+        
+        assertNotNull(filtered.get("old"));
+        assertTrue(filtered.getFilter().mightContain("old"));
+        assertFalse(filtered.getFilter().mightContain("never-created"));
+    }
+    
+    @Test
+    @DisplayName("Удаленный код отсекается фильтром")
+    void testRemovedCodeFiltered() {
+        store.putIfAbsent(new ShortUrl("abc", "https://example.com/abc", "u1"));
+        store.remove(store.get("abc"));
+        
+        assertFalse(((BloomFilteredLinkStore) store).getFilter().mightContain("abc"));
+        assertNull(store.get("abc"));
+    }
+}
@@ -0,0 +1,38 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachedMillisClockTest {
+
+    @Test
+    @DisplayName("Кэшированное время идет вперед и близко к системному")
+    void testTicks() throws Exception {
+        CachedMillisClock clock = new CachedMillisClock(5);
+        try {
+            long first = clock.millis();
+            assertTrue(Math.abs(System.currentTimeMillis() - first) < 1000);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (clock.millis() == first && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue(clock.millis() > first);
+        } finally {
+            clock.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Шаг часов должен быть положительным")
+    void testInvalidTick() {
+        assertThrows(IllegalArgumentException.class, () -> new CachedMillisClock(0));
+    }
+
+    @Test
+    @DisplayName("Часы из настроек общие для всех сервисов")
+    void testFromConfig() {
+        MillisClock clock = MillisClock.fromConfig();
+        assertSame(clock, MillisClock.fromConfig());
+        assertTrue(Math.abs(System.currentTimeMillis() - clock.millis()) < 1000);
+    }
+}
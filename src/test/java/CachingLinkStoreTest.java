@@ -0,0 +1,87 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingLinkStoreTest extends LinkStoreContract {
+    
+    @Override
+    protected LinkStore createStore() {
+        return new CachingLinkStore(new OffHeapLinkStore(new OffHeapLinkTable(1000), BUCKET_MILLIS), 16);
+    }
+    
+    private HotLinkCache cache() {
+        return ((CachingLinkStore) store).getCache();
+    }
+    
+    private static ShortUrl url(String code, Integer limit) {
+        LocalDateTime now = LocalDateTime.now();
+        return new ShortUrl(code, "https://example.com/" + code, "u1", now, now.plusHours(1), 0, limit);
+    }
+    
+    @Test
+    @DisplayName("Удаленная ссылка не отдается из кэша")
+    void testRemoveInvalidates() {
+        store.putIfAbsent(url("abc", null));
+        ShortUrl cached = store.get("abc");
+        assertSame(cached, store.get("abc"));
+        
+        store.remove(cached);
+        assertNull(store.get("abc"));
+        store.putIfAbsent(url("abc", 5));
+        assertEquals(5, store.get("abc").getMaxAccessCount());
+    }
+    
+    @Test
+    @DisplayName("Новый лимит виден через кэш сразу")
+    void testLimitUpdateVisible() {
+        store.putIfAbsent(url("abc", 1));
+        assertTrue(store.get("abc").tryAcquireAccess());
+        assertFalse(store.get("abc").tryAcquireAccess());
+        
+        store.get("abc").setMaxAccessCount(3);
+        assertTrue(store.get("abc").tryAcquireAccess());
+        assertEquals(2, store.get("abc").getAccessCount());
+        assertTrue(cache().getHitCount() > 0);
+    }
+    
+    @Test
+    @DisplayName("Лимит переходов соблюдается, даже когда ссылка вытесняется из кэша")
+    void testLimitAccountingUnderEviction() throws Exception {
+        store.putIfAbsent(url("limited", 1000));
+        for (int i = 0; i < 100; i++) {
+            store.putIfAbsent(url("c" + i, null));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            results.add(pool.submit(() -> {
+                int granted = 0;
+                for (int i = 0; i < 500; i++) {
+                    store.get("c" + (i % 100));
+                    if (store.get("limited").tryAcquireAccess()) {
+                        granted++;
+                    }
+                }
+                return granted;
+            }));
+        }
+        int total = 0;
+        for (Future<Integer> result : results) {
+            total += result.get();
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        
+        assertEquals(1000, total);
+        assertEquals(1000, store.get("limited").getAccessCount());
+    }
+}
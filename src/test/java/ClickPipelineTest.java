@@ -0,0 +1,141 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClickPipelineTest {
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("Переходы сворачиваются в поминутные счетчики и дописываются в файл с заголовками")
+    void testRollupsAndLog() throws Exception {
+        AtomicLong now = new AtomicLong(100 * MINUTE + 5_000);
+        UrlShortenerService service = new UrlShortenerService(ShortCodeGenerator.fromConfig(),
+                new MapLinkStore(Config.getCleanupBucketMillis()), new InMemoryUserStore(), now::get);
+        service.stopCleanupTask();
+        String userId = service.createUser("Clicks").getId();
+        String code = service.createShortUrl("https://clicks.com", userId);
+        Path logFile = dir.resolve("clicks.tsv");
+        ClickPipeline pipeline = ClickPipeline.open(service, 1024, 10, 60, logFile);
+
+        service.resolve(code, "https://ref.com/\tpage", "Agent/1.0");
+        service.resolve(code);
+        now.addAndGet(MINUTE);
+        service.resolve(code, null, "Agent/2.0");
+        service.resolve("missing", "https://ref.com", null);
+        pipeline.close();
+
+        NavigableMap<Long, Long> perMinute = pipeline.getClicksPerMinute(code);
+        assertEquals(Map.of(100 * MINUTE, 2L, 101 * MINUTE, 1L), perMinute);
+        assertEquals(3, pipeline.getPublished());
+        assertEquals(3, pipeline.getProcessed());
+        assertEquals(0, pipeline.getDropped());
+
+        List<String> lines = Files.readAllLines(logFile, StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        assertEquals((100 * MINUTE + 5_000) + "\t" + code + "\t1\thttps://ref.com/ page\tAgent/1.0", lines.get(0));
+        assertEquals((100 * MINUTE + 5_000) + "\t" + code + "\t1\t-\t-", lines.get(1));
+        assertTrue(lines.get(2).endsWith("\t-\tAgent/2.0"));
+        service.shutdown();
+    }
+
+    @Test
+    @DisplayName("Под нагрузкой события принимаются выборочно с весом, в полной очереди отбрасываются")
+    void testSamplingAndDrops() throws Exception {
+        UrlShortenerService service = new UrlShortenerService();
+        String userId = service.createUser("Overload").getId();
+        String code = service.createShortUrl("https://overload.com", userId);
+        // Фоновый поток не запущен: очередь разбирает только тест
+        ClickPipeline pipeline = new ClickPipeline(service, 64, 4, 60, null);
+        service.addChangeListener(pipeline);
+
+        for (int i = 0; i < 10_000; i++) {
+            service.resolve(code);
+        }
+        assertEquals(64, pipeline.getQueueDepth());
+        assertEquals(64, pipeline.getPublished());
+        assertTrue(pipeline.getSampledOut() > 0);
+        assertTrue(pipeline.getDropped() > 0);
+        assertEquals(10_000, pipeline.getPublished() + pipeline.getSampledOut() + pipeline.getDropped());
+
+        pipeline.close();
+        assertEquals(0, pipeline.getQueueDepth());
+        assertEquals(64, pipeline.getProcessed());
+        // Первая половина очереди принята без выборки, вторая - с весом 4
+        long clicks = pipeline.getClicksPerMinute(code).values().stream().mapToLong(Long::longValue).sum();
+        assertEquals(32 + 32 * 4, clicks);
+
+        // После закрытия переходы в очередь не попадают
+        service.resolve(code);
+        assertEquals(64, pipeline.getPublished());
+        service.shutdown();
+    }
+
+    @Test
+    @DisplayName("Удаление ссылки убирает ее счетчики, старые минуты выпадают из окна")
+    void testDeleteAndRetention() throws Exception {
+        AtomicLong now = new AtomicLong(10 * MINUTE);
+        UrlShortenerService service = new UrlShortenerService(ShortCodeGenerator.fromConfig(),
+                new MapLinkStore(Config.getCleanupBucketMillis()), new InMemoryUserStore(), now::get);
+        service.stopCleanupTask();
+        String userId = service.createUser("Retention").getId();
+        String kept = service.createShortUrl("https://kept.com", userId);
+        String deleted = service.createShortUrl("https://deleted.com", userId);
+        ClickPipeline pipeline = new ClickPipeline(service, 1024, 1, 3, null);
+        service.addChangeListener(pipeline);
+
+        for (int minute = 0; minute < 5; minute++) {
+            service.resolve(kept);
+            service.resolve(deleted);
+            now.addAndGet(MINUTE);
+        }
+        pipeline.drainBatch();
+        assertEquals(List.of(12 * MINUTE, 13 * MINUTE, 14 * MINUTE),
+                List.copyOf(pipeline.getClicksPerMinute(kept).keySet()));
+
+        service.deleteUrl(deleted, userId);
+        assertTrue(pipeline.getClicksPerMinute(deleted).isEmpty());
+        pipeline.close();
+        service.shutdown();
+    }
+
+    @Test
+    @DisplayName("Фоновый поток спит на пустой очереди и просыпается от перехода")
+    void testIdleConsumerWakesUp() throws Exception {
+        UrlShortenerService service = new UrlShortenerService();
+        String userId = service.createUser("Idle").getId();
+        String code = service.createShortUrl("https://idle.com", userId);
+        ClickPipeline pipeline = ClickPipeline.open(service, 1024, 1, 60, null);
+
+        for (int round = 1; round <= 3; round++) {
+            awaitTrue(pipeline::isConsumerIdle);
+            service.resolve(code);
+            long expected = round;
+            awaitTrue(() -> pipeline.getProcessed() == expected);
+        }
+        pipeline.close();
+        service.shutdown();
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "условие не выполнилось за 5 секунд");
+            Thread.sleep(1);
+        }
+    }
+}
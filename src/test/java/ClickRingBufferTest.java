@@ -0,0 +1,86 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClickRingBufferTest {
+
+    @Test
+    @DisplayName("События выходят в порядке публикации, полная очередь отказывает без ожидания")
+    void testOrderAndOverflow() {
+        ClickRingBuffer buffer = new ClickRingBuffer(3);
+        assertEquals(4, buffer.getCapacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer("c" + i, i, "ref", "agent", 1));
+        }
+        assertFalse(buffer.offer("c4", 4, null, null, 1));
+        assertEquals(4, buffer.size());
+
+        List<String> codes = new ArrayList<>();
+        assertEquals(2, buffer.drain((code, time, referrer, userAgent, weight) -> {
+            assertEquals("ref", referrer);
+            assertEquals("agent", userAgent);
+            codes.add(code + "@" + time);
+        }, 2));
+        assertEquals(List.of("c0@0", "c1@1"), codes);
+
+        // Освободившиеся ячейки используются на следующем круге
+        assertTrue(buffer.offer("c4", 4, null, null, 2));
+        assertTrue(buffer.offer("c5", 5, null, null, 3));
+        assertFalse(buffer.offer("c6", 6, null, null, 1));
+        List<Integer> weights = new ArrayList<>();
+        assertEquals(4, buffer.drain((code, time, referrer, userAgent, weight) -> weights.add(weight), 100));
+        assertEquals(List.of(1, 1, 2, 3), weights);
+        assertEquals(0, buffer.size());
+        assertEquals(6, buffer.getOffered());
+    }
+
+    @Test
+    @DisplayName("Несколько писателей и один читатель не теряют и не дублируют события")
+    void testConcurrentProducers() throws Exception {
+        ClickRingBuffer buffer = new ClickRingBuffer(1024);
+        int producers = 4;
+        int perProducer = 50_000;
+        AtomicInteger rejected = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            String code = "p" + p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    if (!buffer.offer(code, i, null, null, 1)) {
+                        rejected.incrementAndGet();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        long[] lastTime = {-1, -1, -1, -1};
+        int[] received = new int[producers];
+        ClickRingBuffer.Handler handler = (code, time, referrer, userAgent, weight) -> {
+            int p = code.charAt(1) - '0';
+            // События одного писателя идут по возрастанию
+            assertTrue(time > lastTime[p]);
+            lastTime[p] = time;
+            received[p]++;
+        };
+        while (threads.stream().anyMatch(Thread::isAlive)) {
+            buffer.drain(handler, 256);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        buffer.drain(handler, Integer.MAX_VALUE);
+
+        int total = 0;
+        for (int count : received) {
+            total += count;
+        }
+        assertEquals(producers * perProducer, total + rejected.get());
+        assertEquals(total, buffer.getOffered());
+    }
+}
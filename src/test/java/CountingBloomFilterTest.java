@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CountingBloomFilterTest {
+    
+    @Test
+    @DisplayName("Добавленные коды всегда находятся, удаленные - перестают")
+    void testAddRemove() {
+        CountingBloomFilter filter = new CountingBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("code" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("code" + i));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            filter.remove("code" + i);
+        }
+        int stillPresent = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("code" + i)) {
+                stillPresent++;
+            }
+        }
+        assertEquals(0, stillPresent);
+    }
+    
+    @Test
+    @DisplayName("Доля ложных срабатываний близка к заданной")
+    void testFalsePositiveRate() {
+        CountingBloomFilter filter = new CountingBloomFilter(100_000, 0.01);
+        for (int i = 0; i < 100_000; i++) {
+            filter.add("present" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("absent" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 2_000, "ложных срабатываний: " + falsePositives);
+        assertEquals(7, filter.getHashCount());
+    }
+    
+    @Test
+    @DisplayName("Переполненный счетчик не дает ложных отрицательных ответов")
+    void testSaturation() {
+        CountingBloomFilter filter = new CountingBloomFilter(1, 0.5);
+        for (int i = 0; i < 100; i++) {
+            filter.add("same");
+        }
+        filter.add("other");
+        for (int i = 0; i < 100; i++) {
+            filter.remove("same");
+        }
+        assertTrue(filter.mightContain("other"));
+    }
+}
@@ -0,0 +1,57 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DedupIndexTest {
+
+    @Test
+    @DisplayName("Параллельные запросы на один URL получают один код")
+    void testConcurrentGetOrCreate() throws Exception {
+        DedupIndex index = new DedupIndex();
+        AtomicInteger created = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<String>> results = IntStream.range(0, 64)
+                .mapToObj(i -> pool.submit(() -> index.getOrCreate("user-1", "https://example.com", code -> true,
+                        () -> "code-" + created.incrementAndGet())))
+                .collect(Collectors.toList());
+        Set<String> codes = new HashSet<>();
+        for (Future<String> result : results) {
+            codes.add(result.get());
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(Set.of("code-1"), codes);
+        assertEquals(1, created.get());
+        assertEquals(63, index.getHits());
+    }
+
+    @Test
+    @DisplayName("Непригодный код заменяется новым, снятие с учета не трогает чужой код")
+    void testReplaceAndUnregister() {
+        DedupIndex index = new DedupIndex();
+        index.register(new ShortUrl("old", "https://example.com", "user-1"));
+        index.register(new ShortUrl("limited", "https://limited.com", "user-1", 0L, 1L, 0, 5));
+        assertEquals(1, index.size());
+
+        assertEquals("new", index.getOrCreate("user-1", "https://example.com", code -> false, () -> "new"));
+        index.unregister(new ShortUrl("old", "https://example.com", "user-1"));
+        assertEquals("new", index.getOrCreate("user-1", "https://example.com", code -> true, () -> "other"));
+        assertEquals("user-2", index.getOrCreate("user-2", "https://example.com", code -> true, () -> "user-2"));
+
+        index.unregister(new ShortUrl("new", "https://example.com", "user-1"));
+        assertEquals(1, index.size());
+    }
+}
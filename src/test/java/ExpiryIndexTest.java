@@ -0,0 +1,47 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpiryIndexTest {
+
+    @Test
+    @DisplayName("Извлекаются только корзины, чье время наступило")
+    void testPollExpired() {
+        ExpiryIndex index = new ExpiryIndex(1000);
+        index.add("a", 10_500);
+        index.add("b", 11_000);
+        index.add("c", 12_300);
+
+        assertTrue(index.pollExpired(10_999).isEmpty());
+        List<String> due = index.pollExpired(11_000);
+        assertEquals(2, due.size());
+        assertTrue(due.containsAll(List.of("a", "b")));
+        assertEquals(List.of("c"), index.pollExpired(13_000));
+        assertEquals(0, index.bucketCount());
+    }
+
+    @Test
+    @DisplayName("Удаленный код не возвращается очисткой")
+    void testRemove() {
+        ExpiryIndex index = new ExpiryIndex(1000);
+        index.add("a", 5_000);
+        index.add("b", 5_000);
+        index.remove("a", 5_000);
+
+        assertEquals(List.of("b"), index.pollExpired(5_000));
+    }
+
+    @Test
+    @DisplayName("Код, добавленный в уже извлеченную корзину, попадает в следующий проход")
+    void testAddAfterPoll() {
+        ExpiryIndex index = new ExpiryIndex(1000);
+        index.add("a", 1_000);
+        assertEquals(List.of("a"), index.pollExpired(2_000));
+
+        index.add("b", 1_000);
+        assertEquals(List.of("b"), index.pollExpired(2_000));
+    }
+}
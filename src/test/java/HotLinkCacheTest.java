@@ -0,0 +1,63 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HotLinkCacheTest {
+    
+    private static ShortUrl url(String code) {
+        return new ShortUrl(code, "https://example.com/" + code, "u1");
+    }
+    
+    @Test
+    @DisplayName("Попадания и промахи учитываются в доле попаданий")
+    void testHitRatio() {
+        HotLinkCache cache = new HotLinkCache(10);
+        assertNull(cache.get("a"));
+        assertTrue(cache.put(url("a")));
+        assertFalse(cache.put(url("a")));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("a"));
+        
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.75, cache.getHitRatio(), 1e-9);
+    }
+    
+    @Test
+    @DisplayName("Поток холодных ссылок не вытесняет горячие")
+    void testScanResistance() {
+        HotLinkCache cache = new HotLinkCache(100);
+        for (int i = 0; i < 10; i++) {
+            cache.put(url("hot" + i));
+        }
+        for (int cold = 0; cold < 10_000; cold++) {
+            for (int i = 0; i < 10; i++) {
+                cache.get("hot" + i);
+            }
+            cache.put(url("cold" + cold));
+        }
+        
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(cache.get("hot" + i), "hot" + i);
+        }
+        assertEquals(100, cache.size());
+        assertTrue(cache.getEvictionCount() > 0);
+    }
+    
+    @Test
+    @DisplayName("Вычищенная запись пропадает, ее место переиспользуется")
+    void testInvalidate() {
+        HotLinkCache cache = new HotLinkCache(2);
+        cache.put(url("a"));
+        cache.put(url("b"));
+        cache.invalidate("a");
+        
+        assertNull(cache.get("a"));
+        assertTrue(cache.put(url("c")));
+        assertNotNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(0, cache.getEvictionCount());
+    }
+}
@@ -0,0 +1,49 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("Перцентили точны для малых значений и отличаются не больше чем на 1/32 для больших")
+    void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_500.0, histogram.getMeanNanos());
+        assertEquals(1_000_000, histogram.getMaxNanos());
+        assertWithinBucket(500_000, histogram.getValueAtPercentile(50));
+        assertWithinBucket(990_000, histogram.getValueAtPercentile(99));
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+
+        LatencyHistogram small = new LatencyHistogram();
+        for (int value = 0; value < 32; value++) {
+            small.record(value);
+        }
+        assertEquals(15, small.getValueAtPercentile(50));
+        assertEquals(0, small.getValueAtPercentile(0));
+    }
+
+    @Test
+    @DisplayName("Каждое значение попадает в корзину, верхняя граница которой не меньше его и отстоит не больше чем на 1/32")
+    void testBuckets() {
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            long highest = LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(value));
+            assertTrue(highest >= value, value + " -> " + highest);
+            assertTrue(highest - value <= value / 32, value + " -> " + highest);
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(Long.MAX_VALUE)));
+    }
+
+    private static void assertWithinBucket(long expected, long actual) {
+        assertTrue(actual >= expected && actual - expected <= expected / 32, expected + " ~ " + actual);
+    }
+}
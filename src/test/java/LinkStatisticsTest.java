@@ -0,0 +1,176 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LinkStatisticsTest {
+    @TempDir
+    Path dir;
+
+    /** Статистика полным пересчетом по хранилищу. */
+    private static Statistics recompute(UrlShortenerService service, String userId) {
+        List<ShortUrl> urls = service.urls()
+                .filter(url -> userId == null || url.getUserId().equals(userId))
+                .collect(Collectors.toList());
+        return new Statistics(userId == null ? service.users().size() : 1, urls.size(),
+                urls.stream().filter(url -> !url.isAccessLimitReached()).count(),
+                urls.stream().mapToLong(ShortUrl::getAccessCount).sum());
+    }
+
+    private static void assertConsistent(UrlShortenerService service, List<String> userIds) {
+        assertEquals(recompute(service, null), service.getStatistics());
+        for (String userId : userIds) {
+            assertEquals(recompute(service, userId), service.getUserStatistics(userId), userId);
+        }
+    }
+
+    @Test
+    @DisplayName("Счетчики совпадают с полным пересчетом после случайных создания, переходов, лимитов, удаления и очистки")
+    void testConsistentWithRecompute() throws Exception {
+        AtomicLong now = new AtomicLong(1_000_000L);
+        UrlShortenerService service = new UrlShortenerService(ShortCodeGenerator.fromConfig(),
+                new MapLinkStore(Config.getCleanupBucketMillis()), new InMemoryUserStore(), now::get);
+        service.stopCleanupTask();
+        List<String> userIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            userIds.add(service.createUser("Stats " + i).getId());
+        }
+        Random random = new Random(42);
+        List<String> codes = new ArrayList<>();
+        for (int step = 0; step < 5000; step++) {
+            String userId = userIds.get(random.nextInt(userIds.size()));
+            int action = random.nextInt(10);
+            if (action < 3 || codes.isEmpty()) {
+                Integer limit = random.nextBoolean() ? null : 1 + random.nextInt(3);
+                codes.add(service.createShortUrl("https://stats.com/" + random.nextInt(100), userId, limit));
+            } else if (action < 7) {
+                service.resolve(codes.get(random.nextInt(codes.size())));
+            } else if (action == 7) {
+                ShortUrl shortUrl = service.findShortUrl(codes.get(random.nextInt(codes.size())));
+                if (shortUrl != null) {
+                    service.updateUrlLimit(shortUrl.getShortCode(), shortUrl.getUserId(),
+                            random.nextBoolean() ? null : 1 + random.nextInt(3));
+                }
+            } else if (action == 8) {
+                ShortUrl shortUrl = service.findShortUrl(codes.remove(random.nextInt(codes.size())));
+                if (shortUrl != null) {
+                    service.deleteUrl(shortUrl.getShortCode(), shortUrl.getUserId());
+                }
+            } else {
+                now.addAndGet(TimeUnit.MINUTES.toMillis(30));
+                service.cleanupExpiredUrls();
+            }
+        }
+        assertConsistent(service, userIds);
+        assertTrue(service.getStatistics().getLinks() > 0);
+        service.shutdown();
+    }
+
+    @Test
+    @DisplayName("Переходы из нескольких потоков исчерпывают лимит ровно один раз")
+    void testConcurrentAccess() throws Exception {
+        UrlShortenerService service = new UrlShortenerService();
+        String userId = service.createUser("Concurrent").getId();
+        List<String> codes = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            codes.add(service.createShortUrl("https://concurrent.com/" + i, userId, i % 2 == 0 ? 7 : null));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            pool.execute(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    service.resolve(codes.get(i % codes.size()));
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertConsistent(service, List.of(userId));
+        assertEquals(25, service.getUserStatistics(userId).getActiveLinks());
+        service.shutdown();
+    }
+
+    @Test
+    @DisplayName("Смена лимита параллельно с переходами не сдвигает счетчик активных ссылок")
+    void testLimitChangesDuringAccess() throws Exception {
+        for (LinkStore store : List.of(new MapLinkStore(Config.getCleanupBucketMillis()),
+                new OffHeapLinkStore(new OffHeapLinkTable(1000), Config.getCleanupBucketMillis()))) {
+            UrlShortenerService service = new UrlShortenerService(ShortCodeGenerator.fromConfig(), store,
+                    new InMemoryUserStore());
+            service.stopCleanupTask();
+            String userId = service.createUser("Limits").getId();
+            List<String> codes = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                codes.add(service.createShortUrl("https://limits.com/" + i, userId, 1000));
+            }
+            ExecutorService pool = Executors.newFixedThreadPool(4);
+            for (int t = 0; t < 3; t++) {
+                pool.execute(() -> {
+                    for (int i = 0; i < 30_000; i++) {
+                        service.resolve(codes.get(i % codes.size()));
+                    }
+                });
+            }
+            pool.execute(() -> {
+                Random random = new Random(7);
+                try {
+                    for (int i = 0; i < 20_000; i++) {
+                        int current = service.findShortUrl(codes.get(i % codes.size())).getAccessCount();
+                        // Лимит вокруг текущего счетчика: ссылка то исчерпана, то снова активна
+                        service.updateUrlLimit(codes.get(i % codes.size()), userId,
+                                random.nextInt(8) == 0 ? null : Math.max(0, current + random.nextInt(5) - 2));
+                    }
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            });
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+
+            assertConsistent(service, List.of(userId));
+            service.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Счетчики восстанавливаются из журнала и учитывают загруженные ссылки")
+    void testRecoveredAndImported() throws Exception {
+        UrlShortenerService service = new UrlShortenerService();
+        StorageManager storage = StorageManager.open(dir, service, 60_000, 0);
+        String userId = service.createUser("Recovered").getId();
+        String limited = service.createShortUrl("https://recovered.com/a", userId, 2);
+        String unlimited = service.createShortUrl("https://recovered.com/b", userId);
+        service.resolve(limited);
+        service.resolve(limited);
+        service.resolve(unlimited);
+        service.updateUrlLimit(unlimited, userId, 1);
+        storage.close();
+        service.shutdown();
+
+        UrlShortenerService restored = new UrlShortenerService();
+        StorageManager reopened = StorageManager.open(dir, restored, 60_000, 0);
+        assertEquals(new Statistics(1, 2, 0, 3), restored.getUserStatistics(userId));
+        assertConsistent(restored, List.of(userId));
+        reopened.close();
+        restored.shutdown();
+    }
+
+    @Test
+    @DisplayName("Средние переходы считаются в long и без деления на ноль")
+    void testAverage() {
+        assertEquals(0.0, new Statistics(0, 0, 0, 0).getAverageClicks());
+        assertEquals(3_000_000_000.0 / 2, new Statistics(1, 2, 2, 3_000_000_000L).getAverageClicks());
+    }
+}
@@ -0,0 +1,215 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Общие требования к хранилищам ссылок. Каждая реализация {@link LinkStore}
+ * проверяется наследником этого класса.
+ */
+public abstract class LinkStoreContract {
+    protected static final long BUCKET_MILLIS = 1000;
+    
+    private final LocalDateTime now = LocalDateTime.now();
+    protected LinkStore store;
+    
+    protected abstract LinkStore createStore();
+    
+    @BeforeEach
+    void setUp() {
+        store = createStore();
+    }
+    
+    private ShortUrl url(String code, String userId, int minutesAgo, int ttlMinutes) {
+        LocalDateTime createdAt = now.minusMinutes(minutesAgo);
+        return new ShortUrl(code, "https://example.com/" + code, userId,
+                createdAt, createdAt.plusMinutes(ttlMinutes), 0, null);
+    }
+    
+    private static List<String> codes(List<ShortUrl> urls) {
+        return urls.stream().map(ShortUrl::getShortCode).collect(Collectors.toList());
+    }
+    
+    @Test
+    @DisplayName("Пакетная вставка возвращает ссылки с занятыми кодами и пополняет индексы")
+    void testPutAllIfAbsent() {
+        store.putIfAbsent(url("taken", "u1", 0, 60));
+        List<ShortUrl> rejected = store.putAllIfAbsent(List.of(
+                url("b1", "u1", 0, 60), url("taken", "u2", 0, 60), url("b2", "u2", 0, 60), url("b3", "u2", 0, 1)));
+        
+        assertEquals(List.of("taken"), codes(rejected));
+        assertEquals(4, store.size());
+        assertEquals("u1", store.get("taken").getUserId());
+        assertEquals(2, store.countByUser("u2"));
+        assertEquals(List.of("b3"), codes(store.pollExpired(System.currentTimeMillis() + 2 * 60_000)));
+    }
+    
+    @Test
+    @DisplayName("Добавление, чтение и удаление ссылки")
+    void testPutGetRemove() {
+        assertTrue(store.putIfAbsent(url("abc", "u1", 0, 60)));
+        assertFalse(store.putIfAbsent(url("abc", "u2", 0, 60)));
+        assertEquals(1, store.size());
+        
+        ShortUrl stored = store.get("abc");
+        assertEquals("https://example.com/abc", stored.getOriginalUrl());
+        assertEquals("u1", stored.getUserId());
+        assertNull(store.get("nothing"));
+        
+        assertTrue(store.remove(stored));
+        assertFalse(store.remove(stored));
+        assertNull(store.get("abc"));
+        assertEquals(0, store.size());
+        assertEquals(0, store.countByUser("u1"));
+    }
+    
+    @Test
+    @DisplayName("put вытесняет ссылку с тем же кодом вместе с ее индексами")
+    void testPutReplaces() {
+        store.putIfAbsent(url("abc", "u1", 0, 60));
+        ShortUrl previous = store.put(url("abc", "u2", 0, 60));
+        
+        assertEquals("u1", previous.getUserId());
+        assertEquals("u2", store.get("abc").getUserId());
+        assertEquals(0, store.countByUser("u1"));
+        assertEquals(1, store.countByUser("u2"));
+        assertNull(store.put(url("new", "u2", 0, 60)));
+    }
+    
+    @Test
+    @DisplayName("Удаляется только та ссылка, что лежит под кодом сейчас")
+    void testRemoveStaleLink() {
+        store.putIfAbsent(url("abc", "u1", 0, 60));
+        ShortUrl stale = store.get("abc");
+        store.remove(stale);
+        store.putIfAbsent(url("abc", "u2", 0, 60));
+        
+        assertFalse(store.remove(stale));
+        assertEquals("u2", store.get("abc").getUserId());
+    }
+    
+    @Test
+    @DisplayName("Изменения счетчика и лимита видны при следующем чтении")
+    void testAccessStateIsLive() {
+        store.putIfAbsent(url("abc", "u1", 0, 60));
+        store.get("abc").setMaxAccessCount(2);
+        
+        assertTrue(store.get("abc").tryAcquireAccess());
+        assertTrue(store.get("abc").tryAcquireAccess());
+        assertFalse(store.get("abc").tryAcquireAccess());
+        assertEquals(2, store.get("abc").getAccessCount());
+        assertEquals(2, store.findByUser("u1", 0, 10).get(0).getAccessCount());
+    }
+    
+    @Test
+    @DisplayName("Ссылки пользователя от новых к старым с постраничной выдачей")
+    void testFindByUser() {
+        store.putIfAbsent(url("old", "u1", 30, 60));
+        store.putIfAbsent(url("new", "u1", 1, 60));
+        store.putIfAbsent(url("mid", "u1", 10, 60));
+        store.putIfAbsent(url("other", "u2", 5, 60));
+        
+        assertEquals(List.of("new", "mid", "old"), codes(store.findByUser("u1", 0, 10)));
+        assertEquals(List.of("mid"), codes(store.findByUser("u1", 1, 1)));
+        assertEquals(3, store.countByUser("u1"));
+        assertTrue(store.findByUser("nobody", 0, 10).isEmpty());
+    }
+    
+    @Test
+    @DisplayName("Поиск по подстроке и началу слова без учета регистра, от новых к старым, с удалением")
+    void testSearch() {
+        LocalDateTime createdAt = now.minusMinutes(5);
+        store.putIfAbsent(new ShortUrl("Guide1", "https://Example.com/Docs/Guide-1", "u1",
+                createdAt, createdAt.plusHours(1), 0, null));
+        store.putIfAbsent(new ShortUrl("guide2", "https://example.com/docs/guide-2?lang=ru", "u1",
+                createdAt.plusMinutes(1), createdAt.plusHours(1), 0, null));
+        store.putIfAbsent(new ShortUrl("blog1", "https://blog.example.org/post", "u1",
+                createdAt.plusMinutes(2), createdAt.plusHours(1), 0, null));
+        store.putIfAbsent(new ShortUrl("other", "https://example.com/docs/guide-3", "u2",
+                createdAt, createdAt.plusHours(1), 0, null));
+        
+        assertEquals(List.of("guide2", "Guide1"), codes(store.search("u1", "DOCS/guide", false, 0, 10)));
+        assertEquals(List.of("Guide1"), codes(store.search("u1", "uide-1", false, 0, 10)));
+        assertEquals(List.of("guide2", "Guide1"), codes(store.search("u1", "gui", true, 0, 10)));
+        assertTrue(store.search("u1", "uide", true, 0, 10).isEmpty());
+        assertEquals(List.of("blog1"), codes(store.search("u1", "log1", false, 0, 10)));
+        assertEquals(List.of("blog1", "guide2", "Guide1"), codes(store.search("u1", "/", false, 0, 10)));
+        assertEquals(List.of("guide2"), codes(store.search("u1", "example.com", false, 0, 1)));
+        assertEquals(List.of("Guide1"), codes(store.search("u1", "example.com", false, 1, 5)));
+        assertTrue(store.search("nobody", "example", false, 0, 10).isEmpty());
+        
+        store.remove(store.get("guide2"));
+        assertEquals(List.of("Guide1"), codes(store.search("u1", "docs", false, 0, 10)));
+    }
+    
+    @Test
+    @DisplayName("Истекшие ссылки отдаются один раз и только после истечения")
+    void testPollExpired() {
+        store.putIfAbsent(url("gone", "u1", 120, 60));
+        store.putIfAbsent(url("alive", "u1", 0, 60));
+        long nowMillis = System.currentTimeMillis();
+        
+        assertEquals(List.of("gone"), codes(store.pollExpired(nowMillis)));
+        assertTrue(store.pollExpired(nowMillis).isEmpty());
+        assertNotNull(store.get("gone"));
+        assertEquals(List.of("alive"), codes(store.pollExpired(nowMillis + 2 * 3_600_000L)));
+    }
+    
+    @Test
+    @DisplayName("Выборка самых посещаемых ссылок")
+    void testTopByAccess() {
+        for (int i = 0; i < 5; i++) {
+            store.putIfAbsent(url("c" + i, "u1", 0, 60));
+            for (int access = 0; access < i; access++) {
+                store.get("c" + i).tryAcquireAccess();
+            }
+        }
+        
+        assertEquals(List.of("c4", "c3", "c2"), codes(store.topByAccess(3)));
+        assertEquals(4, store.topByAccess(10).size());
+        assertEquals(5, store.stream().count());
+    }
+    
+    @Test
+    @DisplayName("Параллельная вставка одного кода удается ровно одному потоку")
+    void testConcurrentPutIfAbsent() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            String userId = "u" + t;
+            results.add(pool.submit(() -> {
+                int inserted = 0;
+                for (int i = 0; i < 200; i++) {
+                    if (store.putIfAbsent(url("k" + i, userId, 0, 60))) {
+                        inserted++;
+                    }
+                }
+                return inserted;
+            }));
+        }
+        int total = 0;
+        for (Future<Integer> result : results) {
+            total += result.get();
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        
+        assertEquals(200, total);
+        assertEquals(200, store.size());
+        int indexed = 0;
+        for (int t = 0; t < 8; t++) {
+            indexed += store.countByUser("u" + t);
+        }
+        assertEquals(200, indexed);
+    }
+}
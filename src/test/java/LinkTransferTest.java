@@ -0,0 +1,217 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LinkTransferTest {
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @EnumSource(LinkTransfer.Format.class)
+    @DisplayName("Выгрузка и загрузка сохраняют пользователей, счетчики, лимиты и сроки")
+    void testRoundTrip(LinkTransfer.Format format) throws Exception {
+        UrlShortenerService source = new UrlShortenerService();
+        String userId = source.createUser("Иван \"Ваня\", админ").getId();
+        String limited = source.createShortUrl("https://example.com/a?x=1,2&q=\"y\"", userId, 5);
+        String unlimited = source.createShortUrl("https://example.com/b", userId);
+        source.getOriginalUrl(limited);
+        source.getOriginalUrl(limited);
+        source.getOriginalUrl(unlimited);
+        Path file = dir.resolve("links." + format.name().toLowerCase());
+
+        assertEquals(3, LinkTransfer.exportTo(source, file, format));
+
+        UrlShortenerService target = new UrlShortenerService();
+        LinkTransfer.ImportResult result = LinkTransfer.importFrom(target, file, format, 2);
+        assertEquals(1, result.getUsers());
+        assertEquals(2, result.getLinks());
+        assertEquals(0, result.getErrors(), result.getErrorMessages().toString());
+
+        assertEquals("Иван \"Ваня\", админ", target.getUserById(userId).getName());
+        for (String code : List.of(limited, unlimited)) {
+            ShortUrl expected = source.findShortUrl(code);
+            ShortUrl actual = target.findShortUrl(code);
+            assertEquals(expected.getOriginalUrl(), actual.getOriginalUrl());
+            assertEquals(expected.getUserId(), actual.getUserId());
+            assertEquals(expected.getCreatedAtMillis(), actual.getCreatedAtMillis());
+            assertEquals(expected.getExpiresAtMillis(), actual.getExpiresAtMillis());
+            assertEquals(expected.getAccessCount(), actual.getAccessCount());
+            assertEquals(expected.getMaxAccessCount(), actual.getMaxAccessCount());
+        }
+        assertEquals(2, target.getUserUrls(userId).size());
+
+        // Новые коды не пересекаются с загруженными
+        String created = target.createShortUrl("https://example.com/c", userId);
+        assertFalse(List.of(limited, unlimited).contains(created));
+        source.shutdown();
+        target.shutdown();
+    }
+
+    @Test
+    @DisplayName("Занятые коды, существующие пользователи и истекшие ссылки пропускаются, ошибки считаются")
+    void testSkipsAndErrors() throws Exception {
+        long now = System.currentTimeMillis();
+        Path file = dir.resolve("mixed.csv");
+        Files.write(file, List.of(
+                "user,u1,First",
+                "user,u1,Duplicate",
+                "link,code1,https://one.com,u1," + now + "," + (now + 60_000) + ",3,",
+                "link,code1,https://other.com,u1," + now + "," + (now + 60_000) + ",0,",
+                "link,old,https://old.com,u1," + (now - 120_000) + "," + (now - 60_000) + ",0,",
+                "",
+                "link,bad,https://bad.com,u1,not-a-number,0,0,",
+                "group,g1",
+                "user,\"unterminated"), StandardCharsets.UTF_8);
+
+        UrlShortenerService service = new UrlShortenerService();
+        LinkTransfer.ImportResult result = LinkTransfer.importFrom(service, file, LinkTransfer.Format.CSV, 1);
+
+        assertEquals(1, result.getUsers());
+        assertEquals(1, result.getLinks());
+        assertEquals(3, result.getSkipped());
+        assertEquals(3, result.getErrors());
+        assertTrue(result.getErrorMessages().get(0).startsWith("строка 7"));
+        assertEquals("First", service.getUserById("u1").getName());
+        assertEquals("https://one.com", service.findShortUrl("code1").getOriginalUrl());
+        assertEquals(3, service.findShortUrl("code1").getAccessCount());
+        assertNull(service.findShortUrl("old"));
+        service.shutdown();
+    }
+
+    @Test
+    @DisplayName("URL загружаемых ссылок нормализуются, счетчики, лимиты и владельцы проверяются")
+    void testImportValidation() throws Exception {
+        long now = System.currentTimeMillis();
+        String times = "," + now + "," + (now + 60_000) + ",";
+        Path file = dir.resolve("checked.csv");
+        Files.write(file, List.of(
+                "user,u1,Owner",
+                "link,norm,HTTPS://Example.COM:443/Path,u1" + times + "0,",
+                "link,ftp,ftp://example.com/,u1" + times + "0,",
+                "link,huge,https://huge.com,u1" + times + "3000000000,",
+                "link,neg,https://neg.com,u1" + times + "-1,",
+                "link,zero,https://zero.com,u1" + times + "0,0",
+                "link,orphan,https://orphan.com,nobody" + times + "0,"), StandardCharsets.UTF_8);
+
+        UrlShortenerService service = new UrlShortenerService(ShortCodeGenerator.fromConfig(), LinkStore.fromConfig(),
+                new InMemoryUserStore(), MillisClock.fromConfig(), new DedupIndex(), null);
+        LinkTransfer.ImportResult result = LinkTransfer.importFrom(service, file, LinkTransfer.Format.CSV, 2);
+
+        assertEquals(1, result.getLinks());
+        assertEquals(5, result.getErrors(), result.getErrorMessages().toString());
+        assertEquals("https://example.com/Path", service.findShortUrl("norm").getOriginalUrl());
+        for (String code : List.of("ftp", "huge", "neg", "zero", "orphan")) {
+            assertNull(service.findShortUrl(code), code);
+        }
+        // Повторное сокращение находит загруженную ссылку
+        assertEquals("norm", service.createShortUrl("https://example.com/Path", "u1"));
+        service.shutdown();
+    }
+
+    @Test
+    @DisplayName("Любой сбой на строке считается ошибкой этой строки, остальные строки пачки загружаются")
+    void testUnexpectedFailureCountedPerLine() throws Exception {
+        long now = System.currentTimeMillis();
+        Path file = dir.resolve("failing.csv");
+        Files.write(file, List.of(
+                "user,u1,Owner",
+                "link,boom,https://boom.com,u1," + now + "," + (now + 60_000) + ",0,",
+                "link,fine,https://fine.com,u1," + now + "," + (now + 60_000) + ",0,"), StandardCharsets.UTF_8);
+
+        UrlShortenerService service = new UrlShortenerService() {
+            @Override
+            boolean importShortUrl(ShortUrl shortUrl) {
+                if (shortUrl.getShortCode().equals("boom")) {
+                    throw new IllegalStateException("хранилище недоступно");
+                }
+                return super.importShortUrl(shortUrl);
+            }
+        };
+        LinkTransfer.ImportResult result = LinkTransfer.importFrom(service, file, LinkTransfer.Format.CSV, 2);
+
+        assertEquals(1, result.getLinks());
+        assertEquals(1, result.getErrors());
+        assertTrue(result.getErrorMessages().get(0).startsWith("строка 2"), result.getErrorMessages().toString());
+        assertEquals("https://fine.com", service.findShortUrl("fine").getOriginalUrl());
+        service.shutdown();
+    }
+
+    @Test
+    @DisplayName("Истечение загружаемых ссылок проверяется по часам сервиса")
+    void testImportUsesServiceClock() throws Exception {
+        Path file = dir.resolve("clock.csv");
+        Files.write(file, List.of(
+                "user,u1,Owner",
+                "link,past,https://past.com,u1,1000,2000,0,"), StandardCharsets.UTF_8);
+
+        UrlShortenerService service = new UrlShortenerService(ShortCodeGenerator.fromConfig(), LinkStore.fromConfig(),
+                new InMemoryUserStore(), () -> 1500);
+        LinkTransfer.ImportResult result = LinkTransfer.importFrom(service, file, LinkTransfer.Format.CSV, 1);
+
+        assertEquals(1, result.getLinks());
+        assertEquals("https://past.com", service.findShortUrl("past").getOriginalUrl());
+        service.shutdown();
+    }
+
+    @Test
+    @DisplayName("Загрузка из NDJSON понимает экранирование, null и любой порядок полей")
+    void testParseJson() {
+        assertEquals(List.of("user", "u1", "Имя \"в кавычках\"\n"),
+                LinkTransfer.parseJson("{\"name\":\"Имя \\\"в кавычках\\\"\\u000a\", \"type\":\"user\",\"id\":\"u1\"}"));
+        List<String> link = LinkTransfer.parseJson("{\"type\":\"link\",\"code\":\"c\",\"url\":\"https://a.com\","
+                + "\"userId\":\"u\",\"createdAt\":1,\"expiresAt\":2,\"accessCount\":3,\"maxAccessCount\":null}");
+        assertEquals("3", link.get(6));
+        assertNull(link.get(7));
+        assertThrows(IllegalArgumentException.class, () -> LinkTransfer.parseJson("{\"type\":\"user\",\"id\":\"u\"}"));
+        assertThrows(IllegalArgumentException.class, () -> LinkTransfer.parseJson("{\"type\":\"user\"} x"));
+    }
+
+    @Test
+    @DisplayName("Загрузка из CSV снимает кавычки и удвоенные кавычки")
+    void testParseCsv() {
+        assertEquals(List.of("user", "u1", "a,\"b\"", ""), LinkTransfer.parseCsv("user,u1,\"a,\"\"b\"\"\","));
+    }
+
+    @Test
+    @DisplayName("Загруженные ссылки со счетчиками попадают в журнал и переживают перезапуск")
+    void testImportIsLogged() throws Exception {
+        UrlShortenerService source = new UrlShortenerService();
+        String userId = source.createUser("Logged").getId();
+        String code = source.createShortUrl("https://logged.com", userId);
+        source.getOriginalUrl(code);
+        Path file = dir.resolve("links.ndjson");
+        LinkTransfer.exportTo(source, file, LinkTransfer.Format.of(file));
+
+        Path storageDir = dir.resolve("storage");
+        UrlShortenerService target = new UrlShortenerService();
+        StorageManager storage = StorageManager.open(storageDir, target, 60_000, 0);
+        LinkTransfer.importFrom(target, file, LinkTransfer.Format.NDJSON, 2);
+        storage.close();
+        target.shutdown();
+
+        UrlShortenerService restored = new UrlShortenerService();
+        StorageManager reopened = StorageManager.open(storageDir, restored, 60_000, 0);
+        assertEquals("Logged", restored.getUserById(userId).getName());
+        assertEquals(1, restored.findShortUrl(code).getAccessCount());
+        reopened.close();
+        restored.shutdown();
+        source.shutdown();
+    }
+
+    @Test
+    @DisplayName("Формат определяется по расширению файла")
+    void testFormatOf() {
+        assertEquals(LinkTransfer.Format.CSV, LinkTransfer.Format.of(Path.of("backup.CSV")));
+        assertEquals(LinkTransfer.Format.NDJSON, LinkTransfer.Format.of(Path.of("backup.jsonl")));
+        assertThrows(IllegalArgumentException.class, () -> LinkTransfer.Format.of(Path.of("backup.txt")));
+    }
+}
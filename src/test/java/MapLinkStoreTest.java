@@ -0,0 +1,7 @@
+public class MapLinkStoreTest extends LinkStoreContract {
+    
+    @Override
+    protected LinkStore createStore() {
+        return new MapLinkStore(BUCKET_MILLIS);
+    }
+}
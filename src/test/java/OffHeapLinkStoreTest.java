@@ -0,0 +1,34 @@
+import exceptions.UrlExpiredException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapLinkStoreTest extends LinkStoreContract {
+    
+    @Override
+    protected LinkStore createStore() {
+        return new OffHeapLinkStore(new OffHeapLinkTable(1000), BUCKET_MILLIS);
+    }
+    
+    @Test
+    @DisplayName("Сервис работает поверх хранилища вне кучи")
+    void testServiceOnOffHeapStore() throws Exception {
+        UrlShortenerService service = new UrlShortenerService(ShortCodeGenerator.fromConfig(), store,
+                new InMemoryUserStore());
+        try {
+            String userId = service.createUser("Off-heap User").getId();
+            String shortCode = service.createShortUrl("https://example.com/offheap", userId, 1);
+            
+            assertEquals("https://example.com/offheap", service.getOriginalUrl(shortCode));
+            assertThrows(UrlExpiredException.class, () -> service.getOriginalUrl(shortCode));
+            assertEquals(shortCode, service.getTopUrls(1).get(0).getShortCode());
+            
+            service.deleteUrl(shortCode, userId);
+            assertEquals(0, service.countUserUrls(userId));
+            assertTrue(service.getTopUrls(1).isEmpty());
+        } finally {
+            service.shutdown();
+        }
+    }
+}
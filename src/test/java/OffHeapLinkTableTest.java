@@ -0,0 +1,227 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapLinkTableTest {
+    private final LocalDateTime now = LocalDateTime.now();
+
+    private ShortUrl url(String code, String userId, Integer limit) {
+        return new ShortUrl(code, "https://example.com/путь/" + code, userId, now, now.plusHours(1), 0, limit);
+    }
+
+    @Test
+    @DisplayName("Упаковка кода в long обратима и различает длины")
+    void testPackUnpack() {
+        assertEquals("abc", OffHeapLinkTable.unpack(OffHeapLinkTable.pack("abc")));
+        assertEquals("ZZZZZZZZZZ", OffHeapLinkTable.unpack(OffHeapLinkTable.pack("ZZZZZZZZZZ")));
+        assertNotEquals(OffHeapLinkTable.pack("a"), OffHeapLinkTable.pack("aa"));
+        assertEquals(0, OffHeapLinkTable.pack("exp-1"));
+        assertEquals(0, OffHeapLinkTable.pack("abcdefghijk"));
+    }
+
+    @Test
+    @DisplayName("Вставка, чтение и удаление ссылок")
+    void testPutGetRemove() {
+        OffHeapLinkTable table = new OffHeapLinkTable(100);
+        ShortUrl original = url("abc123", "user-1", 5);
+
+        assertTrue(table.putIfAbsent(original));
+        assertFalse(table.putIfAbsent(url("abc123", "user-2", null)));
+        assertEquals(1, table.size());
+
+        ShortUrl stored = table.get("abc123");
+        assertEquals(original.getOriginalUrl(), stored.getOriginalUrl());
+        assertEquals("user-1", stored.getUserId());
+        assertEquals(original.getCreatedAtMillis(), stored.getCreatedAtMillis());
+        assertEquals(original.getExpiresAtMillis(), stored.getExpiresAtMillis());
+        assertEquals(5, stored.getMaxAccessCount());
+        assertNull(table.get("missing"));
+        assertNull(table.get("exp-1"));
+
+        assertTrue(table.remove("abc123"));
+        assertFalse(table.remove("abc123"));
+        assertNull(table.get("abc123"));
+        assertEquals(0, table.size());
+        assertThrows(IllegalArgumentException.class, () -> table.putIfAbsent(url("exp-1", "user-1", null)));
+    }
+
+    @Test
+    @DisplayName("Счетчик и лимит переходов меняются в таблице")
+    void testAccessCountInTable() {
+        OffHeapLinkTable table = new OffHeapLinkTable(16);
+        table.putIfAbsent(url("lim", "user-1", 2));
+
+        assertTrue(table.get("lim").tryAcquireAccess());
+        assertTrue(table.get("lim").tryAcquireAccess());
+        assertFalse(table.get("lim").tryAcquireAccess());
+        assertEquals(2, table.get("lim").getAccessCount());
+
+        assertThrows(IllegalArgumentException.class, () -> table.get("lim").setMaxAccessCount(-1));
+        assertEquals(2, table.get("lim").getMaxAccessCount());
+        table.get("lim").setMaxAccessCount(null);
+        assertTrue(table.get("lim").tryAcquireAccess());
+        assertFalse(table.get("lim").isAccessLimitReached());
+
+        table.putIfAbsent(new ShortUrl("busy", "https://example.com/busy", "user-1",
+                now, now.plusHours(1), Integer.MAX_VALUE - 1, null));
+        assertEquals(ShortUrl.Access.GRANTED, table.get("busy").acquireAccess());
+        assertEquals(ShortUrl.Access.GRANTED, table.get("busy").acquireAccess());
+        table.get("busy").addAccessCount(1000);
+        assertEquals(Integer.MAX_VALUE, table.get("busy").getAccessCount());
+    }
+
+    @Test
+    @DisplayName("Лимит переходов соблюдается при параллельном доступе")
+    void testConcurrentLimit() throws Exception {
+        OffHeapLinkTable table = new OffHeapLinkTable(16);
+        table.putIfAbsent(url("hot", "user-1", 1000));
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            results.add(pool.submit(() -> {
+                int granted = 0;
+                for (int i = 0; i < 500; i++) {
+                    if (table.get("hot").tryAcquireAccess()) {
+                        granted++;
+                    }
+                }
+                return granted;
+            }));
+        }
+        int total = 0;
+        for (Future<Integer> result : results) {
+            total += result.get();
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(1000, total);
+        assertEquals(1000, table.get("hot").getAccessCount());
+    }
+
+    @Test
+    @DisplayName("Заполненная таблица отказывает во вставке, обход видит все ссылки")
+    void testCapacityAndForEach() {
+        OffHeapLinkTable table = new OffHeapLinkTable(10);
+        int inserted = 0;
+        IllegalStateException full = null;
+        for (int i = 0; i < 1000 && full == null; i++) {
+            try {
+                table.putIfAbsent(url("c" + i, "user-" + (i % 3), null));
+                inserted++;
+            } catch (IllegalStateException e) {
+                full = e;
+            }
+        }
+        assertNotNull(full);
+        assertTrue(inserted >= 10);
+
+        Set<String> seen = new HashSet<>();
+        table.stream().forEach(shortUrl -> seen.add(shortUrl.getShortCode()));
+        assertEquals(inserted, seen.size());
+        assertTrue(seen.contains("c0"));
+    }
+
+    @Test
+    @DisplayName("Удаленные слоты переиспользуются, старые ссылки не трогают новые")
+    void testTombstoneReuse() {
+        OffHeapLinkTable table = new OffHeapLinkTable(10);
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 10; i++) {
+                assertTrue(table.putIfAbsent(url("r" + i, "user-1", null)));
+            }
+            for (int i = 0; i < 10; i++) {
+                assertTrue(table.remove("r" + i));
+            }
+        }
+        assertEquals(0, table.size());
+
+        table.putIfAbsent(url("same", "user-1", null));
+        ShortUrl stale = table.get("same");
+        table.remove(stale);
+        table.putIfAbsent(url("same", "user-2", 1));
+
+        assertFalse(stale.tryAcquireAccess());
+        assertFalse(table.remove(stale));
+        assertNotEquals(stale, table.get("same"));
+        assertTrue(table.get("same").tryAcquireAccess());
+        assertEquals(1, table.get("same").getAccessCount());
+    }
+
+    @Test
+    @DisplayName("Вставки и удаления далеко за емкость таблицы не переполняют ее")
+    void testChurnPastCapacity() {
+        OffHeapLinkTable table = new OffHeapLinkTable(10000);
+        ShortCodeGenerator codes = new SequenceShortCodeGenerator(7, 42, 1000);
+        Deque<ShortUrl> live = new ArrayDeque<>();
+        long bytesAfterWarmup = 0;
+        for (int i = 0; i < 100_000; i++) {
+            String code = codes.nextCode();
+            assertTrue(table.putIfAbsent(url(code, "user-" + (i % 7), null)));
+            live.addLast(table.get(code));
+            if (live.size() > 1000) {
+                assertTrue(table.remove(live.removeFirst()));
+            }
+            if (i == 20_000) {
+                bytesAfterWarmup = table.offHeapBytes();
+            }
+        }
+        assertEquals(1000, table.size());
+        assertTrue(table.getRebuildCount() > 0);
+        assertTrue(table.offHeapBytes() <= bytesAfterWarmup * 2);
+
+        // Ссылки, взятые до перестройки, читают и считают переходы в новой таблице
+        for (ShortUrl shortUrl : live) {
+            assertEquals("https://example.com/путь/" + shortUrl.getShortCode(),
+                    table.get(shortUrl.getShortCode()).getOriginalUrl());
+        }
+        ShortUrl oldest = live.getFirst();
+        assertTrue(oldest.tryAcquireAccess());
+        assertEquals(1, table.get(oldest.getShortCode()).getAccessCount());
+        assertTrue(table.remove(oldest));
+        assertNull(table.get(oldest.getShortCode()));
+    }
+
+    @Test
+    @DisplayName("Кэш горячих ссылок держит декодированный URL, а счетчик остается в таблице")
+    void testCachedSlotKeepsDecodedUrl() {
+        OffHeapLinkTable table = new OffHeapLinkTable(100);
+        table.putIfAbsent(url("hot1", "user-1", 2));
+        HotLinkCache cache = new HotLinkCache(10);
+
+        assertTrue(cache.put(table.get("hot1")));
+        ShortUrl cached = cache.get("hot1");
+        assertSame(cached.getOriginalUrl(), cached.getOriginalUrl());
+        assertEquals("https://example.com/путь/hot1", cached.getOriginalUrl());
+
+        assertTrue(cached.tryAcquireAccess());
+        assertEquals(1, table.get("hot1").getAccessCount());
+    }
+
+    @Test
+    @DisplayName("Таблица в отображенных в память файлах")
+    void testMappedTable(@TempDir Path dir) {
+        OffHeapLinkTable table = new OffHeapLinkTable(1000, dir);
+        for (int i = 0; i < 500; i++) {
+            assertTrue(table.putIfAbsent(url("m" + i, "user-1", null)));
+        }
+        assertEquals("https://example.com/путь/m42", table.get("m42").getOriginalUrl());
+        assertTrue(Files.exists(dir.resolve("slots-0.bin")));
+        assertTrue(table.offHeapBytes() >= table.capacity() * OffHeapLinkTable.SLOT_BYTES);
+    }
+}
@@ -0,0 +1,117 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PopularityTrackerTest {
+
+    private static ShortUrl access(PopularityTracker tracker, ShortUrl url, int times) {
+        for (int i = 0; i < times; i++) {
+            url.incrementAccessCount();
+            tracker.recordAccess(url, 0);
+        }
+        return url;
+    }
+
+    private static List<String> codes(List<ShortUrl> urls) {
+        return urls.stream().map(ShortUrl::getShortCode).collect(Collectors.toList());
+    }
+
+    @Test
+    @DisplayName("Рейтинг держит самых популярных и вытесняет слабейшего")
+    void testLeaderboard() {
+        PopularityTracker tracker = new PopularityTracker(2, 0);
+        access(tracker, new ShortUrl("a", "https://a.com", "u"), 5);
+        access(tracker, new ShortUrl("b", "https://b.com", "u"), 3);
+        ShortUrl c = access(tracker, new ShortUrl("c", "https://c.com", "u"), 3);
+
+        assertEquals(List.of("a", "b"), codes(tracker.top(10)));
+
+        access(tracker, c, 3);
+        assertEquals(List.of("c", "a"), codes(tracker.top(10)));
+        assertEquals(List.of("c"), codes(tracker.top(1)));
+    }
+
+    @Test
+    @DisplayName("Удаленная ссылка уходит из рейтинга, место занимает следующая")
+    void testRemove() {
+        PopularityTracker tracker = new PopularityTracker(2, 0);
+        ShortUrl a = access(tracker, new ShortUrl("a", "https://a.com", "u"), 5);
+        access(tracker, new ShortUrl("b", "https://b.com", "u"), 4);
+        ShortUrl c = access(tracker, new ShortUrl("c", "https://c.com", "u"), 1);
+
+        tracker.remove(a);
+        assertEquals(List.of("b"), codes(tracker.top(10)));
+        access(tracker, c, 1);
+        assertEquals(List.of("b", "c"), codes(tracker.top(10)));
+    }
+
+    @Test
+    @DisplayName("Место удаленного лидера занимает следующая ссылка хранилища")
+    void testRemoveRefillsFromStore() {
+        MapLinkStore store = new MapLinkStore(1000);
+        PopularityTracker tracker = new PopularityTracker(2, 0, store::topByAccess);
+        ShortUrl a = new ShortUrl("a", "https://a.com", "u");
+        ShortUrl b = new ShortUrl("b", "https://b.com", "u");
+        ShortUrl c = new ShortUrl("c", "https://c.com", "u");
+        for (ShortUrl url : List.of(a, b, c)) {
+            store.putIfAbsent(url);
+        }
+        access(tracker, a, 5);
+        access(tracker, b, 4);
+        access(tracker, c, 2);
+        assertEquals(List.of("a", "b"), codes(tracker.top(10)));
+
+        store.remove(a);
+        tracker.remove(a);
+        assertEquals(List.of("b", "c"), codes(tracker.top(10)));
+    }
+
+    @Test
+    @DisplayName("Рейтинг учитывает рост счетчиков лидеров при вытеснении")
+    void testWeakestFollowsGrowingLeaders() {
+        PopularityTracker tracker = new PopularityTracker(2, 0);
+        ShortUrl a = access(tracker, new ShortUrl("a", "https://a.com", "u"), 1);
+        access(tracker, new ShortUrl("b", "https://b.com", "u"), 2);
+        // Лидер a обгоняет b, и слабейшим становится b
+        access(tracker, a, 5);
+        access(tracker, new ShortUrl("c", "https://c.com", "u"), 3);
+
+        assertEquals(List.of("a", "c"), codes(tracker.top(10)));
+    }
+
+    @Test
+    @DisplayName("Рейтинг за окно учитывает только переходы внутри окна")
+    void testWindow() {
+        WindowedTopK window = new WindowedTopK(60_000, 8);
+        for (int i = 0; i < 5; i++) {
+            window.record("old", 0);
+        }
+        for (int i = 0; i < 3; i++) {
+            window.record("fresh", 100_000);
+        }
+        window.record("other", 110_000);
+
+        List<WindowedTopK.Entry> top = window.top(10, 110_000);
+        assertEquals(2, top.size());
+        assertEquals("fresh", top.get(0).getShortCode());
+        assertEquals(3, top.get(0).getCount());
+        assertEquals(5, window.top(10, 30_000).get(0).getCount());
+    }
+
+    @Test
+    @DisplayName("Space-Saving ограничивает число счетчиков и сохраняет тяжелого лидера")
+    void testWindowBoundedCounters() {
+        WindowedTopK window = new WindowedTopK(60_000, 4);
+        for (int i = 0; i < 1000; i++) {
+            window.record("heavy", 1_000);
+            window.record("noise-" + i, 1_000);
+        }
+        List<WindowedTopK.Entry> top = window.top(100, 1_000);
+        assertTrue(top.size() <= 4);
+        assertEquals("heavy", top.get(0).getShortCode());
+    }
+}
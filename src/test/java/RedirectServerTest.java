@@ -0,0 +1,228 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RedirectServerTest {
+    private UrlShortenerService service;
+    private RedirectServer server;
+    private HttpClient client;
+    private String testUserId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        service = new UrlShortenerService();
+        testUserId = service.createUser("Http User").getId();
+        server = new RedirectServer(service, 0, 2);
+        server.start();
+        client = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+        service.shutdown();
+    }
+
+    @Test
+    @DisplayName("GET /{код} отвечает редиректом на оригинальный URL")
+    void testRedirect() throws Exception {
+        String shortCode = service.createShortUrl("https://example.com/page", testUserId);
+
+        HttpResponse<String> response = get("/" + shortCode);
+
+        assertEquals(302, response.statusCode());
+        assertEquals("https://example.com/page", response.headers().firstValue("Location").orElse(null));
+    }
+
+    @Test
+    @DisplayName("Заголовки Referer и User-Agent редиректа доходят до подписчиков на переходы")
+    void testRedirectPassesHeaders() throws Exception {
+        String shortCode = service.createShortUrl("https://example.com/headers", testUserId);
+        String[] seen = new String[2];
+        service.addChangeListener(new LinkChangeListener() {
+            @Override
+            public void onAccess(ShortUrl shortUrl, long nowMillis, String referrer, String userAgent) {
+                seen[0] = referrer;
+                seen[1] = userAgent;
+            }
+        });
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/" + shortCode))
+                .header("Referer", "https://from.example.com/")
+                .header("User-Agent", "TestAgent/1.0")
+                .GET()
+                .build();
+        assertEquals(302, client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertEquals("https://from.example.com/", seen[0]);
+        assertEquals("TestAgent/1.0", seen[1]);
+    }
+
+    @Test
+    @DisplayName("GET /metrics отдает счетчики и задержки текстом")
+    void testMetricsEndpoint() throws Exception {
+        String shortCode = service.createShortUrl("https://example.com/metrics", testUserId);
+        get("/" + shortCode);
+        get("/unknown");
+
+        HttpResponse<String> response = get("/metrics");
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("shortener_resolve_found_total 1\n"), response.body());
+        assertTrue(response.body().contains("shortener_resolve_not_found_total 1\n"), response.body());
+        assertTrue(response.body().contains("shortener_resolve_latency_p99_ns "), response.body());
+    }
+
+    @Test
+    @DisplayName("Неизвестный код — 404, исчерпанный лимит — 410")
+    void testNotFoundAndGone() throws Exception {
+        assertEquals(404, get("/unknown").statusCode());
+
+        String shortCode = service.createShortUrl("https://example.com/once", testUserId, 1);
+        assertEquals(302, get("/" + shortCode).statusCode());
+        assertEquals(410, get("/" + shortCode).statusCode());
+    }
+
+    @Test
+    @DisplayName("POST /api/urls создает ссылку, по которой работает редирект")
+    void testCreateViaPost() throws Exception {
+        HttpResponse<String> created = post("/api/urls",
+                "url=" + URLEncoder.encode("https://example.com/?q=1&x=2", StandardCharsets.UTF_8)
+                        + "&userId=" + testUserId + "&maxAccessCount=5");
+
+        assertEquals(201, created.statusCode());
+        String shortUrl = created.body().trim();
+        assertTrue(shortUrl.startsWith(Config.getBaseUrl()));
+        String shortCode = shortUrl.substring(Config.getBaseUrl().length());
+
+        HttpResponse<String> redirect = get("/" + shortCode);
+        assertEquals(302, redirect.statusCode());
+        assertEquals("https://example.com/?q=1&x=2", redirect.headers().firstValue("Location").orElse(null));
+    }
+
+    @Test
+    @DisplayName("Пакетное создание и пакетный переход через POST")
+    void testBatchEndpoints() throws Exception {
+        HttpResponse<String> created = post("/api/urls/batch?userId=" + testUserId,
+                "https://example.com/1\nnot-a-url\r\nhttps://example.com/2\n");
+
+        assertEquals(200, created.statusCode());
+        String[] lines = created.body().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith(Config.getBaseUrl()));
+        assertTrue(lines[1].startsWith("ERROR "));
+        String code1 = lines[0].substring(Config.getBaseUrl().length());
+        String code2 = lines[2].substring(Config.getBaseUrl().length());
+
+        HttpResponse<String> resolved = post("/api/urls/resolve", code1 + "\nunknown\n" + code2);
+        assertEquals(200, resolved.statusCode());
+        assertEquals("FOUND https://example.com/1\nNOT_FOUND\nFOUND https://example.com/2\n", resolved.body());
+    }
+
+    @Test
+    @DisplayName("Тело пакетного запроса и формы больше http.max.body.bytes — 413")
+    void testBodyTooLarge() throws Exception {
+        String codes = "abcdefg\n".repeat(Config.getHttpMaxBodyBytes() / 8 + 1);
+
+        HttpResponse<String> resolved = post("/api/urls/resolve", codes);
+        assertEquals(413, resolved.statusCode());
+        assertTrue(resolved.body().contains(String.valueOf(Config.getHttpMaxBodyBytes())));
+        assertEquals(413, post("/api/urls/batch?userId=" + testUserId, codes).statusCode());
+        assertEquals(413, post("/api/users", "name=" + codes).statusCode());
+        assertEquals(0, service.getUserUrls(testUserId).size());
+    }
+
+    @Test
+    @DisplayName("Невалидный URL и создание пользователя через POST")
+    void testCreateUserAndInvalidUrl() throws Exception {
+        HttpResponse<String> user = post("/api/users", "name=Http+Client");
+        assertEquals(201, user.statusCode());
+        String userId = user.body().trim();
+        assertNotNull(service.getUserById(userId));
+
+        assertEquals(400, post("/api/urls", "url=example.com&userId=" + userId).statusCode());
+        assertEquals(405, get("/api/urls").statusCode());
+    }
+
+    @Test
+    @DisplayName("Неверная %-кодировка формы — 400, соединение не обрывается")
+    void testMalformedFormEncoding() throws Exception {
+        HttpResponse<String> url = post("/api/urls", "url=%zz&userId=" + testUserId);
+        assertEquals(400, url.statusCode());
+        assertTrue(url.body().contains("%zz"));
+        assertEquals(400, post("/api/users", "name=%E").statusCode());
+        assertEquals(0, service.getUserUrls(testUserId).size());
+    }
+
+    @Test
+    @DisplayName("POST /api/urls без userId — 400, соединение не обрывается")
+    void testCreateWithoutUserId() throws Exception {
+        HttpResponse<String> missing = post("/api/urls", "url=https://example.com/no-user");
+        assertEquals(400, missing.statusCode());
+        assertFalse(missing.body().isBlank());
+        assertEquals(400, post("/api/urls", "url=https://example.com/no-user&userId=+").statusCode());
+    }
+
+    @Test
+    @DisplayName("Лимит проверяется одинаково для одиночного и пакетного создания")
+    void testInvalidLimit() throws Exception {
+        assertEquals(400, post("/api/urls", "url=https://example.com/&userId=" + testUserId
+                + "&maxAccessCount=abc").statusCode());
+        assertEquals(400, post("/api/urls", "url=https://example.com/&userId=" + testUserId
+                + "&maxAccessCount=0").statusCode());
+        assertEquals(400, post("/api/urls/batch?userId=" + testUserId + "&maxAccessCount=abc",
+                "https://example.com/1").statusCode());
+
+        HttpResponse<String> batch = post("/api/urls/batch?userId=" + testUserId + "&maxAccessCount=-1",
+                "https://example.com/1");
+        assertEquals(200, batch.statusCode());
+        assertTrue(batch.body().startsWith("ERROR "), batch.body());
+        assertEquals(0, service.getUserUrls(testUserId).size());
+    }
+
+    @Test
+    @DisplayName("HEAD /{код} не расходует лимит и не засчитывает переход")
+    void testHeadDoesNotCountAccess() throws Exception {
+        String shortCode = service.createShortUrl("https://example.com/head", testUserId, 1);
+
+        HttpRequest head = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/" + shortCode))
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+        HttpResponse<Void> probe = client.send(head, HttpResponse.BodyHandlers.discarding());
+        assertEquals(302, probe.statusCode());
+        assertEquals("https://example.com/head", probe.headers().firstValue("Location").orElse(null));
+        assertEquals(302, client.send(head, HttpResponse.BodyHandlers.discarding()).statusCode());
+        assertEquals(0, service.findShortUrl(shortCode).getAccessCount());
+
+        assertEquals(302, get("/" + shortCode).statusCode());
+        assertEquals(410, client.send(head, HttpResponse.BodyHandlers.discarding()).statusCode());
+        assertEquals(404, client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/unknown"))
+                .method("HEAD", HttpRequest.BodyPublishers.noBody()).build(),
+                HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path))
+                .GET()
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String path, String form) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,248 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplicationTest {
+    private final List<UrlShortenerService> services = new ArrayList<>();
+    private final List<ReplicationFollower> followers = new ArrayList<>();
+    private final List<RedirectServer> servers = new ArrayList<>();
+    private final List<InternalServer> internalServers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        followers.forEach(ReplicationFollower::close);
+        servers.forEach(RedirectServer::stop);
+        internalServers.forEach(InternalServer::stop);
+        services.forEach(UrlShortenerService::shutdown);
+    }
+
+    private UrlShortenerService service() {
+        UrlShortenerService service = new UrlShortenerService();
+        service.stopCleanupTask();
+        services.add(service);
+        return service;
+    }
+
+    private ReplicationFollower follower(ReplicationSource leader) {
+        ReplicationFollower follower = ReplicationFollower.start(leader, service(), 16, 0, 0, 60_000);
+        followers.add(follower);
+        return follower;
+    }
+
+    @Test
+    @DisplayName("Реплика применяет журнал ведущего: создание, лимит и удаление ссылок")
+    void testLogReplication() throws Exception {
+        UrlShortenerService leaderService = service();
+        ReplicationLeader leader = ReplicationLeader.open(leaderService, 1024);
+        ReplicationFollower follower = follower(leader);
+        assertFalse(follower.isInSync());
+        assertEquals(Long.MAX_VALUE, follower.getLagMillis());
+        // Первая порция - снимок пустого ведущего
+        assertEquals(0, follower.sync());
+        assertEquals(0, follower.getAppliedSeq());
+
+        String userId = leaderService.createUser("Ivan").getId();
+        List<String> codes = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            codes.add(leaderService.createShortUrl("https://example.com/" + i, userId));
+        }
+        leaderService.updateUrlLimit(codes.get(0), userId, 1);
+        leaderService.deleteUrl(codes.get(1), userId);
+
+        assertEquals(53, follower.sync());
+        assertEquals(leader.getLastSeq(), follower.getAppliedSeq());
+        assertEquals(0, follower.getLagRecords());
+        assertTrue(follower.isInSync());
+        assertEquals("Ivan", follower.getService().getUserById(userId).getName());
+        for (int i = 2; i < 50; i++) {
+            assertEquals("https://example.com/" + i, follower.getOriginalUrl(codes.get(i)));
+        }
+        assertEquals(LookupResult.Status.NOT_FOUND, follower.resolve(codes.get(1)).getStatus());
+        assertEquals(LookupResult.Status.FOUND, follower.resolve(codes.get(0)).getStatus());
+        assertEquals(LookupResult.Status.LIMIT_REACHED, follower.resolve(codes.get(0)).getStatus());
+        assertEquals(0, follower.sync());
+    }
+
+    @Test
+    @DisplayName("Отставание реплики считается по часам ее сервиса")
+    void testLagUsesServiceClock() throws Exception {
+        ReplicationLeader leader = ReplicationLeader.open(service(), 1024);
+        long[] now = {10_000};
+        UrlShortenerService replica = new UrlShortenerService(ShortCodeGenerator.fromConfig(), LinkStore.fromConfig(),
+                new InMemoryUserStore(), () -> now[0]);
+        replica.stopCleanupTask();
+        services.add(replica);
+        ReplicationFollower follower = ReplicationFollower.start(leader, replica, 16, 0, 0, 1_000);
+        followers.add(follower);
+
+        follower.sync();
+        assertEquals(0, follower.getLagMillis());
+        now[0] += 1_000;
+        assertEquals(1_000, follower.getLagMillis());
+        assertTrue(follower.isInSync());
+        now[0] += 1;
+        assertFalse(follower.isInSync());
+        follower.sync();
+        assertEquals(0, follower.getLagMillis());
+    }
+
+    @Test
+    @DisplayName("Отставшая больше буфера журнала реплика догоняет ведущего по снимку")
+    void testSnapshotCatchUp() throws Exception {
+        UrlShortenerService leaderService = service();
+        ReplicationLeader leader = ReplicationLeader.open(leaderService, 8);
+        String userId = leaderService.createUser("owner").getId();
+        String early = leaderService.createShortUrl("https://example.com/early", userId);
+        ReplicationFollower follower = follower(leader);
+        follower.sync();
+        assertEquals("https://example.com/early", follower.getOriginalUrl(early));
+
+        leaderService.deleteUrl(early, userId);
+        List<String> codes = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            codes.add(leaderService.createShortUrl("https://example.com/late/" + i, userId));
+        }
+        follower.sync();
+        assertEquals(leader.getLastSeq(), follower.getAppliedSeq());
+        assertEquals(20, follower.getService().urls().count());
+        assertEquals(LookupResult.Status.NOT_FOUND, follower.resolve(early).getStatus());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("https://example.com/late/" + i, follower.getOriginalUrl(codes.get(i)));
+        }
+
+        // Малое отставание снова закрывается журналом
+        String fresh = leaderService.createShortUrl("https://example.com/fresh", userId);
+        assertTrue(follower.sync() < 8);
+        assertEquals("https://example.com/fresh", follower.getOriginalUrl(fresh));
+    }
+
+    @Test
+    @DisplayName("Снимок отдается страницами по курсору, дочитанный курсор закрывается")
+    void testSnapshotPages() throws Exception {
+        UrlShortenerService leaderService = service();
+        ReplicationLeader leader = ReplicationLeader.open(leaderService, 8);
+        String userId = leaderService.createUser("owner").getId();
+        for (int i = 0; i < 20; i++) {
+            leaderService.createShortUrl("https://example.com/page/" + i, userId);
+        }
+
+        List<String> records = new ArrayList<>();
+        ReplicationBatch page = leader.snapshot(8);
+        List<Long> cursors = new ArrayList<>();
+        while (true) {
+            assertTrue(page.isSnapshot());
+            assertEquals(leader.getLastSeq(), page.getLastSeq());
+            assertTrue(page.getRecords().size() <= 8);
+            records.addAll(page.getRecords());
+            if (page.getCursor() == 0) {
+                break;
+            }
+            cursors.add(page.getCursor());
+            page = leader.fetchSnapshot(page.getCursor(), 8);
+        }
+        assertEquals(2, cursors.size());
+        assertEquals(21, records.size());
+        assertTrue(records.get(0).startsWith("user,"));
+        assertThrows(IllegalStateException.class, () -> leader.fetchSnapshot(cursors.get(0), 8));
+    }
+
+    @Test
+    @DisplayName("Переходы реплик сливаются на ведущем пачкой и расходятся по остальным репликам")
+    void testAccessMerge() throws Exception {
+        UrlShortenerService leaderService = service();
+        ReplicationLeader leader = ReplicationLeader.open(leaderService, 1024);
+        String userId = leaderService.createUser("owner").getId();
+        String code = leaderService.createShortUrl("https://example.com/hot", userId, 10);
+        ReplicationFollower first = follower(leader);
+        ReplicationFollower second = follower(leader);
+        first.sync();
+        second.sync();
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(first.resolve(code).isFound());
+        }
+        assertEquals(0, leaderService.findShortUrl(code).getAccessCount());
+        assertEquals(1, first.mergeAccessCounts());
+        assertEquals(0, first.mergeAccessCounts());
+        assertEquals(5, leaderService.findShortUrl(code).getAccessCount());
+        assertEquals(5, leaderService.getStatistics().getClicks());
+        // Ссылка, по которой переходили только на реплике, попадает в рейтинг ведущего
+        assertEquals(code, leaderService.getTopUrls(1).get(0).getShortCode());
+
+        leaderService.resolve(code);
+        second.sync();
+        assertEquals(6, second.getService().findShortUrl(code).getAccessCount());
+        assertEquals(code, second.getService().getTopUrls(1).get(0).getShortCode());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(second.resolve(code).isFound());
+        }
+        assertEquals(LookupResult.Status.LIMIT_REACHED, second.resolve(code).getStatus());
+        second.mergeAccessCounts();
+        first.sync();
+        assertEquals(10, first.getService().findShortUrl(code).getAccessCount());
+        assertEquals(10, leaderService.findShortUrl(code).getAccessCount());
+    }
+
+    @Test
+    @DisplayName("Реплика на другом порту забирает журнал по HTTP и отдает переходы, но не создает ссылки")
+    void testHttpReplicaSet() throws Exception {
+        UrlShortenerService leaderService = service();
+        ReplicationLeader leader = ReplicationLeader.open(leaderService, 1024);
+        InternalServer leaderServer = new InternalServer(0, 2);
+        HttpReplicationSource.serve(leaderServer, leader);
+        leaderServer.start();
+        internalServers.add(leaderServer);
+
+        ReplicaSet replicas = new ReplicaSet(leader);
+        ReplicationFollower follower = follower(
+                new HttpReplicationSource(URI.create("http://localhost:" + leaderServer.getPort())));
+        replicas.addFollower(follower);
+        String userId = replicas.createUser("Имя, с \"кавычками\"").getId();
+        List<String> codes = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            codes.add(replicas.createShortUrl("https://example.com/http/" + i, userId, i == 0 ? 3 : null));
+        }
+        follower.sync();
+        assertEquals("Имя, с \"кавычками\"", follower.getService().getUserById(userId).getName());
+        for (int i = 0; i < 40; i++) {
+            assertEquals("https://example.com/http/" + i, replicas.getOriginalUrl(codes.get(i)));
+        }
+        // Переходы обслужила реплика
+        assertEquals(1, follower.getService().findShortUrl(codes.get(5)).getAccessCount());
+        assertEquals(0, leaderService.findShortUrl(codes.get(5)).getAccessCount());
+        assertEquals(40, follower.mergeAccessCounts());
+        assertEquals(1, leaderService.findShortUrl(codes.get(5)).getAccessCount());
+
+        // Ссылку, которой реплика еще не знает, отдает ведущий
+        String fresh = replicas.createShortUrl("https://example.com/fresh", userId);
+        assertEquals("https://example.com/fresh", replicas.getOriginalUrl(fresh));
+        replicas.deleteUrl(fresh, userId);
+        follower.sync();
+        assertEquals(LookupResult.Status.NOT_FOUND, replicas.resolve(fresh).getStatus());
+
+        RedirectServer followerServer = new RedirectServer(follower.getService(), 0, 2);
+        followerServer.setReadOnly(true);
+        followerServer.start();
+        servers.add(followerServer);
+        HttpClient client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER).build();
+        String base = "http://localhost:" + followerServer.getPort();
+        HttpResponse<String> created = client.send(HttpRequest.newBuilder(URI.create(base + "/api/urls"))
+                        .header("Content-Type", "application/x-www-form-urlencoded")
+                        .POST(HttpRequest.BodyPublishers.ofString("url=https%3A%2F%2Fexample.com&userId=" + userId))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(403, created.statusCode());
+        HttpResponse<String> redirect = client.send(HttpRequest.newBuilder(URI.create(base + "/" + codes.get(7)))
+                .GET().build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals("https://example.com/http/7", redirect.headers().firstValue("Location").orElse(null));
+    }
+}
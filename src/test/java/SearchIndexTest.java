@@ -0,0 +1,98 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchIndexTest {
+    private final Set<String> stored = new HashSet<>();
+    private final SearchIndex index = new SearchIndex(stored::contains);
+
+    private ShortUrl add(String code, String url) {
+        ShortUrl shortUrl = new ShortUrl(code, url, "u1", 0, Long.MAX_VALUE, 0, null);
+        stored.add(code);
+        index.add(shortUrl);
+        return shortUrl;
+    }
+
+    private void remove(ShortUrl shortUrl) {
+        stored.remove(shortUrl.getShortCode());
+        index.remove(shortUrl);
+    }
+
+    private Set<String> candidates(String query, boolean prefix) {
+        return index.candidates("u1", query, prefix, Integer.MAX_VALUE);
+    }
+
+    @Test
+    @DisplayName("Слова - последовательности букв и цифр в нижнем регистре")
+    void testWords() {
+        assertEquals(List.of("https", "пример", "рф", "a1", "b"), SearchIndex.words("HTTPS://Пример.РФ/a1--b/"));
+        assertTrue(SearchIndex.words("/?&").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Кандидаты: диапазон слов для слов после разделителя, подстрока слова для одиночного слова")
+    void testCandidates() {
+        add("c1", "https://example.com/catalog/shoes");
+        add("c2", "https://shop.example.com/cat");
+        add("c3", "https://other.org/dog");
+
+        assertEquals(Set.of("c1", "c2"), candidates("example.com/cat", false));
+        assertEquals(Set.of("c1", "c2"), candidates("/cat", false));
+        assertEquals(Set.of("c1"), candidates("hoe", false));
+        assertEquals(Set.of("c1"), candidates("shoe", true));
+        assertEquals(Set.of("c3"), candidates("C3", false));
+        assertTrue(candidates("hoe", true).isEmpty());
+        assertNull(candidates("/", false));
+        assertNull(index.candidates("u1", "example", false, 1));
+        assertTrue(index.candidates("u2", "example", false, 10).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Совпадение проверяется без учета регистра по URL и коду")
+    void testMatches() {
+        ShortUrl shortUrl = new ShortUrl("AbC123", "https://Example.com/Docs?q=1", "u1", 0, 1, 0, null);
+        assertTrue(SearchIndex.matches(shortUrl, "docs?Q", false));
+        assertTrue(SearchIndex.matches(shortUrl, "c12", false));
+        assertTrue(SearchIndex.matches(shortUrl, "abc", true));
+        assertTrue(SearchIndex.matches(shortUrl, "exa", true));
+        assertTrue(SearchIndex.matches(shortUrl, "?q=", true));
+        assertFalse(SearchIndex.matches(shortUrl, "ocs", true));
+        assertFalse(SearchIndex.matches(shortUrl, "docs/", false));
+    }
+
+    @Test
+    @DisplayName("Удаленная ссылка сразу уходит из слов и коротких списков")
+    void testEagerRemoval() {
+        ShortUrl kept = add("kept", "https://example.com/kept");
+        for (int i = 0; i < 2000; i++) {
+            remove(add("r" + i, "https://example.com/removed/" + i));
+        }
+        assertEquals(Set.of(kept.getShortCode()), candidates("example", false));
+        assertTrue(candidates("/removed", false).isEmpty());
+        assertTrue(candidates("r1", true).isEmpty());
+    }
+
+    @Test
+    @DisplayName("В длинных списках удаленные коды занимают не больше четверти")
+    void testBoundedDeadPostings() {
+        List<ShortUrl> urls = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            urls.add(add("c" + i, "https://example.com/page/" + i));
+        }
+        for (int i = 0; i < 900; i++) {
+            remove(urls.get(i));
+        }
+        Set<String> candidates = candidates("example", false);
+        for (int i = 900; i < 1000; i++) {
+            assertTrue(candidates.contains("c" + i));
+        }
+        assertTrue(candidates.size() - 100 <= candidates.size() / 4, "size " + candidates.size());
+        assertEquals(Set.of("c950"), candidates("/950", false));
+    }
+}
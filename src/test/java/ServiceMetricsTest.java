@@ -0,0 +1,114 @@
+import exceptions.UrlNotFoundException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ServiceMetricsTest {
+
+    private static UrlShortenerService newService(ServiceMetrics metrics) {
+        return new UrlShortenerService(ShortCodeGenerator.fromConfig(), new MapLinkStore(Config.getCleanupBucketMillis()),
+                new InMemoryUserStore(), MillisClock.fromConfig(), null, null, metrics);
+    }
+
+    @Test
+    @DisplayName("Операции сервиса попадают в счетчики, гистограммы и показатели")
+    void testServiceOperations() throws Exception {
+        ServiceMetrics metrics = new ServiceMetrics(1);
+        UrlShortenerService service = newService(metrics);
+        String userId = service.createUser("Metrics").getId();
+        String code = service.createShortUrl("https://metrics.com", userId);
+        String once = service.createShortUrl("https://metrics.com/once", userId, 1);
+        service.createShortUrls(List.of(new CreateRequest("https://metrics.com/batch", userId, null)));
+        service.resolve(code);
+        service.resolve(once);
+        service.resolve(once);
+        service.resolve("missing");
+        service.searchUrls("metrics", userId, false, 0, 10);
+        service.updateUrlLimit(code, userId, 5);
+        service.deleteUrl(once, userId);
+        assertThrows(UrlNotFoundException.class, () -> service.deleteUrl("missing", userId));
+        service.cleanupExpiredUrls();
+
+        Map<String, Number> values = metrics.values();
+        assertEquals(3L, values.get("shortener_links_created_total"));
+        assertEquals(1L, values.get("shortener_users_created_total"));
+        assertEquals(2L, values.get("shortener_resolve_found_total"));
+        assertEquals(1L, values.get("shortener_resolve_limit_reached_total"));
+        assertEquals(1L, values.get("shortener_resolve_not_found_total"));
+        assertEquals(0L, values.get("shortener_resolve_expired_total"));
+        assertEquals(4L, values.get("shortener_resolve_latency_count"));
+        assertEquals(2L, values.get("shortener_create_latency_count"));
+        assertEquals(1L, values.get("shortener_create_batch_latency_count"));
+        assertEquals(1L, values.get("shortener_search_latency_count"));
+        assertEquals(1L, values.get("shortener_update_limit_latency_count"));
+        assertEquals(1L, values.get("shortener_delete_latency_count"));
+        assertTrue((Long) values.get("shortener_cleanup_latency_count") >= 1);
+        assertTrue((Long) values.get("shortener_resolve_latency_p99_ns") > 0);
+        assertTrue((Long) values.get("shortener_resolve_latency_max_ns")
+                >= (Long) values.get("shortener_resolve_latency_p50_ns"));
+        assertEquals(2L, values.get("shortener_links"));
+        assertEquals(1L, values.get("shortener_users"));
+        // Переход по удаленной ссылке из итога ушел вместе с ней
+        assertEquals(1L, values.get("shortener_clicks"));
+
+        String text = metrics.render();
+        assertTrue(text.contains("shortener_resolve_found_total 2\n"), text);
+        assertTrue(text.contains("shortener_resolve_latency_p999_ns "), text);
+        service.shutdown();
+    }
+
+    @Test
+    @DisplayName("Задержка перехода замеряется выборочно, исходы считаются все")
+    void testResolveSampling() throws Exception {
+        ServiceMetrics metrics = new ServiceMetrics(16);
+        UrlShortenerService service = newService(metrics);
+        String code = service.createShortUrl("https://sampled.com", service.createUser("Sampled").getId());
+        for (int i = 0; i < 16_000; i++) {
+            service.resolve(code);
+        }
+        assertEquals(16_000, metrics.getResolveCount(LookupResult.Status.FOUND));
+        long sampled = metrics.getLatency(ServiceMetrics.Operation.RESOLVE).getCount();
+        assertTrue(sampled > 700 && sampled < 1300, String.valueOf(sampled));
+        service.shutdown();
+    }
+
+    @Test
+    @DisplayName("Метрики читаются через JMX, в том числе показатели, добавленные позже")
+    void testJmx() throws Exception {
+        ServiceMetrics metrics = new ServiceMetrics();
+        UrlShortenerService service = newService(metrics);
+        service.createUser("Jmx");
+        metrics.registerMBean();
+        metrics.gauge("custom_gauge", () -> 42);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(ServiceMetrics.OBJECT_NAME);
+        assertEquals(1L, server.getAttribute(name, "shortener_users_created_total"));
+        assertEquals(42L, server.getAttribute(name, "shortener_custom_gauge"));
+        assertTrue(List.of(server.getMBeanInfo(name).getAttributes()).stream()
+                .anyMatch(attribute -> attribute.getName().equals("shortener_resolve_latency_p99_ns")));
+        ReflectionException noAction = assertThrows(ReflectionException.class,
+                () -> server.invoke(name, "reset", new Object[0], new String[0]));
+        assertTrue(noAction.getTargetException() instanceof NoSuchMethodException);
+        server.unregisterMBean(name);
+        service.shutdown();
+    }
+
+    @Test
+    @DisplayName("Без метрик сервис работает и ничего не замеряет")
+    void testDisabled() throws Exception {
+        UrlShortenerService service = newService(null);
+        String code = service.createShortUrl("https://off.com", service.createUser("Off").getId());
+        assertTrue(service.resolve(code).isFound());
+        assertNull(service.getMetrics());
+        service.shutdown();
+    }
+}
@@ -0,0 +1,53 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardRingTest {
+
+    @Test
+    @DisplayName("Сегмент определяется первым символом кода")
+    void testShardOfCode() {
+        assertEquals(0, ShardRing.shardOf("abc"));
+        assertEquals(26, ShardRing.shardOf("Abc"));
+        assertEquals(61, ShardRing.shardOf("9xy"));
+        assertEquals(-1, ShardRing.shardOf(""));
+        assertEquals(-1, ShardRing.shardOf(null));
+        assertEquals(-1, ShardRing.shardOf("-ab"));
+        assertEquals(-1, ShardRing.shardOf("ёab"));
+        assertNull(new ShardRing(8).ownerOfCode("abc"));
+    }
+
+    @Test
+    @DisplayName("Сегменты делятся между узлами, новый узел забирает сегменты только себе")
+    void testBalanceAndMinimalMovement() {
+        ShardRing ring = new ShardRing(64).withNode("a").withNode("b").withNode("c");
+        int total = 0;
+        for (String node : ring.getNodes()) {
+            int shards = ring.shardsOf(node).size();
+            assertTrue(shards >= 8, node + ": " + shards);
+            total += shards;
+        }
+        assertEquals(ShardRing.SHARDS, total);
+
+        ShardRing grown = ring.withNode("d");
+        assertFalse(grown.shardsOf("d").isEmpty());
+        for (int shard = 0; shard < ShardRing.SHARDS; shard++) {
+            String before = ring.ownerOf(shard);
+            String after = grown.ownerOf(shard);
+            assertTrue(after.equals(before) || after.equals("d"), "Сегмент " + shard + ": " + before + " -> " + after);
+        }
+
+        // Уход узла возвращает кольцо к прежнему разбиению
+        ShardRing shrunk = grown.withoutNode("d");
+        for (int shard = 0; shard < ShardRing.SHARDS; shard++) {
+            assertEquals(ring.ownerOf(shard), shrunk.ownerOf(shard));
+        }
+        assertEquals(Set.of("a", "b", "c"), new HashSet<>(shrunk.getNodes()));
+        assertThrows(IllegalArgumentException.class, () -> ring.withNode("a"));
+        assertThrows(IllegalArgumentException.class, () -> ring.withoutNode("d"));
+    }
+}
@@ -0,0 +1,311 @@
+import exceptions.UrlNotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardRouterTest {
+    private final List<LocalClusterNode> localNodes = new ArrayList<>();
+    private final List<InternalServer> servers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        servers.forEach(InternalServer::stop);
+        localNodes.forEach(LocalClusterNode::shutdown);
+    }
+
+    private LocalClusterNode localNode(String id) {
+        LocalClusterNode node = new LocalClusterNode(id);
+        node.getService().stopCleanupTask();
+        localNodes.add(node);
+        return node;
+    }
+
+    private HttpClusterNode httpNode(String id) throws Exception {
+        LocalClusterNode node = localNode(id);
+        InternalServer server = new InternalServer(0, 2);
+        HttpClusterNode.serve(server, node);
+        server.start();
+        servers.add(server);
+        return new HttpClusterNode(id, URI.create("http://localhost:" + server.getPort()));
+    }
+
+    @Test
+    @DisplayName("Ссылки ложатся на узлы по сегментам, переходы и изменения идут узлу-владельцу")
+    void testRouting() throws Exception {
+        ShardRouter router = new ShardRouter(32);
+        router.addNode(localNode("a"));
+        router.addNode(localNode("b"));
+        router.addNode(localNode("c"));
+
+        Map<String, String> links = new LinkedHashMap<>();
+        List<String> userIds = new ArrayList<>();
+        for (int u = 0; u < 30; u++) {
+            String userId = router.createUser("user-" + u).getId();
+            userIds.add(userId);
+            for (int i = 0; i < 10; i++) {
+                String url = "https://example.com/" + u + "/" + i;
+                links.put(router.createShortUrl(url, userId), url);
+            }
+        }
+        assertEquals(300, links.size());
+        Set<String> nodesWithLinks = new HashSet<>();
+        for (LocalClusterNode node : localNodes) {
+            assertEquals(30, node.getService().users().size());
+            node.getService().urls().forEach(url -> {
+                // Каждая ссылка лежит на владельце своего сегмента
+                assertEquals(node.getId(), router.getRing().ownerOfCode(url.getShortCode()));
+                nodesWithLinks.add(node.getId());
+            });
+        }
+        assertEquals(Set.of("a", "b", "c"), nodesWithLinks);
+        for (Map.Entry<String, String> link : links.entrySet()) {
+            assertEquals(link.getValue(), router.getOriginalUrl(link.getKey()));
+        }
+
+        String code = links.keySet().iterator().next();
+        String owner = userIds.get(0);
+        router.updateUrlLimit(code, owner, 1);
+        assertEquals(LookupResult.Status.LIMIT_REACHED, router.resolve(code).getStatus());
+        router.deleteUrl(code, owner);
+        assertEquals(LookupResult.Status.NOT_FOUND, router.resolve(code).getStatus());
+        assertThrows(UrlNotFoundException.class, () -> router.deleteUrl(code, owner));
+        assertThrows(UrlNotFoundException.class, () -> router.getOriginalUrl("-bad"));
+    }
+
+    @Test
+    @DisplayName("Новый узел получает свои сегменты со ссылками и счетчиками, уход узла возвращает их")
+    void testRebalance() throws Exception {
+        ShardRouter router = new ShardRouter(32);
+        LocalClusterNode first = localNode("a");
+        router.addNode(first);
+        String userId = router.createUser("owner").getId();
+        Map<String, String> links = new LinkedHashMap<>();
+        for (int i = 0; i < 500; i++) {
+            String url = "https://example.com/page/" + i;
+            links.put(router.createShortUrl(url, userId), url);
+        }
+        String clicked = links.keySet().iterator().next();
+        router.resolve(clicked);
+        router.resolve(clicked);
+
+        LocalClusterNode second = localNode("b");
+        long moved = router.addNode(second);
+        Set<Integer> movedShards = router.getRing().shardsOf("b");
+        assertFalse(movedShards.isEmpty());
+        assertEquals(movedShards, second.getShards());
+        assertEquals(moved, second.getService().urls().count());
+        assertEquals(500, first.getService().urls().count() + second.getService().urls().count());
+        first.getService().urls().forEach(url -> assertFalse(movedShards.contains(ShardRing.shardOf(url.getShortCode()))));
+        assertEquals(1, second.getService().users().size());
+
+        for (Map.Entry<String, String> link : links.entrySet()) {
+            assertEquals(link.getValue(), router.getOriginalUrl(link.getKey()));
+        }
+        LocalClusterNode clickedOwner = router.getRing().ownerOfCode(clicked).equals("a") ? first : second;
+        assertEquals(3, clickedOwner.getService().findShortUrl(clicked).getAccessCount());
+
+        // Новые коды в перенесенных сегментах не повторяют выданные до переноса
+        for (int i = 0; i < 500; i++) {
+            String url = "https://example.com/new/" + i;
+            assertNull(links.put(router.createShortUrl(url, userId), url));
+        }
+
+        assertEquals(second.getService().urls().count(), router.removeNode("b"));
+        assertEquals(1000, first.getService().urls().count());
+        assertEquals(0, second.getService().urls().count());
+        assertEquals(ShardRing.SHARDS, first.getShards().size());
+        assertThrows(IllegalStateException.class, () -> router.removeNode("a"));
+    }
+
+    @Test
+    @DisplayName("Ссылка с лимитом пропускает ровно N переходов, даже если ее сегмент переезжает")
+    void testLimitExactAcrossRebalance() throws Exception {
+        ShardRouter router = new ShardRouter(32);
+        router.addNode(localNode("a"));
+        String userId = router.createUser("owner").getId();
+        int limit = 20;
+        List<String> codes = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            codes.add(router.createShortUrl("https://example.com/limited/" + i, userId, limit));
+        }
+        Map<String, AtomicInteger> found = new ConcurrentHashMap<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                while (running.get()) {
+                    String code = codes.get(ThreadLocalRandom.current().nextInt(codes.size()));
+                    if (router.resolve(code).isFound()) {
+                        found.computeIfAbsent(code, c -> new AtomicInteger()).incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        for (int round = 0; round < 3; round++) {
+            router.addNode(localNode("b" + round));
+            router.addNode(localNode("c" + round));
+            router.removeNode("b" + round);
+            router.removeNode("c" + round);
+        }
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (String code : codes) {
+            while (router.resolve(code).isFound()) {
+                found.computeIfAbsent(code, c -> new AtomicInteger()).incrementAndGet();
+            }
+            assertEquals(limit, found.get(code).get(), code);
+        }
+    }
+
+    @Test
+    @DisplayName("Узлы на портах localhost работают через HTTP так же, как в одной JVM")
+    void testHttpNodes() throws Exception {
+        ShardRouter router = new ShardRouter(32);
+        router.addNode(httpNode("a"));
+        String userId = router.createUser("Имя, с \"кавычками\"").getId();
+        Map<String, String> links = new LinkedHashMap<>();
+        for (int i = 0; i < 200; i++) {
+            String url = "https://example.com/http/" + i;
+            links.put(router.createShortUrl(url, userId, i == 0 ? 5 : null), url);
+        }
+
+        long moved = router.addNode(httpNode("b"));
+        assertTrue(moved > 0);
+        assertEquals(router.getRing().shardsOf("b"), localNodes.get(1).getShards());
+        assertEquals("Имя, с \"кавычками\"", localNodes.get(1).getService().getUserById(userId).getName());
+        for (Map.Entry<String, String> link : links.entrySet()) {
+            assertEquals(link.getValue(), router.getOriginalUrl(link.getKey()));
+        }
+
+        String limited = links.keySet().iterator().next();
+        LocalClusterNode owner = router.getRing().ownerOfCode(limited).equals("a") ? localNodes.get(0) : localNodes.get(1);
+        assertEquals(Integer.valueOf(5), owner.getService().findShortUrl(limited).getMaxAccessCount());
+        router.updateUrlLimit(limited, userId, null);
+        assertNull(owner.getService().findShortUrl(limited).getMaxAccessCount());
+        router.deleteUrl(limited, userId);
+        assertThrows(UrlNotFoundException.class, () -> router.deleteUrl(limited, userId));
+        assertEquals(LookupResult.Status.NOT_FOUND, router.resolve(limited).getStatus());
+        assertThrows(Exception.class, () -> router.createShortUrl("not a url", userId));
+    }
+
+    @Test
+    @DisplayName("Пользователь создается на узле после сбоя связи, недоступный узел дает понятную ошибку")
+    void testCreateUserRetriesNode() {
+        AtomicInteger failures = new AtomicInteger();
+        LocalClusterNode flaky = new LocalClusterNode("b") {
+            @Override
+            public void addUsers(List<User> users) {
+                if (failures.getAndDecrement() > 0) {
+                    throw new UncheckedIOException(new IOException("Connection refused"));
+                }
+                super.addUsers(users);
+            }
+        };
+        localNodes.add(flaky);
+        ShardRouter router = new ShardRouter(32);
+        router.addNode(localNode("a"));
+        router.addNode(flaky);
+
+        failures.set(2);
+        String userId = router.createUser("Retried").getId();
+        assertNotNull(flaky.getService().getUserById(userId));
+
+        failures.set(10);
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> router.createUser("Lost"));
+        assertTrue(error.getMessage().contains("узел b недоступен"), error.getMessage());
+    }
+
+    @Test
+    @DisplayName("Запросы маршрутизатора к узлу не принимаются на публичном порту")
+    void testClusterRequestsOnlyOnInternalPort() throws Exception {
+        ShardRouter router = new ShardRouter(32);
+        router.addNode(httpNode("a"));
+        LocalClusterNode node = localNodes.get(0);
+        RedirectServer publicServer = new RedirectServer(router, 0, 2);
+        publicServer.start();
+        try {
+            HttpRequest drop = HttpRequest.newBuilder(
+                    URI.create("http://localhost:" + publicServer.getPort() + "/cluster/shards/drop"))
+                    .POST(HttpRequest.BodyPublishers.ofString("0,1,2"))
+                    .build();
+            HttpResponse<String> response = HttpClient.newHttpClient().send(drop, HttpResponse.BodyHandlers.ofString());
+            assertNotEquals(200, response.statusCode());
+            assertEquals(ShardRing.SHARDS, node.getShards().size());
+        } finally {
+            publicServer.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Публичный сервер кластера отдает и создает ссылки через маршрутизатор")
+    void testPublicServerRoutesThroughRouter() throws Exception {
+        ShardRouter router = new ShardRouter(32);
+        router.addNode(httpNode("a"));
+        router.addNode(httpNode("b"));
+        assertThrows(IllegalArgumentException.class, () -> new RedirectServer(localNodes.get(0).getService(), 0, 2));
+
+        RedirectServer publicServer = new RedirectServer(router, 0, 2);
+        publicServer.start();
+        HttpClient client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER).build();
+        String base = "http://localhost:" + publicServer.getPort();
+        try {
+            String userId = client.send(HttpRequest.newBuilder(URI.create(base + "/api/users"))
+                    .POST(HttpRequest.BodyPublishers.ofString("name=Ivan")).build(),
+                    HttpResponse.BodyHandlers.ofString()).body().trim();
+            assertEquals(2, localNodes.stream().filter(node -> node.getService().getUserById(userId) != null).count());
+
+            String created = client.send(HttpRequest.newBuilder(URI.create(base + "/api/urls"))
+                    .POST(HttpRequest.BodyPublishers.ofString("url=https://example.com/created&userId=" + userId
+                            + "&maxAccessCount=1")).build(),
+                    HttpResponse.BodyHandlers.ofString()).body().trim();
+            String createdCode = created.substring(Config.getBaseUrl().length());
+
+            // Ссылки на обоих узлах доступны с одного публичного порта
+            Set<String> owners = new HashSet<>();
+            for (int i = 0; i < 20; i++) {
+                String userOnRing = router.createUser("user-" + i).getId();
+                String code = router.createShortUrl("https://example.com/" + i, userOnRing);
+                owners.add(router.getRing().ownerOfCode(code));
+                HttpResponse<String> redirect = client.send(HttpRequest.newBuilder(URI.create(base + "/" + code)).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                assertEquals(302, redirect.statusCode());
+                assertEquals("https://example.com/" + i, redirect.headers().firstValue("Location").orElse(null));
+            }
+            assertEquals(Set.of("a", "b"), owners);
+
+            HttpRequest head = HttpRequest.newBuilder(URI.create(base + "/" + createdCode))
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody()).build();
+            assertEquals(302, client.send(head, HttpResponse.BodyHandlers.discarding()).statusCode());
+            HttpRequest get = HttpRequest.newBuilder(URI.create(base + "/" + createdCode)).build();
+            assertEquals(302, client.send(get, HttpResponse.BodyHandlers.discarding()).statusCode());
+            assertEquals(410, client.send(get, HttpResponse.BodyHandlers.discarding()).statusCode());
+        } finally {
+            publicServer.stop();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShortCodeGeneratorTest {
+
+    @Test
+    @DisplayName("Последовательный генератор покрывает все пространство кодов без повторов")
+    void testSequenceIsBijective() {
+        SequenceShortCodeGenerator generator = new SequenceShortCodeGenerator(2, 42, 100);
+        Set<String> codes = new HashSet<>();
+        for (int i = 0; i < 62 * 62; i++) {
+            String code = generator.nextCode();
+            assertEquals(2, code.length());
+            assertTrue(codes.add(code), "Повтор кода: " + code);
+        }
+        assertThrows(IllegalStateException.class, generator::nextCode);
+    }
+
+    @Test
+    @DisplayName("Перемешивание делает соседние номера несоседними кодами")
+    void testSequenceShuffle() {
+        SequenceShortCodeGenerator plain = new SequenceShortCodeGenerator(6, 0, 1);
+        assertEquals("aaaaaa", plain.nextCode());
+        assertEquals("aaaaab", plain.nextCode());
+
+        SequenceShortCodeGenerator shuffled = new SequenceShortCodeGenerator(6, 7368421, 1);
+        String first = shuffled.nextCode();
+        String second = shuffled.nextCode();
+        assertNotEquals(first, second);
+        assertNotEquals(first.substring(0, 5), second.substring(0, 5));
+
+        // Нечетная длина: части номера разного размера, перестановка все равно полная
+        SequenceShortCodeGenerator odd = new SequenceShortCodeGenerator(3, 7368421, 1);
+        Set<String> codes = new HashSet<>(Arrays.asList(odd.nextCodes(62 * 62 * 62)));
+        assertEquals(62 * 62 * 62, codes.size());
+        assertNotEquals(List.of(first, second), List.of(new SequenceShortCodeGenerator(6, 42, 1).nextCodes(2)));
+    }
+
+    @Test
+    @DisplayName("Блоки номеров разных потоков не пересекаются")
+    void testSequenceConcurrentUniqueness() throws InterruptedException {
+        SequenceShortCodeGenerator generator = new SequenceShortCodeGenerator(6, 12345, 64);
+        Set<String> codes = ConcurrentHashMap.newKeySet();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    codes.add(generator.nextCode());
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40_000, codes.size());
+    }
+
+    @Test
+    @DisplayName("Пакет кодов берется одним диапазоном и не пересекается с блоками потоков")
+    void testSequenceNextCodes() {
+        SequenceShortCodeGenerator generator = new SequenceShortCodeGenerator(6, 12345, 64);
+        Set<String> codes = new HashSet<>();
+        codes.add(generator.nextCode());
+        codes.addAll(Arrays.asList(generator.nextCodes(1000)));
+        codes.add(generator.nextCode());
+        
+        assertEquals(1002, codes.size());
+        assertEquals(64 + 1000, generator.getIssuedCount());
+        assertThrows(IllegalStateException.class, () -> new SequenceShortCodeGenerator(1, 0, 1).nextCodes(63));
+    }
+
+    @Test
+    @DisplayName("Случайный генератор использует заданную длину и алфавит")
+    void testRandomGenerator() {
+        RandomShortCodeGenerator generator = new RandomShortCodeGenerator(8);
+        for (int i = 0; i < 100; i++) {
+            String code = generator.nextCode();
+            assertEquals(8, code.length());
+            for (char c : code.toCharArray()) {
+                assertTrue(ShortCodeGenerator.ALPHABET.indexOf(c) >= 0);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Сервис пропускает коды, уже занятые ссылками вне генератора")
+    void testServiceSkipsOccupiedCodes() throws Exception {
+        UrlShortenerService service = new UrlShortenerService(new SequenceShortCodeGenerator(6, 0, 1));
+        String userId = service.createUser("Generator User").getId();
+        service.addShortUrl(new ShortUrl("aaaaaa", "https://imported.com", userId));
+
+        String shortCode = service.createShortUrl("https://new.com", userId);
+
+        assertEquals("aaaaab", shortCode);
+        assertEquals("https://imported.com", service.getOriginalUrl("aaaaaa"));
+        service.shutdown();
+    }
+
+    @Test
+    @DisplayName("Генератор по сегментам ставит сегмент первым символом, позиция переезжает с сегментом")
+    void testShardedGenerator() {
+        ShardedCodeGenerator generator = new ShardedCodeGenerator(() -> new SequenceShortCodeGenerator(3, 42, 1));
+        assertThrows(IllegalStateException.class, generator::nextCode);
+        generator.assign(0, 0);
+        generator.assign(5, 0);
+        Set<String> codes = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            String code = generator.nextCode();
+            assertEquals(4, code.length());
+            assertTrue(code.charAt(0) == 'a' || code.charAt(0) == 'f', code);
+            assertTrue(codes.add(code), "Повтор кода: " + code);
+        }
+        assertEquals(Set.of(0, 5), generator.getShards());
+
+        // Сегмент 5 переезжает на другой узел и продолжает без повторов
+        long position = generator.release(5);
+        assertEquals(50, position);
+        // Узел помнит позицию отданного сегмента
+        assertEquals(50, generator.getPosition(5));
+        ShardedCodeGenerator other = new ShardedCodeGenerator(() -> new SequenceShortCodeGenerator(3, 42, 1));
+        other.assign(5, position);
+        for (int i = 0; i < 50; i++) {
+            assertTrue(codes.add(other.nextCode()));
+            assertTrue(generator.nextCode().startsWith("a"));
+        }
+        assertThrows(IllegalArgumentException.class, () -> generator.release(5));
+
+        // Повторное назначение сегмента с меньшей позицией не откатывает генератор
+        other.assign(5, 0);
+        assertEquals(100, other.getPosition(5));
+        other.restorePosition(7, 30);
+        other.assign(7, 0);
+        assertEquals(30, other.getPosition(7));
+    }
+}
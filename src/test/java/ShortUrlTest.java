@@ -1,6 +1,7 @@
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class ShortUrlTest {
@@ -32,6 +33,37 @@ public class ShortUrlTest {
         assertEquals(2, shortUrl.getAccessCount());
     }
 
+    @Test
+    void testTryAcquireAccess() {
+        shortUrl.setMaxAccessCount(2);
+        assertTrue(shortUrl.tryAcquireAccess());
+        assertTrue(shortUrl.tryAcquireAccess());
+        assertFalse(shortUrl.tryAcquireAccess());
+        assertEquals(2, shortUrl.getAccessCount());
+    }
+
+    @Test
+    void testTryAcquireAccess_Concurrent() throws InterruptedException {
+        shortUrl.setMaxAccessCount(10_000);
+        AtomicInteger acquired = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 5_000; i++) {
+                    if (shortUrl.tryAcquireAccess()) {
+                        acquired.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(10_000, acquired.get());
+        assertEquals(10_000, shortUrl.getAccessCount());
+    }
+
     @Test
     void testIsActive_NoLimit() {
         assertTrue(shortUrl.isActive());
@@ -78,6 +110,38 @@ public class ShortUrlTest {
         assertTrue(activeUrl.isActive());
     }
 
+    @Test
+    void testIsExpiredAtMillis() {
+        ShortUrl url = new ShortUrl("millis", "https://example.com", testUserId, 1_000L, 2_000L, 0, null);
+        
+        assertFalse(url.isExpired(2_000L));
+        assertTrue(url.isActive(2_000L));
+        assertTrue(url.isExpired(2_001L));
+        assertFalse(url.isActive(2_001L));
+        assertEquals(1_000L, url.getCreatedAtMillis());
+    }
+
+    @Test
+    void testAcquireAccessReportsExhaustion() {
+        shortUrl.setMaxAccessCount(2);
+        assertEquals(ShortUrl.Access.GRANTED, shortUrl.acquireAccess());
+        assertEquals(ShortUrl.Access.EXHAUSTED, shortUrl.acquireAccess());
+        assertEquals(ShortUrl.Access.LIMIT_REACHED, shortUrl.acquireAccess());
+        assertEquals(2, shortUrl.getAccessCount());
+    }
+
+    @Test
+    void testAccessCountSaturates() {
+        ShortUrl busy = new ShortUrl("busy", "https://example.com", testUserId,
+                0L, Long.MAX_VALUE, Integer.MAX_VALUE - 1, null);
+        assertEquals(ShortUrl.Access.GRANTED, busy.acquireAccess());
+        assertEquals(ShortUrl.Access.GRANTED, busy.acquireAccess());
+        busy.incrementAccessCount();
+        busy.addAccessCount(1000);
+        assertEquals(Integer.MAX_VALUE, busy.getAccessCount());
+        assertTrue(busy.isActive(0L));
+    }
+
     @Test
     void testSetMaxAccessCount() {
         assertNull(shortUrl.getMaxAccessCount());
@@ -86,6 +150,11 @@ public class ShortUrlTest {
         
         shortUrl.setMaxAccessCount(null);
         assertNull(shortUrl.getMaxAccessCount());
+        
+        // -1 хранится как "без лимита" и не должен сниматься им молча
+        assertThrows(IllegalArgumentException.class, () -> shortUrl.setMaxAccessCount(-1));
+        assertThrows(IllegalArgumentException.class, () -> shortUrl.setMaxAccessCount(-5));
+        assertNull(shortUrl.getMaxAccessCount());
     }
 
     @Test
@@ -0,0 +1,334 @@
+import exceptions.UrlExpiredException;
+import exceptions.UrlNotFoundException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StorageManagerTest {
+    @TempDir
+    Path dir;
+
+    private StorageManager open(UrlShortenerService service) throws IOException {
+        return StorageManager.open(dir, service, 60_000, 0);
+    }
+
+    @Test
+    @DisplayName("Ссылки, пользователи, лимиты и переходы переживают перезапуск по журналу")
+    void testRecoveryFromLog() throws Exception {
+        UrlShortenerService service = new UrlShortenerService();
+        StorageManager storage = open(service);
+        String userId = service.createUser("Durable User").getId();
+        String kept = service.createShortUrl("https://kept.com", userId, 5);
+        String deleted = service.createShortUrl("https://deleted.com", userId);
+        service.getOriginalUrl(kept);
+        service.getOriginalUrl(kept);
+        service.updateUrlLimit(kept, userId, 3);
+        service.deleteUrl(deleted, userId);
+        storage.close();
+        service.shutdown();
+
+        UrlShortenerService restored = new UrlShortenerService();
+        StorageManager reopened = open(restored);
+
+        assertEquals("Durable User", restored.getUserById(userId).getName());
+        assertEquals(1, restored.getUserUrls(userId).size());
+        ShortUrl shortUrl = restored.getUserUrls(userId).get(0);
+        assertEquals(kept, shortUrl.getShortCode());
+        assertEquals(2, shortUrl.getAccessCount());
+        assertEquals(3, shortUrl.getMaxAccessCount());
+        assertThrows(UrlNotFoundException.class, () -> restored.getOriginalUrl(deleted));
+        assertEquals("https://kept.com", restored.getOriginalUrl(kept));
+        assertThrows(UrlExpiredException.class, () -> restored.getOriginalUrl(kept));
+
+        // Новые коды не пересекаются с восстановленными
+        assertNotEquals(kept, restored.createShortUrl("https://new.com", userId));
+        reopened.close();
+        restored.shutdown();
+    }
+
+    @Test
+    @DisplayName("Узел кластера после перезапуска сохраняет свои сегменты и не повторяет коды")
+    void testClusterNodeRecovery() throws Exception {
+        UrlShortenerService service = new UrlShortenerService(
+                new ShardedCodeGenerator(() -> new SequenceShortCodeGenerator(5, 42, 1)));
+        ShardedCodeGenerator generator = (ShardedCodeGenerator) service.getCodeGenerator();
+        StorageManager storage = open(service);
+        generator.assign(3, 0);
+        generator.assign(4, 0);
+        String userId = service.createUser("Node User").getId();
+        Set<String> codes = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            codes.add(service.createShortUrl("https://node.com/" + i, userId));
+        }
+        storage.snapshot();
+        long released = generator.release(4);
+        for (int i = 10; i < 20; i++) {
+            codes.add(service.createShortUrl("https://node.com/" + i, userId));
+        }
+        storage.close();
+        service.shutdown();
+
+        UrlShortenerService restored = new UrlShortenerService(
+                new ShardedCodeGenerator(() -> new SequenceShortCodeGenerator(5, 42, 1)));
+        ShardedCodeGenerator restoredGenerator = (ShardedCodeGenerator) restored.getCodeGenerator();
+        StorageManager reopened = open(restored);
+        assertEquals(Set.of(3), restoredGenerator.getShards());
+        assertEquals(released, restoredGenerator.getPosition(4));
+        // Маршрутизатор после перезапуска снова назначает сегменты с нулевой позиции
+        restoredGenerator.assign(3, 0);
+        restoredGenerator.assign(4, 0);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(codes.add(restored.createShortUrl("https://restarted.com/" + i, userId)));
+        }
+        reopened.close();
+        restored.shutdown();
+    }
+
+    @Test
+    @DisplayName("Снимок заменяет старые сегменты журнала, изменения после снимка тоже восстанавливаются")
+    void testSnapshotAndLogTail() throws Exception {
+        UrlShortenerService service = new UrlShortenerService();
+        StorageManager storage = open(service);
+        String userId = service.createUser("Snapshot User").getId();
+        String first = service.createShortUrl("https://first.com", userId);
+        service.getOriginalUrl(first);
+        storage.snapshot();
+        String second = service.createShortUrl("https://second.com", userId);
+        service.getOriginalUrl(first);
+        storage.close();
+        service.shutdown();
+
+        assertEquals(1, Files.list(dir).filter(p -> p.getFileName().toString().startsWith("snapshot-")).count());
+        assertEquals(1, WriteAheadLog.listSegments(dir).size());
+
+        UrlShortenerService restored = new UrlShortenerService();
+        StorageManager reopened = open(restored);
+        assertEquals(2, restored.getUserUrls(userId).size());
+        assertEquals("https://second.com", restored.getOriginalUrl(second));
+        assertEquals(2, restored.getUserUrls(userId).stream()
+                .filter(url -> url.getShortCode().equals(first)).findFirst().get().getAccessCount());
+        assertEquals(2, reopened.getRecoveryStats().getLinks());
+        reopened.close();
+        restored.shutdown();
+    }
+
+    @Test
+    @DisplayName("Оборванный хвост журнала отбрасывается, просроченные ссылки не загружаются")
+    void testTornTailAndExpired() throws Exception {
+        UrlShortenerService service = new UrlShortenerService();
+        StorageManager storage = open(service);
+        String userId = service.createUser("Torn User").getId();
+        String shortCode = service.createShortUrl("https://survives.com", userId);
+        LocalDateTime now = LocalDateTime.now();
+        storage.onUrlCreated(new ShortUrl("old", "https://old.com", userId, now.minusDays(2), now.minusDays(1), 0, null));
+        storage.close();
+        service.shutdown();
+
+        Path segment = WriteAheadLog.segmentPath(dir, WriteAheadLog.listSegments(dir).get(0));
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 50, 1, 2, 3}));
+        }
+
+        UrlShortenerService restored = new UrlShortenerService();
+        StorageManager reopened = open(restored);
+        assertEquals("https://survives.com", restored.getOriginalUrl(shortCode));
+        assertThrows(UrlNotFoundException.class, () -> restored.getOriginalUrl("old"));
+        // пользователь, две ссылки и позиция генератора; оборванная запись не считается
+        assertEquals(4, reopened.getRecoveryStats().getLogRecords());
+        reopened.close();
+        restored.shutdown();
+    }
+
+    @Test
+    @DisplayName("Повторная запись о создании ссылки не сбрасывает ее счетчик переходов")
+    void testCreateAfterAccessKeepsCount() throws Exception {
+        UrlShortenerService service = new UrlShortenerService();
+        StorageManager storage = open(service);
+        String userId = service.createUser("Replay User").getId();
+        String shortCode = service.createShortUrl("https://replay.com", userId, 10);
+        for (int i = 0; i < 3; i++) {
+            service.getOriginalUrl(shortCode);
+        }
+        // Так выглядит журнал, когда снимок уже учел переходы, а создание попало в сегмент после него
+        storage.onUrlCreated(service.findShortUrl(shortCode));
+        storage.close();
+        service.shutdown();
+
+        UrlShortenerService restored = new UrlShortenerService();
+        StorageManager reopened = open(restored);
+        assertEquals(3, restored.findShortUrl(shortCode).getAccessCount());
+        assertEquals(1, reopened.getRecoveryStats().getLinks());
+        reopened.close();
+        restored.shutdown();
+    }
+
+    @Test
+    @DisplayName("Истечение ссылок при восстановлении проверяется по часам сервиса")
+    void testRecoveryUsesServiceClock() throws Exception {
+        UrlShortenerService service = new UrlShortenerService();
+        StorageManager storage = open(service);
+        String userId = service.createUser("Clock User").getId();
+        String shortCode = service.createShortUrl("https://clock.com", userId);
+        storage.close();
+        service.shutdown();
+
+        long later = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(Config.getDefaultUrlTtlHours() + 1);
+        UrlShortenerService restored = new UrlShortenerService(ShortCodeGenerator.fromConfig(),
+                LinkStore.fromConfig(), new InMemoryUserStore(), () -> later);
+        StorageManager reopened = open(restored);
+        assertNull(restored.findShortUrl(shortCode));
+        assertEquals(0, reopened.getRecoveryStats().getLinks());
+        reopened.close();
+        restored.shutdown();
+    }
+
+    @Test
+    @DisplayName("Ошибка записи не теряет пачку журнала и не оставляет оборванную запись")
+    void testFlushFailureKeepsBatch() throws Exception {
+        FaultyChannel[] channel = new FaultyChannel[1];
+        WriteAheadLog log = new WriteAheadLog(dir, 1, path -> channel[0] = new FaultyChannel(FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)));
+        log.append(WriteAheadLog.record(WriteAheadLog.USER, "u1", "first"));
+        log.flush();
+
+        log.append(WriteAheadLog.record(WriteAheadLog.USER, "u2", "second"));
+        log.append(WriteAheadLog.record(WriteAheadLog.USER, "u3", "third"));
+        channel[0].failWrites = true;
+        assertThrows(IOException.class, log::flush);
+        channel[0].failWrites = false;
+
+        log.append(WriteAheadLog.record(WriteAheadLog.USER, "u4", "fourth"));
+        log.flush();
+        log.append(WriteAheadLog.record(WriteAheadLog.USER, "u5", "fifth"));
+        log.flush();
+        log.close();
+
+        List<String> ids = new ArrayList<>();
+        assertEquals(5, WriteAheadLog.readSegment(dir, 1, (type, fields) -> ids.add(fields.readUTF())));
+        assertEquals(List.of("u1", "u2", "u3", "u4", "u5"), ids);
+    }
+
+    /**
+     * Канал сегмента, который по флагу дописывает половину буфера и падает.
+     */
+    private static class FaultyChannel extends FileChannel {
+        private final FileChannel delegate;
+        volatile boolean failWrites;
+
+        FaultyChannel(FileChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (failWrites) {
+                ByteBuffer half = src.duplicate();
+                half.limit(src.position() + src.remaining() / 2);
+                delegate.write(half);
+                throw new IOException("Нет места на диске");
+            }
+            return delegate.write(src);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+}
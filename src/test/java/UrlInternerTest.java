@@ -0,0 +1,24 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UrlInternerTest {
+
+    @Test
+    @DisplayName("Одинаковые URL получают один экземпляр строки, пока на него есть ссылки")
+    void testInternAndRelease() {
+        UrlInterner interner = new UrlInterner();
+        String first = interner.intern(new String("https://example.com"));
+        String second = interner.intern(new String("https://example.com"));
+        assertSame(first, second);
+        assertEquals(1, interner.size());
+
+        interner.release("https://example.com");
+        assertSame(first, interner.intern(new String("https://example.com")));
+        interner.release("https://example.com");
+        interner.release("https://example.com");
+        assertEquals(0, interner.size());
+        assertNotSame(first, interner.intern(new String("https://example.com")));
+    }
+}
@@ -5,9 +5,16 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 
-import java.lang.reflect.Field;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -50,6 +57,98 @@ public class UrlShortenerServiceTest {
             service.createShortUrl(longUrl, testUserId));
     }
 
+    @Test
+    @DisplayName("Ссылка сохраняется в каноническом виде")
+    void testCreateShortUrl_Normalized() throws Exception {
+        String shortCode = service.createShortUrl("HTTPS://Example.COM:443/Path?q=1", testUserId);
+        
+        assertEquals("https://example.com/Path?q=1", service.getOriginalUrl(shortCode));
+        assertThrows(InvalidUrlException.class, () ->
+            service.createShortUrl("https://exa mple.com", testUserId));
+    }
+
+    @Test
+    @DisplayName("Режим без повторов возвращает прежний код для того же пользователя и URL")
+    void testDedupMode() throws Exception {
+        AtomicLong now = new AtomicLong(1_000_000L);
+        UrlShortenerService dedup = new UrlShortenerService(ShortCodeGenerator.fromConfig(),
+                new MapLinkStore(Config.getCleanupBucketMillis()), new InMemoryUserStore(), now::get,
+                new DedupIndex(), new UrlInterner());
+        dedup.stopCleanupTask();
+        String user1 = dedup.createUser("User 1").getId();
+        String user2 = dedup.createUser("User 2").getId();
+        
+        String code = dedup.createShortUrl("https://example.com/campaign", user1);
+        assertEquals(code, dedup.createShortUrl("HTTPS://EXAMPLE.COM:443/campaign", user1));
+        String otherUser = dedup.createShortUrl("https://example.com/campaign", user2);
+        assertNotEquals(code, otherUser);
+        assertSame(dedup.findShortUrl(code).getOriginalUrl(), dedup.findShortUrl(otherUser).getOriginalUrl());
+        assertNotEquals(code, dedup.createShortUrl("https://example.com/campaign", user1, 10));
+        assertEquals(1, dedup.getDedupIndex().getHits());
+        List<CreateResult> batch = dedup.createShortUrls(List.of(
+                new CreateRequest("https://example.com/campaign", user1),
+                new CreateRequest("https://example.com/other", user1),
+                new CreateRequest("https://example.com/other", user1)));
+        assertEquals(code, batch.get(0).getShortCode());
+        assertEquals(batch.get(1).getShortCode(), batch.get(2).getShortCode());
+        assertEquals(3, dedup.getDedupIndex().getHits());
+        
+        dedup.deleteUrl(code, user1);
+        String recreated = dedup.createShortUrl("https://example.com/campaign", user1);
+        assertNotEquals(code, recreated);
+        
+        now.addAndGet(TimeUnit.HOURS.toMillis(Config.getDefaultUrlTtlHours()) + 1);
+        assertNotEquals(recreated, dedup.createShortUrl("https://example.com/campaign", user1));
+        assertEquals(3, dedup.getDedupIndex().getHits());
+    }
+
+    @Test
+    @DisplayName("Пакетное создание и пакетный переход")
+    void testBatchCreateAndResolve() {
+        List<CreateRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            requests.add(new CreateRequest("https://example.com/batch/" + i, testUserId));
+        }
+        requests.add(new CreateRequest("not-a-url", testUserId));
+        requests.add(new CreateRequest("https://example.com/unknown-user", "no-such-user"));
+        requests.add(new CreateRequest("HTTPS://Example.com/limited", testUserId, 1));
+        
+        List<CreateResult> results = service.createShortUrls(requests);
+        
+        assertEquals(requests.size(), results.size());
+        assertEquals(1001, results.stream().filter(CreateResult::isCreated).map(CreateResult::getShortCode)
+                .distinct().count());
+        assertFalse(results.get(1000).isCreated());
+        assertEquals("Пользователь не найден: no-such-user", results.get(1001).getError());
+        assertEquals(1001, service.countUserUrls(testUserId));
+        
+        List<LookupResult> resolved = service.resolveAll(List.of(results.get(7).getShortCode(), "nonexistent",
+                results.get(1002).getShortCode(), results.get(1002).getShortCode()));
+        assertEquals("https://example.com/batch/7", resolved.get(0).getOriginalUrl());
+        assertEquals(LookupResult.Status.NOT_FOUND, resolved.get(1).getStatus());
+        assertEquals("https://example.com/limited", resolved.get(2).getOriginalUrl());
+        assertEquals(LookupResult.Status.LIMIT_REACHED, resolved.get(3).getStatus());
+    }
+
+    @Test
+    @DisplayName("Нулевой и отрицательный лимит отклоняются при создании и смене лимита")
+    void testRejectsNonPositiveLimit() throws Exception {
+        assertThrows(InvalidUrlException.class, () -> service.createShortUrl("https://zero.com", testUserId, 0));
+        assertThrows(InvalidUrlException.class, () -> service.createShortUrl("https://minus.com", testUserId, -1));
+        
+        List<CreateResult> results = service.createShortUrls(List.of(
+                new CreateRequest("https://batch.com/minus", testUserId, -1),
+                new CreateRequest("https://batch.com/ok", testUserId, 1)));
+        assertEquals("Лимит должен быть положительным числом: -1", results.get(0).getError());
+        assertTrue(results.get(1).isCreated());
+        assertEquals(1, service.countUserUrls(testUserId));
+        
+        String shortCode = results.get(1).getShortCode();
+        assertThrows(IllegalArgumentException.class, () -> service.updateUrlLimit(shortCode, testUserId, -1));
+        assertThrows(IllegalArgumentException.class, () -> service.updateUrlLimit(shortCode, testUserId, 0));
+        assertEquals(1, service.findShortUrl(shortCode).getMaxAccessCount());
+    }
+
     @Test
     @DisplayName("Уникальность ссылок для разных пользователей")
     void testUniqueUrlsForDifferentUsers() throws Exception {
@@ -76,13 +175,74 @@ public class UrlShortenerServiceTest {
             service.getOriginalUrl(shortCode));
     }
 
+    @Test
+    @DisplayName("Лимит переходов соблюдается при конкурентных переходах")
+    void testAccessLimitUnderConcurrency() throws Exception {
+        int limit = 1000;
+        int threads = 8;
+        int attemptsPerThread = 500;
+        String shortCode = service.createShortUrl("https://concurrent-limit.com", testUserId, limit);
+        
+        AtomicInteger served = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < attemptsPerThread; i++) {
+                    try {
+                        service.getOriginalUrl(shortCode);
+                        served.incrementAndGet();
+                    } catch (UrlExpiredException e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        
+        // Ровно limit переходов, остальные отклонены, счетчик не превышает лимит
+        assertEquals(limit, served.get());
+        assertEquals(threads * attemptsPerThread - limit, rejected.get());
+        assertEquals(limit, service.getUserUrls(testUserId).get(0).getAccessCount());
+    }
+
     @Test
     @DisplayName("Получение несуществующей ссылки")
     void testGetNonExistentUrl() {
-        assertThrows(UrlNotFoundException.class, () -> 
+        UrlNotFoundException e = assertThrows(UrlNotFoundException.class, () -> 
             service.getOriginalUrl("nonexistent"));
+        assertEquals("Короткая ссылка не найдена: nonexistent", e.getMessage());
+        assertEquals(0, e.getStackTrace().length);
     }
 
+    @Test
+    @DisplayName("Переход без исключений сообщает статус")
+    void testResolveStatuses() throws Exception {
+        String shortCode = service.createShortUrl("https://resolve.com", testUserId, 1);
+        
+        LookupResult found = service.resolve(shortCode);
+        assertTrue(found.isFound());
+        assertEquals("https://resolve.com", found.getOriginalUrl());
+        assertEquals(LookupResult.Status.LIMIT_REACHED, service.resolve(shortCode).getStatus());
+        assertEquals(LookupResult.Status.NOT_FOUND, service.resolve("nonexistent").getStatus());
+        assertNull(service.resolve("nonexistent").getOriginalUrl());
+        
+        LocalDateTime past = LocalDateTime.now().minusHours(48);
+        service.addShortUrl(new ShortUrl("old", "https://old.com", testUserId, past, past.plusHours(24), 0, null));
+        assertEquals(LookupResult.Status.EXPIRED, service.resolve("old").getStatus());
+        assertEquals(1, service.getUserUrls(testUserId).stream()
+                .filter(url -> url.getShortCode().equals(shortCode)).findFirst().get().getAccessCount());
+    }
+    
     @Test
     @DisplayName("Удаление ссылки")
     void testDeleteUrl() throws Exception {
@@ -171,6 +331,51 @@ public class UrlShortenerServiceTest {
         assertEquals(1, user2Urls.size());
     }
 
+    @Test
+    @DisplayName("Постраничная выдача ссылок пользователя")
+    void testGetUserUrlsPaged() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            service.createShortUrl("https://paged.com/" + i, testUserId);
+        }
+        List<ShortUrl> all = service.getUserUrls(testUserId);
+        
+        assertEquals(5, service.countUserUrls(testUserId));
+        assertEquals(all.subList(0, 2), service.getUserUrls(testUserId, 0, 2));
+        assertEquals(all.subList(2, 5), service.getUserUrls(testUserId, 2, 10));
+    }
+
+    @Test
+    @DisplayName("Индекс ссылок пользователя согласован с хранилищем при конкурентных созданиях и удалениях")
+    void testUserIndexConsistencyUnderConcurrency() throws Exception {
+        int threads = 4;
+        int perThread = 2_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    String shortCode = service.createShortUrl("https://consistency.com/" + i, testUserId);
+                    if (i % 3 == 0) {
+                        service.deleteUrl(shortCode, testUserId);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        
+        List<ShortUrl> indexed = service.getUserUrls(testUserId);
+        int expected = threads * (perThread - (perThread + 2) / 3);
+        assertEquals(expected, indexed.size());
+        for (ShortUrl shortUrl : indexed) {
+            assertEquals(shortUrl.getOriginalUrl(), service.getOriginalUrl(shortUrl.getShortCode()));
+        }
+    }
+
     @Test
     @DisplayName("Статистика сервиса")
     void testStatistics() throws Exception {
@@ -201,6 +406,14 @@ public class UrlShortenerServiceTest {
         
         // Проверяем, что метод не падает
         assertDoesNotThrow(() -> service.showTopUrls(2));
+        
+        List<ShortUrl> top = service.getTopUrls(2);
+        assertEquals(url2, top.get(0).getShortCode());
+        assertEquals(url1, top.get(1).getShortCode());
+        
+        // Удаленная ссылка пропадает из рейтинга
+        service.deleteUrl(url2, testUserId);
+        assertEquals(url1, service.getTopUrls(1).get(0).getShortCode());
     }
 
     @Test
@@ -214,13 +427,7 @@ public class UrlShortenerServiceTest {
         ShortUrl expiredUrl = new ShortUrl(expiredCode, "https://expired.com", testUserId,
                                          pastCreatedAt, pastExpiresAt, 0, null);
         
-        // Добавляем ссылку в сервис через рефлексию
-        Field urlMapField = UrlShortenerService.class.getDeclaredField("urlMap");
-        urlMapField.setAccessible(true);
-        @SuppressWarnings("unchecked")
-        java.util.Map<String, ShortUrl> urlMap = 
-            (java.util.Map<String, ShortUrl>) urlMapField.get(service);
-        urlMap.put(expiredCode, expiredUrl);
+        service.addShortUrl(expiredUrl);
         
         // Создаем активную ссылку
         String activeCode = service.createShortUrl("https://active.com", testUserId);
@@ -229,8 +436,59 @@ public class UrlShortenerServiceTest {
         service.cleanupExpiredUrls();
         
         // Проверяем, что просроченная ссылка удалена, а активная осталась
-        assertFalse(urlMap.containsKey(expiredCode));
-        assertTrue(urlMap.containsKey(activeCode));
+        assertThrows(UrlNotFoundException.class, () -> service.getOriginalUrl(expiredCode));
+        assertEquals("https://active.com", service.getOriginalUrl(activeCode));
+        assertEquals(1, service.getCleanupMetrics().getLastExpiredCount());
+    }
+
+    @Test
+    @DisplayName("Очистка не трогает удаленные и еще не истекшие ссылки")
+    void testCleanupOnlyDueLinks() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        service.addShortUrl(new ShortUrl("due1", "https://due.com/1", testUserId,
+                now.minusHours(2), now.minusHours(1), 0, null));
+        service.addShortUrl(new ShortUrl("due2", "https://due.com/2", testUserId,
+                now.minusHours(2), now.minusMinutes(1), 0, null));
+        service.addShortUrl(new ShortUrl("later", "https://later.com", testUserId,
+                now, now.plusHours(1), 0, null));
+        service.deleteUrl("due2", testUserId);
+        
+        service.cleanupExpiredUrls();
+        
+        assertEquals(1, service.getCleanupMetrics().getLastExpiredCount());
+        assertEquals(1, service.getUserUrls(testUserId).size());
+        assertEquals("later", service.getUserUrls(testUserId).get(0).getShortCode());
+        
+        service.cleanupExpiredUrls();
+        assertEquals(0, service.getCleanupMetrics().getLastExpiredCount());
+        assertEquals(2, service.getCleanupMetrics().getSweepCount());
+    }
+
+    @Test
+    @DisplayName("Срок жизни ссылки отсчитывается по часам сервиса")
+    void testTtlWithManualClock() throws Exception {
+        AtomicLong now = new AtomicLong(1_000_000L);
+        UrlShortenerService clocked = new UrlShortenerService(ShortCodeGenerator.fromConfig(),
+                new MapLinkStore(Config.getCleanupBucketMillis()), new InMemoryUserStore(), now::get);
+        clocked.stopCleanupTask();
+        String userId = clocked.createUser("Clock User").getId();
+        String shortCode = clocked.createShortUrl("https://clock.com", userId);
+        long ttlMillis = TimeUnit.HOURS.toMillis(Config.getDefaultUrlTtlHours());
+        
+        ShortUrl shortUrl = clocked.findShortUrl(shortCode);
+        assertEquals(1_000_000L, shortUrl.getCreatedAtMillis());
+        assertEquals(1_000_000L + ttlMillis, shortUrl.getExpiresAtMillis());
+        
+        now.addAndGet(ttlMillis - 1);
+        assertTrue(clocked.resolve(shortCode).isFound());
+        clocked.cleanupExpiredUrls();
+        assertEquals(0, clocked.getCleanupMetrics().getLastExpiredCount());
+        
+        now.addAndGet(2);
+        assertEquals(LookupResult.Status.EXPIRED, clocked.resolve(shortCode).getStatus());
+        clocked.cleanupExpiredUrls();
+        assertEquals(1, clocked.getCleanupMetrics().getLastExpiredCount());
+        assertEquals(LookupResult.Status.NOT_FOUND, clocked.resolve(shortCode).getStatus());
     }
 
     @Test
@@ -0,0 +1,80 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserUrlIndexTest {
+    private final LocalDateTime base = LocalDateTime.now();
+    private final Map<String, ShortUrl> stored = new HashMap<>();
+
+    private ShortUrl url(String code, String userId, int minutesAgo) {
+        ShortUrl shortUrl = new ShortUrl(code, "https://example.com/" + code, userId,
+                base.minusMinutes(minutesAgo), base.plusHours(1), 0, null);
+        stored.put(code, shortUrl);
+        return shortUrl;
+    }
+
+    @Test
+    @DisplayName("Ссылки пользователя упорядочены от новых к старым")
+    void testOrderingAndIsolation() {
+        UserUrlIndex index = new UserUrlIndex(stored::get);
+        index.add(url("old", "u1", 30));
+        index.add(url("new", "u1", 1));
+        index.add(url("mid", "u1", 10));
+        index.add(url("other", "u2", 5));
+
+        List<ShortUrl> urls = index.all("u1");
+        assertEquals(List.of("new", "mid", "old"), urls.stream().map(ShortUrl::getShortCode).collect(Collectors.toList()));
+        assertEquals(1, index.count("u2"));
+        assertTrue(index.all("nobody").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Постраничная выдача и удаление")
+    void testPagingAndRemove() {
+        UserUrlIndex index = new UserUrlIndex(stored::get);
+        ShortUrl[] urls = new ShortUrl[10];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = url("c" + i, "u1", i);
+            index.add(urls[i]);
+        }
+
+        assertEquals(List.of("c0", "c1", "c2"),
+                index.page("u1", 0, 3).stream().map(ShortUrl::getShortCode).collect(Collectors.toList()));
+        assertEquals(List.of("c8", "c9"),
+                index.page("u1", 8, 5).stream().map(ShortUrl::getShortCode).collect(Collectors.toList()));
+        assertTrue(index.page("u1", 20, 5).isEmpty());
+
+        index.remove(urls[0]);
+        assertEquals("c1", index.page("u1", 0, 1).get(0).getShortCode());
+        assertEquals(9, index.count("u1"));
+
+        // Повторные добавление и удаление не сбивают счетчик
+        index.add(urls[1]);
+        index.remove(urls[0]);
+        assertEquals(9, index.count("u1"));
+    }
+
+    @Test
+    @DisplayName("Индекс хранит коды: ссылки берутся из хранилища, освободившиеся коды пропускаются")
+    void testResolvesFromStore() {
+        UserUrlIndex index = new UserUrlIndex(stored::get);
+        index.add(url("a", "u1", 2));
+        index.add(url("b", "u1", 1));
+
+        stored.remove("b");
+        assertEquals(List.of("a"), index.all("u1").stream().map(ShortUrl::getShortCode).collect(Collectors.toList()));
+
+        // Код отдан ссылке другого пользователя
+        index.add(url("b", "u2", 0));
+        assertEquals(List.of("a"), index.all("u1").stream().map(ShortUrl::getShortCode).collect(Collectors.toList()));
+        assertEquals(List.of("b"), index.all("u2").stream().map(ShortUrl::getShortCode).collect(Collectors.toList()));
+        assertSame(stored.get("a"), index.page("u1", 0, 1).get(0));
+    }
+}